@@ -0,0 +1,96 @@
+package com.roshansutihar.bankingservice.resource;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The in-memory half of the mobile transaction endpoints: sorting most recent first and turning
+// each transaction into the HashMap the JSON is written from. Transactions arrive shuffled, with
+// a few undated ones; each invocation sorts a fresh copy, as the controller gets a fresh list from
+// the repository.
+//
+// ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="TransactionMappingBenchmark -prof gc"
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionMappingBenchmark {
+
+    @Param({"20", "200", "2000"})
+    private int transactions;
+
+    private final Random random = new Random(42);
+    private List<Transaction> source;
+
+    @Setup
+    public void createTransactions() {
+        TransactionType deposit = new TransactionType();
+        deposit.setTypeCode("DEPOSIT");
+        Account from = new Account();
+        from.setAccountNumber("100000000001");
+        Account to = new Account();
+        to.setAccountNumber("100000000002");
+
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        source = new ArrayList<>(transactions);
+        for (int i = 0; i < transactions; i++) {
+            Transaction txn = new Transaction();
+            txn.setId((long) i);
+            txn.setTransactionRef("TXN-" + i);
+            txn.setAmount(BigDecimal.valueOf(1_000 + i, 2));
+            txn.setDescription("Payment " + i);
+            txn.setStatus(TransactionStatus.COMPLETED);
+            txn.setTransactionType(deposit);
+            txn.setTransactionDate(i % 50 == 0 ? null : start.plusMinutes(random.nextInt(500_000)));
+            txn.setEffectiveDate(start.toLocalDate());
+            txn.setFromAccount(i % 2 == 0 ? from : null);
+            txn.setToAccount(to);
+            source.add(txn);
+        }
+        Collections.shuffle(source, random);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> sortAndMap() {
+        List<Transaction> working = new ArrayList<>(source);
+        working.sort(MobileApiController.MOST_RECENT_FIRST);
+        List<Map<String, Object>> result = new ArrayList<>(working.size());
+        for (Transaction txn : working) {
+            result.add(MobileApiController.toTransactionInfo(txn));
+        }
+        return result;
+    }
+
+    // Mapping only, for the share of sortAndMap spent building the maps
+    @Benchmark
+    public List<Map<String, Object>> mapOnly() {
+        List<Map<String, Object>> result = new ArrayList<>(source.size());
+        for (Transaction txn : source) {
+            result.add(MobileApiController.toTransactionInfo(txn));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package com.roshansutihar.bankingservice.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// SHA-256 hashing as done for every password check: a fresh MessageDigest, Base64 decode of the
+// salt and Base64 encode of the hash per call.
+//
+// ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="PasswordServiceBenchmark -prof gc"
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordServiceBenchmark {
+
+    private final PasswordService passwordService = new PasswordService();
+
+    private String salt;
+    private String storedHash;
+
+    @Setup
+    public void setUp() {
+        salt = passwordService.generateSalt();
+        storedHash = passwordService.hashPassword("Corr3ct#Horse", salt);
+    }
+
+    @Benchmark
+    public String hashPassword() {
+        return passwordService.hashPassword("Corr3ct#Horse", salt);
+    }
+
+    @Benchmark
+    public boolean verifyPassword() {
+        return passwordService.verifyPassword("Corr3ct#Horse", salt, storedHash);
+    }
+}
@@ -0,0 +1,340 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.repository.LedgerEntryRepository;
+import com.roshansutihar.bankingservice.repository.TransactionRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PostingService journals (a customer leg plus the offsetting GL-CASH leg) two ways:
+//  - inMemory*: repositories, JdbcTemplate and EntityManager replaced by in-memory stand-ins,
+//    so only the service's own work is measured (balance check, running balances, building
+//    the ledger entries and the balance batch)
+//  - postgres*: the real JPA stack against embedded Postgres migrated by Flyway, one database
+//    transaction per journal (lock both rows, insert transaction and entries, batch the two
+//    balance updates) as a single withdrawal or deposit does
+// postgresRejected is tryPost of an overdraft: the lock and funds check with nothing written.
+// H2 is not offered: the journal locks rows with Postgres' FOR UPDATE OF.
+//
+// ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.args="PostingServiceBenchmark -prof gc"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingServiceBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("25.00");
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000000.00");
+
+    @State(Scope.Thread)
+    public static class InMemory {
+
+        static final Long CUSTOMER_ID = 1L;
+        static final Long CASH_ID = 100L;
+
+        PostingService postingService;
+        Transaction transaction;
+        final Map<Long, InMemoryAccount> accounts = new TreeMap<>();
+        long ledgerEntries;
+
+        @Setup
+        public void setUp() {
+            accounts.put(CUSTOMER_ID, new InMemoryAccount(CUSTOMER_ID, "CHECKING", OPENING_BALANCE));
+            accounts.put(CASH_ID, new InMemoryAccount(CASH_ID, "GL", BigDecimal.ZERO));
+
+            postingService = new PostingService();
+            ReflectionTestUtils.setField(postingService, "accountRepository", accountRepository());
+            ReflectionTestUtils.setField(postingService, "transactionRepository",
+                    stub(TransactionRepository.class, (name, args) -> args[0], "save"));
+            ReflectionTestUtils.setField(postingService, "ledgerEntryRepository", ledgerEntryRepository());
+            ReflectionTestUtils.setField(postingService, "jdbcTemplate", jdbcTemplate());
+            ReflectionTestUtils.setField(postingService, "entityManager",
+                    stub(EntityManager.class, (name, args) -> null, "flush"));
+
+            transaction = new Transaction();
+            transaction.setId(1L);
+            transaction.setTransactionRef("TXN-BENCH");
+        }
+
+        @SuppressWarnings("unchecked")
+        private AccountRepository accountRepository() {
+            return stub(AccountRepository.class, (name, args) -> {
+                if ("getReferenceById".equals(name)) {
+                    Account account = new Account();
+                    account.setId((Long) args[0]);
+                    return account;
+                }
+                List<AccountRepository.JournalAccount> locked = new ArrayList<>();
+                for (Long id : new TreeSet<>((Collection<Long>) args[0])) {
+                    locked.add(accounts.get(id));
+                }
+                return locked;
+            }, "lockForJournal", "getReferenceById");
+        }
+
+        private LedgerEntryRepository ledgerEntryRepository() {
+            return stub(LedgerEntryRepository.class, (name, args) -> {
+                Collection<?> entries = (Collection<?>) args[0];
+                ledgerEntries += entries.size();
+                return entries;
+            }, "saveAll");
+        }
+
+        // Applies APPLY_BALANCE_SQL's (current delta, available delta, id) parameters to the
+        // in-memory rows
+        private JdbcTemplate jdbcTemplate() {
+            return new JdbcTemplate() {
+                @Override
+                public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                               ParameterizedPreparedStatementSetter<T> setter) {
+                    Object[] parameters = new Object[3];
+                    PreparedStatement statement = stub(PreparedStatement.class, (name, args) -> {
+                        parameters[(Integer) args[0] - 1] = args[1];
+                        return null;
+                    }, "setBigDecimal", "setLong");
+                    for (T arg : batchArgs) {
+                        try {
+                            setter.setValues(statement, arg);
+                        } catch (SQLException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        InMemoryAccount account = accounts.get((Long) parameters[2]);
+                        account.currentBalance = account.currentBalance.add((BigDecimal) parameters[0]);
+                        account.availableBalance = account.availableBalance.add((BigDecimal) parameters[1]);
+                    }
+                    return new int[][]{new int[batchArgs.size()]};
+                }
+            };
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Postgres {
+
+        EmbeddedPostgres postgres;
+        ConfigurableApplicationContext context;
+        PostingService postingService;
+        TransactionTemplate transactionTemplate;
+        EntityManager entityManager;
+        Long accountId;
+        Long cashAccountId;
+        long depositTypeId;
+        long withdrawalTypeId;
+        final String refPrefix = "JMH-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+        final AtomicLong refCounter = new AtomicLong();
+
+        @Setup
+        public void setUp() throws Exception {
+            postgres = EmbeddedPostgres.start();
+            context = new SpringApplicationBuilder(PostingContext.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.config.name=jmh",
+                            "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                            "spring.datasource.username=postgres",
+                            "spring.jpa.hibernate.ddl-auto=none",
+                            "spring.jpa.open-in-view=false",
+                            "spring.jpa.properties.hibernate.connection.handling_mode=DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION",
+                            "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                            "spring.jpa.properties.hibernate.order_inserts=true",
+                            "spring.jpa.properties.hibernate.order_updates=true",
+                            "spring.jpa.properties.hibernate.jdbc.batch_versioned_data=true")
+                    .run();
+
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                    "VALUES ('INDIVIDUAL', 'bench', 'bench@example.com', 'sub-bench')");
+            jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                    "current_balance, available_balance) " +
+                    "SELECT 'BENCH-1', u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', " +
+                    "'ACTIVE', ?, ? FROM users u WHERE u.username = 'bench'", OPENING_BALANCE, OPENING_BALANCE);
+            accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = 'BENCH-1'", Long.class);
+            depositTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'DEPOSIT'", Long.class);
+            withdrawalTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'WITHDRAWAL'", Long.class);
+
+            postingService = context.getBean(PostingService.class);
+            cashAccountId = postingService.glAccountId(PostingService.GlAccount.CASH, accountId);
+            transactionTemplate = context.getBean(TransactionTemplate.class);
+            entityManager = context.getBean(EntityManager.class);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            if (context != null) {
+                context.close();
+            }
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+
+        // Left unsaved: PostingService inserts it with the journal
+        Transaction newTransaction(long typeId, Long fromAccountId, Long toAccountId) {
+            Transaction txn = new Transaction();
+            txn.setTransactionRef(refPrefix + refCounter.incrementAndGet());
+            txn.setTransactionType(entityManager.getReference(TransactionType.class, typeId));
+            txn.setFromAccount(entityManager.getReference(Account.class, fromAccountId));
+            txn.setToAccount(entityManager.getReference(Account.class, toAccountId));
+            txn.setAmount(AMOUNT);
+            txn.setStatus(TransactionStatus.COMPLETED);
+            txn.setTransactionDate(LocalDateTime.now());
+            txn.setEffectiveDate(LocalDate.now());
+            return txn;
+        }
+    }
+
+    @Benchmark
+    public PostingService.PostingResult inMemoryWithdrawal(InMemory state) {
+        return state.postingService.post(state.postingService.journal(state.transaction)
+                .debit(InMemory.CUSTOMER_ID, AMOUNT)
+                .credit(InMemory.CASH_ID, AMOUNT));
+    }
+
+    @Benchmark
+    public PostingService.PostingResult inMemoryDeposit(InMemory state) {
+        return state.postingService.post(state.postingService.journal(state.transaction)
+                .debit(InMemory.CASH_ID, AMOUNT)
+                .credit(InMemory.CUSTOMER_ID, AMOUNT));
+    }
+
+    @Benchmark
+    public PostingService.PostingResult postgresWithdrawal(Postgres state) {
+        return state.transactionTemplate.execute(status -> state.postingService.post(state.postingService
+                .journal(state.newTransaction(state.withdrawalTypeId, state.accountId, state.cashAccountId))
+                .debit(state.accountId, AMOUNT)
+                .credit(state.cashAccountId, AMOUNT)));
+    }
+
+    @Benchmark
+    public PostingService.PostingResult postgresDeposit(Postgres state) {
+        return state.transactionTemplate.execute(status -> state.postingService.post(state.postingService
+                .journal(state.newTransaction(state.depositTypeId, state.cashAccountId, state.accountId))
+                .debit(state.cashAccountId, AMOUNT)
+                .credit(state.accountId, AMOUNT)));
+    }
+
+    @Benchmark
+    public PostingService.PostingResult postgresRejected(Postgres state) {
+        BigDecimal overdraft = OPENING_BALANCE.multiply(BigDecimal.TEN);
+        return state.transactionTemplate.execute(status -> state.postingService.tryPost(state.postingService
+                .journal(state.newTransaction(state.withdrawalTypeId, state.accountId, state.cashAccountId))
+                .debit(state.accountId, overdraft)
+                .credit(state.cashAccountId, overdraft)));
+    }
+
+    // Just the beans PostingService needs: JPA, Flyway and the datasource, without web or security
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("com.roshansutihar.bankingservice.entity")
+    @EnableJpaRepositories("com.roshansutihar.bankingservice.repository")
+    @Import(PostingService.class)
+    static class PostingContext {
+    }
+
+    // A locked account row as lockForJournal returns it, kept up to date by the balance batch
+    static class InMemoryAccount implements AccountRepository.JournalAccount {
+        private final Long id;
+        private final String typeCode;
+        BigDecimal currentBalance;
+        BigDecimal availableBalance;
+
+        InMemoryAccount(Long id, String typeCode, BigDecimal openingBalance) {
+            this.id = id;
+            this.typeCode = typeCode;
+            this.currentBalance = openingBalance;
+            this.availableBalance = openingBalance;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getStatus() {
+            return "ACTIVE";
+        }
+
+        @Override
+        public BigDecimal getCurrentBalance() {
+            return currentBalance;
+        }
+
+        @Override
+        public BigDecimal getAvailableBalance() {
+            return availableBalance;
+        }
+
+        @Override
+        public String getTypeCode() {
+            return typeCode;
+        }
+    }
+
+    interface StubMethod {
+        Object invoke(String name, Object[] args);
+    }
+
+    // Interface stand-in answering only the listed methods; anything else fails loudly
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, StubMethod handler, String... methods) {
+        Set<String> handled = Set.of(methods);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (handled.contains(method.getName())) {
+                return handler.invoke(method.getName(), args);
+            }
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + " stub";
+                };
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
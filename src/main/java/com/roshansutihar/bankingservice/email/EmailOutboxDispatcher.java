@@ -0,0 +1,413 @@
+package com.roshansutihar.bankingservice.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Delivers email_outbox rows.
+//
+// A few worker threads each claim a batch of due rows (FOR UPDATE SKIP LOCKED, so workers and
+// instances never pick the same row) and push next_attempt_at out by a lease while they send,
+// so rows held by a crashed worker become due again on their own. Each worker keeps its own
+// SMTP connection open across batches and only reconnects after an error or when it has been
+// idle for idle-close-ms, instead of a connect + STARTTLS + AUTH per message.
+//
+// A failed delivery is retried with exponential backoff; after max-attempts, or straight away
+// when the server answers with a permanent 5xx, the row is marked DEAD. Workers wait up to
+// poll-interval-ms between empty claims and are woken as soon as new mail is committed.
+@Component
+public class EmailOutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private static final String CLAIM_SQL = "WITH due AS (" +
+            "SELECT id FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= now() " +
+            "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "UPDATE email_outbox e SET attempts = e.attempts + 1, " +
+            "next_attempt_at = now() + ? * interval '1 millisecond' " +
+            "FROM due WHERE e.id = due.id " +
+            "RETURNING e.id, e.recipient, e.subject, e.body, e.attempts";
+
+    private static final String SENT_SQL = "UPDATE email_outbox SET status = 'SENT', sent_at = now(), " +
+            "body = NULL, last_error = NULL WHERE id = ?";
+
+    private static final String RETRY_SQL = "UPDATE email_outbox SET next_attempt_at = now() + ? * interval '1 millisecond', " +
+            "last_error = ? WHERE id = ?";
+
+    // Dead mail is cleared too: the body can hold a temporary password nobody will ever receive
+    private static final String DEAD_SQL = "UPDATE email_outbox SET status = 'DEAD', body = NULL, last_error = ? WHERE id = ?";
+
+    private static final String PURGE_SQL = "DELETE FROM email_outbox WHERE " +
+            "(status = 'SENT' AND sent_at < now() - ? * interval '1 day') OR " +
+            "(status = 'DEAD' AND created_at < now() - ? * interval '1 day')";
+
+    private static final Pattern PERMANENT_REPLY = Pattern.compile("^5\\d\\d\\b.*", Pattern.DOTALL);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JavaMailSenderImpl mailSender;
+    private final String fromAddress;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final long idleCloseNanos;
+    private final long leaseMs;
+    private final int retentionDays;
+
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter deadCounter;
+
+    private final Object signal = new Object();
+    private boolean wakePending;
+    private volatile boolean running;
+    private final List<Thread> threads = new ArrayList<>();
+
+    @Autowired
+    public EmailOutboxDispatcher(JdbcTemplate jdbcTemplate,
+                                 JavaMailSenderImpl mailSender,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${banking.email.from:noreply.emailservices.rs@gmail.com}") String fromAddress,
+                                 @Value("${banking.email.workers:2}") int workers,
+                                 @Value("${banking.email.batch-size:20}") int batchSize,
+                                 @Value("${banking.email.poll-interval-ms:5000}") long pollIntervalMs,
+                                 @Value("${banking.email.max-attempts:8}") int maxAttempts,
+                                 @Value("${banking.email.base-backoff-ms:10000}") long baseBackoffMs,
+                                 @Value("${banking.email.max-backoff-ms:3600000}") long maxBackoffMs,
+                                 @Value("${banking.email.idle-close-ms:60000}") long idleCloseMs,
+                                 @Value("${banking.email.lease-ms:300000}") long leaseMs,
+                                 @Value("${banking.email.retention-days:30}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailSender = mailSender;
+        this.fromAddress = fromAddress;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.idleCloseNanos = TimeUnit.MILLISECONDS.toNanos(idleCloseMs);
+        this.leaseMs = leaseMs;
+        this.retentionDays = retentionDays;
+
+        this.sentCounter = meterRegistry.counter("banking.email.sent");
+        this.retriedCounter = meterRegistry.counter("banking.email.retried");
+        this.deadCounter = meterRegistry.counter("banking.email.dead");
+    }
+
+    // Started once the schema is migrated; mail queued before then is picked up on the first claim
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            Thread thread = new Thread(this::runWorker, "email-dispatcher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        wakeUp();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+        threads.clear();
+    }
+
+    // Wakes the workers once the caller's transaction commits, so queued mail goes out at once
+    public void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    public void wakeUp() {
+        synchronized (signal) {
+            wakePending = true;
+            signal.notifyAll();
+        }
+    }
+
+    @Scheduled(cron = "${banking.email.purge-cron:0 30 4 * * *}")
+    public void purgeDelivered() {
+        int purged = jdbcTemplate.update(PURGE_SQL, retentionDays, retentionDays);
+        if (purged > 0) {
+            logger.info("Purged {} delivered or dead email(s) older than {} days", purged, retentionDays);
+        }
+    }
+
+    private void runWorker() {
+        SmtpConnection connection = new SmtpConnection();
+        try {
+            while (running) {
+                try {
+                    List<OutboxEmail> batch = claim();
+                    if (batch.isEmpty()) {
+                        connection.closeIfIdle();
+                        awaitWork();
+                        continue;
+                    }
+                    deliver(batch, connection);
+                } catch (DataAccessException e) {
+                    logger.warn("Could not claim or update outgoing email: {}", e.getMessage());
+                    backOff(connection);
+                } catch (RuntimeException e) {
+                    // Keep the worker alive; rows it held become due again when their lease runs out
+                    logger.error("Email dispatch failed", e);
+                    backOff(connection);
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void backOff(SmtpConnection connection) {
+        connection.close();
+        synchronized (signal) {
+            if (running) {
+                try {
+                    signal.wait(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private void awaitWork() {
+        synchronized (signal) {
+            if (!wakePending && running) {
+                try {
+                    signal.wait(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            wakePending = false;
+        }
+    }
+
+    private List<OutboxEmail> claim() {
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new OutboxEmail(
+                rs.getLong("id"), rs.getString("recipient"), rs.getString("subject"),
+                rs.getString("body"), rs.getInt("attempts")), batchSize, leaseMs);
+    }
+
+    private void deliver(List<OutboxEmail> batch, SmtpConnection connection) {
+        List<OutboxEmail> sent = new ArrayList<>();
+        List<OutboxEmail> retry = new ArrayList<>();
+        List<OutboxEmail> dead = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxEmail email = batch.get(i);
+            try {
+                connection.send(toMimeMessage(email, connection.session()));
+                sent.add(email);
+            } catch (AddressException e) {
+                dead.add(email.failed("Invalid address: " + e.getMessage()));
+            } catch (MessagingException e) {
+                String error = describe(e);
+                if (isPermanent(e) || email.attempts >= maxAttempts) {
+                    dead.add(email.failed(error));
+                } else {
+                    retry.add(email.failed(error));
+                }
+                if (!(e instanceof SendFailedException)) {
+                    // The server or connection is in trouble, not this message: back off the rest
+                    // of the batch rather than waiting out a connect timeout for each of them
+                    connection.close();
+                    for (OutboxEmail rest : batch.subList(i + 1, batch.size())) {
+                        (rest.attempts >= maxAttempts ? dead : retry).add(rest.failed(error));
+                    }
+                    break;
+                }
+            }
+        }
+
+        record(sent, retry, dead);
+    }
+
+    private void record(List<OutboxEmail> sent, List<OutboxEmail> retry, List<OutboxEmail> dead) {
+        if (!sent.isEmpty()) {
+            jdbcTemplate.batchUpdate(SENT_SQL, sent, sent.size(), (ps, email) -> ps.setLong(1, email.id));
+            sentCounter.increment(sent.size());
+        }
+        if (!retry.isEmpty()) {
+            jdbcTemplate.batchUpdate(RETRY_SQL, retry, retry.size(), (ps, email) -> {
+                ps.setLong(1, backoffMs(email.attempts));
+                ps.setString(2, email.error);
+                ps.setLong(3, email.id);
+            });
+            retriedCounter.increment(retry.size());
+        }
+        if (!dead.isEmpty()) {
+            jdbcTemplate.batchUpdate(DEAD_SQL, dead, dead.size(), (ps, email) -> {
+                ps.setString(1, email.error);
+                ps.setLong(2, email.id);
+            });
+            deadCounter.increment(dead.size());
+            for (OutboxEmail email : dead) {
+                logger.error("Email {} to {} dead-lettered after {} attempt(s): {}",
+                        email.id, email.recipient, email.attempts, email.error);
+            }
+        }
+    }
+
+    // base * 2^(attempts - 1), capped, with +/-20% jitter so a burst of failures doesn't retry in step
+    private long backoffMs(int attempts) {
+        long delay = baseBackoffMs << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMs) {
+            delay = maxBackoffMs;
+        }
+        return (long) (delay * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    private MimeMessage toMimeMessage(OutboxEmail email, Session session) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(fromAddress));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email.recipient, true));
+        message.setSubject(email.subject, "UTF-8");
+        message.setText(email.body != null ? email.body : "", "UTF-8");
+        message.setSentDate(new Date());
+        message.saveChanges();
+        return message;
+    }
+
+    // A 5xx reply anywhere in the chain (e.g. "550 5.1.1 user unknown") won't succeed on retry
+    private static boolean isPermanent(MessagingException e) {
+        for (Exception current = e; current != null;
+             current = current instanceof MessagingException ? ((MessagingException) current).getNextException() : null) {
+            if (current.getMessage() != null && PERMANENT_REPLY.matcher(current.getMessage().trim()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(MessagingException e) {
+        Exception next = e.getNextException();
+        String message = e.getMessage() + (next != null ? ": " + next.getMessage() : "");
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    // One worker's SMTP connection, opened on first use and kept for the following messages
+    private class SmtpConnection {
+        private Transport transport;
+        private long lastUsed;
+
+        Session session() {
+            return mailSender.getSession();
+        }
+
+        // A reused connection the server has quietly dropped gets one retry on a fresh connection
+        void send(MimeMessage message) throws MessagingException {
+            boolean reused = transport != null;
+            if (!reused) {
+                connect();
+            }
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (SendFailedException e) {
+                throw e;
+            } catch (MessagingException e) {
+                close();
+                if (!reused) {
+                    throw e;
+                }
+                connect();
+                transport.sendMessage(message, message.getAllRecipients());
+            }
+            lastUsed = System.nanoTime();
+        }
+
+        private void connect() throws MessagingException {
+            // JavaMailSenderImpl leaves the protocol unset unless spring.mail.protocol is configured
+            String protocol = mailSender.getProtocol() != null ? mailSender.getProtocol() : "smtp";
+            Transport opened = mailSender.getSession().getTransport(protocol);
+            opened.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+            transport = opened;
+        }
+
+        void closeIfIdle() {
+            if (transport != null && System.nanoTime() - lastUsed > idleCloseNanos) {
+                close();
+            }
+        }
+
+        void close() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    logger.debug("Error closing SMTP connection: {}", e.getMessage());
+                }
+                transport = null;
+            }
+        }
+    }
+
+    private static class OutboxEmail {
+        private final long id;
+        private final String recipient;
+        private final String subject;
+        private final String body;
+        private final int attempts;
+        private String error;
+
+        OutboxEmail(long id, String recipient, String subject, String body, int attempts) {
+            this.id = id;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+            this.attempts = attempts;
+        }
+
+        OutboxEmail failed(String error) {
+            this.error = error;
+            return this;
+        }
+    }
+}
@@ -3,34 +3,31 @@ package com.roshansutihar.bankingservice.email;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-
+// Emails are queued in email_outbox as part of the caller's transaction (so they go out only if
+// it commits) and delivered by EmailOutboxDispatcher in the background.
 @Service
 public class EmailService {
 
+    private static final String ENQUEUE_SQL = "INSERT INTO email_outbox (recipient, subject, body) VALUES (?, ?, ?)";
+
     @Autowired
-    private JavaMailSender mailSender;
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmailOutboxDispatcher emailOutboxDispatcher;
+
     @Value("${frontend.login-url}")
     private String loginUrl;
 
-    public void sendSimpleMessage(String to, String subject, String text) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom("noreply.emailservices.rs@gmail.com");
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(text);
-            mailSender.send(message);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to send email: " + e.getMessage(), e);
-        }
+    public void queueSimpleMessage(String to, String subject, String text) {
+        jdbcTemplate.update(ENQUEUE_SQL, to, subject, text);
+        emailOutboxDispatcher.wakeUpAfterCommit();
     }
 
-    public void sendTellerAccountCreationEmail(String toEmail,
+    public void queueTellerAccountCreationEmail(String toEmail,
                                                String username,
                                                String tempPassword,
                                                String accountNumber,
@@ -59,6 +56,6 @@ public class EmailService {
                 routingNumber
         );
 
-        sendSimpleMessage(toEmail, subject, text);
+        queueSimpleMessage(toEmail, subject, text);
     }
 }
\ No newline at end of file
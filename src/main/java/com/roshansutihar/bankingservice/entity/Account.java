@@ -18,7 +18,8 @@ import java.util.List;
 @ToString(exclude = {"user", "accountType", "outgoingTransactions", "incomingTransactions", "ledgerEntries"})
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accounts_id_seq")
+    @SequenceGenerator(name = "accounts_id_seq", sequenceName = "accounts_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "account_number", unique = true, nullable = false, length = 20)
@@ -0,0 +1,55 @@
+package com.roshansutihar.bankingservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "account_daily_balances")
+@IdClass(AccountDailyBalance.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class AccountDailyBalance {
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Id
+    @Column(name = "balance_date")
+    private LocalDate balanceDate;
+
+    @Column(name = "opening_balance", nullable = false, precision = 15, scale = 2)
+    private BigDecimal openingBalance;
+
+    @Column(name = "closing_balance", nullable = false, precision = 15, scale = 2)
+    private BigDecimal closingBalance;
+
+    @Column(name = "min_balance", nullable = false, precision = 15, scale = 2)
+    private BigDecimal minBalance;
+
+    @Column(name = "max_balance", nullable = false, precision = 15, scale = 2)
+    private BigDecimal maxBalance;
+
+    @Column(name = "total_debits", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalDebits;
+
+    @Column(name = "total_credits", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalCredits;
+
+    @Column(name = "entry_count", nullable = false)
+    private Integer entryCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long accountId;
+        private LocalDate balanceDate;
+    }
+}
@@ -2,6 +2,7 @@ package com.roshansutihar.bankingservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnTransformer;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
@@ -15,7 +16,8 @@ import java.time.LocalDateTime;
 @ToString(exclude = "user")
 public class AuditLog {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_logs_id_seq")
+    @SequenceGenerator(name = "audit_logs_id_seq", sequenceName = "audit_logs_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -31,13 +33,17 @@ public class AuditLog {
     @Column(name = "record_id")
     private Long recordId;
 
+    // Bound as text like AuditLogWriter's insert; Postgres won't assign varchar to inet or jsonb
     @Column(name = "old_values", columnDefinition = "JSONB")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String oldValues;
 
     @Column(name = "new_values", columnDefinition = "JSONB")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String newValues;
 
     @Column(name = "ip_address")
+    @ColumnTransformer(write = "CAST(? AS inet)")
     private String ipAddress;
 
     @Column(name = "user_agent")
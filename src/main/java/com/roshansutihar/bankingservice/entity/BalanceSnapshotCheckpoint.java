@@ -0,0 +1,21 @@
+package com.roshansutihar.bankingservice.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "balance_snapshot_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class BalanceSnapshotCheckpoint {
+    @Id
+    private Integer id;
+
+    @Column(name = "rolled_up_through", nullable = false)
+    private LocalDate rolledUpThrough;
+}
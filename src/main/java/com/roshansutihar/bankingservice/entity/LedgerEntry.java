@@ -3,7 +3,6 @@ package com.roshansutihar.bankingservice.entity;
 import com.roshansutihar.bankingservice.enums.EntryType;
 import jakarta.persistence.*;
 import lombok.*;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -17,7 +16,8 @@ import java.time.LocalDateTime;
 @ToString(exclude = {"transaction", "account"})
 public class LedgerEntry {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_entries_id_seq")
+    @SequenceGenerator(name = "ledger_entries_id_seq", sequenceName = "ledger_entries_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -38,6 +38,8 @@ public class LedgerEntry {
     @Column(name = "running_balance", nullable = false, precision = 15, scale = 2)
     private BigDecimal runningBalance;
 
-    @CreationTimestamp
+    // Stamped by the database (clock_timestamp()) under the account's posting lock, so entries
+    // order by posting sequence whatever the application node's clock says
+    @Column(name = "created_at", insertable = false, updatable = false)
     private LocalDateTime createdAt;
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.roshansutihar.bankingservice.entity;
+
+import com.roshansutihar.bankingservice.enums.OnboardingState;
+import com.roshansutihar.bankingservice.enums.UserType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "onboarding_requests")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = {"payload", "temporaryPassword"})
+public class OnboardingRequest {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, updatable = false)
+    private UUID reference;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "user_type", nullable = false, length = 20)
+    private UserType userType;
+
+    @Column(nullable = false, length = 50)
+    private String username;
+
+    @Column(nullable = false)
+    private String email;
+
+    // The submitted request as JSON
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "temporary_password", length = 100)
+    private String temporaryPassword;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OnboardingState state = OnboardingState.PENDING;
+
+    @Column(name = "keycloak_user_id", length = 100)
+    private String keycloakUserId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "account_number", length = 20)
+    private String accountNumber;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "submitted_by", length = 100)
+    private String submittedBy;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @Version
+    private Long version;
+}
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 @ToString(exclude = "user")
 public class SessionLog {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "session_logs_id_seq")
+    @SequenceGenerator(name = "session_logs_id_seq", sequenceName = "session_logs_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
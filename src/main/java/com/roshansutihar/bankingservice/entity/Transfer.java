@@ -42,9 +42,16 @@ public class Transfer {
     @Column(name = "end_date")
     private LocalDate endDate;
 
+    // Day of the month MONTHLY periods fall on (the month's last day when it is shorter)
+    @Column(name = "anchor_day")
+    private Integer anchorDay;
+
     @Enumerated(EnumType.STRING)
     private TransferStatus status;
 
+    @Column(name = "last_attempt_date")
+    private LocalDate lastAttemptDate;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
\ No newline at end of file
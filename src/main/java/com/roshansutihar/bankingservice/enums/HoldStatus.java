@@ -0,0 +1,8 @@
+package com.roshansutihar.bankingservice.enums;
+
+public enum HoldStatus {
+    ACTIVE,
+    CAPTURED,
+    RELEASED,
+    EXPIRED
+}
@@ -0,0 +1,7 @@
+package com.roshansutihar.bankingservice.enums;
+
+
+public enum IdempotencyStatus {
+    IN_PROGRESS,
+    COMPLETED
+}
@@ -0,0 +1,13 @@
+package com.roshansutihar.bankingservice.enums;
+
+public enum OnboardingState {
+    PENDING,
+    IDENTITY_CREATED,
+    COMPLETED,
+    COMPENSATING,
+    FAILED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
@@ -0,0 +1,10 @@
+package com.roshansutihar.bankingservice.enums;
+
+// Status of a QR payment session as reported by the payments core
+public enum PaymentSessionStatus {
+    PENDING,
+    COMPLETED,
+    FAILED,
+    CANCELLED,
+    EXPIRED
+}
@@ -4,5 +4,6 @@ package com.roshansutihar.bankingservice.enums;
 public enum TransferStatus {
     ACTIVE,
     PAUSED,
-    CANCELLED
+    CANCELLED,
+    COMPLETED
 }
\ No newline at end of file
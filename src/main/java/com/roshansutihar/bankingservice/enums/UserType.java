@@ -2,5 +2,6 @@ package com.roshansutihar.bankingservice.enums;
 
 public enum UserType {
     INDIVIDUAL,
-    BUSINESS
+    BUSINESS,
+    SYSTEM
 }
\ No newline at end of file
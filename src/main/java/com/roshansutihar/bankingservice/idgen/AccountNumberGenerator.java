@@ -0,0 +1,5 @@
+package com.roshansutihar.bankingservice.idgen;
+
+public interface AccountNumberGenerator {
+    String nextAccountNumber();
+}
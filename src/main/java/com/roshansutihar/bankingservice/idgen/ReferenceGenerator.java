@@ -0,0 +1,6 @@
+package com.roshansutihar.bankingservice.idgen;
+
+public interface ReferenceGenerator {
+    // Unique transaction reference, e.g. "DEP" + id
+    String nextReference(String prefix);
+}
@@ -0,0 +1,82 @@
+package com.roshansutihar.bankingservice.idgen;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.function.LongSupplier;
+
+// Account numbers are the bank prefix, a 9-digit body and a Luhn check digit (12 digits, so
+// they can't clash with the older 11-digit random numbers). Bodies come from
+// account_number_seq in blocks: one nextval reserves blockSize numbers for this instance,
+// so other instances never see them and no existence check is needed.
+@Component
+public class SequenceAccountNumberGenerator implements AccountNumberGenerator {
+
+    private static final String BANK_PREFIX = "01";
+    private static final long MAX_BODY = 999_999_999L;
+
+    private final LongSupplier blockSource;
+    private final int blockSize;
+    private long next;
+    private long blockEnd;
+
+    @Autowired
+    public SequenceAccountNumberGenerator(JdbcTemplate jdbcTemplate,
+                                          @Value("${banking.idgen.account-number-block-size:50}") int blockSize) {
+        this(() -> jdbcTemplate.queryForObject("SELECT nextval('account_number_seq')", Long.class), blockSize);
+    }
+
+    SequenceAccountNumberGenerator(LongSupplier blockSource, int blockSize) {
+        this.blockSource = blockSource;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized String nextAccountNumber() {
+        if (next >= blockEnd) {
+            next = blockSource.getAsLong();
+            blockEnd = next + blockSize;
+        }
+        long body = next++;
+        if (body > MAX_BODY) {
+            throw new IllegalStateException("Account number range exhausted");
+        }
+
+        char[] digits = new char[BANK_PREFIX.length() + 10];
+        BANK_PREFIX.getChars(0, BANK_PREFIX.length(), digits, 0);
+        for (int i = digits.length - 2; i >= BANK_PREFIX.length(); i--) {
+            digits[i] = (char) ('0' + body % 10);
+            body /= 10;
+        }
+        digits[digits.length - 1] = luhnCheckDigit(digits, digits.length - 1);
+        return new String(digits);
+    }
+
+    // Check digit for the first length digits, so the full number passes the Luhn check
+    static char luhnCheckDigit(char[] digits, int length) {
+        int sum = 0;
+        boolean doubleIt = true;
+        for (int i = length - 1; i >= 0; i--) {
+            int d = digits[i] - '0';
+            if (doubleIt) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubleIt = !doubleIt;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    public static boolean isValid(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() < 2 || !accountNumber.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        char[] digits = accountNumber.toCharArray();
+        return luhnCheckDigit(digits, digits.length - 1) == digits[digits.length - 1];
+    }
+}
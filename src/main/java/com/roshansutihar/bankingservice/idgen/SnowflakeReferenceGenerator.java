@@ -0,0 +1,155 @@
+package com.roshansutihar.bankingservice.idgen;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 64-bit time-ordered ids: 41 bits of milliseconds since 2024-01-01, 10 bits of node id and
+// 12 bits of per-millisecond sequence. Timestamp and sequence share one AtomicLong so ids are
+// handed out with a CAS and no locking or allocation. If the clock steps back, or more than
+// 4096 ids are taken in one millisecond, the generator keeps counting forward from the last id
+// instead of waiting, so ids never repeat on a node.
+//
+// The node id is leased from idgen_node_leases: the instance claims a free or expired row at
+// startup (banking.idgen.node-id when set, otherwise the first one it can lock), refreshes its
+// heartbeat while running and frees the row on shutdown. A configured node id that another live
+// instance holds stops startup, and if this instance's lease was taken over while it could not
+// heartbeat it moves to a free node id rather than keep sharing one.
+@Component
+public class SnowflakeReferenceGenerator implements ReferenceGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeReferenceGenerator.class);
+
+    static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static final String CLAIM_NODE_SQL =
+            "UPDATE idgen_node_leases SET owner = ?, heartbeat_at = now() " +
+            "WHERE node_id = ? AND (owner IS NULL OR heartbeat_at < now() - ? * interval '1 second')";
+    private static final String CLAIM_FREE_NODE_SQL =
+            "UPDATE idgen_node_leases SET owner = ?, heartbeat_at = now() " +
+            "WHERE node_id = (SELECT node_id FROM idgen_node_leases " +
+            "WHERE owner IS NULL OR heartbeat_at < now() - ? * interval '1 second' " +
+            "ORDER BY node_id LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING node_id";
+
+    // Null when the node id was given directly, as in unit tests; there is no lease then
+    private final JdbcTemplate jdbcTemplate;
+    private final UUID owner;
+    private final long leaseSeconds;
+    private final Clock clock;
+    private volatile long nodeId;
+    // (millis since EPOCH << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public SnowflakeReferenceGenerator(JdbcTemplate jdbcTemplate,
+                                       @Value("${banking.idgen.node-id:-1}") long configuredNodeId,
+                                       @Value("${banking.idgen.lease-seconds:120}") long leaseSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.owner = UUID.randomUUID();
+        this.leaseSeconds = leaseSeconds;
+        this.clock = Clock.systemUTC();
+        if (configuredNodeId >= 0) {
+            checkNodeId(configuredNodeId);
+            if (jdbcTemplate.update(CLAIM_NODE_SQL, owner, configuredNodeId, leaseSeconds) == 0) {
+                throw new IllegalStateException("Node id " + configuredNodeId + " is leased by another running instance");
+            }
+            this.nodeId = configuredNodeId;
+        } else {
+            this.nodeId = claimFreeNodeId();
+        }
+        logger.info("Reference generator leased node id {}", nodeId);
+    }
+
+    SnowflakeReferenceGenerator(long nodeId, Clock clock) {
+        checkNodeId(nodeId);
+        this.jdbcTemplate = null;
+        this.owner = null;
+        this.leaseSeconds = 0;
+        this.nodeId = nodeId;
+        this.clock = clock;
+        logger.info("Reference generator using node id {}", nodeId);
+    }
+
+    public long nextId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long now = (clock.millis() - EPOCH) << SEQUENCE_BITS;
+            next = Math.max(current + 1, now);
+        } while (!state.compareAndSet(current, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    @Override
+    public String nextReference(String prefix) {
+        return prefix + nextId();
+    }
+
+    long getNodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${banking.idgen.heartbeat-ms:30000}",
+            initialDelayString = "${banking.idgen.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        int renewed = jdbcTemplate.update("UPDATE idgen_node_leases SET heartbeat_at = now() " +
+                "WHERE node_id = ? AND owner = ?", nodeId, owner);
+        if (renewed == 0) {
+            // The lease expired and another instance claimed the node id
+            long lost = nodeId;
+            nodeId = claimFreeNodeId();
+            logger.warn("Lease on node id {} was taken over; reference generator moved to node id {}", lost, nodeId);
+        }
+    }
+
+    @PreDestroy
+    void releaseNodeId() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("UPDATE idgen_node_leases SET owner = NULL, heartbeat_at = NULL " +
+                    "WHERE node_id = ? AND owner = ?", nodeId, owner);
+        } catch (DataAccessException e) {
+            // The lease expires on its own
+            logger.warn("Could not release node id {}", nodeId, e);
+        }
+    }
+
+    private long claimFreeNodeId() {
+        List<Long> claimed = jdbcTemplate.queryForList(CLAIM_FREE_NODE_SQL, Long.class, owner, leaseSeconds);
+        if (claimed.isEmpty()) {
+            throw new IllegalStateException("All " + (MAX_NODE_ID + 1) + " node ids are leased by running instances");
+        }
+        return claimed.get(0);
+    }
+
+    private static void checkNodeId(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.AccountDailyBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AccountDailyBalanceRepository extends JpaRepository<AccountDailyBalance, AccountDailyBalance.Key> {
+
+    // Latest snapshot on or before a date: the balance carried into that day
+    Optional<AccountDailyBalance> findFirstByAccountIdAndBalanceDateLessThanEqualOrderByBalanceDateDesc(Long accountId, LocalDate date);
+
+    List<AccountDailyBalance> findByAccountIdAndBalanceDateBetweenOrderByBalanceDate(Long accountId, LocalDate from, LocalDate to);
+
+    // Rolls one day of ledger entries up into a row per account that had activity. The opening
+    // balance is recovered from the first entry's running balance. Re-running a day overwrites it.
+    @Modifying
+    @Query(value = "INSERT INTO account_daily_balances (account_id, balance_date, opening_balance, closing_balance, " +
+            "min_balance, max_balance, total_debits, total_credits, entry_count) " +
+            "SELECT d.account_id, :day, d.opening, d.closing, LEAST(d.opening, d.low), GREATEST(d.opening, d.high), " +
+            "d.debits, d.credits, d.entries " +
+            "FROM (SELECT account_id, " +
+            "(array_agg(running_balance + CASE WHEN entry_type = 'DEBIT' THEN amount ELSE -amount END " +
+            "ORDER BY created_at, id))[1] AS opening, " +
+            "(array_agg(running_balance ORDER BY created_at DESC, id DESC))[1] AS closing, " +
+            "MIN(running_balance) AS low, MAX(running_balance) AS high, " +
+            "COALESCE(SUM(amount) FILTER (WHERE entry_type = 'DEBIT'), 0) AS debits, " +
+            "COALESCE(SUM(amount) FILTER (WHERE entry_type = 'CREDIT'), 0) AS credits, " +
+            "COUNT(*) AS entries " +
+            "FROM ledger_entries WHERE created_at >= :start AND created_at < :end " +
+            "GROUP BY account_id) d " +
+            "ON CONFLICT (account_id, balance_date) DO UPDATE SET opening_balance = EXCLUDED.opening_balance, " +
+            "closing_balance = EXCLUDED.closing_balance, min_balance = EXCLUDED.min_balance, " +
+            "max_balance = EXCLUDED.max_balance, total_debits = EXCLUDED.total_debits, " +
+            "total_credits = EXCLUDED.total_credits, entry_count = EXCLUDED.entry_count",
+            nativeQuery = true)
+    int rollUpDay(@Param("day") LocalDate day, @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
@@ -6,7 +6,10 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +21,72 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     boolean existsByAccountNumber(String accountNumber);
     @Query("SELECT a FROM Account a LEFT JOIN FETCH a.accountType WHERE a.user.id = :userId")
     List<Account> findByUserIdWithAccountType(@Param("userId") Long userId);
+
+    // Holds: reserve only moves available_balance and release hands it back. Capturing a hold
+    // posts the debit through PostingService.
+    @Transactional
+    @Query(value = "WITH updated AS (" +
+            "UPDATE accounts SET available_balance = available_balance - :amount " +
+            "WHERE id = :id AND status = 'ACTIVE' AND available_balance >= :amount " +
+            "RETURNING current_balance, available_balance) " +
+            "SELECT current_balance AS \"currentBalance\", available_balance AS \"availableBalance\" FROM updated",
+            nativeQuery = true)
+    Optional<BalanceSnapshot> reserveBalance(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+    @Transactional
+    @Query(value = "WITH updated AS (" +
+            "UPDATE accounts SET available_balance = available_balance + :amount " +
+            "WHERE id = :id " +
+            "RETURNING current_balance, available_balance) " +
+            "SELECT current_balance AS \"currentBalance\", available_balance AS \"availableBalance\" FROM updated",
+            nativeQuery = true)
+    Optional<BalanceSnapshot> releaseReservedBalance(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+    // Row locks in ascending id order, so two postings touching the same pair of accounts in
+    // opposite directions queue up instead of deadlocking
+    @Query(value = "SELECT id FROM accounts WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> lockInIdOrder(@Param("ids") Collection<Long> ids);
+
+    // One round trip per batch-posting chunk to resolve its account numbers; the rows are locked
+    // and re-checked by id when the chunk's journals are posted
+    @Query(value = "SELECT id AS \"id\", account_number AS \"accountNumber\", status AS \"status\" " +
+            "FROM accounts WHERE account_number IN (:accountNumbers)", nativeQuery = true)
+    List<PostingAccount> findPostingAccounts(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    // Journal postings lock every account they touch by id, in id order. The type code tells
+    // GL accounts (which may go negative) from customer accounts.
+    @Query(value = "SELECT a.id AS \"id\", a.status AS \"status\", a.current_balance AS \"currentBalance\", " +
+            "a.available_balance AS \"availableBalance\", t.type_code AS \"typeCode\" " +
+            "FROM accounts a JOIN account_types t ON t.id = a.account_type_id " +
+            "WHERE a.id IN (:ids) ORDER BY a.id FOR UPDATE OF a", nativeQuery = true)
+    List<JournalAccount> lockForJournal(@Param("ids") Collection<Long> ids);
+
+    @Query(value = "SELECT a.id AS \"id\", a.account_number AS \"accountNumber\" " +
+            "FROM accounts a JOIN account_types t ON t.id = a.account_type_id " +
+            "WHERE t.type_code = 'GL' ORDER BY a.account_number", nativeQuery = true)
+    List<GeneralLedgerAccount> findGeneralLedgerAccounts();
+
+    interface JournalAccount {
+        Long getId();
+        String getStatus();
+        BigDecimal getCurrentBalance();
+        BigDecimal getAvailableBalance();
+        String getTypeCode();
+    }
+
+    interface GeneralLedgerAccount {
+        Long getId();
+        String getAccountNumber();
+    }
+
+    interface PostingAccount {
+        Long getId();
+        String getAccountNumber();
+        String getStatus();
+    }
+
+    interface BalanceSnapshot {
+        BigDecimal getCurrentBalance();
+        BigDecimal getAvailableBalance();
+    }
 }
@@ -0,0 +1,26 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.BalanceSnapshotCheckpoint;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface BalanceSnapshotCheckpointRepository extends JpaRepository<BalanceSnapshotCheckpoint, Integer> {
+
+    // FOR UPDATE SKIP LOCKED: empty while another instance is rolling up
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT c FROM BalanceSnapshotCheckpoint c WHERE c.id = 1")
+    Optional<BalanceSnapshotCheckpoint> lockForRollup();
+
+    @Query("SELECT c.rolledUpThrough FROM BalanceSnapshotCheckpoint c WHERE c.id = 1")
+    Optional<LocalDate> findRolledUpThrough();
+}
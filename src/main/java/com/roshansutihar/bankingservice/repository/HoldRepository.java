@@ -0,0 +1,73 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.Hold;
+import com.roshansutihar.bankingservice.enums.HoldStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface HoldRepository extends JpaRepository<Hold, Long> {
+
+    // Marks the hold CAPTURED and returns the status it had: ACTIVE, or EXPIRED when the expiry
+    // job already gave the amount back to available_balance. Empty if it was already captured
+    // or released.
+    @Query(value = "WITH claimed AS (" +
+            "SELECT id, status FROM holds WHERE id = :id AND status IN ('ACTIVE', 'EXPIRED') FOR UPDATE), " +
+            "updated AS (UPDATE holds h SET status = 'CAPTURED', resolved_at = now() " +
+            "FROM claimed c WHERE h.id = c.id RETURNING c.status) " +
+            "SELECT status FROM updated",
+            nativeQuery = true)
+    Optional<String> captureHold(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "UPDATE holds SET status = 'RELEASED', resolved_at = now() WHERE id = :id AND status = 'ACTIVE'",
+            nativeQuery = true)
+    int releaseHold(@Param("id") Long id);
+
+    // Claims a batch of expired holds for the calling transaction; SKIP LOCKED keeps other
+    // instances and in-flight captures from blocking the job
+    @Query(value = "WITH expired AS (" +
+            "SELECT id FROM holds WHERE status = 'ACTIVE' AND expires_at < :now " +
+            "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED), " +
+            "updated AS (UPDATE holds h SET status = 'EXPIRED', resolved_at = now() " +
+            "FROM expired e WHERE h.id = e.id RETURNING h.account_id, h.amount) " +
+            "SELECT account_id AS \"accountId\", amount AS \"amount\" FROM updated",
+            nativeQuery = true)
+    List<HeldAmount> expireHolds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Marks an expired hold RELEASED without touching balances: the expiry job already gave the
+    // amount back
+    @Modifying
+    @Query(value = "UPDATE holds SET status = 'RELEASED', resolved_at = now() WHERE id = :id AND status = 'EXPIRED'",
+            nativeQuery = true)
+    int closeExpiredHold(@Param("id") Long id);
+
+    // Payment holds still open after the request that placed them should have resolved them
+    @Query("SELECT h FROM Hold h JOIN FETCH h.account JOIN FETCH h.transaction " +
+            "WHERE h.paymentSessionId IS NOT NULL AND h.status IN :statuses AND h.createdAt < :before " +
+            "ORDER BY h.createdAt")
+    List<Hold> findOpenPaymentHolds(@Param("statuses") Collection<HoldStatus> statuses,
+                                    @Param("before") LocalDateTime before, Pageable pageable);
+
+    boolean existsByPaymentSessionIdAndStatus(String paymentSessionId, HoldStatus status);
+
+    @Query(value = "SELECT account_id AS \"accountId\", SUM(amount) AS \"amount\" FROM holds " +
+            "WHERE status = 'ACTIVE' GROUP BY account_id",
+            nativeQuery = true)
+    List<HeldAmount> sumActiveHoldsByAccount();
+
+    interface HeldAmount {
+        Long getAccountId();
+        BigDecimal getAmount();
+    }
+}
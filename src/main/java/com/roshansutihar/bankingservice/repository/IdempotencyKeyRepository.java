@@ -0,0 +1,64 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+    Optional<IdempotencyKey> findByScopeAndIdempotencyKey(String scope, String idempotencyKey);
+
+    // Claims the key for this request: inserts a fresh IN_PROGRESS row leased until leaseUntil, or
+    // takes over a row whose lease (in progress) or TTL (completed) has run out. Returns 0 when
+    // another request already owns a live row for the key.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO idempotency_keys (scope, idempotency_key, request_hash, status, claim_token, created_at, expires_at) " +
+            "VALUES (:scope, :key, :requestHash, 'IN_PROGRESS', :token, :now, :leaseUntil) " +
+            "ON CONFLICT (scope, idempotency_key) DO UPDATE SET request_hash = EXCLUDED.request_hash, " +
+            "status = 'IN_PROGRESS', response_body = NULL, claim_token = EXCLUDED.claim_token, " +
+            "created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at " +
+            "WHERE idempotency_keys.expires_at < :now",
+            nativeQuery = true)
+    int claim(@Param("scope") String scope,
+              @Param("key") String key,
+              @Param("requestHash") String requestHash,
+              @Param("token") UUID token,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Returns 0 when the claim was lost to a takeover after its lease ran out
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE idempotency_keys SET status = 'COMPLETED', response_body = :responseBody, expires_at = :expiresAt " +
+            "WHERE scope = :scope AND idempotency_key = :key AND claim_token = :token AND status = 'IN_PROGRESS'",
+            nativeQuery = true)
+    int complete(@Param("scope") String scope,
+                 @Param("key") String key,
+                 @Param("token") UUID token,
+                 @Param("responseBody") String responseBody,
+                 @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM idempotency_keys WHERE scope = :scope AND idempotency_key = :key " +
+            "AND claim_token = :token AND status = 'IN_PROGRESS'",
+            nativeQuery = true)
+    int release(@Param("scope") String scope, @Param("key") String key, @Param("token") UUID token);
+
+    // Bounded batches so cleanup never holds a long lock on the table
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM idempotency_keys WHERE id IN (" +
+            "SELECT id FROM idempotency_keys WHERE expires_at < :now LIMIT :batchSize)",
+            nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
+}
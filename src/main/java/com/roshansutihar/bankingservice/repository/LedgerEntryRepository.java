@@ -1,14 +1,71 @@
 package com.roshansutihar.bankingservice.repository;
 
 import com.roshansutihar.bankingservice.entity.LedgerEntry;
+import com.roshansutihar.bankingservice.enums.EntryType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
     List<LedgerEntry> findByAccountId(Long accountId);
     List<LedgerEntry> findByAccountIdOrderByCreatedAtDesc(Long accountId);
     List<LedgerEntry> findByTransactionId(Long transactionId);
-}
\ No newline at end of file
+
+    // Top-1 seeks on (account_id, created_at, id) that select only running_balance
+    Optional<RunningBalanceView> findFirstByAccountIdOrderByCreatedAtDescIdDesc(Long accountId);
+    Optional<RunningBalanceView> findFirstByAccountIdAndCreatedAtLessThanEqualOrderByCreatedAtDescIdDesc(Long accountId, LocalDateTime asOf);
+    Optional<RunningBalanceView> findFirstByAccountIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(Long accountId, LocalDateTime before);
+
+    // Delta scans over the days not yet rolled up into account_daily_balances
+    Optional<RunningBalanceView> findFirstByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(
+            Long accountId, LocalDateTime from, LocalDateTime before);
+    List<BalanceEntryView> findByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(
+            Long accountId, LocalDateTime from, LocalDateTime before);
+
+    // Statement rows for [from, to) as read-only projections pulled through a server-side cursor.
+    // Nothing enters the persistence context, so heap use stays flat however many rows there are.
+    // Must be consumed inside a transaction (Postgres only honours the fetch size without autocommit).
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT le.createdAt AS createdAt, le.entryType AS entryType, le.amount AS amount, " +
+            "le.runningBalance AS runningBalance, t.transactionRef AS transactionRef, t.description AS description " +
+            "FROM LedgerEntry le JOIN le.transaction t " +
+            "WHERE le.account.id = :accountId AND le.createdAt >= :from AND le.createdAt < :to " +
+            "ORDER BY le.createdAt, le.id")
+    Stream<StatementLineView> streamStatementLines(@Param("accountId") Long accountId,
+                                                  @Param("from") LocalDateTime from,
+                                                  @Param("to") LocalDateTime to);
+
+    interface RunningBalanceView {
+        BigDecimal getRunningBalance();
+    }
+
+    interface BalanceEntryView {
+        LocalDateTime getCreatedAt();
+        EntryType getEntryType();
+        BigDecimal getAmount();
+        BigDecimal getRunningBalance();
+    }
+
+    interface StatementLineView {
+        LocalDateTime getCreatedAt();
+        EntryType getEntryType();
+        BigDecimal getAmount();
+        BigDecimal getRunningBalance();
+        String getTransactionRef();
+        String getDescription();
+    }
+}
@@ -0,0 +1,32 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.OnboardingRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface OnboardingRequestRepository extends JpaRepository<OnboardingRequest, Long> {
+
+    Optional<OnboardingRequest> findByReference(UUID reference);
+
+    // Claims due requests for one worker: counts the attempt and pushes next_attempt_at out by
+    // the lease, so a request whose worker dies is picked up again once the lease runs out.
+    // SKIP LOCKED keeps workers and instances from claiming the same request, and the version
+    // bump fences off a previous owner whose lease ran out mid-step.
+    @Query(value = "WITH due AS (" +
+            "SELECT id FROM onboarding_requests " +
+            "WHERE state IN ('PENDING', 'IDENTITY_CREATED', 'COMPENSATING') AND next_attempt_at <= now() " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED), " +
+            "claimed AS (UPDATE onboarding_requests o SET attempts = o.attempts + 1, version = o.version + 1, " +
+            "next_attempt_at = now() + :leaseMs * interval '1 millisecond' " +
+            "FROM due WHERE o.id = due.id RETURNING o.id) " +
+            "SELECT id FROM claimed",
+            nativeQuery = true)
+    List<Long> claimDue(@Param("limit") int limit, @Param("leaseMs") long leaseMs);
+}
@@ -3,9 +3,13 @@ package com.roshansutihar.bankingservice.repository;
 import com.roshansutihar.bankingservice.entity.Transaction;
 import com.roshansutihar.bankingservice.enums.TransactionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,8 +17,67 @@ import java.util.Optional;
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     List<Transaction> findByFromAccountId(Long fromAccountId);
     List<Transaction> findByToAccountId(Long toAccountId);
-    List<Transaction> findByFromAccountIdOrToAccountId(Long fromAccountId, Long toAccountId);
+
+    // Spelled out because the derived query left-joins accounts twice and filters on the joined
+    // ids, which keeps Postgres off the from/to account indexes
+    @Query("SELECT t FROM Transaction t WHERE t.fromAccount.id = :fromAccountId OR t.toAccount.id = :toAccountId")
+    List<Transaction> findByFromAccountIdOrToAccountId(@Param("fromAccountId") Long fromAccountId,
+                                                       @Param("toAccountId") Long toAccountId);
+
     Optional<Transaction> findByTransactionRef(String transactionRef);
+
+    @Query("SELECT t.transactionRef FROM Transaction t WHERE t.transactionRef IN :refs")
+    List<String> findExistingTransactionRefs(@Param("refs") Collection<String> refs);
     List<Transaction> findByEffectiveDate(LocalDate effectiveDate);
     List<Transaction> findByStatus(TransactionStatus status);
-}
\ No newline at end of file
+
+    // Keyset pages over several accounts: each account/direction pair is read straight off the
+    // (account, transaction_date, id) indexes with its own LIMIT, then merged, so a page costs
+    // the same no matter how much history sits behind the cursor. The accounts are driven from
+    // accounts by primary key: Hibernate expands a collection parameter into a parenthesised
+    // list, which is only valid SQL inside IN (...).
+    @Query(value = "SELECT p.id FROM (" +
+            "SELECT DISTINCT x.id, x.transaction_date " +
+            "FROM accounts a " +
+            "CROSS JOIN LATERAL (" +
+            "(SELECT t.id, t.transaction_date FROM transactions t " +
+            "WHERE t.from_account_id = a.id " +
+            "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.id, t.transaction_date FROM transactions t " +
+            "WHERE t.to_account_id = a.id " +
+            "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit)" +
+            ") x " +
+            "WHERE a.id IN (:accountIds)" +
+            ") p ORDER BY p.transaction_date DESC, p.id DESC LIMIT :limit", nativeQuery = true)
+    List<Long> findFirstPageIdsByAccountIds(@Param("accountIds") Collection<Long> accountIds,
+                                            @Param("limit") int limit);
+
+    @Query(value = "SELECT p.id FROM (" +
+            "SELECT DISTINCT x.id, x.transaction_date " +
+            "FROM accounts a " +
+            "CROSS JOIN LATERAL (" +
+            "(SELECT t.id, t.transaction_date FROM transactions t " +
+            "WHERE t.from_account_id = a.id " +
+            "AND (t.transaction_date, t.id) < (:beforeDate, :beforeId) " +
+            "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.id, t.transaction_date FROM transactions t " +
+            "WHERE t.to_account_id = a.id " +
+            "AND (t.transaction_date, t.id) < (:beforeDate, :beforeId) " +
+            "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit)" +
+            ") x " +
+            "WHERE a.id IN (:accountIds)" +
+            ") p ORDER BY p.transaction_date DESC, p.id DESC LIMIT :limit", nativeQuery = true)
+    List<Long> findPageIdsByAccountIdsBefore(@Param("accountIds") Collection<Long> accountIds,
+                                             @Param("beforeDate") LocalDateTime beforeDate,
+                                             @Param("beforeId") Long beforeId,
+                                             @Param("limit") int limit);
+
+    @Query("SELECT t FROM Transaction t " +
+            "JOIN FETCH t.transactionType " +
+            "LEFT JOIN FETCH t.fromAccount " +
+            "LEFT JOIN FETCH t.toAccount " +
+            "WHERE t.id IN :ids")
+    List<Transaction> findAllWithDetailsByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -3,7 +3,11 @@ package com.roshansutihar.bankingservice.repository;
 import com.roshansutihar.bankingservice.entity.Transfer;
 import com.roshansutihar.bankingservice.enums.TransferStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -14,4 +18,27 @@ public interface TransferRepository extends JpaRepository<Transfer, Long> {
     List<Transfer> findByStatus(TransferStatus status);
     List<Transfer> findByNextTransferDate(LocalDate nextTransferDate);
     List<Transfer> findByStatusAndNextTransferDateLessThanEqual(TransferStatus status, LocalDate date);
+
+    // Claims the next chunk of due transfers for the calling transaction. SKIP LOCKED lets other
+    // workers and instances claim disjoint chunks at the same time instead of queueing behind
+    // each other. Transfers already tried on runDate are left for the next day.
+    @Query(value = "SELECT * FROM transfers " +
+            "WHERE status = 'ACTIVE' AND next_transfer_date <= :runDate " +
+            "AND (last_attempt_date IS NULL OR last_attempt_date < :runDate) " +
+            "ORDER BY next_transfer_date, id " +
+            "LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Transfer> claimDueTransfers(@Param("runDate") LocalDate runDate, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM transfers WHERE id = :id " +
+            "AND status = 'ACTIVE' AND next_transfer_date <= :runDate " +
+            "AND (last_attempt_date IS NULL OR last_attempt_date < :runDate) " +
+            "FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Transfer> claimDueTransfer(@Param("id") Long id, @Param("runDate") LocalDate runDate);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE transfers SET last_attempt_date = :runDate WHERE id = :id", nativeQuery = true)
+    int markAttempted(@Param("id") Long id, @Param("runDate") LocalDate runDate);
 }
@@ -6,6 +6,7 @@ public class DepositRequest {
     private String accountNumber;
     private BigDecimal amount;
     private String description;
+    private String idempotencyKey;
 
 
     public String getAccountNumber() { return accountNumber; }
@@ -16,4 +17,7 @@ public class DepositRequest {
 
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
 }
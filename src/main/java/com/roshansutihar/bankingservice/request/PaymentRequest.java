@@ -0,0 +1,27 @@
+package com.roshansutihar.bankingservice.request;
+
+import java.math.BigDecimal;
+
+public class PaymentRequest {
+    private String sessionId;
+    private BigDecimal amount;
+    private String merchantId;
+    private String transactionRef;
+    private Long payerAccountId;
+
+
+    public String getSessionId() { return sessionId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
+
+    public String getMerchantId() { return merchantId; }
+    public void setMerchantId(String merchantId) { this.merchantId = merchantId; }
+
+    public String getTransactionRef() { return transactionRef; }
+    public void setTransactionRef(String transactionRef) { this.transactionRef = transactionRef; }
+
+    public Long getPayerAccountId() { return payerAccountId; }
+    public void setPayerAccountId(Long payerAccountId) { this.payerAccountId = payerAccountId; }
+}
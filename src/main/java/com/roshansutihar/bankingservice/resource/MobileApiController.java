@@ -3,30 +3,45 @@ package com.roshansutihar.bankingservice.resource;
 import com.roshansutihar.bankingservice.entity.Account;
 import com.roshansutihar.bankingservice.entity.Transaction;
 
-import com.roshansutihar.bankingservice.entity.TransactionType;
 import com.roshansutihar.bankingservice.entity.User;
-import com.roshansutihar.bankingservice.enums.TransactionStatus;
-import com.roshansutihar.bankingservice.enums.UserStatus;
+import com.roshansutihar.bankingservice.enums.AccountStatus;
 import com.roshansutihar.bankingservice.enums.UserType;
+import com.roshansutihar.bankingservice.request.PaymentRequest;
+import com.roshansutihar.bankingservice.response.PaymentResponse;
 import com.roshansutihar.bankingservice.service.AccountService;
+import com.roshansutihar.bankingservice.service.AuditLogService;
+import com.roshansutihar.bankingservice.service.BatchPostingService;
+import com.roshansutihar.bankingservice.service.HoldService;
+import com.roshansutihar.bankingservice.service.IdempotencyConflictException;
+import com.roshansutihar.bankingservice.service.PaymentProcessingException;
+import com.roshansutihar.bankingservice.service.PaymentProcessingService;
+import com.roshansutihar.bankingservice.service.PaymentsCoreClient;
+import com.roshansutihar.bankingservice.service.PrincipalUserResolver;
+import com.roshansutihar.bankingservice.service.StatementService;
+import com.roshansutihar.bankingservice.service.TransactionCursor;
 import com.roshansutihar.bankingservice.service.TransactionService;
-import com.roshansutihar.bankingservice.service.TransactionTypeService;
-import com.roshansutihar.bankingservice.service.UserService;
-import lombok.Builder;
-import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import java.util.*;
@@ -35,7 +50,7 @@ import java.util.*;
 public class MobileApiController {
 
     @Autowired
-    private UserService userService;
+    private PrincipalUserResolver principalUserResolver;
 
     @Autowired
     private AccountService accountService;
@@ -44,62 +59,30 @@ public class MobileApiController {
     private TransactionService transactionService;
 
     @Autowired
-    private TransactionTypeService transactionTypeService;
+    private PaymentsCoreClient paymentsCoreClient;
 
-    @Value("${payment.routing.number}")
-    private String sourceRoutingNumber;
+    @Autowired
+    private PaymentProcessingService paymentProcessingService;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private BatchPostingService batchPostingService;
 
-    @Value("${payments.core.base-url}")
-    private String paymentsCoreUrl;
+    @Autowired
+    private AuditLogService auditLogService;
 
-    // Helper method to get/create user from JWT
-    private User getOrCreateUserFromJwt(Jwt jwt) {
-        // Get username from JWT claims
-        String username = jwt.getClaimAsString("preferred_username");
-        System.out.println("JWT Preferred Username: " + username);
+    @Autowired
+    private StatementService statementService;
 
-        if (username == null || username.trim().isEmpty()) {
-            username = jwt.getSubject(); // fallback to subject
-            System.out.println("Using JWT Subject as username: " + username);
-        }
+    @Autowired
+    private HoldService holdService;
 
-        User currentUser = userService.getUserByUsername(username);
-        if (currentUser == null) {
-            currentUser = new User();
-            currentUser.setUsername(username);
-            currentUser.setKeycloakSub(jwt.getSubject());
-            currentUser.setEmail(jwt.getClaimAsString("email"));
-            currentUser.setCreatedAt(LocalDateTime.now());
-            currentUser.setUserType(UserType.INDIVIDUAL);
-            currentUser.setStatus(UserStatus.ACTIVE);
-            currentUser = userService.createOrUpdateUser(currentUser);
-        }
-        return currentUser;
-    }
+    private static final int MAX_PAGE_SIZE = 100;
 
-    // Helper method to get/create user from OidcUser (for web)
-    private User getOrCreateUser(OidcUser oidcUser) {
-        String username = oidcUser.getPreferredUsername();
-        if (username == null || username.trim().isEmpty()) {
-            username = oidcUser.getSubject();
-        }
+    private static final int RECENT_TRANSACTIONS_LIMIT = 10;
 
-        User currentUser = userService.getUserByUsername(username);
-        if (currentUser == null) {
-            currentUser = new User();
-            currentUser.setUsername(username);
-            currentUser.setKeycloakSub(oidcUser.getSubject());
-            currentUser.setEmail(oidcUser.getEmail());
-            currentUser.setCreatedAt(LocalDateTime.now());
-            currentUser.setUserType(UserType.INDIVIDUAL);
-            currentUser.setStatus(UserStatus.ACTIVE);
-            currentUser = userService.createOrUpdateUser(currentUser);
-        }
-        return currentUser;
-    }
+    // Most recent first, undated transactions last
+    static final Comparator<Transaction> MOST_RECENT_FIRST = Comparator.comparing(Transaction::getTransactionDate,
+            Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()));
 
     // 1. Dashboard API - UPDATED to accept JWT
     @PreAuthorize("isAuthenticated()")
@@ -116,12 +99,12 @@ public class MobileApiController {
                 // Mobile app authentication (JWT token)
                 Jwt jwt = (Jwt) principal;
                 System.out.println("JWT authentication for mobile");
-                currentUser = getOrCreateUserFromJwt(jwt);
+                currentUser = principalUserResolver.resolve(jwt);
             } else if (principal instanceof OidcUser) {
                 // Web authentication (OIDC user)
                 OidcUser oidcUser = (OidcUser) principal;
                 System.out.println("OIDC authentication for web");
-                currentUser = getOrCreateUser(oidcUser);
+                currentUser = principalUserResolver.resolve(oidcUser);
             } else {
                 System.out.println("ERROR: Unknown principal type: " + principal);
                 response.put("error", "User not authenticated");
@@ -163,47 +146,16 @@ public class MobileApiController {
             response.put("accountCount", accounts.size());
 
             // Get recent transactions
-            List<Transaction> recentTransactions = new ArrayList<>();
+            List<Long> accountIds = new ArrayList<>(accounts.size());
             for (Account account : accounts) {
-                List<Transaction> accountTransactions = transactionService.getTransactionsByAccountId(account.getId());
-                recentTransactions.addAll(accountTransactions);
-            }
-
-            // Sort by date (most recent first)
-            recentTransactions.sort((t1, t2) -> {
-                if (t1.getTransactionDate() == null && t2.getTransactionDate() == null) return 0;
-                if (t1.getTransactionDate() == null) return 1;
-                if (t2.getTransactionDate() == null) return -1;
-                return t2.getTransactionDate().compareTo(t1.getTransactionDate());
-            });
-
-            // Limit to 10
-            if (recentTransactions.size() > 10) {
-                recentTransactions = recentTransactions.subList(0, 10);
+                accountIds.add(account.getId());
             }
+            List<Transaction> recentTransactions = transactionService.getRecentTransactions(accountIds, RECENT_TRANSACTIONS_LIMIT);
 
             // Prepare transactions
-            List<Map<String, Object>> transactionsList = new ArrayList<>();
+            List<Map<String, Object>> transactionsList = new ArrayList<>(recentTransactions.size());
             for (Transaction txn : recentTransactions) {
-                Map<String, Object> txnInfo = new HashMap<>();
-                txnInfo.put("id", txn.getId());
-                txnInfo.put("amount", txn.getAmount());
-                txnInfo.put("description", txn.getDescription());
-                txnInfo.put("transactionDate", txn.getTransactionDate());
-                txnInfo.put("status", txn.getStatus().toString());
-                txnInfo.put("transactionRef", txn.getTransactionRef());
-                txnInfo.put("effectiveDate", txn.getEffectiveDate());
-                txnInfo.put("transactionType", txn.getTransactionType().getTypeCode());
-
-                // Add account info
-                if (txn.getFromAccount() != null) {
-                    txnInfo.put("fromAccount", txn.getFromAccount().getAccountNumber());
-                }
-                if (txn.getToAccount() != null) {
-                    txnInfo.put("toAccount", txn.getToAccount().getAccountNumber());
-                }
-
-                transactionsList.add(txnInfo);
+                transactionsList.add(toTransactionInfo(txn));
             }
 
             response.put("recentTransactions", transactionsList);
@@ -233,11 +185,11 @@ public class MobileApiController {
             if (principal instanceof Jwt) {
                 // Mobile app authentication (JWT token)
                 Jwt jwt = (Jwt) principal;
-                currentUser = getOrCreateUserFromJwt(jwt);
+                currentUser = principalUserResolver.resolve(jwt);
             } else if (principal instanceof OidcUser) {
                 // Web authentication (OIDC user)
                 OidcUser oidcUser = (OidcUser) principal;
-                currentUser = getOrCreateUser(oidcUser);
+                currentUser = principalUserResolver.resolve(oidcUser);
             } else {
                 response.put("valid", false);
                 response.put("error", "User not authenticated");
@@ -265,9 +217,14 @@ public class MobileApiController {
             String merchantId = parts[4];
             String transactionRef = parts[5];
 
-            // CRITICAL SECURITY FIX: Get complete payment session data from payments core
-            PaymentSessionData sessionData = getPaymentSessionData(sessionId);
-            if (sessionData == null || !sessionData.isValid()) {
+            // CRITICAL SECURITY FIX: Get complete payment session data from payments core.
+            // The call runs while we load the payer's accounts.
+            CompletableFuture<PaymentsCoreClient.PaymentSession> sessionFuture = paymentsCoreClient.getPaymentSession(sessionId);
+
+            List<Account> accounts = accountService.getAccountsByUserIdWithAccountType(currentUser.getId());
+
+            PaymentsCoreClient.PaymentSession sessionData = sessionFuture.exceptionally(e -> null).join();
+            if (sessionData == null) {
                 response.put("valid", false);
                 response.put("error", "Invalid or expired payment session");
                 return ResponseEntity.badRequest().body(response);
@@ -275,15 +232,13 @@ public class MobileApiController {
 
             // Validate ALL parameters against payment core data
             try {
-                validatePaymentParameters(sessionData, amount, currency, merchantId, transactionRef);
+                paymentProcessingService.validatePaymentParameters(sessionData, amount, currency, merchantId, transactionRef);
             } catch (Exception e) {
                 response.put("valid", false);
                 response.put("error", e.getMessage());
                 return ResponseEntity.badRequest().body(response);
             }
 
-            List<Account> accounts = accountService.getAccountsByUserIdWithAccountType(currentUser.getId());
-
             if (accounts.isEmpty()) {
                 response.put("valid", false);
                 response.put("error", "No account found");
@@ -291,11 +246,12 @@ public class MobileApiController {
             }
 
             Account primaryAccount = accounts.get(0);
-            if (primaryAccount.getCurrentBalance().compareTo(amount) < 0) {
+            // Checked against the available balance, as process-payment's hold will be
+            if (primaryAccount.getAvailableBalance().compareTo(amount) < 0) {
                 response.put("valid", false);
                 response.put("error", "Insufficient balance");
                 response.put("requiredAmount", amountDouble);
-                response.put("currentBalance", primaryAccount.getCurrentBalance());
+                response.put("availableBalance", primaryAccount.getAvailableBalance());
                 return ResponseEntity.badRequest().body(response);
             }
 
@@ -309,7 +265,7 @@ public class MobileApiController {
             response.put("merchantName", sessionData.getMerchantName());
             response.put("payerAccountNumber", primaryAccount.getAccountNumber());
             response.put("payerName", currentUser.getUsername());
-            response.put("payerAccountBalance", primaryAccount.getCurrentBalance());
+            response.put("payerAccountBalance", primaryAccount.getAvailableBalance());
 
             // Store verified data for double-check during processing
             response.put("verifiedAmount", sessionData.getAmount().doubleValue());
@@ -329,6 +285,7 @@ public class MobileApiController {
     @PreAuthorize("isAuthenticated()")
     @PostMapping("/process-payment")
     public ResponseEntity<Map<String, Object>> processPayment(@RequestBody Map<String, Object> request,
+                                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                                               @AuthenticationPrincipal Object principal) {
         Map<String, Object> response = new HashMap<>();
         try {
@@ -339,128 +296,43 @@ public class MobileApiController {
             if (principal instanceof Jwt) {
                 // Mobile app authentication (JWT token)
                 Jwt jwt = (Jwt) principal;
-                currentUser = getOrCreateUserFromJwt(jwt);
+                currentUser = principalUserResolver.resolve(jwt);
             } else if (principal instanceof OidcUser) {
                 // Web authentication (OIDC user)
                 OidcUser oidcUser = (OidcUser) principal;
-                currentUser = getOrCreateUser(oidcUser);
+                currentUser = principalUserResolver.resolve(oidcUser);
             } else {
                 response.put("success", false);
                 response.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
             }
 
-            String sessionId = (String) request.get("sessionId");
-            double amountDouble = (Double) request.get("amount");
-            BigDecimal amount = BigDecimal.valueOf(amountDouble);
-            String merchantId = (String) request.get("merchantId");
-            String transactionRef = (String) request.get("transactionRef");
-            Long payerAccountId = ((Number) request.get("payerAccountId")).longValue();
-
-            // CRITICAL SECURITY FIX: Validate against payment core before processing
-            PaymentSessionData sessionData = getPaymentSessionData(sessionId);
-            if (sessionData == null || !sessionData.isValid()) {
-                throw new RuntimeException("Invalid or expired payment session");
-            }
-
-            // Validate all parameters match the payment session
-            validatePaymentParameters(sessionData, amount, sessionData.getCurrency(), merchantId, transactionRef);
-
-            Optional<Account> optPayerAccount = accountService.getAccountById(payerAccountId);
-            if (!optPayerAccount.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Invalid account");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            Account payerAccount = optPayerAccount.get();
-            if (!payerAccount.getUser().getId().equals(currentUser.getId())) {
-                response.put("success", false);
-                response.put("error", "Unauthorized account access");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
-            }
-
-            // Use validated amount from payment core for balance check
-            if (payerAccount.getCurrentBalance().compareTo(sessionData.getAmount()) < 0) {
-                response.put("success", false);
-                response.put("error", "Insufficient balance");
-                response.put("requiredAmount", sessionData.getAmount());
-                response.put("currentBalance", payerAccount.getCurrentBalance());
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            Optional<TransactionType> paymentTransactionTypeOpt = transactionTypeService.getTransactionTypeByCode("PAYMENT");
-            if (!paymentTransactionTypeOpt.isPresent()) {
-                response.put("success", false);
-                response.put("error", "Payment transaction type not found");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            TransactionType paymentTransactionType = paymentTransactionTypeOpt.get();
-
-            Transaction txn = new Transaction();
-            txn.setFromAccount(payerAccount);
-            txn.setToAccount(null);
-            txn.setAmount(amount.negate());
-            txn.setDescription("QR Payment to " + merchantId);
-            txn.setTransactionRef(transactionRef);
-            txn.setEffectiveDate(LocalDate.now());
-            txn.setTransactionType(paymentTransactionType);
-            txn.setStatus(TransactionStatus.PENDING);
-            txn.setTransactionDate(LocalDateTime.now());
-
-            transactionService.createTransaction(txn);
-
-            String description = "QR Payment to " + merchantId;
-            accountService.debitAccount(payerAccount, amount, description, transactionRef, txn);
-
-            Map<String, Object> completionPayload = new HashMap<>();
-            completionPayload.put("sessionId", sessionId);
-            completionPayload.put("fromAccount", payerAccount.getAccountNumber());
-            completionPayload.put("merchantId", merchantId);
-            completionPayload.put("grossAmount", amountDouble);
-            completionPayload.put("transactionRef", transactionRef);
-            completionPayload.put("payerUserId", currentUser.getId());
-            completionPayload.put("sourceRoutingNumber", sourceRoutingNumber);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(completionPayload, headers);
-
-            ResponseEntity<Map> completionResponse = restTemplate.postForEntity(
-                    paymentsCoreUrl + "/api/v1/payments/complete",
-                    entity,
-                    Map.class
-            );
-
-            if (!completionResponse.getStatusCode().is2xxSuccessful()) {
-                txn.setStatus(TransactionStatus.FAILED);
-                transactionService.updateTransaction(txn);
-                throw new RuntimeException("PaymentCore notification failed: " + completionResponse.getStatusCode());
-            }
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> completionBody = completionResponse.getBody();
-            if (completionBody == null || !Boolean.TRUE.equals(completionBody.get("success"))) {
-                txn.setStatus(TransactionStatus.FAILED);
-                transactionService.updateTransaction(txn);
-                throw new RuntimeException("PaymentCore rejected: " +
-                        (completionBody != null ? completionBody.get("message") : "Unknown error"));
-            }
-
-            String settlementBatchId = (String) completionBody.get("settlementBatchId");
+            PaymentRequest paymentRequest = new PaymentRequest();
+            paymentRequest.setSessionId((String) request.get("sessionId"));
+            paymentRequest.setAmount(BigDecimal.valueOf((Double) request.get("amount")));
+            paymentRequest.setMerchantId((String) request.get("merchantId"));
+            paymentRequest.setTransactionRef((String) request.get("transactionRef"));
+            paymentRequest.setPayerAccountId(((Number) request.get("payerAccountId")).longValue());
 
-            txn.setStatus(TransactionStatus.PENDING);
-            transactionService.updateTransaction(txn);
+            PaymentResponse payment = paymentProcessingService.processPayment(currentUser, paymentRequest, idempotencyKey);
 
             response.put("success", true);
-            response.put("transactionId", txn.getId());
-            response.put("paymentReference", completionBody.get("transactionId"));
-            response.put("settlementBatchId", settlementBatchId);
-            response.put("message", "Payment completed — funds routed to merchant settlement batch");
+            response.put("transactionId", payment.getTransactionId());
+            response.put("paymentReference", payment.getPaymentReference());
+            response.put("settlementBatchId", payment.getSettlementBatchId());
+            response.put("message", payment.getMessage());
 
             return ResponseEntity.ok(response);
 
+        } catch (PaymentProcessingException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            response.putAll(e.getDetails());
+            return ResponseEntity.status(e.getStatus()).body(response);
+        } catch (IdempotencyConflictException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         } catch (Exception e) {
             e.printStackTrace();
             response.put("success", false);
@@ -480,10 +352,10 @@ public class MobileApiController {
 
             if (principal instanceof Jwt) {
                 Jwt jwt = (Jwt) principal;
-                currentUser = getOrCreateUserFromJwt(jwt);
+                currentUser = principalUserResolver.resolve(jwt);
             } else if (principal instanceof OidcUser) {
                 OidcUser oidcUser = (OidcUser) principal;
-                currentUser = getOrCreateUser(oidcUser);
+                currentUser = principalUserResolver.resolve(oidcUser);
             } else {
                 response.put("error", "Unauthorized");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
@@ -504,19 +376,14 @@ public class MobileApiController {
             // Get transactions for this account
             List<Transaction> transactions = transactionService.getTransactionsByAccountId(accountId);
 
-            // Sort by date (most recent first)
-            transactions.sort((t1, t2) -> {
-                if (t1.getTransactionDate() == null && t2.getTransactionDate() == null) return 0;
-                if (t1.getTransactionDate() == null) return 1;
-                if (t2.getTransactionDate() == null) return -1;
-                return t2.getTransactionDate().compareTo(t1.getTransactionDate());
-            });
+            transactions.sort(MOST_RECENT_FIRST);
 
             Map<String, Object> accountInfo = new HashMap<>();
             accountInfo.put("id", account.getId());
             accountInfo.put("accountNumber", account.getAccountNumber());
             accountInfo.put("currentBalance", account.getCurrentBalance());
             accountInfo.put("availableBalance", account.getAvailableBalance());
+            accountInfo.put("heldAmount", holdService.getHeldAmount(account.getId()));
             accountInfo.put("accountType", account.getAccountType().getTypeName());
             accountInfo.put("status", account.getStatus().toString());
             accountInfo.put("routingNumber", account.getRoutingNumber());
@@ -524,26 +391,9 @@ public class MobileApiController {
             accountInfo.put("overdraftProtection", account.getOverdraftProtection());
             accountInfo.put("overdraftLimit", account.getOverdraftLimit());
 
-            List<Map<String, Object>> transactionsList = new ArrayList<>();
+            List<Map<String, Object>> transactionsList = new ArrayList<>(transactions.size());
             for (Transaction txn : transactions) {
-                Map<String, Object> txnInfo = new HashMap<>();
-                txnInfo.put("id", txn.getId());
-                txnInfo.put("amount", txn.getAmount());
-                txnInfo.put("description", txn.getDescription());
-                txnInfo.put("transactionDate", txn.getTransactionDate());
-                txnInfo.put("status", txn.getStatus().toString());
-                txnInfo.put("transactionRef", txn.getTransactionRef());
-                txnInfo.put("effectiveDate", txn.getEffectiveDate());
-                txnInfo.put("transactionType", txn.getTransactionType().getTypeCode());
-
-                if (txn.getFromAccount() != null) {
-                    txnInfo.put("fromAccount", txn.getFromAccount().getAccountNumber());
-                }
-                if (txn.getToAccount() != null) {
-                    txnInfo.put("toAccount", txn.getToAccount().getAccountNumber());
-                }
-
-                transactionsList.add(txnInfo);
+                transactionsList.add(toTransactionInfo(txn));
             }
 
             response.put("account", accountInfo);
@@ -561,11 +411,11 @@ public class MobileApiController {
         }
     }
 
-    // 5. Get all transactions with pagination - UPDATED to accept JWT
+    // 5. Get all transactions with keyset pagination - UPDATED to accept JWT
     @PreAuthorize("isAuthenticated()")
     @GetMapping("/transactions")
     public ResponseEntity<Map<String, Object>> getTransactions(
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "20") int size,
             @AuthenticationPrincipal Object principal) {
 
@@ -575,66 +425,50 @@ public class MobileApiController {
 
             if (principal instanceof Jwt) {
                 Jwt jwt = (Jwt) principal;
-                currentUser = getOrCreateUserFromJwt(jwt);
+                currentUser = principalUserResolver.resolve(jwt);
             } else if (principal instanceof OidcUser) {
                 OidcUser oidcUser = (OidcUser) principal;
-                currentUser = getOrCreateUser(oidcUser);
+                currentUser = principalUserResolver.resolve(oidcUser);
             } else {
                 response.put("error", "Unauthorized");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
             }
 
-            List<Account> accounts = accountService.getAccountsByUserIdWithAccountType(currentUser.getId());
-
-            List<Transaction> allTransactions = new ArrayList<>();
-            for (Account account : accounts) {
-                List<Transaction> accountTransactions = transactionService.getTransactionsByAccountId(account.getId());
-                allTransactions.addAll(accountTransactions);
+            TransactionCursor after;
+            try {
+                after = (cursor == null || cursor.isBlank()) ? null : TransactionCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                response.put("success", false);
+                response.put("error", "Invalid cursor");
+                return ResponseEntity.badRequest().body(response);
             }
 
-            // Sort by date (most recent first)
-            allTransactions.sort((t1, t2) -> {
-                if (t1.getTransactionDate() == null && t2.getTransactionDate() == null) return 0;
-                if (t1.getTransactionDate() == null) return 1;
-                if (t2.getTransactionDate() == null) return -1;
-                return t2.getTransactionDate().compareTo(t1.getTransactionDate());
-            });
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
 
-            // Pagination logic
-            int total = allTransactions.size();
-            int start = Math.min(page * size, total);
-            int end = Math.min((page + 1) * size, total);
+            List<Long> accountIds = new ArrayList<>();
+            for (Account account : accountService.getAccountsByUserId(currentUser.getId())) {
+                accountIds.add(account.getId());
+            }
 
-            List<Transaction> pagedTransactions = allTransactions.subList(start, end);
+            // Fetch one extra row to know whether another page exists
+            List<Transaction> pagedTransactions = transactionService.getTransactionsPage(accountIds, after, pageSize + 1);
+            boolean hasMore = pagedTransactions.size() > pageSize;
+            if (hasMore) {
+                pagedTransactions = pagedTransactions.subList(0, pageSize);
+            }
 
             // Prepare response
-            List<Map<String, Object>> transactionsList = new ArrayList<>();
+            List<Map<String, Object>> transactionsList = new ArrayList<>(pagedTransactions.size());
             for (Transaction txn : pagedTransactions) {
-                Map<String, Object> txnInfo = new HashMap<>();
-                txnInfo.put("id", txn.getId());
-                txnInfo.put("amount", txn.getAmount());
-                txnInfo.put("description", txn.getDescription());
-                txnInfo.put("transactionDate", txn.getTransactionDate());
-                txnInfo.put("status", txn.getStatus().toString());
-                txnInfo.put("transactionRef", txn.getTransactionRef());
-                txnInfo.put("effectiveDate", txn.getEffectiveDate());
-                txnInfo.put("transactionType", txn.getTransactionType().getTypeCode());
-
-                if (txn.getFromAccount() != null) {
-                    txnInfo.put("fromAccount", txn.getFromAccount().getAccountNumber());
-                }
-                if (txn.getToAccount() != null) {
-                    txnInfo.put("toAccount", txn.getToAccount().getAccountNumber());
-                }
-
-                transactionsList.add(txnInfo);
+                transactionsList.add(toTransactionInfo(txn));
             }
 
             response.put("transactions", transactionsList);
-            response.put("currentPage", page);
-            response.put("pageSize", size);
-            response.put("totalTransactions", total);
-            response.put("totalPages", (int) Math.ceil((double) total / size));
+            response.put("pageSize", pageSize);
+            response.put("hasMore", hasMore);
+            response.put("nextCursor", hasMore
+                    ? TransactionCursor.after(pagedTransactions.get(pagedTransactions.size() - 1)).encode()
+                    : null);
             response.put("success", true);
 
             return ResponseEntity.ok(response);
@@ -647,102 +481,119 @@ public class MobileApiController {
         }
     }
 
-    // Helper method to get payment session data from payments core
-    private PaymentSessionData getPaymentSessionData(String sessionId) {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Void> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    paymentsCoreUrl + "/api/v1/payments/status/" + sessionId,
-                    HttpMethod.GET,
-                    entity,
-                    Map.class
-            );
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
-
-                // Parse expiry time (adjust format as needed)
-                String expiryTimeStr = (String) body.get("expiryTime");
-                LocalDateTime expiryTime = LocalDateTime.parse(expiryTimeStr.replace("Z", ""));
-
-                return PaymentSessionData.builder()
-                        .sessionId(sessionId)
-                        .amount(new BigDecimal(body.get("amount").toString()))
-                        .currency((String) body.get("currency"))
-                        .merchantId((String) body.get("merchantId"))
-                        .transactionRef((String) body.get("transactionRef"))
-                        .status(PaymentStatus.valueOf((String) body.get("status")))
-                        .expiryTime(expiryTime)
-                        .isValid(true)
-                        .build();
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to get payment session data: " + e.getMessage());
+    // 6. Submit payroll - business customers pay a CSV of CREDIT lines from one of their accounts.
+    // Result rows stream back as each chunk of the file commits. Resubmitting the same run (same
+    // Idempotency-Key, or the same file on the same day) only posts lines not already paid.
+    @PreAuthorize("isAuthenticated()")
+    @PostMapping(value = "/accounts/{accountId}/payroll", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> submitPayroll(@PathVariable Long accountId,
+                                           @RequestParam("file") MultipartFile file,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                           @AuthenticationPrincipal Object principal) {
+        Map<String, Object> response = new HashMap<>();
+        User currentUser = principalUserResolver.resolve(principal);
+        if (currentUser == null) {
+            response.put("error", "Unauthorized");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
         }
-        return null;
-    }
-
-    // Helper method to validate payment parameters against payment core data
-    private void validatePaymentParameters(PaymentSessionData sessionData,
-                                           BigDecimal amount,
-                                           String currency,
-                                           String merchantId,
-                                           String transactionRef) {
-        // Check if session is expired
-        if (sessionData.getExpiryTime().isBefore(LocalDateTime.now())) {
-            throw new RuntimeException("Payment session has expired");
+        if (currentUser.getUserType() != UserType.BUSINESS) {
+            response.put("error", "Payroll is only available to business customers");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
         }
 
-        // Check if session is already completed or cancelled
-        if (sessionData.getStatus() != PaymentStatus.PENDING) {
-            throw new RuntimeException("Payment session is no longer valid (status: " + sessionData.getStatus() + ")");
+        Optional<Account> accountOpt = accountService.getAccountById(accountId);
+        if (!accountOpt.isPresent()) {
+            response.put("error", "Account not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
         }
-
-        // Validate amount matches exactly (use compareTo for BigDecimal)
-        if (amount.compareTo(sessionData.getAmount()) != 0) {
-            throw new RuntimeException("Amount mismatch. Expected: " + sessionData.getAmount() + ", Received: " + amount);
+        Account fundingAccount = accountOpt.get();
+        if (!fundingAccount.getUser().getId().equals(currentUser.getId())) {
+            response.put("error", "Unauthorized");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
         }
-
-        // Validate merchant ID
-        if (!merchantId.equals(sessionData.getMerchantId())) {
-            throw new RuntimeException("Merchant ID mismatch");
+        if (fundingAccount.getStatus() != AccountStatus.ACTIVE) {
+            response.put("error", "Account is not active");
+            return ResponseEntity.badRequest().body(response);
         }
 
-        // Validate transaction reference
-        if (!transactionRef.equals(sessionData.getTransactionRef())) {
-            throw new RuntimeException("Transaction reference mismatch");
+        String payrollKey;
+        try (InputStream in = file.getInputStream()) {
+            payrollKey = BatchPostingService.payrollKey(idempotencyKey, in, LocalDate.now());
+        } catch (IOException e) {
+            response.put("error", "Could not read payroll file");
+            return ResponseEntity.badRequest().body(response);
         }
 
-        // Validate currency
-        if (!currency.equalsIgnoreCase(sessionData.getCurrency())) {
-            throw new RuntimeException("Currency mismatch. Expected: " + sessionData.getCurrency() + ", Received: " + currency);
-        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try (InputStream in = file.getInputStream()) {
+                BatchPostingService.BatchPostingSummary summary = batchPostingService.post(in, fundingAccount, payrollKey, writer);
+                auditLogService.logUserAction(currentUser.getId(), "PAYROLL", "accounts", fundingAccount.getId(), Map.of(
+                        "posted", summary.getPosted(), "rejected", summary.getRejected(), "failed", summary.getFailed()));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
     }
 
-    // Inner class to hold payment session data
-    @Data
-    @Builder
-    private static class PaymentSessionData {
-        private String sessionId;
-        private BigDecimal amount;
-        private String currency;
-        private String merchantId;
-        private String transactionRef;
-        private PaymentStatus status;
-        private LocalDateTime expiryTime;
-        private boolean isValid;
-
-        public String getMerchantName() {
-            // You might want to fetch merchant name from a service
-            return merchantId;
+    // 7. Account statement - CSV for an inclusive date range, built in a temp file and then streamed
+    @PreAuthorize("isAuthenticated()")
+    @GetMapping("/accounts/{accountId}/statement")
+    public ResponseEntity<?> getStatement(@PathVariable Long accountId,
+                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                          @AuthenticationPrincipal Object principal) {
+        Map<String, Object> response = new HashMap<>();
+        User currentUser = principalUserResolver.resolve(principal);
+        if (currentUser == null) {
+            response.put("error", "Unauthorized");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
         }
+        if (from.isAfter(to)) {
+            response.put("error", "from must not be after to");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        Optional<Account> accountOpt = accountService.getAccountById(accountId);
+        if (!accountOpt.isPresent()) {
+            response.put("error", "Account not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        Account account = accountOpt.get();
+        if (!account.getUser().getId().equals(currentUser.getId())) {
+            response.put("error", "Unauthorized");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+
+        String accountNumber = account.getAccountNumber();
+        StreamingResponseBody body = out -> statementService.writeCsvStatement(accountId, accountNumber, from, to,
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"statement-" + accountNumber + "-" + from + "-" + to + ".csv\"")
+                .body(body);
     }
 
-    // Enum for payment status (should match payments core)
-    private enum PaymentStatus {
-        PENDING, COMPLETED, FAILED, CANCELLED, EXPIRED
+    // Package-private along with MOST_RECENT_FIRST so the JMH benchmarks (src/jmh) can drive them
+    static Map<String, Object> toTransactionInfo(Transaction txn) {
+        Map<String, Object> txnInfo = new HashMap<>();
+        txnInfo.put("id", txn.getId());
+        txnInfo.put("amount", txn.getAmount());
+        txnInfo.put("description", txn.getDescription());
+        txnInfo.put("transactionDate", txn.getTransactionDate());
+        txnInfo.put("status", txn.getStatus().toString());
+        txnInfo.put("transactionRef", txn.getTransactionRef());
+        txnInfo.put("effectiveDate", txn.getEffectiveDate());
+        txnInfo.put("transactionType", txn.getTransactionType().getTypeCode());
+
+        if (txn.getFromAccount() != null) {
+            txnInfo.put("fromAccount", txn.getFromAccount().getAccountNumber());
+        }
+        if (txn.getToAccount() != null) {
+            txnInfo.put("toAccount", txn.getToAccount().getAccountNumber());
+        }
+        return txnInfo;
     }
-}
\ No newline at end of file
+}
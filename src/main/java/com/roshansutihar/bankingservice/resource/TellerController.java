@@ -1,29 +1,47 @@
 package com.roshansutihar.bankingservice.resource;
 
 import com.roshansutihar.bankingservice.entity.Account;
-import com.roshansutihar.bankingservice.entity.LedgerEntry;
 import com.roshansutihar.bankingservice.entity.Transaction;
 import com.roshansutihar.bankingservice.entity.TransactionType;
 import com.roshansutihar.bankingservice.enums.AccountStatus;
-import com.roshansutihar.bankingservice.enums.EntryType;
 import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.idgen.ReferenceGenerator;
 import com.roshansutihar.bankingservice.request.DepositRequest;
 import com.roshansutihar.bankingservice.response.DepositResponse;
 import com.roshansutihar.bankingservice.service.AccountService;
-import com.roshansutihar.bankingservice.service.LedgerEntryService;
+import com.roshansutihar.bankingservice.service.AuditLogService;
+import com.roshansutihar.bankingservice.service.BatchPostingService;
+import com.roshansutihar.bankingservice.service.IdempotencyService;
+import com.roshansutihar.bankingservice.service.PostingService;
 import com.roshansutihar.bankingservice.service.TransactionService;
 import com.roshansutihar.bankingservice.service.TransactionTypeService;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
 
 @Controller
 @RequestMapping("/teller")
@@ -39,20 +57,36 @@ public class TellerController {
     private TransactionTypeService transactionTypeService;
 
     @Autowired
-    private LedgerEntryService ledgerService;
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private BatchPostingService batchPostingService;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
 
 
     @GetMapping("/deposit")
     public String showDepositForm(Model model) {
-        model.addAttribute("depositRequest", new DepositRequest());
+        model.addAttribute("depositRequest", newDepositRequest());
         return "teller-deposit";
     }
 
 
     @PostMapping("/deposit")
-    public String processDeposit(@ModelAttribute DepositRequest request, Model model) {
+    public String processDeposit(@ModelAttribute DepositRequest request, Model model, Principal principal) {
         try {
-            DepositResponse response = processDepositTransaction(request);
+            // A double-submitted form carries the same key and gets the first result back
+            String requestHash = IdempotencyService.fingerprint(request.getAccountNumber(), request.getAmount(), request.getDescription());
+            DepositResponse response = idempotencyService.execute("DEPOSIT", request.getIdempotencyKey(), requestHash,
+                    DepositResponse.class, () -> processDepositTransaction(request, principal.getName()));
             model.addAttribute("success", true);
             model.addAttribute("transactionRef", response.getTransactionRef());
             model.addAttribute("amount", response.getAmount());
@@ -60,12 +94,38 @@ public class TellerController {
         } catch (Exception e) {
             model.addAttribute("error", "Deposit failed: " + e.getMessage());
         }
-        model.addAttribute("depositRequest", new DepositRequest());
+        model.addAttribute("depositRequest", newDepositRequest());
         return "teller-deposit";
     }
 
+    // Posts a CSV of credits/debits and streams back a result row per line as each chunk commits
+    @PostMapping(value = "/batch-postings", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> processBatchPostings(@RequestParam("file") MultipartFile file,
+                                                                      Principal principal) {
+        String teller = principal.getName();
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try (InputStream in = file.getInputStream()) {
+                BatchPostingService.BatchPostingSummary summary = batchPostingService.post(in, null, null, writer);
+                auditLogService.logUserAction(null, "TELLER_BATCH_POSTING", "transactions", null, Map.of(
+                        "teller", teller, "file", String.valueOf(file.getOriginalFilename()),
+                        "posted", summary.getPosted(), "rejected", summary.getRejected(), "failed", summary.getFailed()));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"batch-posting-results.csv\"")
+                .body(body);
+    }
+
+    private DepositRequest newDepositRequest() {
+        DepositRequest depositRequest = new DepositRequest();
+        depositRequest.setIdempotencyKey(UUID.randomUUID().toString());
+        return depositRequest;
+    }
+
     @Transactional(rollbackOn = Exception.class)
-    private DepositResponse processDepositTransaction(DepositRequest request) {
+    private DepositResponse processDepositTransaction(DepositRequest request, String teller) {
 
         Account account = accountService.getAccountByAccountNumber(request.getAccountNumber())
                 .orElseThrow(() -> new RuntimeException("Account not found"));
@@ -80,41 +140,33 @@ public class TellerController {
 
 
         Transaction transaction = new Transaction();
-        transaction.setTransactionRef(generateTransactionRef());
+        transaction.setTransactionRef(referenceGenerator.nextReference("DEP"));
         transaction.setToAccount(account);
         transaction.setTransactionType(depositType);
         transaction.setAmount(request.getAmount());
         transaction.setDescription("Cash deposit - " + request.getDescription());
         transaction.setStatus(TransactionStatus.COMPLETED);
         transaction.setEffectiveDate(LocalDate.now());
-
-        Transaction savedTransaction = transactionService.createTransaction(transaction);
-
-
-        BigDecimal newBalance = account.getCurrentBalance().add(request.getAmount());
-        account.setCurrentBalance(newBalance);
-        account.setAvailableBalance(newBalance);
-        accountService.updateAccount(account);
-
-
-        LedgerEntry ledgerEntry = new LedgerEntry();
-        ledgerEntry.setTransaction(savedTransaction);
-        ledgerEntry.setAccount(account);
-        ledgerEntry.setEntryType(EntryType.CREDIT);
-        ledgerEntry.setAmount(request.getAmount());
-        ledgerEntry.setRunningBalance(newBalance);
-        ledgerService.createLedgerEntry(ledgerEntry);
+        transaction.setTransactionDate(LocalDateTime.now());
+
+        // Cash comes in through the teller drawer: debit the cash GL, credit the customer
+        Long cashAccountId = postingService.glAccountId(PostingService.GlAccount.CASH, account.getId());
+        transaction.setFromAccount(accountService.getAccountReference(cashAccountId));
+        PostingService.PostingResult result = postingService.post(postingService.journal(transaction)
+                .debit(cashAccountId, request.getAmount())
+                .credit(account.getId(), request.getAmount()));
+        result.applyTo(account);
+        BigDecimal newBalance = account.getCurrentBalance();
+        // Tellers act through Keycloak and may have no users row, so they are named in the values
+        auditLogService.logUserAction(null, "TELLER_DEPOSIT", "transactions", transaction.getId(), Map.of(
+                "teller", teller, "accountNumber", account.getAccountNumber(), "amount", request.getAmount()));
 
         return new DepositResponse(
-                savedTransaction.getTransactionRef(),
+                transaction.getTransactionRef(),
                 account.getAccountNumber(),
                 request.getAmount(),
                 newBalance,
                 "Deposit completed successfully"
         );
     }
-
-    private String generateTransactionRef() {
-        return "DEP" + System.currentTimeMillis();
-    }
 }
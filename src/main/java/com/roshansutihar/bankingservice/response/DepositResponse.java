@@ -1,5 +1,8 @@
 package com.roshansutihar.bankingservice.response;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
 
 public class DepositResponse {
@@ -9,8 +12,12 @@ public class DepositResponse {
     private BigDecimal newBalance;
     private String message;
 
-    public DepositResponse(String transactionRef, String accountNumber, BigDecimal amount,
-                           BigDecimal newBalance, String message) {
+    @JsonCreator
+    public DepositResponse(@JsonProperty("transactionRef") String transactionRef,
+                           @JsonProperty("accountNumber") String accountNumber,
+                           @JsonProperty("amount") BigDecimal amount,
+                           @JsonProperty("newBalance") BigDecimal newBalance,
+                           @JsonProperty("message") String message) {
         this.transactionRef = transactionRef;
         this.accountNumber = accountNumber;
         this.amount = amount;
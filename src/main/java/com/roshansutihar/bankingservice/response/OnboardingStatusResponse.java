@@ -1,29 +1,44 @@
 package com.roshansutihar.bankingservice.response;
 
-public class AccountCreationResponse {
+import java.util.UUID;
+
+public class OnboardingStatusResponse {
+    private UUID reference;
+    private String username;
+    private String state;
+    private boolean finished;
     private String accountNumber;
     private String routingNumber;
-    private String username;
     private String message;
 
-    public AccountCreationResponse() {}
+    public OnboardingStatusResponse() {}
 
-    public AccountCreationResponse(String accountNumber, String routingNumber, String username, String message) {
+    public OnboardingStatusResponse(UUID reference, String username, String state, boolean finished,
+                                    String accountNumber, String routingNumber, String message) {
+        this.reference = reference;
+        this.username = username;
+        this.state = state;
+        this.finished = finished;
         this.accountNumber = accountNumber;
         this.routingNumber = routingNumber;
-        this.username = username;
         this.message = message;
     }
 
 
+    public UUID getReference() { return reference; }
+    public String getUsername() { return username; }
+    public String getState() { return state; }
+    public boolean isFinished() { return finished; }
     public String getAccountNumber() { return accountNumber; }
     public String getRoutingNumber() { return routingNumber; }
-    public String getUsername() { return username; }
     public String getMessage() { return message; }
 
 
+    public void setReference(UUID reference) { this.reference = reference; }
+    public void setUsername(String username) { this.username = username; }
+    public void setState(String state) { this.state = state; }
+    public void setFinished(boolean finished) { this.finished = finished; }
     public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
     public void setRoutingNumber(String routingNumber) { this.routingNumber = routingNumber; }
-    public void setUsername(String username) { this.username = username; }
     public void setMessage(String message) { this.message = message; }
-}
\ No newline at end of file
+}
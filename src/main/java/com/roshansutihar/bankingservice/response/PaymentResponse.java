@@ -0,0 +1,28 @@
+package com.roshansutihar.bankingservice.response;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PaymentResponse {
+    private Long transactionId;
+    private Object paymentReference;
+    private String settlementBatchId;
+    private String message;
+
+    @JsonCreator
+    public PaymentResponse(@JsonProperty("transactionId") Long transactionId,
+                           @JsonProperty("paymentReference") Object paymentReference,
+                           @JsonProperty("settlementBatchId") String settlementBatchId,
+                           @JsonProperty("message") String message) {
+        this.transactionId = transactionId;
+        this.paymentReference = paymentReference;
+        this.settlementBatchId = settlementBatchId;
+        this.message = message;
+    }
+
+
+    public Long getTransactionId() { return transactionId; }
+    public Object getPaymentReference() { return paymentReference; }
+    public String getSettlementBatchId() { return settlementBatchId; }
+    public String getMessage() { return message; }
+}
@@ -0,0 +1,45 @@
+package com.roshansutihar.bankingservice.security;
+
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.service.AuditLogService;
+import com.roshansutihar.bankingservice.service.PrincipalUserResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.InteractiveAuthenticationSuccessEvent;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Audits browser logins (the oauth2Login flow). Mobile clients present bearer tokens on every
+// call and have no login step to record.
+@Component
+public class LoginAuditListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginAuditListener.class);
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private PrincipalUserResolver principalUserResolver;
+
+    @EventListener
+    public void onLogin(InteractiveAuthenticationSuccessEvent event) {
+        Authentication authentication = event.getAuthentication();
+        try {
+            User user = principalUserResolver.resolve(authentication.getPrincipal());
+            Long userId = user != null ? user.getId() : null;
+            String ipAddress = authentication.getDetails() instanceof WebAuthenticationDetails details
+                    ? details.getRemoteAddress() : null;
+            auditLogService.logUserAction(userId, "LOGIN", "users", userId,
+                    auditLogService.toJson(Map.of("username", authentication.getName())), ipAddress, null);
+        } catch (RuntimeException e) {
+            // Never fail a login over its audit record
+            logger.warn("Could not audit login of {}: {}", authentication.getName(), e.getMessage());
+        }
+    }
+}
@@ -86,8 +86,12 @@ public class SecurityConfig {
                         .requestMatchers("/accounts/create", "/accounts/create-business")
                         .hasRole("TELLERADMIN")
 
+                        // Onboarding status polling and bulk submission
+                        .requestMatchers("/accounts/onboarding/**")
+                        .hasRole("TELLERADMIN")
+
                         // Teller deposit endpoints - adjust based on your needs
-                        .requestMatchers("/teller-deposit", "/teller/deposit")
+                        .requestMatchers("/teller-deposit", "/teller/deposit", "/teller/batch-postings")
                         .hasRole("TELLERADMIN")
 
                         // Allow POST for account creation - but only for teller admins
@@ -1,15 +1,16 @@
 package com.roshansutihar.bankingservice.service;
 
 import com.roshansutihar.bankingservice.entity.Account;
-import com.roshansutihar.bankingservice.entity.LedgerEntry;
-import com.roshansutihar.bankingservice.entity.Transaction;
 import com.roshansutihar.bankingservice.enums.AccountStatus;
-import com.roshansutihar.bankingservice.enums.EntryType;
 import com.roshansutihar.bankingservice.repository.AccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,11 @@ public class AccountService {
         return accountRepository.findById(id);
     }
 
+    // Proxy for setting a foreign key without loading the row
+    public Account getAccountReference(Long id) {
+        return accountRepository.getReferenceById(id);
+    }
+
     public Optional<Account> getAccountByAccountNumber(String accountNumber) {
         return accountRepository.findByAccountNumber(accountNumber);
     }
@@ -83,54 +89,19 @@ public class AccountService {
     }
 
     @Autowired
-    private LedgerEntryService ledgerEntryService;
-
-    public void debitAccount(Account account, BigDecimal amount, String description, String ref, Transaction txn) {
-        if (account == null || !AccountStatus.ACTIVE.equals(account.getStatus())) {
-            throw new RuntimeException("Account inactive or invalid");
-        }
-        if (account.getCurrentBalance().compareTo(amount) < 0) {
-            throw new RuntimeException("Insufficient funds");
-        }
-
-        if (ref != null && (txn.getTransactionRef() == null || txn.getTransactionRef().isEmpty())) {
-            txn.setTransactionRef(ref);
-        }
-
-        BigDecimal oldBalance = account.getCurrentBalance();
-        account.setCurrentBalance(oldBalance.subtract(amount));
-        account.setAvailableBalance(account.getAvailableBalance().subtract(amount));
-        accountRepository.save(account);
-
-        LedgerEntry debitEntry = new LedgerEntry();
-        debitEntry.setTransaction(txn);
-        debitEntry.setAccount(account);
-        debitEntry.setEntryType(EntryType.DEBIT);
-        debitEntry.setAmount(amount);
-        debitEntry.setRunningBalance(account.getCurrentBalance());
-        ledgerEntryService.createLedgerEntry(debitEntry);
-    }
-
-    public void creditAccount(Account account, BigDecimal amount, String description, String ref, Transaction txn) {
-        if (account == null || !AccountStatus.ACTIVE.equals(account.getStatus())) {
-            throw new RuntimeException("Account inactive or invalid");
-        }
-
-        if (ref != null && (txn.getTransactionRef() == null || txn.getTransactionRef().isEmpty())) {
-            txn.setTransactionRef(ref);
-        }
-
-        BigDecimal oldBalance = account.getCurrentBalance();
-        account.setCurrentBalance(oldBalance.add(amount));
-        account.setAvailableBalance(account.getAvailableBalance().add(amount));
-        accountRepository.save(account);
-
-        LedgerEntry creditEntry = new LedgerEntry();
-        creditEntry.setTransaction(txn);
-        creditEntry.setAccount(account);
-        creditEntry.setEntryType(EntryType.CREDIT);
-        creditEntry.setAmount(amount);
-        creditEntry.setRunningBalance(account.getCurrentBalance());
-        ledgerEntryService.createLedgerEntry(creditEntry);
+    private BalanceSnapshotService balanceSnapshotService;
+
+    // Historical balances come from the daily snapshots plus the entries since the last rollup
+    public BigDecimal getBalanceOn(Long accountId, LocalDate date) {
+        return balanceSnapshotService.getBalanceOn(accountId, date);
+    }
+
+    public BalanceSnapshotService.BalanceStats getMonthlyBalanceStats(Long accountId, YearMonth month) {
+        return balanceSnapshotService.getMonthlyBalanceStats(accountId, month);
+    }
+
+    @Transactional
+    public void lockAccounts(Collection<Long> accountIds) {
+        accountRepository.lockInIdOrder(accountIds);
     }
 }
@@ -1,14 +1,15 @@
 package com.roshansutihar.bankingservice.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.roshansutihar.bankingservice.entity.AuditLog;
-import com.roshansutihar.bankingservice.entity.User;
 import com.roshansutihar.bankingservice.repository.AuditLogRepository;
-import com.roshansutihar.bankingservice.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -18,7 +19,10 @@ public class AuditLogService {
     private AuditLogRepository auditLogRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private AuditLogWriter auditLogWriter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     public List<AuditLog> getAllAuditLogs() {
         return auditLogRepository.findAll();
@@ -44,22 +48,30 @@ public class AuditLogService {
         return auditLogRepository.save(auditLog);
     }
 
+    // Queued for the background writer rather than saved inline. Inside a transaction the record
+    // is queued when it commits; from then until the writer's next flush (flush-interval-ms) it
+    // only exists in memory, so a process killed outright in that window loses it. A graceful
+    // shutdown writes or spills everything queued.
     public void logUserAction(Long userId, String actionType, String tableName, Long recordId, String newValues) {
-        AuditLog auditLog = new AuditLog();
+        logUserAction(userId, actionType, tableName, recordId, newValues, null, null);
+    }
 
-        if (userId != null) {
-            User user = new User();
-            user.setId(userId);
-            auditLog.setUser(user);
-        }
+    public void logUserAction(Long userId, String actionType, String tableName, Long recordId, Map<String, ?> newValues) {
+        logUserAction(userId, actionType, tableName, recordId, toJson(newValues));
+    }
 
-        auditLog.setActionType(actionType);
-        auditLog.setTableName(tableName);
-        auditLog.setRecordId(recordId);
-        auditLog.setNewValues(newValues);
-        auditLog.setCreatedAt(LocalDateTime.now());
+    public void logUserAction(Long userId, String actionType, String tableName, Long recordId, String newValues,
+                              String ipAddress, String userAgent) {
+        auditLogWriter.enqueue(new AuditLogWriter.AuditRecord(userId, actionType, tableName, recordId,
+                null, newValues, ipAddress, userAgent, LocalDateTime.now()));
+    }
 
-        auditLogRepository.save(auditLog);
+    public String toJson(Map<String, ?> values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Audit values are not serializable", e);
+        }
     }
 
     public void deleteAuditLog(Long id) {
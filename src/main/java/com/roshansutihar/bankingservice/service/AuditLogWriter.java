@@ -0,0 +1,454 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Asynchronous audit_logs writer.
+//
+// Callers only put a record on a bounded ring buffer (ArrayBlockingQueue); one background thread
+// drains it and inserts with JDBC batches of up to flush-size rows, or whatever has arrived when
+// flush-interval-ms elapses.
+//
+// When the buffer is full the overflow policy decides: BLOCK waits up to block-timeout-ms and then
+// spills, SPILL goes straight to the spill file, DROP counts and discards. Batches the database
+// rejects are spilled too. The spill file is an fsynced JSON-lines journal that is replayed into
+// audit_logs once inserts succeed again, including after a restart. Replay keeps going past lines
+// it can't use: unreadable lines and records the database refuses (bad JSON, a user id that no
+// longer exists) are moved to the dead-letter file next to it for someone to look at.
+//
+// Crash exposure: records are not journaled on enqueue, so anything still in the buffer when the
+// process is killed outright (OOM kill, kill -9, power loss) is lost - at most one flush interval
+// of records, or a full buffer while the database is slow. Journaling every record first would
+// put an fsync back on each caller's path, which is what this writer exists to avoid. A graceful
+// shutdown drains the buffer first.
+//
+// Ids are taken from audit_logs_id_seq in blocks, as AuditLog's pooled @SequenceGenerator does:
+// the sequence steps by ID_BLOCK_SIZE (V8) and each nextval reserves the block ending at the
+// returned value. Relying on the column default instead would spend a whole block per row.
+@Component
+public class AuditLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final String INSERT_SQL = "INSERT INTO audit_logs " +
+            "(id, user_id, action_type, table_name, record_id, old_values, new_values, ip_address, user_agent, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, CAST(? AS jsonb), CAST(? AS jsonb), CAST(? AS inet), ?, ?)";
+    private static final String NEXT_ID_BLOCKS_SQL = "SELECT nextval('audit_logs_id_seq') FROM generate_series(1, ?)";
+    // The audit_logs_id_seq increment and AuditLog's allocationSize
+    static final int ID_BLOCK_SIZE = 50;
+
+    public enum OverflowPolicy {
+        BLOCK, SPILL, DROP
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ArrayBlockingQueue<AuditRecord> queue;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+    private final long replayIntervalNanos;
+    private final Path spillPath;
+    private final Path replayPath;
+    private final Path deadLetterPath;
+    private final Object spillLock = new Object();
+
+    private final Counter writtenCounter;
+    private final Counter spilledCounter;
+    private final Counter droppedCounter;
+    private final Counter replayedCounter;
+    private final Counter deadLetteredCounter;
+
+    private volatile boolean running;
+    private volatile boolean spillPending;
+    private long nextReplayAttempt;
+    private Thread writerThread;
+    // Unused ids of the current block; only the writer thread inserts
+    private long nextId = 1;
+    private long lastId = 0;
+
+    @Autowired
+    public AuditLogWriter(JdbcTemplate jdbcTemplate,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${banking.audit.queue-capacity:8192}") int queueCapacity,
+                          @Value("${banking.audit.flush-size:256}") int flushSize,
+                          @Value("${banking.audit.flush-interval-ms:200}") long flushIntervalMs,
+                          @Value("${banking.audit.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                          @Value("${banking.audit.block-timeout-ms:5}") long blockTimeoutMs,
+                          @Value("${banking.audit.replay-interval-ms:10000}") long replayIntervalMs,
+                          @Value("${banking.audit.spill-file:audit-spill.jsonl}") String spillFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.replayIntervalNanos = TimeUnit.MILLISECONDS.toNanos(replayIntervalMs);
+        this.spillPath = Paths.get(spillFile).toAbsolutePath();
+        this.replayPath = spillPath.resolveSibling(spillPath.getFileName() + ".replaying");
+        this.deadLetterPath = spillPath.resolveSibling(spillPath.getFileName() + ".dead");
+
+        this.writtenCounter = meterRegistry.counter("banking.audit.written");
+        this.spilledCounter = meterRegistry.counter("banking.audit.spilled");
+        this.droppedCounter = meterRegistry.counter("banking.audit.dropped");
+        this.replayedCounter = meterRegistry.counter("banking.audit.replayed");
+        this.deadLetteredCounter = meterRegistry.counter("banking.audit.dead_lettered");
+        meterRegistry.gauge("banking.audit.queue.size", queue, ArrayBlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(spillPath.getParent());
+        spillPending = Files.exists(spillPath) || Files.exists(replayPath);
+        nextReplayAttempt = System.nanoTime();
+        running = true;
+        writerThread = new Thread(this::run, "audit-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 10_000);
+        if (writerThread.isAlive()) {
+            logger.warn("Audit writer did not finish in time, spilling remaining records");
+        }
+        List<AuditRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            spill(remaining);
+        }
+    }
+
+    // Inside a transaction the record is only queued once it commits, so a rolled-back
+    // operation leaves no audit row - the same outcome as the old in-transaction save
+    public void enqueue(AuditRecord record) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer(record);
+                }
+            });
+        } else {
+            offer(record);
+        }
+    }
+
+    private void offer(AuditRecord record) {
+        if (!running) {
+            spill(List.of(record));
+            return;
+        }
+        if (queue.offer(record)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    if (queue.offer(record, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                spill(List.of(record));
+            }
+            case SPILL -> spill(List.of(record));
+            case DROP -> droppedCounter.increment();
+        }
+    }
+
+    private void run() {
+        List<AuditRecord> batch = new ArrayList<>(flushSize);
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        replaySpillIfDue();
+
+        while (running || !queue.isEmpty()) {
+            long wait = deadline - System.nanoTime();
+            try {
+                AuditRecord record = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                if (record != null) {
+                    batch.add(record);
+                    queue.drainTo(batch, flushSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            if (batch.size() >= flushSize || System.nanoTime() - deadline >= 0 || !running) {
+                boolean written = batch.isEmpty() || flush(batch);
+                batch.clear();
+                if (written) {
+                    replaySpillIfDue();
+                }
+                deadline = System.nanoTime() + flushIntervalNanos;
+            }
+        }
+    }
+
+    private boolean flush(List<AuditRecord> batch) {
+        try {
+            insert(batch);
+            writtenCounter.increment(batch.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Audit batch of {} records could not be written, spilling to {}: {}",
+                    batch.size(), spillPath, e.getMessage());
+            spill(batch);
+            return false;
+        }
+    }
+
+    private void insert(List<AuditRecord> records) {
+        long[] ids = takeIds(records.size());
+        int[] index = {0};
+        jdbcTemplate.batchUpdate(INSERT_SQL, records, records.size(), (ps, record) -> {
+            ps.setLong(1, ids[index[0]++]);
+            ps.setObject(2, record.getUserId(), Types.BIGINT);
+            ps.setString(3, record.getActionType());
+            ps.setString(4, record.getTableName());
+            ps.setObject(5, record.getRecordId(), Types.BIGINT);
+            ps.setString(6, record.getOldValues());
+            ps.setString(7, record.getNewValues());
+            ps.setString(8, record.getIpAddress());
+            ps.setString(9, record.getUserAgent());
+            ps.setTimestamp(10, Timestamp.valueOf(record.getCreatedAt()));
+        });
+    }
+
+    // Ids left in the current block first, then as many new blocks as the rest needs in one
+    // round trip. Ids of a batch that fails are not reused.
+    private long[] takeIds(int count) {
+        long[] ids = new long[count];
+        int taken = 0;
+        while (taken < count && nextId <= lastId) {
+            ids[taken++] = nextId++;
+        }
+        if (taken < count) {
+            int blocks = (count - taken + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE;
+            for (Long blockEnd : jdbcTemplate.queryForList(NEXT_ID_BLOCKS_SQL, Long.class, blocks)) {
+                nextId = blockEnd - ID_BLOCK_SIZE + 1;
+                lastId = blockEnd;
+                while (taken < count && nextId <= lastId) {
+                    ids[taken++] = nextId++;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void spill(List<AuditRecord> records) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (AuditRecord record : records) {
+                lines.append(objectMapper.writeValueAsString(record)).append('\n');
+            }
+            synchronized (spillLock) {
+                append(spillPath, lines.toString());
+                spillPending = true;
+            }
+            spilledCounter.increment(records.size());
+        } catch (IOException e) {
+            logger.error("Could not spill {} audit records to {}", records.size(), spillPath, e);
+            droppedCounter.increment(records.size());
+        }
+    }
+
+    private void deadLetter(String line, String reason) {
+        logger.error("Moving audit spill line to {}: {}", deadLetterPath, reason);
+        try {
+            append(deadLetterPath, line + "\n");
+            deadLetteredCounter.increment();
+        } catch (IOException e) {
+            logger.error("Could not write audit dead-letter file {}, dropping: {}", deadLetterPath, line, e);
+            droppedCounter.increment();
+        }
+    }
+
+    private static void append(Path path, String lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void replaySpillIfDue() {
+        if (!spillPending || System.nanoTime() - nextReplayAttempt < 0) {
+            return;
+        }
+        nextReplayAttempt = System.nanoTime() + replayIntervalNanos;
+        try {
+            replaySpill();
+        } catch (IOException e) {
+            logger.error("Could not replay audit spill file {}", replayPath, e);
+        }
+    }
+
+    // Moves the spill file aside so new spills can keep appending, then inserts it chunk by chunk.
+    // On failure only the lines not yet written are kept, so a later replay adds no duplicates.
+    private void replaySpill() throws IOException {
+        synchronized (spillLock) {
+            if (!Files.exists(replayPath) && Files.exists(spillPath)) {
+                Files.move(spillPath, replayPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            spillPending = false;
+        }
+        if (!Files.exists(replayPath)) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>(flushSize);
+        List<AuditRecord> chunk = new ArrayList<>(flushSize);
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(objectMapper.readValue(line, AuditRecord.class));
+                    lines.add(line);
+                } catch (IOException e) {
+                    // Usually a torn final line from a crash mid-write
+                    deadLetter(line, "unreadable: " + e.getMessage());
+                    continue;
+                }
+                if (chunk.size() >= flushSize) {
+                    int written = replayChunk(chunk, lines, reader);
+                    if (written < 0) {
+                        return;
+                    }
+                    replayed += written;
+                    chunk.clear();
+                    lines.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                int written = replayChunk(chunk, lines, reader);
+                if (written < 0) {
+                    return;
+                }
+                replayed += written;
+            }
+        }
+        Files.delete(replayPath);
+        logger.info("Replayed {} spilled audit records", replayed);
+        synchronized (spillLock) {
+            // Spilled while an earlier replay file was still pending
+            if (Files.exists(spillPath)) {
+                spillPending = true;
+            }
+        }
+    }
+
+    // Returns the number of records written, or -1 when the database is unavailable and the rest
+    // of the file was kept for the next attempt. A chunk the database refuses is retried record
+    // by record so that only the bad records are dead-lettered.
+    private int replayChunk(List<AuditRecord> chunk, List<String> lines, BufferedReader reader) throws IOException {
+        try {
+            insert(chunk);
+            replayedCounter.increment(chunk.size());
+            writtenCounter.increment(chunk.size());
+            return chunk.size();
+        } catch (DataIntegrityViolationException e) {
+            int written = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    insert(List.of(chunk.get(i)));
+                    replayedCounter.increment();
+                    writtenCounter.increment();
+                    written++;
+                } catch (DataIntegrityViolationException rejected) {
+                    deadLetter(lines.get(i), rejected.getMostSpecificCause().getMessage());
+                } catch (RuntimeException unavailable) {
+                    keepForRetry(lines.subList(i, lines.size()), reader, unavailable);
+                    return -1;
+                }
+            }
+            return written;
+        } catch (RuntimeException e) {
+            keepForRetry(lines, reader, e);
+            return -1;
+        }
+    }
+
+    // Rewrites the replay file as the given lines plus whatever the reader has not reached yet
+    private void keepForRetry(List<String> lines, BufferedReader reader, RuntimeException cause) throws IOException {
+        logger.warn("Audit spill replay failed, will retry: {}", cause.getMessage());
+        Path remainder = replayPath.resolveSibling(replayPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(remainder, StandardCharsets.UTF_8)) {
+            for (String pending : lines) {
+                writer.write(pending);
+                writer.newLine();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(remainder, replayPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        spillPending = true;
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AuditRecord {
+        private Long userId;
+        private String actionType;
+        private String tableName;
+        private Long recordId;
+        private String oldValues;
+        private String newValues;
+        private String ipAddress;
+        private String userAgent;
+        private LocalDateTime createdAt;
+    }
+}
@@ -0,0 +1,211 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.AccountDailyBalance;
+import com.roshansutihar.bankingservice.entity.BalanceSnapshotCheckpoint;
+import com.roshansutihar.bankingservice.enums.EntryType;
+import com.roshansutihar.bankingservice.repository.AccountDailyBalanceRepository;
+import com.roshansutihar.bankingservice.repository.BalanceSnapshotCheckpointRepository;
+import com.roshansutihar.bankingservice.repository.LedgerEntryRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Daily per-account balance snapshots (account_daily_balances) and the historical balance
+// queries built on them.
+//
+// The rollup job turns each finished day's ledger entries into one row per account with activity
+// and advances balance_snapshot_checkpoint, one day per transaction. A day counts as finished
+// once settle-minutes have passed after midnight, so postings still in flight at midnight are
+// in before it is read. Queries read snapshots up to the checkpoint and only scan the ledger
+// entries after it, so their cost doesn't grow with an account's history.
+@Service
+public class BalanceSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSnapshotService.class);
+
+    @Autowired
+    private AccountDailyBalanceRepository dailyBalanceRepository;
+
+    @Autowired
+    private BalanceSnapshotCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${banking.balance-snapshots.settle-minutes:60}")
+    private long settleMinutes;
+
+    @Value("${banking.balance-snapshots.on-startup:true}")
+    private boolean rollUpOnStartup;
+
+    @Scheduled(cron = "${banking.balance-snapshots.cron:0 15 * * * *}")
+    public void runScheduled() {
+        rollUp();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void runOnStartup() {
+        if (rollUpOnStartup) {
+            rollUp();
+        }
+    }
+
+    // Rolls up every finished day after the checkpoint. Returns the number of days rolled up;
+    // 0 when already current or another instance holds the checkpoint.
+    public int rollUp() {
+        LocalDate lastFinishedDay = LocalDateTime.now().minusMinutes(settleMinutes).toLocalDate().minusDays(1);
+        int days = 0;
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> rollUpNextDay(lastFinishedDay)))) {
+            days++;
+        }
+        if (days > 0) {
+            logger.info("Rolled up {} day(s) of ledger entries into daily balances", days);
+        }
+        return days;
+    }
+
+    private boolean rollUpNextDay(LocalDate lastFinishedDay) {
+        Optional<BalanceSnapshotCheckpoint> checkpoint = checkpointRepository.lockForRollup();
+        if (checkpoint.isEmpty()) {
+            return false;
+        }
+        LocalDate day = checkpoint.get().getRolledUpThrough().plusDays(1);
+        if (day.isAfter(lastFinishedDay)) {
+            return false;
+        }
+        int accounts = dailyBalanceRepository.rollUpDay(day, day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        checkpoint.get().setRolledUpThrough(day);
+        logger.debug("Rolled up {} for {} accounts", day, accounts);
+        return true;
+    }
+
+    // Closing balance at the end of the given day
+    public BigDecimal getBalanceOn(Long accountId, LocalDate date) {
+        LocalDate rolledUpThrough = rolledUpThrough();
+        if (!date.isAfter(rolledUpThrough)) {
+            return snapshotClosingBalance(accountId, date);
+        }
+        return ledgerEntryRepository
+                .findFirstByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(
+                        accountId, rolledUpThrough.plusDays(1).atStartOfDay(), date.plusDays(1).atStartOfDay())
+                .map(LedgerEntryRepository.RunningBalanceView::getRunningBalance)
+                .orElseGet(() -> snapshotClosingBalance(accountId, rolledUpThrough));
+    }
+
+    // Min/max over every balance the account held during the month (up to today), and the
+    // average of its end-of-day balances
+    public BalanceStats getMonthlyBalanceStats(Long accountId, YearMonth month) {
+        LocalDate first = month.atDay(1);
+        LocalDate today = LocalDate.now();
+        LocalDate through = month.atEndOfMonth().isAfter(today) ? today : month.atEndOfMonth();
+        if (first.isAfter(through)) {
+            throw new IllegalArgumentException("No balance history for " + month + " yet");
+        }
+        LocalDate rolledUpThrough = rolledUpThrough();
+
+        Map<LocalDate, DayBalance> days = new HashMap<>();
+        if (!first.isAfter(rolledUpThrough)) {
+            LocalDate snapshotsThrough = through.isAfter(rolledUpThrough) ? rolledUpThrough : through;
+            for (AccountDailyBalance snapshot : dailyBalanceRepository
+                    .findByAccountIdAndBalanceDateBetweenOrderByBalanceDate(accountId, first, snapshotsThrough)) {
+                days.put(snapshot.getBalanceDate(), new DayBalance(snapshot.getMinBalance(),
+                        snapshot.getMaxBalance(), snapshot.getClosingBalance()));
+            }
+        }
+        if (through.isAfter(rolledUpThrough)) {
+            LocalDate deltaFrom = first.isAfter(rolledUpThrough) ? first : rolledUpThrough.plusDays(1);
+            for (LedgerEntryRepository.BalanceEntryView entry : ledgerEntryRepository
+                    .findByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(
+                            accountId, deltaFrom.atStartOfDay(), through.plusDays(1).atStartOfDay())) {
+                BigDecimal before = entry.getEntryType() == EntryType.DEBIT
+                        ? entry.getRunningBalance().add(entry.getAmount())
+                        : entry.getRunningBalance().subtract(entry.getAmount());
+                days.computeIfAbsent(entry.getCreatedAt().toLocalDate(), day -> new DayBalance(before, before, before))
+                        .apply(entry.getRunningBalance());
+            }
+        }
+
+        BigDecimal opening = getBalanceOn(accountId, first.minusDays(1));
+        BigDecimal balance = opening;
+        BigDecimal min = null;
+        BigDecimal max = null;
+        BigDecimal sum = BigDecimal.ZERO;
+        int dayCount = 0;
+        for (LocalDate date = first; !date.isAfter(through); date = date.plusDays(1)) {
+            DayBalance day = days.get(date);
+            BigDecimal low = day != null ? day.min : balance;
+            BigDecimal high = day != null ? day.max : balance;
+            if (day != null) {
+                balance = day.closing;
+            }
+            min = min == null || low.compareTo(min) < 0 ? low : min;
+            max = max == null || high.compareTo(max) > 0 ? high : max;
+            sum = sum.add(balance);
+            dayCount++;
+        }
+
+        return new BalanceStats(month, opening, balance, min, max,
+                sum.divide(BigDecimal.valueOf(dayCount), 2, RoundingMode.HALF_EVEN), dayCount);
+    }
+
+    private LocalDate rolledUpThrough() {
+        return checkpointRepository.findRolledUpThrough()
+                .orElseThrow(() -> new IllegalStateException("Balance snapshot checkpoint missing"));
+    }
+
+    private BigDecimal snapshotClosingBalance(Long accountId, LocalDate date) {
+        return dailyBalanceRepository.findFirstByAccountIdAndBalanceDateLessThanEqualOrderByBalanceDateDesc(accountId, date)
+                .map(AccountDailyBalance::getClosingBalance)
+                .orElse(BigDecimal.ZERO);
+    }
+
+    private static class DayBalance {
+        private BigDecimal min;
+        private BigDecimal max;
+        private BigDecimal closing;
+
+        DayBalance(BigDecimal min, BigDecimal max, BigDecimal closing) {
+            this.min = min;
+            this.max = max;
+            this.closing = closing;
+        }
+
+        void apply(BigDecimal runningBalance) {
+            min = runningBalance.compareTo(min) < 0 ? runningBalance : min;
+            max = runningBalance.compareTo(max) > 0 ? runningBalance : max;
+            closing = runningBalance;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class BalanceStats {
+        private final YearMonth month;
+        private final BigDecimal openingBalance;
+        private final BigDecimal closingBalance;
+        private final BigDecimal minBalance;
+        private final BigDecimal maxBalance;
+        private final BigDecimal averageDailyBalance;
+        private final int days;
+    }
+}
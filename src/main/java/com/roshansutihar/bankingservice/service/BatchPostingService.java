@@ -0,0 +1,398 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.AccountStatus;
+import com.roshansutihar.bankingservice.enums.EntryType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.idgen.ReferenceGenerator;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Bulk posting for teller batch files and business payroll.
+//
+// Input is CSV, one posting per line: account_number,type,amount[,description] where type is
+// CREDIT or DEBIT. A header row and blank lines are skipped. The file is read line by line and
+// posted in chunks of banking.batch-posting.chunk-size lines, each in its own transaction:
+//   1. one SELECT ... WHERE account_number IN (...) resolves the chunk's accounts
+//   2. every line becomes a balanced journal against a GL offset: a CREDIT is cash in (debit
+//      GL-CASH, credit the account), a DEBIT is cash out (debit the account, credit GL-CASH)
+//   3. PostingService.tryPostAll locks the accounts, checks each line against the available
+//      balance and writes the accepted ones as JDBC batches
+// A result row per input line (line,status,transaction_ref,message) is written once its chunk
+// has committed.
+//
+// Payroll runs with a funding account: every line must be a CREDIT and is paid from that
+// account through the GL-PAYROLL clearing account. A payroll line's transaction ref is derived
+// from the funding account, the run key and the line number, so resubmitting a file (after a
+// timeout or a failed chunk) posts only the lines that are not already on the books.
+@Service
+public class BatchPostingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchPostingService.class);
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private TransactionTypeService transactionTypeService;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${banking.batch-posting.chunk-size:500}")
+    private int chunkSize;
+
+    // Identifies a payroll run for line deduplication: the client's Idempotency-Key when it sends
+    // one, otherwise the file content and the day, so the same file re-sent today is a retry but
+    // next month's identical payroll is a new run
+    public static String payrollKey(String idempotencyKey, InputStream content, LocalDate day) throws IOException {
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return "key:" + idempotencyKey.trim();
+        }
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return "file:" + day + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    // payrollKey is required with a funding account and ignored without one
+    public BatchPostingSummary post(InputStream input, Account fundingAccount, String payrollKey, Writer output)
+            throws IOException {
+        if (fundingAccount != null && payrollKey == null) {
+            throw new IllegalArgumentException("Payroll runs need a payroll key");
+        }
+        BatchPostingSummary summary = new BatchPostingSummary();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        output.write("line,status,transaction_ref,message\n");
+
+        List<BatchLine> chunk = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+        boolean firstLine = true;
+        String raw;
+        while ((raw = reader.readLine()) != null) {
+            lineNumber++;
+            if (raw.isBlank()) {
+                continue;
+            }
+            if (firstLine) {
+                firstLine = false;
+                if (raw.trim().toLowerCase(Locale.ROOT).startsWith("account_number")) {
+                    continue;
+                }
+            }
+            chunk.add(parse(lineNumber, raw));
+            if (chunk.size() >= chunkSize) {
+                postChunk(chunk, fundingAccount, payrollKey);
+                writeResults(chunk, output, summary);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            postChunk(chunk, fundingAccount, payrollKey);
+            writeResults(chunk, output, summary);
+        }
+
+        output.write("# posted=" + summary.getPosted() + " rejected=" + summary.getRejected()
+                + " failed=" + summary.getFailed() + "\n");
+        output.flush();
+        logger.info("Batch posting finished: {} posted, {} rejected, {} failed",
+                summary.getPosted(), summary.getRejected(), summary.getFailed());
+        return summary;
+    }
+
+    private BatchLine parse(int lineNumber, String raw) {
+        BatchLine line = new BatchLine(lineNumber);
+        String[] fields = raw.split(",", 4);
+        if (fields.length < 3) {
+            return line.reject("Expected account_number,type,amount[,description]");
+        }
+        line.accountNumber = fields[0].trim();
+        line.description = fields.length > 3 ? fields[3].trim() : null;
+        try {
+            line.entryType = EntryType.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return line.reject("Type must be CREDIT or DEBIT");
+        }
+        try {
+            line.amount = new BigDecimal(fields[2].trim());
+        } catch (NumberFormatException e) {
+            return line.reject("Invalid amount");
+        }
+        if (line.amount.signum() <= 0 || line.amount.stripTrailingZeros().scale() > 2) {
+            return line.reject("Amount must be positive with at most 2 decimal places");
+        }
+        return line;
+    }
+
+    private void postChunk(List<BatchLine> chunk, Account fundingAccount, String payrollKey) {
+        List<BatchLine> candidates = new ArrayList<>(chunk.size());
+        for (BatchLine line : chunk) {
+            if (line.status == null) {
+                candidates.add(line);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> postLines(candidates, fundingAccount, payrollKey));
+        } catch (RuntimeException e) {
+            logger.error("Batch posting chunk starting at line {} rolled back", candidates.get(0).lineNumber, e);
+            for (BatchLine line : candidates) {
+                line.fail("Chunk rolled back: " + e.getMessage());
+            }
+        }
+    }
+
+    private void postLines(List<BatchLine> lines, Account fundingAccount, String payrollKey) {
+        Set<String> accountNumbers = new HashSet<>();
+        for (BatchLine line : lines) {
+            accountNumbers.add(line.accountNumber);
+        }
+        if (fundingAccount != null) {
+            accountNumbers.add(fundingAccount.getAccountNumber());
+        }
+
+        Map<String, AccountRepository.PostingAccount> accounts = new HashMap<>();
+        for (AccountRepository.PostingAccount row : accountRepository.findPostingAccounts(accountNumbers)) {
+            accounts.put(row.getAccountNumber(), row);
+        }
+
+        AccountRepository.PostingAccount funding = null;
+        Set<String> alreadyPosted = Set.of();
+        if (fundingAccount != null) {
+            funding = accounts.get(fundingAccount.getAccountNumber());
+            if (funding == null || !isActive(funding)) {
+                throw new RuntimeException("Funding account inactive or invalid");
+            }
+            List<String> refs = new ArrayList<>(lines.size());
+            for (BatchLine line : lines) {
+                refs.add(payrollReference(funding.getId(), payrollKey, line.lineNumber));
+            }
+            alreadyPosted = new HashSet<>(transactionRepository.findExistingTransactionRefs(refs));
+        }
+
+        TransactionType depositType = transactionTypeService.getDepositTransactionType();
+        TransactionType withdrawalType = transactionTypeService.getWithdrawalTransactionType();
+        TransactionType payrollType = transactionTypeService.getTransactionTypeByCode("PAYROLL")
+                .orElseThrow(() -> new RuntimeException("PAYROLL transaction type not found"));
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
+
+        List<BatchLine> journalLines = new ArrayList<>(lines.size());
+        List<PostingService.Journal> journals = new ArrayList<>(lines.size());
+        for (BatchLine line : lines) {
+            AccountRepository.PostingAccount target = accounts.get(line.accountNumber);
+            if (target == null) {
+                line.reject("Account not found");
+                continue;
+            }
+            if (!isActive(target)) {
+                line.reject("Account is not active");
+                continue;
+            }
+
+            Transaction txn = new Transaction();
+            txn.setAmount(line.amount);
+            txn.setStatus(TransactionStatus.COMPLETED);
+            txn.setEffectiveDate(today);
+            txn.setTransactionDate(now);
+            PostingService.Journal journal = postingService.journal(txn);
+            if (funding != null) {
+                if (line.entryType != EntryType.CREDIT) {
+                    line.reject("Payroll files may only contain CREDIT lines");
+                    continue;
+                }
+                if (target.getId().equals(funding.getId())) {
+                    line.reject("Cannot pay the funding account");
+                    continue;
+                }
+                String ref = payrollReference(funding.getId(), payrollKey, line.lineNumber);
+                if (alreadyPosted.contains(ref)) {
+                    line.alreadyPosted(ref);
+                    continue;
+                }
+                Long clearingAccountId = postingService.glAccountId(PostingService.GlAccount.PAYROLL, funding.getId());
+                txn.setTransactionRef(ref);
+                txn.setTransactionType(payrollType);
+                txn.setFromAccount(accountRepository.getReferenceById(funding.getId()));
+                txn.setToAccount(accountRepository.getReferenceById(target.getId()));
+                txn.setDescription(describe("Payroll", line));
+                journal.debit(funding.getId(), line.amount)
+                        .credit(clearingAccountId, line.amount)
+                        .debit(clearingAccountId, line.amount)
+                        .credit(target.getId(), line.amount);
+            } else {
+                Long cashAccountId = postingService.glAccountId(PostingService.GlAccount.CASH, target.getId());
+                txn.setTransactionRef(referenceGenerator.nextReference("BAT"));
+                if (line.entryType == EntryType.CREDIT) {
+                    txn.setTransactionType(depositType);
+                    txn.setFromAccount(accountRepository.getReferenceById(cashAccountId));
+                    txn.setToAccount(accountRepository.getReferenceById(target.getId()));
+                    txn.setDescription(describe("Batch deposit", line));
+                    journal.debit(cashAccountId, line.amount).credit(target.getId(), line.amount);
+                } else {
+                    txn.setTransactionType(withdrawalType);
+                    txn.setFromAccount(accountRepository.getReferenceById(target.getId()));
+                    txn.setToAccount(accountRepository.getReferenceById(cashAccountId));
+                    txn.setDescription(describe("Batch withdrawal", line));
+                    journal.debit(target.getId(), line.amount).credit(cashAccountId, line.amount);
+                }
+            }
+            journalLines.add(line);
+            journals.add(journal);
+        }
+
+        if (!journals.isEmpty()) {
+            List<PostingService.PostingResult> results = postingService.tryPostAll(journals);
+            for (int i = 0; i < results.size(); i++) {
+                BatchLine line = journalLines.get(i);
+                PostingService.PostingResult result = results.get(i);
+                if (result.isPosted()) {
+                    line.post(result.getTransaction().getTransactionRef());
+                } else if (funding != null && "Insufficient funds".equals(result.getRejection())) {
+                    line.reject("Insufficient funds in funding account");
+                } else {
+                    line.reject(result.getRejection());
+                }
+            }
+        }
+        // Keep the persistence context from growing across chunks
+        entityManager.clear();
+    }
+
+    private static boolean isActive(AccountRepository.PostingAccount account) {
+        return AccountStatus.ACTIVE.name().equals(account.getStatus());
+    }
+
+    // PAY- plus 128 bits of the hash: fits transaction_ref and is the same on every resubmission
+    private static String payrollReference(Long fundingAccountId, String payrollKey, int lineNumber) {
+        byte[] hash = sha256().digest((fundingAccountId + "|" + payrollKey + "|" + lineNumber)
+                .getBytes(StandardCharsets.UTF_8));
+        return "PAY-" + HexFormat.of().formatHex(hash, 0, 16).toUpperCase(Locale.ROOT);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String describe(String prefix, BatchLine line) {
+        return line.description == null || line.description.isEmpty() ? prefix : prefix + " - " + line.description;
+    }
+
+    private void writeResults(List<BatchLine> chunk, Writer output, BatchPostingSummary summary) throws IOException {
+        for (BatchLine line : chunk) {
+            output.write(line.lineNumber + "," + line.status + "," + (line.transactionRef != null ? line.transactionRef : "")
+                    + "," + csv(line.message) + "\n");
+            switch (line.status) {
+                case "POSTED" -> summary.posted++;
+                case "REJECTED" -> summary.rejected++;
+                default -> summary.failed++;
+            }
+        }
+        // Push this chunk's results to the client while the next one is posted
+        output.flush();
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static class BatchLine {
+        private final int lineNumber;
+        private String accountNumber;
+        private EntryType entryType;
+        private BigDecimal amount;
+        private String description;
+        private String status;
+        private String transactionRef;
+        private String message;
+
+        BatchLine(int lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+
+        BatchLine reject(String message) {
+            this.status = "REJECTED";
+            this.message = message;
+            return this;
+        }
+
+        void alreadyPosted(String transactionRef) {
+            reject("Already posted by an earlier submission");
+            this.transactionRef = transactionRef;
+        }
+
+        void fail(String message) {
+            this.status = "FAILED";
+            this.transactionRef = null;
+            this.message = message;
+        }
+
+        void post(String transactionRef) {
+            this.status = "POSTED";
+            this.transactionRef = transactionRef;
+        }
+    }
+
+    @Getter
+    public static class BatchPostingSummary {
+        private int posted;
+        private int rejected;
+        private int failed;
+    }
+}
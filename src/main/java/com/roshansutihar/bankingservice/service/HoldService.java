@@ -0,0 +1,263 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Hold;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.enums.HoldStatus;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.repository.HoldRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Holds on available funds. Placing a hold is one conditional UPDATE of available_balance plus
+// an insert into holds; the account row is locked only for that short transaction, not while
+// the caller waits on anything external. The hold is later captured (posted as a debit through
+// PostingService), released, or expired by the timer, which gives the amount back.
+//
+// An in-memory total of active holds per account backs getHeldAmount(). It follows this
+// instance's own holds as they commit and is rebuilt from the table on every expiry run, so
+// holds placed by other instances show up within one run. A commit that changes the totals
+// holds the read side of reloadLock from just before it commits until its change is applied;
+// the rebuild takes the write side, so each change lands either in the table it reads or in
+// the map it installs, never both or neither.
+@Service
+public class HoldService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HoldService.class);
+
+    private static final String RELEASE_AVAILABLE_SQL =
+            "UPDATE accounts SET available_balance = available_balance + ? WHERE id = ?";
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${banking.holds.expiry-batch-size:500}")
+    private int expiryBatchSize;
+
+    private final ReadWriteLock reloadLock = new ReentrantReadWriteLock();
+    private volatile Map<Long, BigDecimal> heldByAccount = new ConcurrentHashMap<>();
+    private Counter placedCounter;
+    private Counter expiredCounter;
+
+    @PostConstruct
+    void init() {
+        placedCounter = meterRegistry.counter("banking.holds.placed");
+        expiredCounter = meterRegistry.counter("banking.holds.expired");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadActiveHolds() {
+        reloadLock.writeLock().lock();
+        try {
+            Map<Long, BigDecimal> totals = new ConcurrentHashMap<>();
+            for (HoldRepository.HeldAmount held : holdRepository.sumActiveHoldsByAccount()) {
+                totals.put(held.getAccountId(), held.getAmount());
+            }
+            heldByAccount = totals;
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+    }
+
+    // Total of this account's active holds
+    public BigDecimal getHeldAmount(Long accountId) {
+        return heldByAccount.getOrDefault(accountId, BigDecimal.ZERO);
+    }
+
+    // Empty when the account is inactive or its available balance can't cover the amount
+    @Transactional
+    public Optional<Hold> placeHold(Account account, BigDecimal amount, Transaction txn, String reason,
+                                    LocalDateTime expiresAt) {
+        return placeHold(account, amount, txn, null, reason, expiresAt);
+    }
+
+    // A payment hold also records its payments-core session; placing a second open hold for the
+    // same session fails with DataIntegrityViolationException
+    @Transactional
+    public Optional<Hold> placeHold(Account account, BigDecimal amount, Transaction txn, String paymentSessionId,
+                                    String reason, LocalDateTime expiresAt) {
+        Optional<AccountRepository.BalanceSnapshot> balance = accountRepository.reserveBalance(account.getId(), amount);
+        if (balance.isEmpty()) {
+            return Optional.empty();
+        }
+        account.setCurrentBalance(balance.get().getCurrentBalance());
+        account.setAvailableBalance(balance.get().getAvailableBalance());
+
+        Hold hold = new Hold();
+        hold.setAccount(account);
+        hold.setTransaction(txn);
+        hold.setAmount(amount);
+        hold.setStatus(HoldStatus.ACTIVE);
+        hold.setReason(reason);
+        hold.setPaymentSessionId(paymentSessionId);
+        hold.setExpiresAt(expiresAt);
+        holdRepository.save(hold);
+
+        placedCounter.increment();
+        afterCommit(account.getId(), amount);
+        return Optional.of(hold);
+    }
+
+    // Posts the held amount from the hold's account to the credit account. Never refused: if the
+    // hold expired in the meantime the amount comes out of the available balance again.
+    @Transactional
+    public PostingService.PostingResult capture(Hold hold, Transaction txn, Long creditAccountId) {
+        Long accountId = hold.getAccount().getId();
+        String previous = holdRepository.captureHold(hold.getId())
+                .orElseThrow(() -> new RuntimeException("Hold " + hold.getId() + " is already resolved"));
+
+        PostingService.Journal journal = postingService.journal(txn);
+        if (HoldStatus.EXPIRED.name().equals(previous)) {
+            logger.warn("Capturing hold {} on account {} after it expired", hold.getId(), accountId);
+            journal.debitCommitted(accountId, hold.getAmount());
+        } else {
+            journal.debitReserved(accountId, hold.getAmount());
+            afterCommit(accountId, hold.getAmount().negate());
+        }
+        hold.setStatus(HoldStatus.CAPTURED);
+        return postingService.post(journal.credit(creditAccountId, hold.getAmount()));
+    }
+
+    // Gives the amount back to the available balance; false if the hold was already resolved
+    @Transactional
+    public boolean release(Hold hold) {
+        if (holdRepository.releaseHold(hold.getId()) == 0) {
+            return false;
+        }
+        Long accountId = hold.getAccount().getId();
+        accountRepository.releaseReservedBalance(accountId, hold.getAmount())
+                .ifPresent(snapshot -> {
+                    hold.getAccount().setCurrentBalance(snapshot.getCurrentBalance());
+                    hold.getAccount().setAvailableBalance(snapshot.getAvailableBalance());
+                });
+        hold.setStatus(HoldStatus.RELEASED);
+        afterCommit(accountId, hold.getAmount().negate());
+        return true;
+    }
+
+    // Closes out an expired hold whose payment turned out not to go through; false if the hold
+    // isn't EXPIRED (any more)
+    @Transactional
+    public boolean closeExpired(Hold hold) {
+        if (holdRepository.closeExpiredHold(hold.getId()) == 0) {
+            return false;
+        }
+        hold.setStatus(HoldStatus.RELEASED);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${banking.holds.expiry-interval-ms:60000}",
+            initialDelayString = "${banking.holds.expiry-interval-ms:60000}")
+    public void expireHolds() {
+        int expired = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> expireBatch(LocalDateTime.now()));
+            expired += batch;
+        } while (batch >= expiryBatchSize);
+
+        if (expired > 0) {
+            expiredCounter.increment(expired);
+            logger.info("Expired {} stale hold(s)", expired);
+        }
+        loadActiveHolds();
+    }
+
+    // Returns each account's expired total with one UPDATE per account, in id order so the job
+    // can't deadlock with postings
+    private int expireBatch(LocalDateTime now) {
+        List<HoldRepository.HeldAmount> expired = holdRepository.expireHolds(now, expiryBatchSize);
+        Map<Long, BigDecimal> byAccount = new TreeMap<>();
+        for (HoldRepository.HeldAmount held : expired) {
+            byAccount.merge(held.getAccountId(), held.getAmount(), BigDecimal::add);
+        }
+        if (!byAccount.isEmpty()) {
+            jdbcTemplate.batchUpdate(RELEASE_AVAILABLE_SQL, new ArrayList<>(byAccount.entrySet()), byAccount.size(),
+                    (ps, entry) -> {
+                        ps.setBigDecimal(1, entry.getValue());
+                        ps.setLong(2, entry.getKey());
+                    });
+        }
+        return expired.size();
+    }
+
+    private void afterCommit(Long accountId, BigDecimal change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private boolean locked;
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    reloadLock.readLock().lock();
+                    locked = true;
+                }
+
+                @Override
+                public void afterCommit() {
+                    adjustHeld(accountId, change);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (locked) {
+                        reloadLock.readLock().unlock();
+                    }
+                }
+            });
+        } else {
+            reloadLock.readLock().lock();
+            try {
+                adjustHeld(accountId, change);
+            } finally {
+                reloadLock.readLock().unlock();
+            }
+        }
+    }
+
+    private void adjustHeld(Long accountId, BigDecimal change) {
+        heldByAccount.compute(accountId, (id, total) -> {
+            BigDecimal updated = (total != null ? total : BigDecimal.ZERO).add(change);
+            return updated.signum() > 0 ? updated : null;
+        });
+    }
+}
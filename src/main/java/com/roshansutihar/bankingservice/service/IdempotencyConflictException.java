@@ -0,0 +1,7 @@
+package com.roshansutihar.bankingservice.service;
+
+public class IdempotencyConflictException extends RuntimeException {
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,160 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.roshansutihar.bankingservice.entity.IdempotencyKey;
+import com.roshansutihar.bankingservice.enums.IdempotencyStatus;
+import com.roshansutihar.bankingservice.repository.IdempotencyKeyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Runs a request at most once per (scope, key) and replays the stored response for repeats.
+// Completed responses sit in a small in-memory cache in front of the idempotency_keys table,
+// so a retry storm is answered without touching accounts, the ledger or the payments core.
+// Failed attempts release their key so the client can retry for real.
+//
+// An in-progress key is only leased (idempotency.lease-seconds), so one left behind by a crashed
+// request blocks retries until the lease runs out rather than for the whole TTL. The lease must
+// outlast the slowest request: a request still running when its key is taken over can no longer
+// complete it, and the retry runs the action a second time.
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int CLEANUP_BATCH_SIZE = 1000;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Cache<String, StoredResponse> completed;
+
+    @Autowired
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${idempotency.lease-seconds:120}") long leaseSeconds,
+                              @Value("${idempotency.cache-size:10000}") long cacheSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public <T> T execute(String scope, String key, String requestHash, Class<T> responseType, Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        String cacheKey = scope + "|" + key;
+
+        StoredResponse cached = completed.getIfPresent(cacheKey);
+        if (cached != null) {
+            return replay(cached, requestHash, responseType);
+        }
+
+        UUID token = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        if (idempotencyKeyRepository.claim(scope, key, requestHash, token, now, now.plus(lease)) == 0) {
+            IdempotencyKey existing = idempotencyKeyRepository.findByScopeAndIdempotencyKey(scope, key)
+                    .filter(row -> row.getStatus() == IdempotencyStatus.COMPLETED)
+                    .orElseThrow(() -> new IdempotencyConflictException("A request with this idempotency key is already in progress"));
+            StoredResponse stored = new StoredResponse(existing.getRequestHash(), existing.getResponseBody());
+            completed.put(cacheKey, stored);
+            return replay(stored, requestHash, responseType);
+        }
+
+        T response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            idempotencyKeyRepository.release(scope, key, token);
+            throw e;
+        }
+
+        String body = serialize(response);
+        if (idempotencyKeyRepository.complete(scope, key, token, body, LocalDateTime.now().plus(ttl)) == 0) {
+            logger.warn("Idempotency key {} in scope {} was taken over after its lease ran out; " +
+                    "the request may have run twice", key, scope);
+            return response;
+        }
+        completed.put(cacheKey, new StoredResponse(requestHash, body));
+        return response;
+    }
+
+    // Stable hash of the fields that make up a request, to catch a key reused for a different one
+    public static String fingerprint(Object... parts) {
+        StringBuilder canonical = new StringBuilder();
+        for (Object part : parts) {
+            canonical.append(Objects.toString(part, "")).append('\u001f');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval-ms:600000}")
+    public void deleteExpiredKeys() {
+        LocalDateTime now = LocalDateTime.now();
+        int deleted;
+        int total = 0;
+        do {
+            deleted = idempotencyKeyRepository.deleteExpired(now, CLEANUP_BATCH_SIZE);
+            total += deleted;
+        } while (deleted == CLEANUP_BATCH_SIZE);
+        if (total > 0) {
+            logger.info("Deleted {} expired idempotency keys", total);
+        }
+    }
+
+    private <T> T replay(StoredResponse stored, String requestHash, Class<T> responseType) {
+        if (stored.requestHash != null && requestHash != null && !stored.requestHash.equals(requestHash)) {
+            throw new IdempotencyConflictException("Idempotency key was already used for a different request");
+        }
+        try {
+            return objectMapper.readValue(stored.body, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response could not be read", e);
+        }
+    }
+
+    private String serialize(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response could not be stored for idempotent replay", e);
+        }
+    }
+
+    private static class StoredResponse {
+        private final String requestHash;
+        private final String body;
+
+        StoredResponse(String requestHash, String body) {
+            this.requestHash = requestHash;
+            this.body = body;
+        }
+    }
+}
@@ -1,125 +1,454 @@
 package com.roshansutihar.bankingservice.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
-import java.time.Instant;
-import java.util.*;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+// Keycloak admin REST client on one shared java.net.http.HttpClient.
+//
+// The admin token is cached without a lock. A token lives as long as its expires_in says and is
+// refreshed early, refresh-skew-ms before it expires; callers keep using the old token while
+// that refresh runs and only wait when the token has actually expired. Concurrent callers share
+// a single in-flight token request. A 401 drops the cached token and the call is retried once
+// with a fresh one.
+//
+// Every admin call goes through one limit on calls in flight and one rate limit, so the bulk
+// methods (many users created or deleted in parallel) can't swamp Keycloak.
 @Service
 public class KeycloakAdminService {
 
-    @Value("${keycloak.base-url}")
-    private String keycloakUrl;
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakAdminService.class);
 
-    @Value("${keycloak.realm}")
-    private String realm;
+    private final String keycloakUrl;
+    private final String realm;
+    private final String adminClientId;
+    private final String adminClientSecret;
+    private final Duration requestTimeout;
+    private final long refreshSkewNanos;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Semaphore inFlight;
+    private final RateLimiter rateLimiter;
 
-    @Value("${keycloak.admin-client.id}")
-    private String adminClientId;  // e.g., banking-admin-client
+    private final AtomicReference<AdminToken> token = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<AdminToken>> tokenRefresh = new AtomicReference<>();
 
-    @Value("${keycloak.admin-client.secret}")
-    private String adminClientSecret;
+    @Autowired
+    public KeycloakAdminService(@Value("${keycloak.base-url}") String keycloakUrl,
+                                @Value("${keycloak.realm}") String realm,
+                                @Value("${keycloak.admin-client.id}") String adminClientId,
+                                @Value("${keycloak.admin-client.secret}") String adminClientSecret,
+                                @Value("${keycloak.admin-client.connect-timeout-ms:2000}") long connectTimeoutMs,
+                                @Value("${keycloak.admin-client.request-timeout-ms:10000}") long requestTimeoutMs,
+                                @Value("${keycloak.admin-client.refresh-skew-ms:30000}") long refreshSkewMs,
+                                @Value("${keycloak.admin-client.max-in-flight:8}") int maxInFlight,
+                                @Value("${keycloak.admin-client.max-requests-per-second:20}") double maxRequestsPerSecond,
+                                ObjectMapper objectMapper) {
+        this.keycloakUrl = keycloakUrl;
+        this.realm = realm;
+        this.adminClientId = adminClientId;  // e.g., banking-admin-client
+        this.adminClientSecret = adminClientSecret;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.refreshSkewNanos = TimeUnit.MILLISECONDS.toNanos(refreshSkewMs);
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-admin-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(executor)
+                .build();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.rateLimiter = new RateLimiter(maxRequestsPerSecond);
+    }
 
-    private final RestTemplate restTemplate;
+    public String createUserInKeycloak(String username, String email, String firstName, String lastName, String tempPassword) {
+        return join(createUserAsync(new NewUser(username, email, firstName, lastName, tempPassword)));
+    }
 
-    private String adminToken;
-    private Instant tokenExpiry = Instant.now(); // Simple caching
+    // Looks a user up by exact username; empty if there is none
+    public Optional<Map<String, Object>> findUserByUsername(String username) {
+        String url = usersUrl() + "?exact=true&username=" + URLEncoder.encode(username, StandardCharsets.UTF_8);
+        List<Map<String, Object>> users = join(call(() -> HttpRequest.newBuilder(URI.create(url)).GET())
+                .thenApply(response -> {
+                    expectSuccess(response, "look up user");
+                    return readList(response.body());
+                }));
+        return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
+    }
 
-    public KeycloakAdminService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    // A user that is already gone counts as deleted
+    public void deleteUserInKeycloak(String userId) {
+        join(deleteUserAsync(userId));
     }
 
-    private synchronized void ensureValidToken() {
-        if (adminToken == null || Instant.now().isAfter(tokenExpiry.minusSeconds(30))) {
-            adminToken = fetchAdminAccessToken();
-            // Tokens usually expire in 60-300 seconds; assume 5 min safe
-            tokenExpiry = Instant.now().plusSeconds(300);
+    // Creates the users in parallel, within the in-flight and rate limits. Never throws for a
+    // single user: each result says whether that user was created, in the order given.
+    public List<ProvisioningResult> createUsers(List<NewUser> users) {
+        List<CompletableFuture<ProvisioningResult>> results = new ArrayList<>(users.size());
+        for (NewUser user : users) {
+            results.add(createUserAsync(user)
+                    .thenApply(id -> new ProvisioningResult(user.getUsername(), id, true, 0, null))
+                    .exceptionally(error -> failed(user.getUsername(), null, error)));
         }
+        return collect(results);
     }
 
-    private String fetchAdminAccessToken() {
-        String tokenUrl = keycloakUrl + "/realms/" + realm + "/protocol/openid-connect/token";
+    // Deletes the users in parallel; users that are already gone count as deleted
+    public List<ProvisioningResult> deleteUsers(List<String> userIds) {
+        List<CompletableFuture<ProvisioningResult>> results = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            results.add(deleteUserAsync(userId)
+                    .thenApply(ignored -> new ProvisioningResult(null, userId, true, 0, null))
+                    .exceptionally(error -> failed(null, userId, error)));
+        }
+        return collect(results);
+    }
+
+    private CompletableFuture<String> createUserAsync(NewUser user) {
+        Map<String, Object> userRepresentation = new HashMap<>();
+        userRepresentation.put("username", user.getUsername());
+        userRepresentation.put("email", user.getEmail());
+        userRepresentation.put("firstName", user.getFirstName());
+        userRepresentation.put("lastName", user.getLastName());
+        userRepresentation.put("enabled", true);
+        userRepresentation.put("emailVerified", false);
 
-        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-        body.add("grant_type", "client_credentials");
-        body.add("client_id", adminClientId);
-        body.add("client_secret", adminClientSecret);
+        // Temporary password - forces change on first login
+        Map<String, Object> cred = new HashMap<>();
+        cred.put("type", "password");
+        cred.put("value", user.getTemporaryPassword());
+        cred.put("temporary", true);
+        userRepresentation.put("credentials", List.of(cred));
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(userRepresentation);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new KeycloakAdminException("Could not serialize Keycloak user", 0, e));
+        }
 
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
+        return call(() -> HttpRequest.newBuilder(URI.create(usersUrl()))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(json)))
+                .thenApply(response -> {
+                    if (response.statusCode() != 201) {
+                        throw new KeycloakAdminException("Failed to create user in Keycloak: HTTP " + response.statusCode(),
+                                response.statusCode());
+                    }
+                    String location = response.headers().firstValue("Location")
+                            .orElseThrow(() -> new KeycloakAdminException("Keycloak did not return the new user's location", 201));
+                    return location.substring(location.lastIndexOf('/') + 1); // Returns Keycloak user ID (sub)
+                });
+    }
 
+    private CompletableFuture<Void> deleteUserAsync(String userId) {
+        String url = usersUrl() + "/" + URLEncoder.encode(userId, StandardCharsets.UTF_8);
+        return call(() -> HttpRequest.newBuilder(URI.create(url)).DELETE())
+                .thenApply(response -> {
+                    if (response.statusCode() != 404) {
+                        expectSuccess(response, "delete user from Keycloak");
+                    }
+                    return null;
+                });
+    }
+
+    // One admin call. Waits on the calling thread for the rate limit and an in-flight slot, so
+    // the bulk methods are throttled where they loop rather than on the HTTP client's threads.
+    private CompletableFuture<HttpResponse<byte[]>> call(Supplier<HttpRequest.Builder> request) {
         try {
-            ResponseEntity<Map> response = restTemplate.postForEntity(tokenUrl, request, Map.class);
-            Map<String, Object> respBody = response.getBody();
-            if (respBody != null && respBody.containsKey("access_token")) {
-                return (String) respBody.get("access_token");
+            rateLimiter.acquire();
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(new KeycloakAdminException("Interrupted waiting to call Keycloak", 0, e));
+        }
+        return authorizedCall(request, true).whenComplete((response, error) -> inFlight.release());
+    }
+
+    // The request is built per attempt so a 401 can be retried with a new token
+    private CompletableFuture<HttpResponse<byte[]>> authorizedCall(Supplier<HttpRequest.Builder> request,
+                                                                   boolean retryUnauthorized) {
+        return accessToken().thenCompose(current -> send(request.get()
+                        .timeout(requestTimeout)
+                        .header("Authorization", "Bearer " + current.getValue())
+                        .header("Accept", "application/json")
+                        .build())
+                .thenCompose(response -> {
+                    if (response.statusCode() == 401 && retryUnauthorized) {
+                        token.compareAndSet(current, null);
+                        return authorizedCall(request, false);
+                    }
+                    return CompletableFuture.completedFuture(response);
+                }));
+    }
+
+    // A pooled connection the server has already closed fails before any response arrives. The
+    // HTTP client only resends GETs on its own; a DELETE is just as safe to send once more.
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request) {
+        CompletableFuture<HttpResponse<byte[]>> first = sendOnce(request);
+        if (!"DELETE".equals(request.method())) {
+            return first;
+        }
+        return first.handle((response, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            Throwable cause = rootCause(error);
+            if (cause instanceof IOException && !(cause instanceof HttpTimeoutException)) {
+                return sendOnce(request);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to get Keycloak admin token", e);
+            return CompletableFuture.<HttpResponse<byte[]>>failedFuture(cause);
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> sendOnce(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // A usable token: the cached one if it hasn't expired, otherwise the result of the shared
+    // refresh. A token that is only due for refresh is still returned straight away.
+    private CompletableFuture<AdminToken> accessToken() {
+        AdminToken current = token.get();
+        long now = System.nanoTime();
+        if (current != null && now < current.getRefreshAt()) {
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<AdminToken> refresh = refreshToken();
+        if (current != null && now < current.getExpiresAt()) {
+            return CompletableFuture.completedFuture(current);
         }
+        return refresh;
+    }
 
-        throw new RuntimeException("Invalid response from Keycloak token endpoint");
+    private CompletableFuture<AdminToken> refreshToken() {
+        while (true) {
+            CompletableFuture<AdminToken> running = tokenRefresh.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<AdminToken> mine = new CompletableFuture<>();
+            if (tokenRefresh.compareAndSet(null, mine)) {
+                fetchAdminAccessToken().whenComplete((fetched, error) -> {
+                    if (error == null) {
+                        token.set(fetched);
+                    }
+                    tokenRefresh.set(null);
+                    if (error == null) {
+                        mine.complete(fetched);
+                    } else {
+                        logger.warn("Keycloak admin token request failed: {}", rootCause(error).toString());
+                        mine.completeExceptionally(error);
+                    }
+                });
+                return mine;
+            }
+        }
     }
 
-    public String createUserInKeycloak(String username, String email, String firstName, String lastName, String tempPassword) {
-        ensureValidToken(); // Get fresh token if needed
+    private CompletableFuture<AdminToken> fetchAdminAccessToken() {
+        String tokenUrl = keycloakUrl + "/realms/" + realm + "/protocol/openid-connect/token";
+        String form = "grant_type=client_credentials" +
+                "&client_id=" + URLEncoder.encode(adminClientId, StandardCharsets.UTF_8) +
+                "&client_secret=" + URLEncoder.encode(adminClientSecret, StandardCharsets.UTF_8);
 
-        String url = keycloakUrl + "/admin/realms/" + realm + "/users";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(tokenUrl))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
 
-        Map<String, Object> userRepresentation = new HashMap<>();
-        userRepresentation.put("username", username);
-        userRepresentation.put("email", email);
-        userRepresentation.put("firstName", firstName);
-        userRepresentation.put("lastName", lastName);
-        userRepresentation.put("enabled", true);
-        userRepresentation.put("emailVerified", false);
+        long requestedAt = System.nanoTime();
+        return send(request).thenApply(response -> {
+            expectSuccess(response, "get Keycloak admin token");
+            Map<String, Object> body = readMap(response.body());
+            Object accessToken = body.get("access_token");
+            if (!(accessToken instanceof String)) {
+                throw new KeycloakAdminException("Invalid response from Keycloak token endpoint", response.statusCode());
+            }
+            // Lifetime counted from when the request was sent, so time on the wire is on our side
+            long lifetimeNanos = body.get("expires_in") instanceof Number
+                    ? TimeUnit.SECONDS.toNanos(((Number) body.get("expires_in")).longValue())
+                    : TimeUnit.SECONDS.toNanos(60);
+            long expiresAt = requestedAt + lifetimeNanos;
+            // Short-lived tokens are refreshed halfway through instead of constantly
+            long refreshAt = expiresAt - Math.min(refreshSkewNanos, lifetimeNanos / 2);
+            return new AdminToken((String) accessToken, refreshAt, expiresAt);
+        });
+    }
 
-        // Temporary password - forces change on first login
-        List<Map<String, Object>> credentials = new ArrayList<>();
-        Map<String, Object> cred = new HashMap<>();
-        cred.put("type", "password");
-        cred.put("value", tempPassword);
-        cred.put("temporary", true);
-        credentials.add(cred);
-        userRepresentation.put("credentials", credentials);
+    private String usersUrl() {
+        return keycloakUrl + "/admin/realms/" + realm + "/users";
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(adminToken);
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private void expectSuccess(HttpResponse<byte[]> response, String action) {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new KeycloakAdminException("Failed to " + action + ": HTTP " + response.statusCode(), response.statusCode());
+        }
+    }
 
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(userRepresentation, headers);
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readMap(byte[] body) {
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (IOException e) {
+            throw new KeycloakAdminException("Invalid response from Keycloak", 0, e);
+        }
+    }
 
-        ResponseEntity<Void> response = restTemplate.exchange(url, HttpMethod.POST, request, Void.class);
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> readList(byte[] body) {
+        try {
+            return objectMapper.readValue(body, List.class);
+        } catch (IOException e) {
+            throw new KeycloakAdminException("Invalid response from Keycloak", 0, e);
+        }
+    }
 
-        if (response.getStatusCode() == HttpStatus.CREATED) {
-            String location = Objects.requireNonNull(response.getHeaders().getLocation()).toString();
-            return location.substring(location.lastIndexOf("/") + 1); // Returns Keycloak user ID (sub)
+    private static <T> List<T> collect(List<CompletableFuture<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
         }
+        return results;
+    }
 
-        throw new RuntimeException("Failed to create user in Keycloak: " + response.getStatusCode());
+    private static ProvisioningResult failed(String username, String userId, Throwable error) {
+        Throwable cause = rootCause(error);
+        int status = cause instanceof KeycloakAdminException ? ((KeycloakAdminException) cause).getStatusCode() : 0;
+        return new ProvisioningResult(username, userId, false, status, cause.getMessage());
     }
 
-    public void deleteUserInKeycloak(String userId) {
-        ensureValidToken(); // Get fresh token if needed
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = rootCause(e);
+            if (cause instanceof KeycloakAdminException) {
+                throw (KeycloakAdminException) cause;
+            }
+            throw new KeycloakAdminException("Keycloak call failed: " + cause, 0, cause);
+        }
+    }
 
-        String url = keycloakUrl + "/admin/realms/" + realm + "/users/" + userId;
+    private static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(adminToken);
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 
-        HttpEntity<Void> request = new HttpEntity<>(headers);
+    @Data
+    @AllArgsConstructor
+    public static class NewUser {
+        private String username;
+        private String email;
+        private String firstName;
+        private String lastName;
+        private String temporaryPassword;
+    }
 
-        try {
-            restTemplate.exchange(url, HttpMethod.DELETE, request, Void.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to delete user from Keycloak", e);
+    // statusCode is Keycloak's HTTP status when it answered, 0 when it couldn't be reached
+    @Data
+    @AllArgsConstructor
+    public static class ProvisioningResult {
+        private String username;
+        private String keycloakUserId;
+        private boolean success;
+        private int statusCode;
+        private String error;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class AdminToken {
+        private String value;
+        private long refreshAt;
+        private long expiresAt;
+    }
+
+    public static class KeycloakAdminException extends RuntimeException {
+        private final int statusCode;
+
+        public KeycloakAdminException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        public KeycloakAdminException(String message, int statusCode, Throwable cause) {
+            super(message, cause);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public boolean isClientError() {
+            return statusCode >= 400 && statusCode < 500;
+        }
+    }
+
+    // Spaces calls evenly at the configured rate. Each caller takes the next free slot with one
+    // atomic update and sleeps until it comes round.
+    static class RateLimiter {
+        private final long intervalNanos;
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+        RateLimiter(double permitsPerSecond) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            long now = System.nanoTime();
+            long previous = nextSlot.getAndUpdate(slot -> Math.max(slot, now) + intervalNanos);
+            long wait = Math.max(previous, now) - now;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,7 +49,15 @@ public class LedgerEntryService {
     }
 
     public BigDecimal getCurrentBalance(Long accountId) {
-        List<LedgerEntry> entries = ledgerEntryRepository.findByAccountIdOrderByCreatedAtDesc(accountId);
-        return entries.isEmpty() ? BigDecimal.ZERO : entries.get(0).getRunningBalance();
+        return ledgerEntryRepository.findFirstByAccountIdOrderByCreatedAtDescIdDesc(accountId)
+                .map(LedgerEntryRepository.RunningBalanceView::getRunningBalance)
+                .orElse(BigDecimal.ZERO);
+    }
+
+    // Balance as of a point in time: running balance of the last entry posted at or before asOf
+    public BigDecimal getBalanceAsOf(Long accountId, LocalDateTime asOf) {
+        return ledgerEntryRepository.findFirstByAccountIdAndCreatedAtLessThanEqualOrderByCreatedAtDescIdDesc(accountId, asOf)
+                .map(LedgerEntryRepository.RunningBalanceView::getRunningBalance)
+                .orElse(BigDecimal.ZERO);
     }
 }
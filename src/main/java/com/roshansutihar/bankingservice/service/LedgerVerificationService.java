@@ -0,0 +1,402 @@
+package com.roshansutihar.bankingservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Ledger reconciliation. For every account it checks that
+//   - each ledger entry's running_balance equals the previous one plus/minus its amount
+//   - accounts.current_balance equals the running_balance of the last entry
+// and records each offending entry or account in ledger_discrepancies.
+//
+// Accounts are split into partitions (an id range, or a slice of the touched ids in incremental
+// mode) that run as fork-join tasks. Each partition reads its accounts and entries through one
+// streaming cursor in a REPEATABLE READ transaction, so balances and entries come from the same
+// snapshot and memory stays flat.
+//
+// Incremental runs only look at accounts with entries since the last completed run (less an
+// overlap for postings in flight), anchoring each chain on the last entry before that point.
+// They miss balance changes made without a ledger entry; the weekly full run catches those.
+//
+// Chains are walked in (created_at, id) order. created_at is stamped by the database when the
+// entry is inserted, which happens under the account's posting lock, so it follows posting order
+// even when the application nodes' clocks disagree; id breaks ties within a batch.
+//
+// Only one run at a time across all instances: a run holds a Postgres advisory lock on a
+// dedicated connection, and other instances skip their scheduled run while it is held.
+@Service
+public class LedgerVerificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerVerificationService.class);
+
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // Arbitrary application-wide key for pg_try_advisory_lock
+    static final long RUN_LOCK_KEY = 0x4C45444745525631L;
+
+    private static final String VERIFY_SELECT = "SELECT a.id AS account_id, a.current_balance, " +
+            "anchor.running_balance AS anchor_balance, le.id AS entry_id, le.entry_type, le.amount, le.running_balance " +
+            "FROM accounts a " +
+            "LEFT JOIN LATERAL (SELECT p.running_balance FROM ledger_entries p " +
+            "WHERE p.account_id = a.id AND p.created_at < ? ORDER BY p.created_at DESC, p.id DESC LIMIT 1) anchor ON true " +
+            "LEFT JOIN ledger_entries le ON le.account_id = a.id AND le.created_at >= ? ";
+
+    private static final String VERIFY_RANGE_SQL = VERIFY_SELECT +
+            "WHERE a.id BETWEEN ? AND ? ORDER BY a.id, le.created_at, le.id";
+
+    private static final String VERIFY_IDS_SQL = VERIFY_SELECT +
+            "WHERE a.id = ANY (?) ORDER BY a.id, le.created_at, le.id";
+
+    private static final String TOUCHED_ACCOUNTS_SQL =
+            "SELECT DISTINCT account_id FROM ledger_entries WHERE created_at >= ? ORDER BY account_id";
+
+    private static final String LAST_COMPLETED_RUN_SQL =
+            "SELECT MAX(started_at) FROM ledger_verification_runs WHERE status = 'COMPLETED'";
+
+    private static final String INSERT_RUN_SQL = "INSERT INTO ledger_verification_runs " +
+            "(mode, checked_since, started_at, status) VALUES (?, ?, ?, 'RUNNING')";
+
+    private static final String FINISH_RUN_SQL = "UPDATE ledger_verification_runs SET status = ?, finished_at = ?, " +
+            "accounts_checked = ?, entries_checked = ?, discrepancy_count = ? WHERE id = ?";
+
+    private static final String INSERT_DISCREPANCY_SQL = "INSERT INTO ledger_discrepancies " +
+            "(run_id, account_id, ledger_entry_id, kind, expected_balance, actual_balance) VALUES (?, ?, ?, ?, ?, ?)";
+
+    public enum DiscrepancyKind {
+        CHAIN_BREAK, BALANCE_MISMATCH
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${banking.ledger-verifier.parallelism:4}")
+    private int parallelism;
+
+    @Value("${banking.ledger-verifier.partition-size:5000}")
+    private int partitionSize;
+
+    @Value("${banking.ledger-verifier.overlap-minutes:10}")
+    private long overlapMinutes;
+
+    @Value("${banking.ledger-verifier.max-reported:10000}")
+    private int maxReported;
+
+    private ForkJoinPool pool;
+    private TransactionTemplate readTemplate;
+    private Counter discrepancyCounter;
+
+    @PostConstruct
+    void init() {
+        pool = new ForkJoinPool(parallelism);
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setReadOnly(true);
+        readTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        discrepancyCounter = meterRegistry.counter("banking.ledger.discrepancies");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Scheduled(cron = "${banking.ledger-verifier.incremental-cron:0 40 * * * *}")
+    public void runIncremental() {
+        verify(true);
+    }
+
+    @Scheduled(cron = "${banking.ledger-verifier.full-cron:0 0 3 * * SUN}")
+    public void runFull() {
+        verify(false);
+    }
+
+    // Incremental falls back to a full run when nothing has completed yet. Returns null if a
+    // run is already in progress on any instance.
+    public VerificationReport verify(boolean incremental) {
+        // The lock belongs to the session, so it is taken and released on the one connection
+        // held open for the run; the run's own queries use other pooled connections
+        return jdbcTemplate.execute((ConnectionCallback<VerificationReport>) connection -> {
+            if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+                logger.info("Ledger verification already running, skipping");
+                return null;
+            }
+            try {
+                LocalDateTime since = null;
+                if (incremental) {
+                    Timestamp lastRun = jdbcTemplate.queryForObject(LAST_COMPLETED_RUN_SQL, Timestamp.class);
+                    since = lastRun != null ? lastRun.toLocalDateTime().minusMinutes(overlapMinutes) : null;
+                }
+                return run(since);
+            } finally {
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+            }
+        });
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, RUN_LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private VerificationReport run(LocalDateTime since) {
+        String mode = since == null ? "FULL" : "INCREMENTAL";
+        LocalDateTime startedAt = LocalDateTime.now();
+        long runId = insertRun(mode, since, startedAt);
+
+        try {
+            PartitionResult result;
+            if (since == null) {
+                Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM accounts", Long.class);
+                Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM accounts", Long.class);
+                result = minId == null ? new PartitionResult()
+                        : pool.invoke(new PartitionTask(minId, maxId, null, BEGINNING));
+            } else {
+                List<Long> touched = jdbcTemplate.queryForList(TOUCHED_ACCOUNTS_SQL, Long.class, Timestamp.valueOf(since));
+                result = touched.isEmpty() ? new PartitionResult()
+                        : pool.invoke(new PartitionTask(0, 0, touched, since));
+            }
+
+            if (!result.discrepancies.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_DISCREPANCY_SQL, result.discrepancies, 500, (ps, discrepancy) -> {
+                    ps.setLong(1, runId);
+                    ps.setLong(2, discrepancy.getAccountId());
+                    ps.setObject(3, discrepancy.getLedgerEntryId(), java.sql.Types.BIGINT);
+                    ps.setString(4, discrepancy.getKind().name());
+                    ps.setBigDecimal(5, discrepancy.getExpectedBalance());
+                    ps.setBigDecimal(6, discrepancy.getActualBalance());
+                });
+            }
+            jdbcTemplate.update(FINISH_RUN_SQL, "COMPLETED", Timestamp.valueOf(LocalDateTime.now()),
+                    result.accounts, result.entries, result.discrepancyCount, runId);
+            discrepancyCounter.increment(result.discrepancyCount);
+
+            if (result.discrepancyCount > 0) {
+                logger.error("Ledger verification run {} ({}) found {} discrepancies across {} accounts",
+                        runId, mode, result.discrepancyCount, result.accounts);
+            } else {
+                logger.info("Ledger verification run {} ({}) checked {} accounts, {} entries: no discrepancies",
+                        runId, mode, result.accounts, result.entries);
+            }
+            return new VerificationReport(runId, mode, since, result.accounts, result.entries,
+                    result.discrepancyCount, result.discrepancies);
+        } catch (RuntimeException e) {
+            jdbcTemplate.update(FINISH_RUN_SQL, "FAILED", Timestamp.valueOf(LocalDateTime.now()), 0, 0, 0, runId);
+            logger.error("Ledger verification run {} failed", runId, e);
+            throw e;
+        }
+    }
+
+    private long insertRun(String mode, LocalDateTime since, LocalDateTime startedAt) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_RUN_SQL, new String[]{"id"});
+            ps.setString(1, mode);
+            ps.setTimestamp(2, since != null ? Timestamp.valueOf(since) : null);
+            ps.setTimestamp(3, Timestamp.valueOf(startedAt));
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    // Splits until a partition holds at most partition-size accounts (ids in range mode)
+    private class PartitionTask extends RecursiveTask<PartitionResult> {
+        private final long fromId;
+        private final long toId;
+        private final List<Long> accountIds;
+        private final LocalDateTime since;
+
+        PartitionTask(long fromId, long toId, List<Long> accountIds, LocalDateTime since) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.accountIds = accountIds;
+            this.since = since;
+        }
+
+        @Override
+        protected PartitionResult compute() {
+            PartitionTask left;
+            PartitionTask right;
+            if (accountIds != null) {
+                if (accountIds.size() <= partitionSize) {
+                    return verifyPartition(this);
+                }
+                int middle = accountIds.size() / 2;
+                left = new PartitionTask(0, 0, accountIds.subList(0, middle), since);
+                right = new PartitionTask(0, 0, accountIds.subList(middle, accountIds.size()), since);
+            } else {
+                if (toId - fromId + 1 <= partitionSize) {
+                    return verifyPartition(this);
+                }
+                long middle = fromId + (toId - fromId) / 2;
+                left = new PartitionTask(fromId, middle, null, since);
+                right = new PartitionTask(middle + 1, toId, null, since);
+            }
+            left.fork();
+            PartitionResult result = right.compute();
+            return result.merge(left.join(), maxReported);
+        }
+    }
+
+    private PartitionResult verifyPartition(PartitionTask partition) {
+        ChainChecker checker = new ChainChecker(maxReported);
+        readTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    partition.accountIds != null ? VERIFY_IDS_SQL : VERIFY_RANGE_SQL);
+            ps.setFetchSize(1000);
+            ps.setTimestamp(1, Timestamp.valueOf(partition.since));
+            ps.setTimestamp(2, Timestamp.valueOf(partition.since));
+            if (partition.accountIds != null) {
+                ps.setArray(3, connection.createArrayOf("bigint", partition.accountIds.toArray()));
+            } else {
+                ps.setLong(3, partition.fromId);
+                ps.setLong(4, partition.toId);
+            }
+            return ps;
+        }, checker));
+        checker.finishAccount();
+        return checker.result;
+    }
+
+    // Walks the rows of one partition, ordered by account then entry, checking each chain
+    private static class ChainChecker implements RowCallbackHandler {
+        private final PartitionResult result = new PartitionResult();
+        private final int maxReported;
+        private Long accountId;
+        private BigDecimal accountBalance;
+        private BigDecimal expected;
+        private Long lastEntryId;
+
+        ChainChecker(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long rowAccountId = rs.getLong("account_id");
+            if (accountId == null || rowAccountId != accountId) {
+                finishAccount();
+                BigDecimal anchor = rs.getBigDecimal("anchor_balance");
+                accountId = rowAccountId;
+                accountBalance = rs.getBigDecimal("current_balance");
+                expected = anchor != null ? anchor : BigDecimal.ZERO;
+                lastEntryId = null;
+            }
+
+            long entryId = rs.getLong("entry_id");
+            if (rs.wasNull()) {
+                return;
+            }
+            result.entries++;
+            BigDecimal amount = rs.getBigDecimal("amount");
+            BigDecimal runningBalance = rs.getBigDecimal("running_balance");
+            BigDecimal computed = "DEBIT".equals(rs.getString("entry_type"))
+                    ? expected.subtract(amount)
+                    : expected.add(amount);
+            if (computed.compareTo(runningBalance) != 0) {
+                result.add(new Discrepancy(accountId, entryId, DiscrepancyKind.CHAIN_BREAK, computed, runningBalance), maxReported);
+            }
+            // Continue from what was recorded so one bad entry is reported once, not for every later entry
+            expected = runningBalance;
+            lastEntryId = entryId;
+        }
+
+        void finishAccount() {
+            if (accountId == null) {
+                return;
+            }
+            result.accounts++;
+            if (accountBalance.compareTo(expected) != 0) {
+                result.add(new Discrepancy(accountId, lastEntryId, DiscrepancyKind.BALANCE_MISMATCH, expected, accountBalance),
+                        maxReported);
+            }
+            accountId = null;
+        }
+    }
+
+    private static class PartitionResult {
+        private long accounts;
+        private long entries;
+        private long discrepancyCount;
+        private final List<Discrepancy> discrepancies = new ArrayList<>();
+
+        void add(Discrepancy discrepancy, int maxReported) {
+            discrepancyCount++;
+            if (discrepancies.size() < maxReported) {
+                discrepancies.add(discrepancy);
+            }
+        }
+
+        PartitionResult merge(PartitionResult other, int maxReported) {
+            accounts += other.accounts;
+            entries += other.entries;
+            discrepancyCount += other.discrepancyCount;
+            for (Discrepancy discrepancy : other.discrepancies) {
+                if (discrepancies.size() >= maxReported) {
+                    break;
+                }
+                discrepancies.add(discrepancy);
+            }
+            return this;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Discrepancy {
+        private final Long accountId;
+        private final Long ledgerEntryId;
+        private final DiscrepancyKind kind;
+        private final BigDecimal expectedBalance;
+        private final BigDecimal actualBalance;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class VerificationReport {
+        private final long runId;
+        private final String mode;
+        private final LocalDateTime checkedSince;
+        private final long accountsChecked;
+        private final long entriesChecked;
+        private final long discrepancyCount;
+        private final List<Discrepancy> discrepancies;
+    }
+}
@@ -0,0 +1,496 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.email.EmailService;
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.AccountType;
+import com.roshansutihar.bankingservice.entity.Business;
+import com.roshansutihar.bankingservice.entity.Individual;
+import com.roshansutihar.bankingservice.entity.OnboardingRequest;
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.enums.AccountStatus;
+import com.roshansutihar.bankingservice.enums.OnboardingState;
+import com.roshansutihar.bankingservice.enums.UserStatus;
+import com.roshansutihar.bankingservice.enums.UserType;
+import com.roshansutihar.bankingservice.idgen.AccountNumberGenerator;
+import com.roshansutihar.bankingservice.repository.OnboardingRequestRepository;
+import com.roshansutihar.bankingservice.request.BusinessAccountRequest;
+import com.roshansutihar.bankingservice.request.IndividualAccountRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Runs teller onboarding requests (see OnboardingService) as a saga:
+//   PENDING           create the Keycloak user                      -> IDENTITY_CREATED
+//   IDENTITY_CREATED  create user, profile and account and queue the
+//                     welcome email in one database transaction     -> COMPLETED
+//   COMPENSATING      delete the Keycloak user again                -> FAILED
+// A step that fails for good (or runs out of attempts) after the Keycloak user exists moves the
+// request to COMPENSATING; before that it goes straight to FAILED.
+//
+// Worker threads claim due requests with the same lease scheme as the email outbox and run one
+// step per claim; a request that moved on is due again at once and is picked up by the next
+// claim. A failed step is retried with exponential backoff. Since every transition is stored,
+// a restart resumes each request from its last completed step. Transitions are saved against
+// the version read after the claim: if the lease ran out and another worker claimed the request
+// meanwhile, the save fails and the step is left to that worker.
+@Component
+public class OnboardingSaga {
+
+    private static final Logger logger = LoggerFactory.getLogger(OnboardingSaga.class);
+
+    @Autowired
+    private OnboardingRequestRepository onboardingRequestRepository;
+
+    @Autowired
+    private KeycloakAdminService keycloakAdminService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private IndividualService individualService;
+
+    @Autowired
+    private BusinessService businessService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AccountTypeService accountTypeService;
+
+    @Autowired
+    private AccountNumberGenerator accountNumberGenerator;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${payment.routing.number}")
+    private String routingNumber;
+
+    @Value("${banking.onboarding.workers:4}")
+    private int workers;
+
+    // Small, so that a bulk submission spreads over all workers instead of queueing behind one
+    @Value("${banking.onboarding.batch-size:2}")
+    private int batchSize;
+
+    @Value("${banking.onboarding.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${banking.onboarding.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${banking.onboarding.base-backoff-ms:2000}")
+    private long baseBackoffMs;
+
+    @Value("${banking.onboarding.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${banking.onboarding.lease-ms:120000}")
+    private long leaseMs;
+
+    private Counter completedCounter;
+    private Counter failedCounter;
+
+    private final Object signal = new Object();
+    private boolean wakePending;
+    private volatile boolean running;
+    private final List<Thread> threads = new ArrayList<>();
+
+    @PostConstruct
+    void init() {
+        completedCounter = meterRegistry.counter("banking.onboarding.completed");
+        failedCounter = meterRegistry.counter("banking.onboarding.failed");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            Thread thread = new Thread(this::runWorker, "onboarding-saga-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        wakeUp();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+        threads.clear();
+    }
+
+    // Wakes the workers once the caller's transaction commits, so a new request starts at once
+    public void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    public void wakeUp() {
+        synchronized (signal) {
+            wakePending = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            List<Long> claimed;
+            try {
+                claimed = transactionTemplate.execute(status -> onboardingRequestRepository.claimDue(batchSize, leaseMs));
+            } catch (DataAccessException e) {
+                logger.warn("Could not claim onboarding requests: {}", e.getMessage());
+                awaitWork();
+                continue;
+            }
+            if (claimed == null || claimed.isEmpty()) {
+                awaitWork();
+                continue;
+            }
+            for (Long id : claimed) {
+                try {
+                    onboardingRequestRepository.findById(id).ifPresent(this::runStep);
+                } catch (OptimisticLockingFailureException e) {
+                    logger.info("Onboarding request {} was claimed by another worker; leaving it", id);
+                } catch (RuntimeException e) {
+                    // The lease brings the request back once it runs out
+                    logger.error("Onboarding step for request {} failed unexpectedly", id, e);
+                }
+            }
+        }
+    }
+
+    private void awaitWork() {
+        synchronized (signal) {
+            if (!wakePending && running) {
+                try {
+                    signal.wait(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            wakePending = false;
+        }
+    }
+
+    private void runStep(OnboardingRequest request) {
+        switch (request.getState()) {
+            case PENDING -> createIdentity(request);
+            case IDENTITY_CREATED -> createRecords(request);
+            case COMPENSATING -> removeIdentity(request);
+            default -> { }
+        }
+    }
+
+    // Step 1: the Keycloak user, created with the temporary password chosen at submission
+    private void createIdentity(OnboardingRequest request) {
+        String keycloakUserId;
+        try {
+            String[] names = keycloakNames(request);
+            keycloakUserId = keycloakAdminService.createUserInKeycloak(request.getUsername(), request.getEmail(),
+                    names[0], names[1], request.getTemporaryPassword());
+        } catch (KeycloakAdminService.KeycloakAdminException e) {
+            if (e.getStatusCode() == 409) {
+                adoptOrFail(request);
+            } else if (e.isClientError()) {
+                moveTo(request, OnboardingState.FAILED,
+                        "Account creation failed: Keycloak refused the user (HTTP " + e.getStatusCode() + ")");
+            } else {
+                retryOrGiveUp(request, e, OnboardingState.FAILED);
+            }
+            return;
+        } catch (StepRejectedException e) {
+            moveTo(request, OnboardingState.FAILED, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            retryOrGiveUp(request, e, OnboardingState.FAILED);
+            return;
+        }
+        request.setKeycloakUserId(keycloakUserId);
+        moveTo(request, OnboardingState.IDENTITY_CREATED, null);
+        logger.info("Onboarding {}: created Keycloak user {}", request.getReference(), keycloakUserId);
+    }
+
+    // Either the username is taken, or an earlier attempt of ours created the user and the worker
+    // died before recording it. Only a user created after this request was submitted, with the
+    // same email, is taken to be ours.
+    private void adoptOrFail(OnboardingRequest request) {
+        Optional<String> own;
+        try {
+            own = findOwnIdentity(request);
+        } catch (RuntimeException e) {
+            retryOrGiveUp(request, e, OnboardingState.FAILED);
+            return;
+        }
+        if (own.isPresent()) {
+            request.setKeycloakUserId(own.get());
+            moveTo(request, OnboardingState.IDENTITY_CREATED, null);
+            logger.info("Onboarding {}: picked up Keycloak user {} from an earlier attempt",
+                    request.getReference(), own.get());
+        } else {
+            moveTo(request, OnboardingState.FAILED, "This username is already registered. Please try a different one.");
+        }
+    }
+
+    // Step 2: everything on our side, committed together with the step's own transition, so a
+    // request is either COMPLETED with all its rows or still IDENTITY_CREATED with none. The
+    // transition is made on a copy loaded in that transaction, leaving the caller's copy as it
+    // was if the transaction rolls back.
+    private void createRecords(OnboardingRequest pending) {
+        try {
+            OnboardingRequest completed = transactionTemplate.execute(status -> {
+                OnboardingRequest request = onboardingRequestRepository.findById(pending.getId())
+                        .orElseThrow(() -> new StepRejectedException("Onboarding request disappeared"));
+                if (!request.getVersion().equals(pending.getVersion())) {
+                    throw new ObjectOptimisticLockingFailureException(OnboardingRequest.class, pending.getId());
+                }
+                if (userService.getUserByUsername(request.getUsername()) != null) {
+                    throw new StepRejectedException("This username is already registered. Please try a different one.");
+                }
+                Account account = request.getUserType() == UserType.BUSINESS
+                        ? createBusinessRecords(request, readPayload(request, BusinessAccountRequest.class))
+                        : createIndividualRecords(request, readPayload(request, IndividualAccountRequest.class));
+
+                emailService.queueTellerAccountCreationEmail(
+                        request.getEmail(),
+                        request.getUsername(),
+                        request.getTemporaryPassword(),
+                        account.getAccountNumber(),
+                        account.getRoutingNumber()
+                );
+                // The outbox row now holds the only copy, committed or rolled back with this one
+                request.setTemporaryPassword(null);
+
+                request.setUserId(account.getUser().getId());
+                request.setAccountNumber(account.getAccountNumber());
+                auditLogService.logUserAction(account.getUser().getId(), "ACCOUNT_CREATED", "accounts", account.getId(),
+                        Map.of("accountNumber", account.getAccountNumber(), "onboardingReference", request.getReference().toString(),
+                                "submittedBy", String.valueOf(request.getSubmittedBy())));
+                moveTo(request, OnboardingState.COMPLETED, null);
+                return request;
+            });
+            completedCounter.increment();
+            logger.info("Onboarding {}: created account {} for {}", completed.getReference(),
+                    completed.getAccountNumber(), completed.getUsername());
+        } catch (OptimisticLockingFailureException e) {
+            logger.info("Onboarding {}: claimed by another worker; leaving the step to it", pending.getReference());
+        } catch (StepRejectedException e) {
+            moveTo(pending, OnboardingState.COMPENSATING, e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            moveTo(pending, OnboardingState.COMPENSATING, "This username is already registered. Please try a different one.");
+        } catch (RuntimeException e) {
+            retryOrGiveUp(pending, e, OnboardingState.COMPENSATING);
+        }
+    }
+
+    // Compensation for step 1
+    private void removeIdentity(OnboardingRequest request) {
+        try {
+            if (request.getKeycloakUserId() != null) {
+                keycloakAdminService.deleteUserInKeycloak(request.getKeycloakUserId());
+                logger.info("Onboarding {}: removed Keycloak user {}", request.getReference(), request.getKeycloakUserId());
+            }
+        } catch (RuntimeException e) {
+            if (request.getAttempts() >= maxAttempts) {
+                logger.error("Onboarding {}: giving up on removing Keycloak user {}; it has to be deleted by hand",
+                        request.getReference(), request.getKeycloakUserId(), e);
+            }
+            retryOrGiveUp(request, e, OnboardingState.FAILED);
+            return;
+        }
+        moveTo(request, OnboardingState.FAILED, request.getLastError());
+    }
+
+    private Account createIndividualRecords(OnboardingRequest onboarding, IndividualAccountRequest request) {
+        User user = createUser(onboarding, UserType.INDIVIDUAL, request.getPhone());
+
+        Individual individual = new Individual();
+        individual.setUser(user);
+        individual.setFirstName(request.getFirstName());
+        individual.setLastName(request.getLastName());
+        individual.setDateOfBirth(request.getDateOfBirth());
+        individual.setSsn(request.getSsn());
+        individual.setAddress(request.getAddress());
+        individualService.createIndividual(individual);
+
+        return createAccount(user, accountTypeService.getCheckingAccountType(), request.isOverdraftProtection());
+    }
+
+    private Account createBusinessRecords(OnboardingRequest onboarding, BusinessAccountRequest request) {
+        User user = createUser(onboarding, UserType.BUSINESS, request.getPhone());
+
+        Business business = new Business();
+        business.setUser(user);
+        business.setBusinessName(request.getBusinessName());
+        business.setTaxId(request.getTaxId());
+        business.setAddress(request.getAddress());
+        businessService.createBusiness(business);
+
+        return createAccount(user, accountTypeService.getBusinessAccountType(), request.isOverdraftProtection());
+    }
+
+    private User createUser(OnboardingRequest onboarding, UserType userType, String phone) {
+        User user = new User();
+        user.setKeycloakSub(onboarding.getKeycloakUserId());
+        user.setUserType(userType);
+        user.setUsername(onboarding.getUsername());
+        user.setEmail(onboarding.getEmail());
+        user.setPhone(phone);
+        user.setStatus(UserStatus.ACTIVE);
+        return userService.createOrUpdateUser(user);
+    }
+
+    private Account createAccount(User user, AccountType accountType, boolean overdraftProtection) {
+        Account account = new Account();
+        account.setUser(user);
+        account.setAccountType(accountType);
+        account.setAccountNumber(accountNumberGenerator.nextAccountNumber());
+        account.setRoutingNumber(routingNumber);
+        account.setCurrentBalance(BigDecimal.ZERO);
+        account.setAvailableBalance(BigDecimal.ZERO);
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setOverdraftProtection(overdraftProtection);
+        return accountService.createAccount(account);
+    }
+
+    private String[] keycloakNames(OnboardingRequest request) {
+        if (request.getUserType() == UserType.BUSINESS) {
+            BusinessAccountRequest business = readPayload(request, BusinessAccountRequest.class);
+            return new String[] {"Business", business.getBusinessName()};
+        }
+        IndividualAccountRequest individual = readPayload(request, IndividualAccountRequest.class);
+        return new String[] {individual.getFirstName(), individual.getLastName()};
+    }
+
+    private Optional<String> findOwnIdentity(OnboardingRequest request) {
+        Optional<Map<String, Object>> existing = keycloakAdminService.findUserByUsername(request.getUsername());
+        if (existing.isEmpty()) {
+            return Optional.empty();
+        }
+        Map<String, Object> user = existing.get();
+        Object created = user.get("createdTimestamp");
+        if (!request.getEmail().equalsIgnoreCase(String.valueOf(user.get("email"))) || !(created instanceof Number)) {
+            return Optional.empty();
+        }
+        LocalDateTime createdAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) created).longValue()),
+                ZoneId.systemDefault());
+        // A minute of slack for clock differences between us and Keycloak
+        return createdAt.isBefore(request.getCreatedAt().minusMinutes(1))
+                ? Optional.empty() : Optional.of((String) user.get("id"));
+    }
+
+    private <T> T readPayload(OnboardingRequest request, Class<T> type) {
+        try {
+            return objectMapper.readValue(request.getPayload(), type);
+        } catch (JsonProcessingException e) {
+            throw new StepRejectedException("Stored onboarding request could not be read");
+        }
+    }
+
+    private void retryOrGiveUp(OnboardingRequest request, RuntimeException e, OnboardingState giveUpState) {
+        String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        if (request.getAttempts() >= maxAttempts) {
+            // A compensation keeps the reason it was started for
+            moveTo(request, giveUpState, request.getState() == OnboardingState.COMPENSATING
+                    ? request.getLastError() : "Account creation failed: " + error);
+            return;
+        }
+        logger.warn("Onboarding {}: {} step failed (attempt {}), retrying: {}", request.getReference(),
+                request.getState(), request.getAttempts(), error);
+        request.setNextAttemptAt(LocalDateTime.now().plus(backoffMs(request.getAttempts()), ChronoUnit.MILLIS));
+        if (request.getState() != OnboardingState.COMPENSATING) {
+            request.setLastError(error);
+        }
+        onboardingRequestRepository.save(request);
+    }
+
+    // Stores the transition; the next step is due straight away. The temporary password goes as
+    // soon as no step can need it again, the payload once the request is finished.
+    private void moveTo(OnboardingRequest request, OnboardingState state, String error) {
+        request.setState(state);
+        request.setAttempts(0);
+        request.setLastError(error);
+        request.setNextAttemptAt(LocalDateTime.now());
+        if (state == OnboardingState.COMPENSATING) {
+            request.setTemporaryPassword(null);
+        }
+        if (state.isFinished()) {
+            request.setPayload(null);
+            request.setTemporaryPassword(null);
+            request.setCompletedAt(LocalDateTime.now());
+            if (state == OnboardingState.FAILED) {
+                failedCounter.increment();
+                logger.warn("Onboarding {} for {} failed: {}", request.getReference(), request.getUsername(), error);
+            }
+        }
+        onboardingRequestRepository.save(request);
+    }
+
+    // Exponential backoff with +/-20% jitter
+    private long backoffMs(int attempts) {
+        long backoff = baseBackoffMs << Math.min(attempts - 1, 20);
+        backoff = Math.min(backoff, maxBackoffMs);
+        return (long) (backoff * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    // A step that can't succeed on retry
+    private static class StepRejectedException extends RuntimeException {
+        StepRejectedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.entity.OnboardingRequest;
+import com.roshansutihar.bankingservice.enums.OnboardingState;
+import com.roshansutihar.bankingservice.enums.UserType;
+import com.roshansutihar.bankingservice.repository.OnboardingRequestRepository;
+import com.roshansutihar.bankingservice.request.BusinessAccountRequest;
+import com.roshansutihar.bankingservice.request.IndividualAccountRequest;
+import com.roshansutihar.bankingservice.response.OnboardingStatusResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+// Teller onboarding. Submitting only validates the request and stores it; OnboardingSaga creates
+// the Keycloak user, the user, profile and account in the background, and callers follow the
+// request by its reference.
+@Service
+public class OnboardingService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private OnboardingRequestRepository onboardingRequestRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private OnboardingSaga onboardingSaga;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${payment.routing.number}")
+    private String routingNumber;
+
+    @Transactional
+    public UUID submitIndividual(IndividualAccountRequest request, String submittedBy) {
+        return submit(UserType.INDIVIDUAL, request.getUsername(), request.getEmail(), request, submittedBy);
+    }
+
+    @Transactional
+    public UUID submitBusiness(BusinessAccountRequest request, String submittedBy) {
+        return submit(UserType.BUSINESS, request.getUsername(), request.getEmail(), request, submittedBy);
+    }
+
+    public Optional<OnboardingStatusResponse> getStatus(UUID reference) {
+        return onboardingRequestRepository.findByReference(reference).map(this::toStatus);
+    }
+
+    private UUID submit(UserType userType, String username, String email, Object request, String submittedBy) {
+        if (username == null || username.isBlank() || email == null || email.isBlank()) {
+            throw new RuntimeException("Username and email are required.");
+        }
+        if (userService.getUserByUsername(username) != null) {
+            throw new RuntimeException("Username '" + username + "' is already taken. Please choose a different username.");
+        }
+
+        OnboardingRequest onboarding = new OnboardingRequest();
+        onboarding.setReference(UUID.randomUUID());
+        onboarding.setUserType(userType);
+        onboarding.setUsername(username);
+        onboarding.setEmail(email);
+        onboarding.setPayload(toJson(request));
+        onboarding.setTemporaryPassword(generateTemporaryPassword());
+        onboarding.setState(OnboardingState.PENDING);
+        onboarding.setNextAttemptAt(LocalDateTime.now());
+        onboarding.setSubmittedBy(submittedBy);
+        try {
+            onboardingRequestRepository.saveAndFlush(onboarding);
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException("An account for username '" + username + "' is already being created.");
+        }
+
+        onboardingSaga.wakeUpAfterCommit();
+        return onboarding.getReference();
+    }
+
+    private OnboardingStatusResponse toStatus(OnboardingRequest onboarding) {
+        OnboardingState state = onboarding.getState();
+        String message;
+        if (state == OnboardingState.COMPLETED) {
+            message = onboarding.getUserType() == UserType.BUSINESS
+                    ? "Business account created successfully. Login details have been sent to the provided email."
+                    : "Account created successfully. Login details have been sent to your email.";
+        } else if (state == OnboardingState.FAILED) {
+            message = onboarding.getLastError();
+        } else {
+            message = "Account creation in progress.";
+        }
+        return new OnboardingStatusResponse(
+                onboarding.getReference(),
+                onboarding.getUsername(),
+                state.name(),
+                state.isFinished(),
+                onboarding.getAccountNumber(),
+                state == OnboardingState.COMPLETED ? routingNumber : null,
+                message
+        );
+    }
+
+    private String toJson(Object request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not store onboarding request", e);
+        }
+    }
+
+    private String generateTemporaryPassword() {
+        String upperCase = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        String lowerCase = "abcdefghijklmnopqrstuvwxyz";
+        String numbers = "0123456789";
+        String specialChars = "!@#$%^&*";
+        String allChars = upperCase + lowerCase + numbers + specialChars;
+
+        StringBuilder sb = new StringBuilder(12);
+
+        // Ensure at least one character from each category
+        sb.append(upperCase.charAt(RANDOM.nextInt(upperCase.length())));
+        sb.append(lowerCase.charAt(RANDOM.nextInt(lowerCase.length())));
+        sb.append(numbers.charAt(RANDOM.nextInt(numbers.length())));
+        sb.append(specialChars.charAt(RANDOM.nextInt(specialChars.length())));
+
+        // Fill remaining characters
+        for (int i = 4; i < 12; i++) {
+            sb.append(allChars.charAt(RANDOM.nextInt(allChars.length())));
+        }
+
+        // Shuffle the characters
+        char[] chars = sb.toString().toCharArray();
+        for (int i = chars.length - 1; i > 0; i--) {
+            int j = RANDOM.nextInt(i + 1);
+            char temp = chars[i];
+            chars[i] = chars[j];
+            chars[j] = temp;
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,32 @@
+package com.roshansutihar.bankingservice.service;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Payment failure with the HTTP status the API should answer with, plus any extra fields
+// (e.g. required vs. available amount) the client shows alongside the error.
+public class PaymentProcessingException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final Map<String, Object> details = new LinkedHashMap<>();
+
+    public PaymentProcessingException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public PaymentProcessingException withDetail(String key, Object value) {
+        details.put(key, value);
+        return this;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+}
@@ -0,0 +1,338 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Hold;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.enums.HoldStatus;
+import com.roshansutihar.bankingservice.enums.PaymentSessionStatus;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.repository.HoldRepository;
+import com.roshansutihar.bankingservice.request.PaymentRequest;
+import com.roshansutihar.bankingservice.response.PaymentResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+// QR payment pipeline shared by the web dashboard and the mobile API.
+//
+// validate -> hold -> notify core -> capture | release
+//
+// Only hold and capture/release touch the database, each in its own short transaction.
+// The payments-core call runs with no transaction (and so no pooled connection or row lock)
+// held; the hold keeps the funds aside meanwhile.
+//
+// The hold is released only when the core clearly turns the payment down. If the completion
+// call has no clear answer (timeout, 5xx, circuit open) the core may still have taken the
+// payment, so the hold stays ACTIVE and the transaction PENDING; reconcileOpenPayments() later
+// settles it from the session's status. Until then a retry for the same session gets a 409.
+@Service
+public class PaymentProcessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentProcessingService.class);
+
+    @Autowired
+    private PaymentsCoreClient paymentsCoreClient;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionTypeService transactionTypeService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Value("${payment.routing.number}")
+    private String sourceRoutingNumber;
+
+    @Value("${banking.holds.payment-minutes:30}")
+    private long holdMinutes;
+
+    @Value("${banking.payments.reconcile-after-ms:120000}")
+    private long reconcileAfterMs;
+
+    @Value("${banking.payments.reconcile-batch-size:100}")
+    private int reconcileBatchSize;
+
+    // Retries with the same key (falling back to the merchant's transactionRef) get the first
+    // response back instead of running the pipeline again
+    public PaymentResponse processPayment(User payer, PaymentRequest request, String idempotencyKey) {
+        String key = idempotencyKey != null && !idempotencyKey.isBlank() ? idempotencyKey : request.getTransactionRef();
+        String requestHash = IdempotencyService.fingerprint(request.getSessionId(), request.getAmount(),
+                request.getMerchantId(), request.getTransactionRef(), request.getPayerAccountId());
+        return idempotencyService.execute("PAYMENT", payer.getId() + ":" + key, requestHash,
+                PaymentResponse.class, () -> processPayment(payer, request));
+    }
+
+    public PaymentResponse processPayment(User payer, PaymentRequest request) {
+        // 1. Validate
+        PaymentsCoreClient.PaymentSession session;
+        try {
+            session = paymentsCoreClient.getPaymentSession(request.getSessionId()).join();
+        } catch (CompletionException e) {
+            PaymentsCoreClient.PaymentsCoreException cause = coreFailure(e);
+            if (cause.isRejected()) {
+                throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Invalid or expired payment session");
+            }
+            throw upstreamFailure(cause, "Payments core unavailable: " + cause.getMessage());
+        }
+        validatePaymentParameters(session, request.getAmount(), session.getCurrency(),
+                request.getMerchantId(), request.getTransactionRef());
+
+        Account payerAccount = accountService.getAccountById(request.getPayerAccountId())
+                .orElseThrow(() -> new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Invalid account"));
+        if (!payerAccount.getUser().getId().equals(payer.getId())) {
+            throw new PaymentProcessingException(HttpStatus.FORBIDDEN, "Unauthorized account access");
+        }
+
+        TransactionType paymentType = transactionTypeService.getTransactionTypeByCode("PAYMENT")
+                .orElseThrow(() -> new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Payment transaction type not found"));
+
+        // Use validated amount from payment core from here on
+        BigDecimal amount = session.getAmount();
+
+        // 2. Hold
+        Hold hold;
+        try {
+            hold = transactionTemplate.execute(status -> {
+                Transaction pending = new Transaction();
+                pending.setFromAccount(payerAccount);
+                pending.setToAccount(null);
+                pending.setAmount(amount.negate());
+                pending.setDescription("QR Payment to " + request.getMerchantId());
+                pending.setTransactionRef(request.getTransactionRef());
+                pending.setEffectiveDate(LocalDate.now());
+                pending.setTransactionType(paymentType);
+                pending.setStatus(TransactionStatus.PENDING);
+                pending.setTransactionDate(LocalDateTime.now());
+                transactionService.createTransaction(pending);
+
+                return holdService.placeHold(payerAccount, amount, pending, request.getSessionId(),
+                                "QR payment to " + request.getMerchantId(), LocalDateTime.now().plusMinutes(holdMinutes))
+                        .orElseThrow(() -> new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Insufficient balance")
+                                .withDetail("requiredAmount", amount)
+                                .withDetail("availableBalance", payerAccount.getAvailableBalance()));
+            });
+        } catch (DataIntegrityViolationException e) {
+            throw new PaymentProcessingException(HttpStatus.CONFLICT,
+                    "An earlier payment for this session is still being settled");
+        }
+        Transaction txn = hold.getTransaction();
+
+        // 3. Notify core
+        Map<String, Object> completionPayload = new HashMap<>();
+        completionPayload.put("sessionId", request.getSessionId());
+        completionPayload.put("fromAccount", payerAccount.getAccountNumber());
+        completionPayload.put("merchantId", request.getMerchantId());
+        completionPayload.put("grossAmount", amount.doubleValue());
+        completionPayload.put("transactionRef", request.getTransactionRef());
+        completionPayload.put("payerUserId", payer.getId());
+        completionPayload.put("sourceRoutingNumber", sourceRoutingNumber);
+
+        PaymentsCoreClient.PaymentCompletion completion;
+        try {
+            completion = paymentsCoreClient.completePayment(completionPayload).join();
+        } catch (CompletionException e) {
+            PaymentsCoreClient.PaymentsCoreException cause = coreFailure(e);
+            if (cause.isRejected()) {
+                release(hold, txn);
+                throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "PaymentCore rejected: " + cause.getMessage());
+            }
+            logger.warn("Outcome of payment {} (session {}) unknown, hold {} left for reconciliation: {}",
+                    txn.getId(), request.getSessionId(), hold.getId(), cause.getMessage());
+            throw upstreamFailure(cause, "Payment outcome unknown; it will be completed or refunded automatically")
+                    .withDetail("transactionId", txn.getId());
+        }
+
+        if (!completion.isSuccess()) {
+            release(hold, txn);
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "PaymentCore rejected: " +
+                    (completion.getMessage() != null ? completion.getMessage() : "Unknown error"));
+        }
+
+        // 4. Capture
+        capture(hold, txn, payerAccount);
+        auditLogService.logUserAction(payer.getId(), "PAYMENT", "transactions", txn.getId(), Map.of(
+                "amount", amount, "merchantId", String.valueOf(request.getMerchantId()), "sessionId", request.getSessionId(),
+                "paymentReference", String.valueOf(completion.getPaymentReference())));
+
+        return new PaymentResponse(txn.getId(), completion.getPaymentReference(), completion.getSettlementBatchId(),
+                "Payment completed — funds routed to merchant settlement batch");
+    }
+
+    // Settles payment holds whose completion call had no clear answer, from what the payments
+    // core now says about the session. Holds it can't decide yet are looked at again next run.
+    @Scheduled(fixedDelayString = "${banking.payments.reconcile-interval-ms:60000}",
+            initialDelayString = "${banking.payments.reconcile-interval-ms:60000}")
+    public void reconcileOpenPayments() {
+        List<Hold> open = holdRepository.findOpenPaymentHolds(List.of(HoldStatus.ACTIVE, HoldStatus.EXPIRED),
+                LocalDateTime.now().minus(Duration.ofMillis(reconcileAfterMs)), PageRequest.of(0, reconcileBatchSize));
+        for (Hold hold : open) {
+            try {
+                reconcile(hold);
+            } catch (RuntimeException e) {
+                logger.warn("Could not reconcile payment hold {}: {}", hold.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void reconcile(Hold hold) {
+        Transaction txn = hold.getTransaction();
+        PaymentsCoreClient.PaymentSession session;
+        try {
+            session = paymentsCoreClient.getPaymentSession(hold.getPaymentSessionId()).join();
+        } catch (CompletionException e) {
+            PaymentsCoreClient.PaymentsCoreException cause = coreFailure(e);
+            if (cause.isRejected()) {
+                // The core doesn't know the session, so it can't have taken the payment
+                logger.info("Payment {} not found by payments core, releasing hold {}", txn.getId(), hold.getId());
+                release(hold, txn);
+            }
+            return;
+        }
+
+        switch (session.getStatus()) {
+            case COMPLETED -> {
+                // Only an attempt that got as far as capturing can have been paid twice
+                if (holdRepository.existsByPaymentSessionIdAndStatus(hold.getPaymentSessionId(), HoldStatus.CAPTURED)) {
+                    logger.warn("Session {} was paid by another attempt, releasing hold {}",
+                            hold.getPaymentSessionId(), hold.getId());
+                    release(hold, txn);
+                } else {
+                    logger.info("Payments core completed payment {}, capturing hold {}", txn.getId(), hold.getId());
+                    capture(hold, txn, hold.getAccount());
+                    auditLogService.logUserAction(null, "PAYMENT_RECONCILED", "transactions", txn.getId(), Map.of(
+                            "sessionId", hold.getPaymentSessionId(), "outcome", "CAPTURED"));
+                }
+            }
+            case FAILED, CANCELLED, EXPIRED -> {
+                logger.info("Payments core reports payment {} {}, releasing hold {}", txn.getId(), session.getStatus(), hold.getId());
+                release(hold, txn);
+            }
+            case PENDING -> {
+                if (session.getExpiryTime().isBefore(LocalDateTime.now())) {
+                    release(hold, txn);
+                }
+            }
+        }
+    }
+
+    // The core has accepted the payment, so this must not be refused for funds. The held amount
+    // moves from the payer to the merchant settlement GL account.
+    private void capture(Hold hold, Transaction txn, Account payerAccount) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Long settlementAccountId = postingService.glAccountId(
+                    PostingService.GlAccount.MERCHANT_SETTLEMENT, payerAccount.getId());
+            txn.setToAccount(accountService.getAccountReference(settlementAccountId));
+            txn.setStatus(TransactionStatus.PENDING);
+            transactionService.updateTransaction(txn);
+            holdService.capture(hold, txn, settlementAccountId).applyTo(payerAccount);
+        });
+    }
+
+    // A hold the expiry job already returned is just closed. If this fails the hold is left to
+    // expire, and payment holds to the reconciler.
+    private void release(Hold hold, Transaction txn) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (holdService.release(hold) || holdService.closeExpired(hold)) {
+                    txn.setStatus(TransactionStatus.FAILED);
+                    transactionService.updateTransaction(txn);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Could not release hold {} for transaction {}", hold.getId(), txn.getId(), e);
+        }
+    }
+
+    private static PaymentsCoreClient.PaymentsCoreException coreFailure(CompletionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof PaymentsCoreClient.PaymentsCoreException
+                ? (PaymentsCoreClient.PaymentsCoreException) cause
+                : new PaymentsCoreClient.PaymentsCoreException("Payments core call failed: " + cause, cause);
+    }
+
+    // 504 when the core didn't answer in time, 502 when it answered badly or couldn't be reached
+    private static PaymentProcessingException upstreamFailure(PaymentsCoreClient.PaymentsCoreException cause, String message) {
+        boolean timedOut = cause.getCause() instanceof TimeoutException || cause.getCause() instanceof HttpTimeoutException;
+        return new PaymentProcessingException(timedOut ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.BAD_GATEWAY, message);
+    }
+
+    // Checks what the client sent against the session held by the payments core
+    public void validatePaymentParameters(PaymentsCoreClient.PaymentSession sessionData,
+                                          BigDecimal amount,
+                                          String currency,
+                                          String merchantId,
+                                          String transactionRef) {
+        // Check if session is expired
+        if (sessionData.getExpiryTime().isBefore(LocalDateTime.now())) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Payment session has expired");
+        }
+
+        // Check if session is already completed or cancelled
+        if (sessionData.getStatus() != PaymentSessionStatus.PENDING) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST,
+                    "Payment session is no longer valid (status: " + sessionData.getStatus() + ")");
+        }
+
+        // Validate amount matches exactly (use compareTo for BigDecimal)
+        if (amount.compareTo(sessionData.getAmount()) != 0) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST,
+                    "Amount mismatch. Expected: " + sessionData.getAmount() + ", Received: " + amount);
+        }
+
+        // Validate merchant ID
+        if (!merchantId.equals(sessionData.getMerchantId())) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Merchant ID mismatch");
+        }
+
+        // Validate transaction reference
+        if (!transactionRef.equals(sessionData.getTransactionRef())) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST, "Transaction reference mismatch");
+        }
+
+        // Validate currency
+        if (!currency.equalsIgnoreCase(sessionData.getCurrency())) {
+            throw new PaymentProcessingException(HttpStatus.BAD_REQUEST,
+                    "Currency mismatch. Expected: " + sessionData.getCurrency() + ", Received: " + currency);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.enums.PaymentSessionStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.Builder;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Non-blocking client for the payments core. Uses one shared java.net.http.HttpClient, which
+// keeps connections alive and reuses them, instead of the default RestTemplate (no pool, no
+// timeouts). Every call has a connect timeout, a per-request deadline, a cap on in-flight
+// requests and a circuit breaker, so a slow payments core fails fast instead of holding
+// Tomcat threads.
+@Service
+public class PaymentsCoreClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentsCoreClient.class);
+
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Semaphore inFlight;
+    private final CircuitBreaker circuitBreaker;
+
+    @Autowired
+    public PaymentsCoreClient(@Value("${payments.core.base-url}") String baseUrl,
+                              @Value("${payments.core.connect-timeout-ms:2000}") long connectTimeoutMs,
+                              @Value("${payments.core.request-timeout-ms:5000}") long requestTimeoutMs,
+                              @Value("${payments.core.max-in-flight:64}") int maxInFlight,
+                              @Value("${payments.core.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${payments.core.circuit-breaker.open-ms:30000}") long openMs,
+                              ObjectMapper objectMapper) {
+        this.baseUrl = baseUrl;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "payments-core-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(executor)
+                .build();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openMs);
+    }
+
+    public CompletableFuture<PaymentSession> getPaymentSession(String sessionId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/payments/status/"
+                        + URLEncoder.encode(sessionId, StandardCharsets.UTF_8)))
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        return send(request, body -> {
+            // Payments core sends ISO timestamps, sometimes with a trailing Z
+            String expiryTime = String.valueOf(body.get("expiryTime")).replace("Z", "");
+            return PaymentSession.builder()
+                    .sessionId(sessionId)
+                    .amount(new BigDecimal(body.get("amount").toString()))
+                    .currency((String) body.get("currency"))
+                    .merchantId((String) body.get("merchantId"))
+                    .transactionRef((String) body.get("transactionRef"))
+                    .status(PaymentSessionStatus.valueOf((String) body.get("status")))
+                    .expiryTime(LocalDateTime.parse(expiryTime))
+                    .build();
+        });
+    }
+
+    public CompletableFuture<PaymentCompletion> completePayment(Map<String, Object> payload) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new PaymentsCoreException("Could not serialize payment completion", e));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/payments/complete"))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+
+        return send(request, body -> PaymentCompletion.builder()
+                .success(Boolean.TRUE.equals(body.get("success")))
+                .message(body.get("message") != null ? body.get("message").toString() : null)
+                .paymentReference(body.get("transactionId"))
+                .settlementBatchId((String) body.get("settlementBatchId"))
+                .build());
+    }
+
+    private <T> CompletableFuture<T> send(HttpRequest request, Function<Map<String, Object>, T> mapper) {
+        if (!circuitBreaker.allowRequest()) {
+            return CompletableFuture.failedFuture(new PaymentsCoreException("Payments core unavailable (circuit open)"));
+        }
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new PaymentsCoreException("Payments core busy, too many requests in flight"));
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> response;
+        try {
+            response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            circuitBreaker.abandonTrial();
+            return CompletableFuture.failedFuture(new PaymentsCoreException("Payments core call failed: " + e.getMessage(), e));
+        }
+
+        return response
+                // Overall deadline on top of the per-request timeout, covering body reads too
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(answer -> {
+                    if (answer.statusCode() < 200 || answer.statusCode() >= 300) {
+                        throw new PaymentsCoreException("Payments core returned HTTP " + answer.statusCode(),
+                                answer.statusCode());
+                    }
+                    return mapper.apply(readBody(answer.body()));
+                })
+                .whenComplete((result, error) -> {
+                    inFlight.release();
+                    if (error == null) {
+                        circuitBreaker.recordSuccess();
+                        return;
+                    }
+                    Throwable cause = rootCause(error);
+                    // Only an unhealthy core trips the breaker; a 4xx or an odd body still means it answered
+                    if (isUnavailable(cause)) {
+                        circuitBreaker.recordFailure();
+                    } else {
+                        circuitBreaker.recordSuccess();
+                    }
+                    logger.warn("Payments core call {} {} failed: {}", request.method(), request.uri(), cause.toString());
+                })
+                .exceptionally(error -> {
+                    Throwable cause = rootCause(error);
+                    if (cause instanceof PaymentsCoreException) {
+                        throw (PaymentsCoreException) cause;
+                    }
+                    if (cause instanceof TimeoutException || cause instanceof java.net.http.HttpTimeoutException) {
+                        throw new PaymentsCoreException("Payments core timed out", cause);
+                    }
+                    throw new PaymentsCoreException("Payments core call failed: " + cause.getMessage(), cause);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readBody(byte[] body) {
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (IOException e) {
+            throw new PaymentsCoreException("Invalid response from payments core", e);
+        }
+    }
+
+    private static boolean isUnavailable(Throwable cause) {
+        if (cause instanceof PaymentsCoreException) {
+            return ((PaymentsCoreException) cause).getStatusCode() >= 500;
+        }
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Data
+    @Builder
+    public static class PaymentSession {
+        private String sessionId;
+        private BigDecimal amount;
+        private String currency;
+        private String merchantId;
+        private String transactionRef;
+        private PaymentSessionStatus status;
+        private LocalDateTime expiryTime;
+
+        public String getMerchantName() {
+            return merchantId;
+        }
+    }
+
+    @Data
+    @Builder
+    public static class PaymentCompletion {
+        private boolean success;
+        private String message;
+        private Object paymentReference;
+        private String settlementBatchId;
+    }
+
+    // statusCode is the payments core's HTTP status when it answered with an error, 0 otherwise
+    public static class PaymentsCoreException extends RuntimeException {
+        private final int statusCode;
+
+        public PaymentsCoreException(String message) {
+            this(message, 0);
+        }
+
+        public PaymentsCoreException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        public PaymentsCoreException(String message, Throwable cause) {
+            super(message, cause);
+            this.statusCode = 0;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        // The payments core looked at the request and turned it down
+        public boolean isRejected() {
+            return statusCode >= 400 && statusCode < 500;
+        }
+    }
+
+    // Opens after failureThreshold consecutive failures; after openMs a single trial request
+    // is let through and its outcome closes or re-opens the circuit.
+    static class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openMs;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long openedAt = -1;
+        private final AtomicInteger trialInFlight = new AtomicInteger();
+
+        CircuitBreaker(int failureThreshold, long openMs) {
+            this.failureThreshold = failureThreshold;
+            this.openMs = openMs;
+        }
+
+        boolean allowRequest() {
+            long opened = openedAt;
+            if (opened < 0) {
+                return true;
+            }
+            if (System.currentTimeMillis() - opened < openMs) {
+                return false;
+            }
+            return trialInFlight.compareAndSet(0, 1);
+        }
+
+        void recordSuccess() {
+            consecutiveFailures.set(0);
+            openedAt = -1;
+            trialInFlight.set(0);
+        }
+
+        // The request never went out, so it says nothing about the payments core
+        void abandonTrial() {
+            trialInFlight.set(0);
+        }
+
+        void recordFailure() {
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold || openedAt >= 0) {
+                openedAt = System.currentTimeMillis();
+            }
+            trialInFlight.set(0);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.LedgerEntry;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.enums.AccountStatus;
+import com.roshansutihar.bankingservice.enums.EntryType;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.repository.LedgerEntryRepository;
+import com.roshansutihar.bankingservice.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Double-entry posting. Every money movement is a journal: one Transaction plus debit and credit
+// legs whose totals must match. A journal is posted in one go:
+//   1. every account it touches is locked in id order (so journals sharing accounts queue up
+//      instead of deadlocking) and checked: active, and customer accounts can cover their debits
+//   2. running balances are worked out in memory from the locked rows
+//   3. the ledger entries are inserted as one JDBC batch at flush
+//   4. each account gets a single balance UPDATE, all sent as one batch
+// Nothing is written when a journal is rejected.
+//
+// Cash, merchant settlement, suspense (see V12) and payroll clearing (V17) are GL accounts. Each is split into buckets
+// and a journal picks its bucket from the customer account id, so busy GL accounts don't
+// serialize every posting behind one row lock.
+@Service
+public class PostingService {
+
+    private static final String APPLY_BALANCE_SQL = "UPDATE accounts SET current_balance = current_balance + ?, " +
+            "available_balance = available_balance + ? WHERE id = ?";
+
+    private static final String GL_TYPE_CODE = "GL";
+
+    public enum GlAccount {
+        CASH("GL-CASH"),
+        MERCHANT_SETTLEMENT("GL-MSETTLE"),
+        SUSPENSE("GL-SUSPENSE"),
+        PAYROLL("GL-PAYROLL");
+
+        private final String prefix;
+
+        GlAccount(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Map<GlAccount, long[]> glBuckets = new EnumMap<>(GlAccount.class);
+
+    @PostConstruct
+    void loadGeneralLedgerAccounts() {
+        Map<GlAccount, List<Long>> ids = new EnumMap<>(GlAccount.class);
+        for (AccountRepository.GeneralLedgerAccount account : accountRepository.findGeneralLedgerAccounts()) {
+            for (GlAccount gl : GlAccount.values()) {
+                if (account.getAccountNumber().startsWith(gl.prefix + "-")) {
+                    ids.computeIfAbsent(gl, key -> new ArrayList<>()).add(account.getId());
+                }
+            }
+        }
+        for (GlAccount gl : GlAccount.values()) {
+            List<Long> buckets = ids.get(gl);
+            if (buckets == null) {
+                throw new IllegalStateException("No " + gl.prefix + " general ledger accounts found");
+            }
+            glBuckets.put(gl, buckets.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    // The GL bucket used for postings against the given customer account
+    public Long glAccountId(GlAccount gl, Long customerAccountId) {
+        long[] buckets = glBuckets.get(gl);
+        return buckets[(int) Math.floorMod(customerAccountId, (long) buckets.length)];
+    }
+
+    public Journal journal(Transaction transaction) {
+        return new Journal(transaction);
+    }
+
+    // Posts the journal or throws, marking the surrounding transaction for rollback
+    @Transactional
+    public PostingResult post(Journal journal) {
+        PostingResult result = tryPost(journal);
+        if (!result.isPosted()) {
+            throw new RuntimeException(result.getRejection());
+        }
+        return result;
+    }
+
+    // Reports a rejected journal (inactive account, insufficient funds) in the result instead of
+    // throwing, leaving the surrounding transaction usable for batch callers. An unbalanced
+    // journal is a programming error and always throws.
+    @Transactional
+    public PostingResult tryPost(Journal journal) {
+        return tryPostAll(List.of(journal)).get(0);
+    }
+
+    // Posts several journals with one lock round trip, one entry batch and one balance batch.
+    // Each journal is accepted or rejected on its own, against the balances the journals before
+    // it leave behind; results come back in journal order.
+    @Transactional
+    public List<PostingResult> tryPostAll(List<Journal> journals) {
+        Set<Long> accountIds = new TreeSet<>();
+        for (Journal journal : journals) {
+            journal.checkBalanced();
+            for (Leg leg : journal.legs) {
+                accountIds.add(leg.accountId);
+            }
+        }
+        Map<Long, PostingBalance> balances = new HashMap<>();
+        for (AccountRepository.JournalAccount row : accountRepository.lockForJournal(accountIds)) {
+            balances.put(row.getId(), new PostingBalance(row));
+        }
+
+        List<PostingResult> results = new ArrayList<>(journals.size());
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (Journal journal : journals) {
+            String rejection = apply(journal, balances);
+            if (rejection != null) {
+                results.add(PostingResult.rejected(rejection));
+                continue;
+            }
+
+            Transaction txn = journal.transaction;
+            if (txn.getId() == null) {
+                transactionRepository.save(txn);
+            }
+            Map<Long, AccountBalance> journalBalances = new HashMap<>();
+            for (Leg leg : journal.legs) {
+                PostingBalance balance = balances.get(leg.accountId);
+                balance.running = balance.running.add(leg.entryType == EntryType.CREDIT ? leg.amount : leg.amount.negate());
+
+                LedgerEntry entry = new LedgerEntry();
+                entry.setTransaction(txn);
+                entry.setAccount(accountRepository.getReferenceById(leg.accountId));
+                entry.setEntryType(leg.entryType);
+                entry.setAmount(leg.amount);
+                entry.setRunningBalance(balance.running);
+                entries.add(entry);
+                journalBalances.put(balance.id, new AccountBalance(balance.current, balance.available));
+            }
+            results.add(new PostingResult(true, null, txn, journalBalances));
+        }
+        if (entries.isEmpty()) {
+            return results;
+        }
+        ledgerEntryRepository.saveAll(entries);
+        entityManager.flush();
+
+        List<PostingBalance> touched = new ArrayList<>();
+        for (PostingBalance balance : balances.values()) {
+            if (balance.current.compareTo(balance.startingBalance) != 0
+                    || balance.available.compareTo(balance.startingAvailable) != 0) {
+                touched.add(balance);
+            }
+        }
+        jdbcTemplate.batchUpdate(APPLY_BALANCE_SQL, touched, touched.size(), (ps, balance) -> {
+            ps.setBigDecimal(1, balance.current.subtract(balance.startingBalance));
+            ps.setBigDecimal(2, balance.available.subtract(balance.startingAvailable));
+            ps.setLong(3, balance.id);
+        });
+        return results;
+    }
+
+    // Applies the journal's legs to the in-memory balances, or leaves them untouched and returns
+    // why the journal is rejected
+    private static String apply(Journal journal, Map<Long, PostingBalance> balances) {
+        for (Leg leg : journal.legs) {
+            PostingBalance balance = balances.get(leg.accountId);
+            // Committed debits were agreed while the account was active and can't be refused now
+            if (balance == null || (!leg.committed && !AccountStatus.ACTIVE.name().equals(balance.status))) {
+                return "Account inactive or invalid";
+            }
+        }
+
+        Set<PostingBalance> involved = new LinkedHashSet<>();
+        for (Leg leg : journal.legs) {
+            involved.add(balances.get(leg.accountId));
+        }
+        for (PostingBalance balance : involved) {
+            balance.begin();
+        }
+        for (Leg leg : journal.legs) {
+            balances.get(leg.accountId).apply(leg);
+        }
+        for (PostingBalance balance : involved) {
+            if (!balance.generalLedger && balance.fundsChecked && balance.available.signum() < 0
+                    && balance.available.compareTo(balance.journalAvailable) < 0) {
+                for (PostingBalance undo : involved) {
+                    undo.rollBack();
+                }
+                return "Insufficient funds";
+            }
+        }
+        return null;
+    }
+
+    // Legs are posted in the order they were added
+    public static class Journal {
+        private final Transaction transaction;
+        private final List<Leg> legs = new ArrayList<>();
+
+        private Journal(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        public Journal debit(Long accountId, BigDecimal amount) {
+            return add(accountId, EntryType.DEBIT, amount, false, false);
+        }
+
+        // Debit of funds already held against the available balance: only the current balance
+        // moves, and the debit is never refused
+        public Journal debitReserved(Long accountId, BigDecimal amount) {
+            return add(accountId, EntryType.DEBIT, amount, true, true);
+        }
+
+        // Debit that was promised elsewhere (e.g. a payment the core accepted after its hold
+        // expired): moves both balances and is never refused, even into a negative balance
+        public Journal debitCommitted(Long accountId, BigDecimal amount) {
+            return add(accountId, EntryType.DEBIT, amount, false, true);
+        }
+
+        public Journal credit(Long accountId, BigDecimal amount) {
+            return add(accountId, EntryType.CREDIT, amount, false, false);
+        }
+
+        private Journal add(Long accountId, EntryType entryType, BigDecimal amount, boolean reserved, boolean committed) {
+            if (accountId == null) {
+                throw new IllegalArgumentException("Journal leg needs an account");
+            }
+            if (amount == null || amount.signum() <= 0) {
+                throw new IllegalArgumentException("Journal leg amount must be positive");
+            }
+            legs.add(new Leg(accountId, entryType, amount, reserved, committed));
+            return this;
+        }
+
+        private void checkBalanced() {
+            BigDecimal debits = BigDecimal.ZERO;
+            BigDecimal credits = BigDecimal.ZERO;
+            for (Leg leg : legs) {
+                if (leg.entryType == EntryType.DEBIT) {
+                    debits = debits.add(leg.amount);
+                } else {
+                    credits = credits.add(leg.amount);
+                }
+            }
+            if (debits.signum() == 0 || debits.compareTo(credits) != 0) {
+                throw new IllegalArgumentException("Unbalanced journal: debits " + debits + ", credits " + credits);
+            }
+        }
+    }
+
+    private static class Leg {
+        private final Long accountId;
+        private final EntryType entryType;
+        private final BigDecimal amount;
+        private final boolean reserved;
+        private final boolean committed;
+
+        Leg(Long accountId, EntryType entryType, BigDecimal amount, boolean reserved, boolean committed) {
+            this.accountId = accountId;
+            this.entryType = entryType;
+            this.amount = amount;
+            this.reserved = reserved;
+            this.committed = committed;
+        }
+    }
+
+    // Locked account row plus the balances it reaches as journals' legs are applied
+    private static class PostingBalance {
+        private final Long id;
+        private final String status;
+        private final boolean generalLedger;
+        private final BigDecimal startingBalance;
+        private final BigDecimal startingAvailable;
+        private BigDecimal current;
+        private BigDecimal available;
+        private BigDecimal running;
+        // Balances before the journal being applied, restored if it is rejected
+        private BigDecimal journalCurrent;
+        private BigDecimal journalAvailable;
+        // Only debits that may be refused are held to the available balance
+        private boolean fundsChecked;
+
+        PostingBalance(AccountRepository.JournalAccount row) {
+            this.id = row.getId();
+            this.status = row.getStatus();
+            this.generalLedger = GL_TYPE_CODE.equals(row.getTypeCode());
+            this.startingBalance = row.getCurrentBalance();
+            this.startingAvailable = row.getAvailableBalance();
+            this.current = startingBalance;
+            this.available = startingAvailable;
+            this.running = startingBalance;
+        }
+
+        void begin() {
+            journalCurrent = current;
+            journalAvailable = available;
+            fundsChecked = false;
+        }
+
+        void rollBack() {
+            current = journalCurrent;
+            available = journalAvailable;
+        }
+
+        void apply(Leg leg) {
+            BigDecimal change = leg.entryType == EntryType.CREDIT ? leg.amount : leg.amount.negate();
+            current = current.add(change);
+            if (leg.entryType == EntryType.DEBIT && !leg.committed) {
+                fundsChecked = true;
+            }
+            if (!leg.reserved) {
+                available = available.add(change);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class AccountBalance {
+        private final BigDecimal currentBalance;
+        private final BigDecimal availableBalance;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class PostingResult {
+        private final boolean posted;
+        private final String rejection;
+        private final Transaction transaction;
+        private final Map<Long, AccountBalance> balances;
+
+        static PostingResult rejected(String reason) {
+            return new PostingResult(false, reason, null, Map.of());
+        }
+
+        // Keep the caller's entity in step with the row the journal just updated
+        public void applyTo(Account account) {
+            AccountBalance balance = balances.get(account.getId());
+            if (balance != null) {
+                account.setCurrentBalance(balance.getCurrentBalance());
+                account.setAvailableBalance(balance.getAvailableBalance());
+            }
+        }
+    }
+}
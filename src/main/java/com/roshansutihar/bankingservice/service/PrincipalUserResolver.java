@@ -0,0 +1,121 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.enums.UserStatus;
+import com.roshansutihar.bankingservice.enums.UserType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Maps an authenticated principal (mobile JWT or web OIDC login) to its User row, creating the
+// row on first login. Results are cached by Keycloak sub so most requests skip the lookup;
+// entries expire after a TTL and are dropped whenever UserService writes the user.
+//
+// The cache holds a detached copy of the user's own columns only, and every caller gets its
+// own copy, so nothing shared can be mutated or lazily loaded outside a session.
+@Service
+public class PrincipalUserResolver {
+
+    private final UserService userService;
+    private final Cache<String, User> usersBySub;
+
+    @Autowired
+    public PrincipalUserResolver(UserService userService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${banking.user-cache.max-size:10000}") long maxSize,
+                                 @Value("${banking.user-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userService = userService;
+        this.usersBySub = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, usersBySub, "principalUsers");
+    }
+
+    // Null when the principal is neither a JWT nor an OIDC user
+    public User resolve(Object principal) {
+        if (principal instanceof Jwt) {
+            return resolve((Jwt) principal);
+        }
+        if (principal instanceof OidcUser) {
+            return resolve((OidcUser) principal);
+        }
+        return null;
+    }
+
+    public User resolve(Jwt jwt) {
+        return resolve(jwt.getSubject(), jwt.getClaimAsString("preferred_username"), jwt.getClaimAsString("email"));
+    }
+
+    public User resolve(OidcUser oidcUser) {
+        return resolve(oidcUser.getSubject(), oidcUser.getPreferredUsername(), oidcUser.getEmail());
+    }
+
+    public void invalidate(String keycloakSub) {
+        if (keycloakSub != null) {
+            usersBySub.invalidate(keycloakSub);
+        }
+    }
+
+    // After commit, so a concurrent request can't re-cache the row we are replacing
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.getKeycloakSub());
+    }
+
+    private User resolve(String sub, String preferredUsername, String email) {
+        String username = preferredUsername;
+        if (username == null || username.trim().isEmpty()) {
+            username = sub; // fallback to subject
+        }
+
+        User cached = usersBySub.getIfPresent(sub);
+        if (cached == null) {
+            // Loaded outside the cache's compute lock: creating the user publishes a
+            // UserChangedEvent that invalidates this same key
+            cached = snapshot(loadOrCreate(sub, username, email));
+            usersBySub.put(sub, cached);
+        }
+        return snapshot(cached);
+    }
+
+    private User loadOrCreate(String sub, String username, String email) {
+        User user = userService.getUserByUsername(username);
+        if (user == null) {
+            user = new User();
+            user.setUsername(username);
+            user.setKeycloakSub(sub);
+            user.setEmail(email);
+            user.setCreatedAt(LocalDateTime.now());
+            user.setUserType(UserType.INDIVIDUAL);
+            user.setStatus(UserStatus.ACTIVE);
+            user = userService.createOrUpdateUser(user);
+        }
+        return user;
+    }
+
+    private static User snapshot(User user) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setKeycloakSub(user.getKeycloakSub());
+        copy.setUserType(user.getUserType());
+        copy.setUsername(user.getUsername());
+        copy.setEmail(user.getEmail());
+        copy.setPhone(user.getPhone());
+        copy.setStatus(user.getStatus());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setUpdatedAt(user.getUpdatedAt());
+        return copy;
+    }
+}
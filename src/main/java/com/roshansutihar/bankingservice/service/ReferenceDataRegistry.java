@@ -0,0 +1,76 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.AccountType;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.repository.AccountTypeRepository;
+import com.roshansutihar.bankingservice.repository.TransactionTypeRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// In-memory type_code -> id registry for transaction_types and account_types. The tables are
+// read once at startup, again on a timer, and whenever the services change a row. Lookups
+// then cost no query: callers get a getReference proxy for the id, which is all a new
+// Transaction or Account needs for its foreign key.
+//
+// Each refresh builds new immutable maps and swaps them in, so readers never lock.
+@Service
+public class ReferenceDataRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataRegistry.class);
+
+    @Autowired
+    private TransactionTypeRepository transactionTypeRepository;
+
+    @Autowired
+    private AccountTypeRepository accountTypeRepository;
+
+    private volatile Map<String, Long> transactionTypeIds = Map.of();
+    private volatile Map<String, Long> accountTypeIds = Map.of();
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${banking.reference-data.refresh-ms:300000}",
+            initialDelayString = "${banking.reference-data.refresh-ms:300000}")
+    public void refresh() {
+        Map<String, Long> transactionTypes = new HashMap<>();
+        for (TransactionType type : transactionTypeRepository.findAll()) {
+            transactionTypes.put(type.getTypeCode(), type.getId());
+        }
+        Map<String, Long> accountTypes = new HashMap<>();
+        for (AccountType type : accountTypeRepository.findAll()) {
+            accountTypes.put(type.getTypeCode(), type.getId());
+        }
+        transactionTypeIds = Map.copyOf(transactionTypes);
+        accountTypeIds = Map.copyOf(accountTypes);
+        logger.debug("Reference data loaded: {} transaction types, {} account types",
+                transactionTypes.size(), accountTypes.size());
+    }
+
+    public Optional<TransactionType> findTransactionType(String typeCode) {
+        Long id = transactionTypeIds.get(typeCode);
+        if (id == null) {
+            // Added by another instance since our last refresh
+            Optional<TransactionType> loaded = transactionTypeRepository.findByTypeCode(typeCode);
+            loaded.ifPresent(type -> refresh());
+            return loaded;
+        }
+        return Optional.of(transactionTypeRepository.getReferenceById(id));
+    }
+
+    public Optional<AccountType> findAccountType(String typeCode) {
+        Long id = accountTypeIds.get(typeCode);
+        if (id == null) {
+            Optional<AccountType> loaded = accountTypeRepository.findByTypeCode(typeCode);
+            loaded.ifPresent(type -> refresh());
+            return loaded;
+        }
+        return Optional.of(accountTypeRepository.getReferenceById(id));
+    }
+}
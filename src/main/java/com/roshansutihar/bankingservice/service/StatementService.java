@@ -0,0 +1,154 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.enums.EntryType;
+import com.roshansutihar.bankingservice.repository.LedgerEntryRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Account statements as CSV.
+//
+// Ledger entries for the period are streamed through a database cursor and written one at a
+// time, so memory stays constant however many entries the account has. The opening balance is
+// the running balance of the last entry before the period; the closing balance is that of the
+// last entry in it. Everything is read in one REPEATABLE READ transaction so the balances and
+// rows come from the same snapshot.
+//
+// The statement is written to a temp file while that transaction is open and copied to the
+// client after it commits, so a slow download holds disk space rather than a pooled connection.
+//
+// Text cells that a spreadsheet would read as a formula (=, +, -, @, tab, CR) get a leading '.
+@Service
+public class StatementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementService.class);
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readTemplate;
+
+    @PostConstruct
+    void init() {
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setReadOnly(true);
+        readTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    // from and to are inclusive calendar dates
+    public void writeCsvStatement(Long accountId, String accountNumber, LocalDate from, LocalDate to, Writer out) {
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+
+        Path buffer = null;
+        try {
+            buffer = Files.createTempFile("statement-", ".csv");
+            try (Writer file = Files.newBufferedWriter(buffer, StandardCharsets.UTF_8)) {
+                readTemplate.executeWithoutResult(status -> {
+                    try {
+                        writeStatement(accountId, accountNumber, from, to, start, end, file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            try (Reader file = Files.newBufferedReader(buffer, StandardCharsets.UTF_8)) {
+                file.transferTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(buffer);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete statement buffer {}", path, e);
+        }
+    }
+
+    private void writeStatement(Long accountId, String accountNumber, LocalDate from, LocalDate to,
+                                LocalDateTime start, LocalDateTime end, Writer out) throws IOException {
+        BigDecimal openingBalance = ledgerEntryRepository
+                .findFirstByAccountIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(accountId, start)
+                .map(LedgerEntryRepository.RunningBalanceView::getRunningBalance)
+                .orElse(BigDecimal.ZERO);
+
+        out.write("Account," + csv(accountNumber) + "\n");
+        out.write("Period," + from + "," + to + "\n");
+        out.write("Opening balance," + openingBalance.toPlainString() + "\n");
+        out.write("\n");
+        out.write("date,transaction_ref,description,debit,credit,balance\n");
+
+        BigDecimal closingBalance = openingBalance;
+        BigDecimal totalDebits = BigDecimal.ZERO;
+        BigDecimal totalCredits = BigDecimal.ZERO;
+
+        try (Stream<LedgerEntryRepository.StatementLineView> lines =
+                     ledgerEntryRepository.streamStatementLines(accountId, start, end)) {
+            Iterator<LedgerEntryRepository.StatementLineView> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                LedgerEntryRepository.StatementLineView line = iterator.next();
+                boolean debit = line.getEntryType() == EntryType.DEBIT;
+                String amount = line.getAmount().toPlainString();
+
+                out.write(line.getCreatedAt() + "," + csv(line.getTransactionRef()) + "," + csv(line.getDescription())
+                        + "," + (debit ? amount : "") + "," + (debit ? "" : amount)
+                        + "," + line.getRunningBalance().toPlainString() + "\n");
+
+                if (debit) {
+                    totalDebits = totalDebits.add(line.getAmount());
+                } else {
+                    totalCredits = totalCredits.add(line.getAmount());
+                }
+                closingBalance = line.getRunningBalance();
+            }
+        }
+
+        out.write("\n");
+        out.write("Total debits," + totalDebits.toPlainString() + "\n");
+        out.write("Total credits," + totalCredits.toPlainString() + "\n");
+        out.write("Closing balance," + closingBalance.toPlainString() + "\n");
+    }
+
+    static String csv(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        if ("=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
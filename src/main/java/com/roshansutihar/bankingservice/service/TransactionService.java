@@ -7,7 +7,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -20,6 +25,35 @@ public class TransactionService {
         return transactionRepository.findByFromAccountIdOrToAccountId(accountId, accountId);
     }
 
+    // Newest first across all given accounts, starting after the cursor (null for the first page).
+    // Type and both accounts come back fetched so callers can render without lazy loads.
+    public List<Transaction> getTransactionsPage(Collection<Long> accountIds, TransactionCursor cursor, int limit) {
+        if (accountIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Long> ids = cursor == null
+                ? transactionRepository.findFirstPageIdsByAccountIds(accountIds, limit)
+                : transactionRepository.findPageIdsByAccountIdsBefore(accountIds, cursor.getTransactionDate(), cursor.getId(), limit);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            position.put(ids.get(i), i);
+        }
+        List<Transaction> page = transactionRepository.findAllWithDetailsByIdIn(ids);
+        page.sort(Comparator.comparing(txn -> position.get(txn.getId())));
+        return page;
+    }
+
+    // The first page of the keyset query: each account and direction is read newest-first off its
+    // index and stops at limit rows, however long the history behind it
+    public List<Transaction> getRecentTransactions(Collection<Long> accountIds, int limit) {
+        return getTransactionsPage(accountIds, null, limit);
+    }
+
     public Transaction createTransaction(Transaction transaction) {
         return transactionRepository.save(transaction);
     }
@@ -14,6 +14,9 @@ public class TransactionTypeService {
     @Autowired
     private TransactionTypeRepository transactionTypeRepository;
 
+    @Autowired
+    private ReferenceDataRegistry referenceDataRegistry;
+
     public List<TransactionType> getAllTransactionTypes() {
         return transactionTypeRepository.findAll();
     }
@@ -22,34 +25,40 @@ public class TransactionTypeService {
         return transactionTypeRepository.findById(id);
     }
 
+    // Served from the registry as an unloaded reference, which is all a new Transaction needs
     public Optional<TransactionType> getTransactionTypeByCode(String typeCode) {
-        return transactionTypeRepository.findByTypeCode(typeCode);
+        return referenceDataRegistry.findTransactionType(typeCode);
     }
 
     public TransactionType createTransactionType(TransactionType transactionType) {
-        return transactionTypeRepository.save(transactionType);
+        TransactionType saved = transactionTypeRepository.save(transactionType);
+        referenceDataRegistry.refresh();
+        return saved;
     }
 
     public TransactionType updateTransactionType(TransactionType transactionType) {
-        return transactionTypeRepository.save(transactionType);
+        TransactionType saved = transactionTypeRepository.save(transactionType);
+        referenceDataRegistry.refresh();
+        return saved;
     }
 
     public void deleteTransactionType(Long id) {
         transactionTypeRepository.deleteById(id);
+        referenceDataRegistry.refresh();
     }
 
     public TransactionType getDepositTransactionType() {
-        return transactionTypeRepository.findByTypeCode("DEPOSIT")
+        return getTransactionTypeByCode("DEPOSIT")
                 .orElseThrow(() -> new RuntimeException("DEPOSIT transaction type not found"));
     }
 
     public TransactionType getWithdrawalTransactionType() {
-        return transactionTypeRepository.findByTypeCode("WITHDRAWAL")
+        return getTransactionTypeByCode("WITHDRAWAL")
                 .orElseThrow(() -> new RuntimeException("WITHDRAWAL transaction type not found"));
     }
 
     public TransactionType getTransferTransactionType() {
-        return transactionTypeRepository.findByTypeCode("TRANSFER")
+        return getTransactionTypeByCode("TRANSFER")
                 .orElseThrow(() -> new RuntimeException("TRANSFER transaction type not found"));
     }
 
@@ -0,0 +1,388 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.entity.Transfer;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.enums.TransferFrequency;
+import com.roshansutihar.bankingservice.enums.TransferStatus;
+import com.roshansutihar.bankingservice.idgen.ReferenceGenerator;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.repository.TransferRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executes due standing orders. Each run fans out over a small worker pool; every worker
+// repeatedly claims a chunk of due transfers with FOR UPDATE SKIP LOCKED and posts them in one
+// transaction, so workers (and other instances) never block on or double-process each other's
+// rows. A transfer is posted once per missed period up to transfers.catch-up.max-periods (any
+// further missed periods are skipped), then its next date is advanced, or it is COMPLETED once
+// it runs past its end date. Monthly periods fall on the transfer's anchor day, clamped to the
+// month's length. Transfers that fail (e.g. insufficient funds) are stamped with the run date
+// and retried on the next day's run.
+@Service
+public class TransferExecutionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferExecutionService.class);
+
+    @Autowired
+    private TransferRepository transferRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private PostingService postingService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionTypeService transactionTypeService;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${transfers.workers:4}")
+    private int workers;
+
+    @Value("${transfers.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${transfers.catch-up.max-periods:31}")
+    private int maxCatchUpPeriods;
+
+    @Value("${transfers.catch-up.on-startup:true}")
+    private boolean catchUpOnStartup;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService executor;
+    private Counter executedCounter;
+    private Counter failedCounter;
+    private Counter skippedCounter;
+    private Counter completedCounter;
+    private Counter chunkErrorCounter;
+    private Timer runTimer;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "transfer-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executedCounter = meterRegistry.counter("banking.transfers.executed");
+        failedCounter = meterRegistry.counter("banking.transfers.failed");
+        skippedCounter = meterRegistry.counter("banking.transfers.skipped");
+        completedCounter = meterRegistry.counter("banking.transfers.completed");
+        chunkErrorCounter = meterRegistry.counter("banking.transfers.chunk.errors");
+        runTimer = meterRegistry.timer("banking.transfers.run");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(cron = "${transfers.schedule.cron:0 */15 * * * *}")
+    public void runScheduled() {
+        runDueTransfers(LocalDate.now());
+    }
+
+    // Clear whatever fell due while the service was down without waiting for the next tick
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpAfterStartup() {
+        if (catchUpOnStartup) {
+            Thread thread = new Thread(() -> runDueTransfers(LocalDate.now()), "transfer-catch-up");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public RunSummary runDueTransfers(LocalDate runDate) {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Transfer run for {} skipped, previous run still in progress", runDate);
+            return null;
+        }
+        try {
+            RunSummary summary = new RunSummary();
+            long started = System.nanoTime();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> drain(runDate, summary)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    logger.error("Transfer worker failed", e.getCause());
+                }
+            }
+
+            long elapsedNanos = System.nanoTime() - started;
+            runTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (summary.getExecuted() + summary.getFailed() > 0) {
+                double seconds = Math.max(elapsedNanos / 1_000_000_000.0, 0.001);
+                logger.info("Transfer run for {}: {} executed, {} failed, {} skipped, {} completed in {}s ({}/s)",
+                        runDate, summary.getExecuted(), summary.getFailed(), summary.getSkipped(),
+                        summary.getCompleted(), String.format("%.1f", seconds),
+                        String.format("%.0f", summary.getExecuted() / seconds));
+            }
+            return summary;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // One worker: keep claiming chunks until none are left for this run date
+    private void drain(LocalDate runDate, RunSummary summary) {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Long> claimedIds = new ArrayList<>();
+            ChunkOutcome outcome = new ChunkOutcome();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<Transfer> transfers = transferRepository.claimDueTransfers(runDate, chunkSize);
+                    transfers.forEach(transfer -> claimedIds.add(transfer.getId()));
+                    preloadAccounts(transfers);
+                    TransactionType transferType = transactionTypeService.getTransferTransactionType();
+                    for (Transfer transfer : transfers) {
+                        execute(transfer, runDate, transferType, outcome);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // One bad transfer rolled back the whole chunk; redo it one transfer at a time
+                logger.warn("Transfer chunk of {} failed, retrying individually: {}", claimedIds.size(), e.getMessage());
+                chunkErrorCounter.increment();
+                outcome.reset();
+                for (Long id : claimedIds) {
+                    executeAlone(id, runDate, outcome);
+                }
+            }
+            record(outcome, summary);
+
+            if (claimedIds.size() < chunkSize) {
+                return;
+            }
+        }
+    }
+
+    private void executeAlone(Long transferId, LocalDate runDate, ChunkOutcome outcome) {
+        ChunkOutcome single = new ChunkOutcome();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Transfer transfer : transferRepository.claimDueTransfer(transferId, runDate)) {
+                    preloadAccounts(List.of(transfer));
+                    execute(transfer, runDate, transactionTypeService.getTransferTransactionType(), single);
+                }
+            });
+            outcome.add(single);
+        } catch (RuntimeException e) {
+            logger.error("Scheduled transfer {} failed", transferId, e);
+            transferRepository.markAttempted(transferId, runDate);
+            outcome.failed++;
+        }
+    }
+
+    private void execute(Transfer transfer, LocalDate runDate, TransactionType transferType, ChunkOutcome outcome) {
+        LocalDate next = transfer.getNextTransferDate();
+        // Rows created without one (before V21 or outside TransferService) anchor on their first run
+        if (transfer.getAnchorDay() == null) {
+            transfer.setAnchorDay(next.getDayOfMonth());
+        }
+        int posted = 0;
+        boolean failed = false;
+
+        while (next != null && !next.isAfter(runDate) && !isPastEnd(transfer, next)) {
+            if (posted < maxCatchUpPeriods) {
+                if (!post(transfer, next, transferType)) {
+                    failed = true;
+                    outcome.failed++;
+                    break;
+                }
+                posted++;
+                outcome.executed++;
+            } else {
+                outcome.skipped++;
+            }
+            next = advance(next, transfer.getFrequency(), transfer.getAnchorDay());
+        }
+
+        if (!failed && (next == null || isPastEnd(transfer, next))) {
+            transfer.setStatus(TransferStatus.COMPLETED);
+            outcome.completed++;
+        } else {
+            transfer.setNextTransferDate(next);
+        }
+        transfer.setLastAttemptDate(runDate);
+    }
+
+    // One balanced journal per period: debit the payer, credit the payee. Returns false when the
+    // payer can't cover it or either account is inactive; the attempt is kept as a FAILED transaction.
+    private boolean post(Transfer transfer, LocalDate periodDate, TransactionType transferType) {
+        Account from = transfer.getFromAccount();
+        Account to = transfer.getToAccount();
+        BigDecimal amount = transfer.getAmount();
+        String description = "Scheduled transfer #" + transfer.getId() + " for " + periodDate;
+
+        Transaction txn = new Transaction();
+        txn.setTransactionRef(referenceGenerator.nextReference("TRF"));
+        txn.setFromAccount(from);
+        txn.setToAccount(to);
+        txn.setTransactionType(transferType);
+        txn.setAmount(amount);
+        txn.setDescription(description);
+        txn.setStatus(TransactionStatus.COMPLETED);
+        txn.setEffectiveDate(periodDate);
+        txn.setTransactionDate(LocalDateTime.now());
+
+        PostingService.PostingResult result = postingService.tryPost(postingService.journal(txn)
+                .debit(from.getId(), amount)
+                .credit(to.getId(), amount));
+        if (!result.isPosted()) {
+            txn.setStatus(TransactionStatus.FAILED);
+            transactionService.createTransaction(txn);
+            auditTransfer("TRANSFER_FAILED", transfer, txn, periodDate);
+            return false;
+        }
+        result.applyTo(from);
+        result.applyTo(to);
+        auditTransfer("TRANSFER", transfer, txn, periodDate);
+        return true;
+    }
+
+    // Recorded for the payer; queued when the chunk's transaction commits
+    private void auditTransfer(String actionType, Transfer transfer, Transaction txn, LocalDate periodDate) {
+        auditLogService.logUserAction(transfer.getFromAccount().getUser().getId(), actionType, "transactions", txn.getId(),
+                Map.of("transferId", transfer.getId(), "amount", transfer.getAmount(),
+                        "toAccountId", transfer.getToAccount().getId(), "periodDate", periodDate.toString()));
+    }
+
+    private void record(ChunkOutcome outcome, RunSummary summary) {
+        summary.executed.addAndGet(outcome.executed);
+        summary.failed.addAndGet(outcome.failed);
+        summary.skipped.addAndGet(outcome.skipped);
+        summary.completed.addAndGet(outcome.completed);
+        executedCounter.increment(outcome.executed);
+        failedCounter.increment(outcome.failed);
+        skippedCounter.increment(outcome.skipped);
+        completedCounter.increment(outcome.completed);
+    }
+
+    // Lock every account the chunk touches up front, in id order, so concurrent chunks can't
+    // deadlock on each other; then load them in one query instead of two lazy loads per transfer
+    private void preloadAccounts(List<Transfer> transfers) {
+        Set<Long> accountIds = new HashSet<>();
+        for (Transfer transfer : transfers) {
+            accountIds.add(transfer.getFromAccount().getId());
+            accountIds.add(transfer.getToAccount().getId());
+        }
+        if (!accountIds.isEmpty()) {
+            accountService.lockAccounts(accountIds);
+            accountRepository.findAllById(accountIds);
+        }
+    }
+
+    private static boolean isPastEnd(Transfer transfer, LocalDate date) {
+        return transfer.getEndDate() != null && date.isAfter(transfer.getEndDate());
+    }
+
+    // Next period date, or null when the transfer only runs once. Monthly dates come from the
+    // anchor day each time, never from the previous (possibly clamped) date.
+    static LocalDate advance(LocalDate date, TransferFrequency frequency, int anchorDay) {
+        if (frequency == null) {
+            return null;
+        }
+        switch (frequency) {
+            case DAILY:
+                return date.plusDays(1);
+            case WEEKLY:
+                return date.plusWeeks(1);
+            case MONTHLY:
+                YearMonth month = YearMonth.from(date).plusMonths(1);
+                return month.atDay(Math.min(anchorDay, month.lengthOfMonth()));
+            default:
+                return null;
+        }
+    }
+
+    private static class ChunkOutcome {
+        private int executed;
+        private int failed;
+        private int skipped;
+        private int completed;
+
+        void reset() {
+            executed = 0;
+            failed = 0;
+            skipped = 0;
+            completed = 0;
+        }
+
+        void add(ChunkOutcome other) {
+            executed += other.executed;
+            failed += other.failed;
+            skipped += other.skipped;
+            completed += other.completed;
+        }
+
+    }
+
+    public static class RunSummary {
+        private final AtomicInteger executed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+
+        public int getExecuted() { return executed.get(); }
+        public int getFailed() { return failed.get(); }
+        public int getSkipped() { return skipped.get(); }
+        public int getCompleted() { return completed.get(); }
+    }
+}
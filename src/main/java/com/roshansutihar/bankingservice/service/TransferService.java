@@ -41,6 +41,9 @@ public class TransferService {
     }
 
     public Transfer createTransfer(Transfer transfer) {
+        if (transfer.getAnchorDay() == null && transfer.getNextTransferDate() != null) {
+            transfer.setAnchorDay(transfer.getNextTransferDate().getDayOfMonth());
+        }
         return transferRepository.save(transfer);
     }
 
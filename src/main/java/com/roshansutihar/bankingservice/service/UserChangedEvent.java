@@ -0,0 +1,14 @@
+package com.roshansutihar.bankingservice.service;
+
+// Published by UserService whenever a user row is written, so caches holding that user can drop it
+public class UserChangedEvent {
+    private final String keycloakSub;
+
+    public UserChangedEvent(String keycloakSub) {
+        this.keycloakSub = keycloakSub;
+    }
+
+    public String getKeycloakSub() {
+        return keycloakSub;
+    }
+}
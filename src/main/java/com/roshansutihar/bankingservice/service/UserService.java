@@ -3,6 +3,7 @@ package com.roshansutihar.bankingservice.service;
 import com.roshansutihar.bankingservice.entity.User;
 import com.roshansutihar.bankingservice.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,10 +14,12 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
     }
 
 
@@ -29,15 +32,18 @@ public class UserService {
         // Try to find by keycloakSub (most reliable identifier from Keycloak)
         Optional<User> existing = userRepository.findByKeycloakSub(user.getKeycloakSub());
 
+        User saved;
         if (existing.isPresent()) {
             User found = existing.get();
             found.setUsername(user.getUsername());
             found.setEmail(user.getEmail());
-            return userRepository.save(found);
+            saved = userRepository.save(found);
         } else {
             user.setCreatedAt(LocalDateTime.now());
-            return userRepository.save(user);
+            saved = userRepository.save(user);
         }
+        eventPublisher.publishEvent(new UserChangedEvent(saved.getKeycloakSub()));
+        return saved;
     }
 
 
@@ -0,0 +1,27 @@
+-- Daily per-account balance rollup of ledger_entries. A row exists only for days the account
+-- had entries; balances carry forward across days without one. opening_balance is the balance
+-- before the day's first entry, min/max include it.
+CREATE TABLE account_daily_balances (
+    account_id BIGINT NOT NULL REFERENCES accounts(id),
+    balance_date DATE NOT NULL,
+    opening_balance DECIMAL(15,2) NOT NULL,
+    closing_balance DECIMAL(15,2) NOT NULL,
+    min_balance DECIMAL(15,2) NOT NULL,
+    max_balance DECIMAL(15,2) NOT NULL,
+    total_debits DECIMAL(15,2) NOT NULL DEFAULT 0,
+    total_credits DECIMAL(15,2) NOT NULL DEFAULT 0,
+    entry_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, balance_date)
+);
+
+-- Last day rolled up. Single row, locked by the job so only one instance rolls up at a time.
+CREATE TABLE balance_snapshot_checkpoint (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    rolled_up_through DATE NOT NULL
+);
+
+INSERT INTO balance_snapshot_checkpoint (id, rolled_up_through)
+SELECT 1, COALESCE(MIN(created_at)::date, CURRENT_DATE) - 1 FROM ledger_entries;
+
+-- Rollup reads one day of ledger entries across all accounts
+CREATE INDEX idx_ledger_entries_created ON ledger_entries (created_at);
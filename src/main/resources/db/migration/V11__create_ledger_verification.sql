@@ -0,0 +1,32 @@
+-- Ledger verifier runs. An incremental run re-checks accounts with entries since the last
+-- completed run started; a full run checks every account from its first entry.
+CREATE TABLE ledger_verification_runs (
+    id BIGSERIAL PRIMARY KEY,
+    mode VARCHAR(20) NOT NULL CHECK (mode IN ('FULL', 'INCREMENTAL')),
+    checked_since TIMESTAMP,
+    started_at TIMESTAMP NOT NULL,
+    finished_at TIMESTAMP,
+    status VARCHAR(20) NOT NULL CHECK (status IN ('RUNNING', 'COMPLETED', 'FAILED')),
+    accounts_checked BIGINT NOT NULL DEFAULT 0,
+    entries_checked BIGINT NOT NULL DEFAULT 0,
+    discrepancy_count BIGINT NOT NULL DEFAULT 0
+);
+
+CREATE INDEX idx_ledger_verification_runs_completed ON ledger_verification_runs (started_at)
+    WHERE status = 'COMPLETED';
+
+-- CHAIN_BREAK: an entry's running_balance doesn't follow from the previous one and its amount.
+-- BALANCE_MISMATCH: accounts.current_balance differs from the last entry's running_balance.
+CREATE TABLE ledger_discrepancies (
+    id BIGSERIAL PRIMARY KEY,
+    run_id BIGINT NOT NULL REFERENCES ledger_verification_runs(id),
+    account_id BIGINT NOT NULL REFERENCES accounts(id),
+    ledger_entry_id BIGINT REFERENCES ledger_entries(id),
+    kind VARCHAR(20) NOT NULL CHECK (kind IN ('CHAIN_BREAK', 'BALANCE_MISMATCH')),
+    expected_balance DECIMAL(15,2),
+    actual_balance DECIMAL(15,2),
+    detected_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_ledger_discrepancies_run ON ledger_discrepancies (run_id);
+CREATE INDEX idx_ledger_discrepancies_account ON ledger_discrepancies (account_id);
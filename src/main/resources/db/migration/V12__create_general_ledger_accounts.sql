@@ -0,0 +1,24 @@
+-- Internal general-ledger accounts, owned by a SYSTEM user, so every posting has an offsetting
+-- leg: teller cash, merchant settlement for QR payments, and suspense for anything unmatched.
+-- Like customer accounts, balances rise with credits, so an asset such as cash runs negative.
+--
+-- Each GL account is split into buckets (GL-CASH-00 .. GL-CASH-07). A posting picks the bucket
+-- from the customer account id, so concurrent postings rarely wait on the same GL row; the
+-- GL balance is the sum of its buckets.
+ALTER TABLE users DROP CONSTRAINT users_user_type_check;
+ALTER TABLE users ADD CONSTRAINT users_user_type_check
+    CHECK (user_type IN ('INDIVIDUAL', 'BUSINESS', 'SYSTEM'));
+
+INSERT INTO users (user_type, username, email, status)
+VALUES ('SYSTEM', 'general-ledger', 'general-ledger@system.invalid', 'ACTIVE');
+
+INSERT INTO account_types (type_code, type_name, description, interest_rate, minimum_balance, monthly_fee)
+VALUES ('GL', 'General Ledger', 'Internal offset account; may carry a negative balance', 0, 0, 0);
+
+INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status)
+SELECT gl.prefix || '-' || lpad(b::text, 2, '0'),
+       (SELECT id FROM users WHERE username = 'general-ledger'),
+       (SELECT id FROM account_types WHERE type_code = 'GL'),
+       '021000021', 'ACTIVE'
+FROM (VALUES ('GL-CASH'), ('GL-MSETTLE'), ('GL-SUSPENSE')) AS gl(prefix)
+CROSS JOIN generate_series(0, 7) b;
@@ -0,0 +1,18 @@
+-- Funds held against an account's available balance until they are captured (posted as a
+-- debit), released, or expire. available_balance already excludes every ACTIVE hold.
+CREATE TABLE holds (
+    id BIGSERIAL PRIMARY KEY,
+    account_id BIGINT NOT NULL REFERENCES accounts(id),
+    transaction_id BIGINT REFERENCES transactions(id),
+    amount DECIMAL(15,2) NOT NULL CHECK (amount > 0),
+    status VARCHAR(20) NOT NULL DEFAULT 'ACTIVE' CHECK (status IN ('ACTIVE', 'CAPTURED', 'RELEASED', 'EXPIRED')),
+    reason VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL,
+    resolved_at TIMESTAMP
+);
+
+-- The expiry job and the held-amount totals only ever look at ACTIVE holds
+CREATE INDEX idx_holds_active_expires ON holds (expires_at) WHERE status = 'ACTIVE';
+CREATE INDEX idx_holds_active_account ON holds (account_id) WHERE status = 'ACTIVE';
+CREATE INDEX idx_holds_transaction ON holds (transaction_id);
@@ -0,0 +1,19 @@
+-- Outgoing email, written in the same transaction as the change it reports and delivered by a
+-- background dispatcher. Rows stay PENDING (with next_attempt_at pushed out between tries)
+-- until they are SENT, or DEAD once retries run out or the server refuses them for good.
+-- The body is cleared on delivery since it can carry a temporary password.
+CREATE TABLE email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    body TEXT,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING' CHECK (status IN ('PENDING', 'SENT', 'DEAD')),
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    sent_at TIMESTAMP
+);
+
+CREATE INDEX idx_email_outbox_due ON email_outbox (next_attempt_at) WHERE status = 'PENDING';
+CREATE INDEX idx_email_outbox_sent ON email_outbox (sent_at) WHERE status = 'SENT';
@@ -0,0 +1,35 @@
+-- Teller onboarding requests, run as a saga by background workers:
+--   PENDING -> IDENTITY_CREATED (Keycloak user exists) -> COMPLETED (user, profile and account
+--   committed together with the welcome email)
+-- A step that fails for good moves the request to COMPENSATING, which removes the Keycloak user
+-- again, and then to FAILED. payload and temporary_password are only needed while the saga runs
+-- and are cleared once it finishes.
+CREATE TABLE onboarding_requests (
+    id BIGSERIAL PRIMARY KEY,
+    reference UUID NOT NULL UNIQUE,
+    user_type VARCHAR(20) NOT NULL CHECK (user_type IN ('INDIVIDUAL', 'BUSINESS')),
+    username VARCHAR(50) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    payload TEXT,
+    temporary_password VARCHAR(100),
+    state VARCHAR(20) NOT NULL DEFAULT 'PENDING'
+        CHECK (state IN ('PENDING', 'IDENTITY_CREATED', 'COMPLETED', 'COMPENSATING', 'FAILED')),
+    keycloak_user_id VARCHAR(100),
+    user_id BIGINT REFERENCES users(id),
+    account_number VARCHAR(20),
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error TEXT,
+    submitted_by VARCHAR(100),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP
+);
+
+-- Workers only look for requests that still have a step to run
+CREATE INDEX idx_onboarding_due ON onboarding_requests (next_attempt_at)
+    WHERE state IN ('PENDING', 'IDENTITY_CREATED', 'COMPENSATING');
+
+-- At most one in-flight request per username; finished ones are covered by users.username
+CREATE UNIQUE INDEX uq_onboarding_in_flight_username ON onboarding_requests (username)
+    WHERE state IN ('PENDING', 'IDENTITY_CREATED', 'COMPENSATING');
@@ -0,0 +1,13 @@
+-- Payment holds remember the payments-core session they were placed for, so a payment whose
+-- completion call had no clear answer (timeout, 5xx, open circuit) can be settled later from
+-- the session's status instead of being released and spent twice.
+ALTER TABLE holds ADD COLUMN payment_session_id VARCHAR(100);
+
+-- At most one unresolved hold per session: a retry while an earlier attempt is still open is
+-- turned away rather than holding (and possibly capturing) the amount a second time
+CREATE UNIQUE INDEX uq_holds_open_payment_session ON holds (payment_session_id)
+    WHERE payment_session_id IS NOT NULL AND status IN ('ACTIVE', 'EXPIRED');
+
+-- The reconciler scans open payment holds oldest first
+CREATE INDEX idx_holds_open_payment_created ON holds (created_at)
+    WHERE payment_session_id IS NOT NULL AND status IN ('ACTIVE', 'EXPIRED');
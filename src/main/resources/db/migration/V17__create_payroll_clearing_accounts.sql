@@ -0,0 +1,10 @@
+-- Payroll clearing GL account. A payroll line debits the employer, credits its GL-PAYROLL
+-- bucket, then debits the bucket and credits the employee, so every payroll run nets the
+-- clearing account back to zero and a non-zero balance points at a half-posted run.
+-- Bucketed like the V12 accounts.
+INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status)
+SELECT 'GL-PAYROLL-' || lpad(b::text, 2, '0'),
+       (SELECT id FROM users WHERE username = 'general-ledger'),
+       (SELECT id FROM account_types WHERE type_code = 'GL'),
+       '021000021', 'ACTIVE'
+FROM generate_series(0, 7) b;
@@ -0,0 +1,4 @@
+-- Optimistic locking for onboarding requests. Claiming a request bumps the version too, so a
+-- worker that outlived its lease can't overwrite the state written by the worker that took the
+-- request over.
+ALTER TABLE onboarding_requests ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,4 @@
+-- Ledger entries were stamped with the posting node's clock, so entries posted to one account
+-- from nodes with skewed clocks could sort out of posting order. clock_timestamp() is read at
+-- insert time, after the posting has taken the account lock.
+ALTER TABLE ledger_entries ALTER COLUMN created_at SET DEFAULT clock_timestamp();
@@ -0,0 +1,5 @@
+-- In-progress idempotency keys are leased rather than held for the whole TTL: expires_at is the
+-- lease end until the request completes, and a key whose lease ran out can be claimed again.
+-- claim_token identifies the current owner, so a request that outlived its lease can no longer
+-- complete or release a key that was taken over.
+ALTER TABLE idempotency_keys ADD COLUMN claim_token UUID;
@@ -0,0 +1,7 @@
+-- Day of the month a monthly standing order runs on. Each period is worked out from this day
+-- rather than from the previous period's date, so an order for the 31st runs on the last day of
+-- shorter months and goes back to the 31st afterwards. Existing orders take the day of their
+-- next date; one that has already drifted (31st -> 28th) keeps the drifted day.
+ALTER TABLE transfers ADD COLUMN anchor_day SMALLINT CHECK (anchor_day BETWEEN 1 AND 31);
+
+UPDATE transfers SET anchor_day = EXTRACT(DAY FROM next_transfer_date);
@@ -0,0 +1,14 @@
+-- Node ids for the Snowflake reference generator are leased instead of taken from a wrapping
+-- sequence. An instance claims a row that is free or whose heartbeat has expired, keeps
+-- heartbeat_at fresh while it runs and clears owner on shutdown, so two live instances can never
+-- hold the same node id. heartbeat_at is TIMESTAMPTZ so instances in different time zones agree
+-- on when a lease expired.
+CREATE TABLE idgen_node_leases (
+    node_id      SMALLINT PRIMARY KEY CHECK (node_id BETWEEN 0 AND 1023),
+    owner        UUID,
+    heartbeat_at TIMESTAMPTZ
+);
+
+INSERT INTO idgen_node_leases (node_id) SELECT generate_series(0, 1023);
+
+DROP SEQUENCE idgen_node_seq;
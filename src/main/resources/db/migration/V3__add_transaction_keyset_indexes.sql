@@ -0,0 +1,9 @@
+-- Teller deposits were saved without a transaction_date; give them their creation time so
+-- history can be ordered (and paged) on (transaction_date, id) without NULL special cases.
+UPDATE transactions SET transaction_date = created_at WHERE transaction_date IS NULL;
+UPDATE transactions SET transaction_date = CURRENT_TIMESTAMP WHERE transaction_date IS NULL;
+
+ALTER TABLE transactions ALTER COLUMN transaction_date SET NOT NULL;
+
+CREATE INDEX idx_transactions_from_account_date_id ON transactions (from_account_id, transaction_date, id);
+CREATE INDEX idx_transactions_to_account_date_id ON transactions (to_account_id, transaction_date, id);
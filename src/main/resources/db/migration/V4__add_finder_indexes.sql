@@ -0,0 +1,36 @@
+-- Secondary indexes for the repository finders. Unique constraints already cover
+-- account_number, transaction_ref, username, keycloak_sub, ssn, tax_id and type_code lookups;
+-- transactions by from/to account are covered by the keyset indexes from V3.
+
+-- AccountRepository.findByUserId / findByUserIdAndStatus / findByUserIdWithAccountType
+CREATE INDEX idx_accounts_user_status ON accounts (user_id, status);
+
+-- IndividualRepository.findByUserId / BusinessRepository.findByUserId
+CREATE INDEX idx_individuals_user ON individuals (user_id);
+CREATE INDEX idx_businesses_user ON businesses (user_id);
+
+-- TransactionRepository.findByStatus / findByEffectiveDate
+CREATE INDEX idx_transactions_status ON transactions (status);
+CREATE INDEX idx_transactions_effective_date ON transactions (effective_date);
+
+-- LedgerEntryRepository.findByAccountId / findByAccountIdOrderByCreatedAtDesc
+CREATE INDEX idx_ledger_entries_account_created ON ledger_entries (account_id, created_at, id);
+-- LedgerEntryRepository.findByTransactionId
+CREATE INDEX idx_ledger_entries_transaction ON ledger_entries (transaction_id);
+
+-- TransferRepository.findByStatus / findByStatusAndNextTransferDateLessThanEqual
+CREATE INDEX idx_transfers_status_next_date ON transfers (status, next_transfer_date);
+-- TransferRepository.findByNextTransferDate
+CREATE INDEX idx_transfers_next_date ON transfers (next_transfer_date);
+-- TransferRepository.findByFromAccountId
+CREATE INDEX idx_transfers_from_account ON transfers (from_account_id);
+
+-- AuditLogRepository.findByUserId / findByActionType / findByCreatedAtBetween
+CREATE INDEX idx_audit_logs_user ON audit_logs (user_id);
+CREATE INDEX idx_audit_logs_action_type ON audit_logs (action_type);
+CREATE INDEX idx_audit_logs_created_at ON audit_logs (created_at);
+
+-- SessionLogRepository.findBySessionToken / findByUserId / findByLoginTimeAfter
+CREATE INDEX idx_session_logs_token ON session_logs (session_token);
+CREATE INDEX idx_session_logs_user ON session_logs (user_id);
+CREATE INDEX idx_session_logs_login_time ON session_logs (login_time);
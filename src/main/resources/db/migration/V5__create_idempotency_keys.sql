@@ -0,0 +1,16 @@
+-- Idempotency store for retried payment and deposit requests. One row per (scope, key);
+-- IN_PROGRESS while the first request runs, COMPLETED with the stored response afterwards.
+CREATE TABLE idempotency_keys (
+    id BIGSERIAL PRIMARY KEY,
+    scope VARCHAR(50) NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    request_hash VARCHAR(64),
+    status VARCHAR(20) NOT NULL CHECK (status IN ('IN_PROGRESS', 'COMPLETED')),
+    response_body TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL,
+    CONSTRAINT uk_idempotency_keys_scope_key UNIQUE (scope, idempotency_key)
+);
+
+-- IdempotencyKeyRepository.deleteExpired
+CREATE INDEX idx_idempotency_keys_expires_at ON idempotency_keys (expires_at);
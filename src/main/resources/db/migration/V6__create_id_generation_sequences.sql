@@ -0,0 +1,7 @@
+-- Node ids for the Snowflake reference generator. Each service instance takes one value at
+-- startup; the sequence wraps within the 10-bit node range.
+CREATE SEQUENCE idgen_node_seq MINVALUE 0 MAXVALUE 1023 START WITH 0 CYCLE;
+
+-- Account number bodies. Each instance reserves a block of 50 numbers per nextval call, so the
+-- increment must match banking.idgen.account-number-block-size.
+CREATE SEQUENCE account_number_seq START WITH 1 INCREMENT BY 50;
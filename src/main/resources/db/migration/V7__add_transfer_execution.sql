@@ -0,0 +1,11 @@
+-- Scheduled transfer execution: finished standing orders move to COMPLETED, and each run stamps
+-- the day it last tried a transfer so a failed one (e.g. insufficient funds) is retried on the
+-- next day's run instead of again within the same run.
+ALTER TABLE transfers DROP CONSTRAINT transfers_status_check;
+ALTER TABLE transfers ADD CONSTRAINT transfers_status_check
+    CHECK (status IN ('ACTIVE', 'PAUSED', 'CANCELLED', 'COMPLETED'));
+
+ALTER TABLE transfers ADD COLUMN last_attempt_date DATE;
+
+-- TransferRepository.claimDueTransfers
+CREATE INDEX idx_transfers_due ON transfers (next_transfer_date, id) WHERE status = 'ACTIVE';
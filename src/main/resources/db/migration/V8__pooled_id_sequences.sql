@@ -0,0 +1,18 @@
+-- Accounts, transactions, ledger entries, audit logs and session logs take their ids from
+-- Hibernate's pooled optimizer (allocationSize = 50) instead of IDENTITY, so inserts can be
+-- batched. Each nextval reserves the 50 ids ending at the returned value, so the increment
+-- must match the entity mappings. The column defaults stay for rows inserted outside JPA.
+ALTER SEQUENCE accounts_id_seq INCREMENT BY 50;
+SELECT setval('accounts_id_seq', COALESCE((SELECT MAX(id) FROM accounts), 1));
+
+ALTER SEQUENCE transactions_id_seq INCREMENT BY 50;
+SELECT setval('transactions_id_seq', COALESCE((SELECT MAX(id) FROM transactions), 1));
+
+ALTER SEQUENCE ledger_entries_id_seq INCREMENT BY 50;
+SELECT setval('ledger_entries_id_seq', COALESCE((SELECT MAX(id) FROM ledger_entries), 1));
+
+ALTER SEQUENCE audit_logs_id_seq INCREMENT BY 50;
+SELECT setval('audit_logs_id_seq', COALESCE((SELECT MAX(id) FROM audit_logs), 1));
+
+ALTER SEQUENCE session_logs_id_seq INCREMENT BY 50;
+SELECT setval('session_logs_id_seq', COALESCE((SELECT MAX(id) FROM session_logs), 1));
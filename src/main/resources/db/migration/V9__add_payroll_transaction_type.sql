@@ -0,0 +1,2 @@
+INSERT INTO transaction_types (type_code, type_name, description, affects_balance)
+VALUES ('PAYROLL', 'Payroll', 'Bulk payroll credit from a business account', true);
@@ -0,0 +1,131 @@
+package com.roshansutihar.bankingservice.email;
+
+import com.roshansutihar.bankingservice.support.SmtpStubServer;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the dispatcher against a migrated Postgres and the in-process SMTP stub
+class EmailOutboxDispatcherTest {
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private SmtpStubServer smtp;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeAll
+    static void startDatabase() {
+        jdbcTemplate = new JdbcTemplate(TestDatabase.migratedDataSource());
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate.update("DELETE FROM email_outbox");
+        smtp = new SmtpStubServer(0);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+        smtp.close();
+    }
+
+    @Test
+    void deliversQueuedMailOverReusedConnections() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            queue("user" + i + "@example.com");
+        }
+
+        dispatcher = newDispatcher(10);
+        dispatcher.start();
+
+        awaitTrue(() -> count("SENT") == 25);
+        assertEquals(25, smtp.getMessages().size());
+        // One connection per worker, not per message
+        assertTrue(smtp.getConnections() <= 2, "connections: " + smtp.getConnections());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM email_outbox WHERE body IS NOT NULL", Integer.class));
+    }
+
+    @Test
+    void retriesWhileServerIsDownThenDelivers() throws Exception {
+        smtp.setFailing(true);
+        queue("retry@example.com");
+
+        dispatcher = newDispatcher(50);
+        dispatcher.start();
+
+        awaitTrue(() -> attempts("retry@example.com") >= 2);
+        assertEquals("PENDING", status("retry@example.com"));
+
+        smtp.setFailing(false);
+        awaitTrue(() -> "SENT".equals(status("retry@example.com")));
+    }
+
+    @Test
+    void deadLettersPermanentRejectionsAndExhaustedRetries() throws Exception {
+        smtp.rejectRecipient("bounce@example.com");
+        queue("bounce@example.com");
+        queue("fine@example.com");
+
+        dispatcher = newDispatcher(3);
+        dispatcher.start();
+
+        awaitTrue(() -> "DEAD".equals(status("bounce@example.com")) && "SENT".equals(status("fine@example.com")));
+        assertEquals(1, attempts("bounce@example.com"));
+
+        smtp.setFailing(true);
+        queue("never@example.com");
+        dispatcher.wakeUp();
+        awaitTrue(() -> "DEAD".equals(status("never@example.com")));
+        assertEquals(3, attempts("never@example.com"));
+        assertNull(jdbcTemplate.queryForObject("SELECT body FROM email_outbox WHERE recipient = ?",
+                String.class, "bounce@example.com"));
+    }
+
+    private EmailOutboxDispatcher newDispatcher(int maxAttempts) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtp.getPort());
+        return new EmailOutboxDispatcher(jdbcTemplate, mailSender, new SimpleMeterRegistry(),
+                "noreply@example.com", 2, 10, 50, maxAttempts, 20, 100, 60_000, 60_000, 30);
+    }
+
+    private void queue(String recipient) {
+        jdbcTemplate.update("INSERT INTO email_outbox (recipient, subject, body) VALUES (?, ?, ?)",
+                recipient, "Welcome", "Temporary password: secret");
+    }
+
+    private int count(String status) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM email_outbox WHERE status = ?", Integer.class, status);
+    }
+
+    private String status(String recipient) {
+        return jdbcTemplate.queryForObject("SELECT status FROM email_outbox WHERE recipient = ?", String.class, recipient);
+    }
+
+    private int attempts(String recipient) {
+        return jdbcTemplate.queryForObject("SELECT attempts FROM email_outbox WHERE recipient = ?", Integer.class, recipient);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 10s");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
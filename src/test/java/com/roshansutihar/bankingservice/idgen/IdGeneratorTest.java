@@ -0,0 +1,94 @@
+package com.roshansutihar.bankingservice.idgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+
+    @Test
+    void snowflakeIdsAreUniqueAcrossThreads() throws Exception {
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator(7, Clock.systemUTC());
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(400_000, ids.size());
+    }
+
+    @Test
+    void snowflakeIdsKeepIncreasingWhenClockStepsBack() {
+        AtomicLong millis = new AtomicLong(Instant.parse("2025-06-01T00:00:00Z").toEpochMilli());
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(millis.get());
+            }
+        };
+        SnowflakeReferenceGenerator generator = new SnowflakeReferenceGenerator(1, clock);
+
+        long previous = generator.nextId();
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                millis.addAndGet(-1_000);
+            }
+            long next = generator.nextId();
+            assertTrue(next > previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void accountNumbersComeFromReservedBlocksAndPassLuhn() {
+        AtomicLong sequence = new AtomicLong(1);
+        AtomicLong blockFetches = new AtomicLong();
+        SequenceAccountNumberGenerator generator = new SequenceAccountNumberGenerator(() -> {
+            blockFetches.incrementAndGet();
+            return sequence.getAndAdd(50);
+        }, 50);
+
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 120; i++) {
+            String number = generator.nextAccountNumber();
+            assertEquals(12, number.length());
+            assertTrue(number.startsWith("01"));
+            assertTrue(SequenceAccountNumberGenerator.isValid(number), number);
+            numbers.add(number);
+        }
+
+        assertEquals(120, numbers.size());
+        assertEquals(3, blockFetches.get());
+        assertFalse(SequenceAccountNumberGenerator.isValid("010000000011"));
+    }
+}
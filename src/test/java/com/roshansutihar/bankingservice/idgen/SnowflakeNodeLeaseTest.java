@@ -0,0 +1,94 @@
+package com.roshansutihar.bankingservice.idgen;
+
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Node id leases in idgen_node_leases, on a migrated embedded Postgres with every lease freed
+// before each test.
+class SnowflakeNodeLeaseTest {
+
+    private static final long LEASE_SECONDS = 60;
+
+    private static final JdbcTemplate jdbc = new JdbcTemplate(TestDatabase.migratedDataSource());
+
+    @BeforeEach
+    void freeAllLeases() {
+        jdbc.update("UPDATE idgen_node_leases SET owner = NULL, heartbeat_at = NULL");
+    }
+
+    @Test
+    void runningInstancesNeverShareANodeId() {
+        Set<Long> nodeIds = new HashSet<>();
+        for (int i = 0; i < 1024; i++) {
+            nodeIds.add(generator(-1).getNodeId());
+        }
+
+        assertEquals(1024, nodeIds.size());
+        // Where the wrapping sequence handed out node id 0 again, a full table refuses
+        assertThrows(IllegalStateException.class, () -> generator(-1));
+    }
+
+    @Test
+    void releasedNodeIdIsLeasedAgain() {
+        SnowflakeReferenceGenerator first = generator(-1);
+        SnowflakeReferenceGenerator second = generator(-1);
+
+        first.releaseNodeId();
+
+        assertNull(jdbc.queryForObject("SELECT owner FROM idgen_node_leases WHERE node_id = ?",
+                Object.class, first.getNodeId()));
+        assertEquals(first.getNodeId(), generator(-1).getNodeId());
+        assertNotEquals(first.getNodeId(), second.getNodeId());
+    }
+
+    @Test
+    void configuredNodeIdHeldByALiveInstanceStopsStartup() {
+        generator(5);
+
+        assertThrows(IllegalStateException.class, () -> generator(5));
+    }
+
+    @Test
+    void expiredLeaseCanBeTakenOver() {
+        SnowflakeReferenceGenerator stale = generator(5);
+        expire(5);
+
+        SnowflakeReferenceGenerator replacement = generator(5);
+
+        assertEquals(5, replacement.getNodeId());
+        // The stale instance finds its lease gone on the next heartbeat and moves off node id 5
+        stale.heartbeat();
+        assertNotEquals(5, stale.getNodeId());
+        replacement.heartbeat();
+        assertEquals(5, replacement.getNodeId());
+    }
+
+    @Test
+    void heartbeatKeepsTheLeaseAlive() {
+        SnowflakeReferenceGenerator generator = generator(9);
+        expire(9);
+
+        generator.heartbeat();
+
+        assertEquals(9, generator.getNodeId());
+        assertThrows(IllegalStateException.class, () -> generator(9));
+    }
+
+    private static SnowflakeReferenceGenerator generator(long configuredNodeId) {
+        return new SnowflakeReferenceGenerator(jdbc, configuredNodeId, LEASE_SECONDS);
+    }
+
+    private static void expire(long nodeId) {
+        jdbc.update("UPDATE idgen_node_leases SET heartbeat_at = now() - interval '1 hour' WHERE node_id = ?", nodeId);
+    }
+}
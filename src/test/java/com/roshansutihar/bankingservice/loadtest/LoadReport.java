@@ -0,0 +1,109 @@
+package com.roshansutihar.bankingservice.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-endpoint latency (HdrHistogram, microseconds) and error counts. Workers record from any
+// thread; interval and summary reads happen on the one reporting thread. Intervals taken before
+// the end of warmup are printed but left out of the totals.
+class LoadReport {
+
+    static final String DASHBOARD = "dashboard";
+    static final String TRANSACTIONS = "transactions";
+    static final String VALIDATE_QR = "validate-qr";
+    static final String PROCESS_PAYMENT = "process-payment";
+
+    private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+
+    LoadReport() {
+        for (String endpoint : new String[]{DASHBOARD, TRANSACTIONS, VALIDATE_QR, PROCESS_PAYMENT}) {
+            endpoints.put(endpoint, new EndpointStats());
+        }
+    }
+
+    // startNanos is when the request should have started, so time spent queued behind a slow
+    // earlier request counts against this one
+    void record(String endpoint, long startNanos, boolean success) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (success) {
+            stats.recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)));
+        } else {
+            stats.errors.increment();
+        }
+    }
+
+    long errorCount() {
+        long errors = 0;
+        for (EndpointStats stats : endpoints.values()) {
+            errors += stats.errors.sum() + stats.totalErrors;
+        }
+        return errors;
+    }
+
+    void takeInterval(PrintStream out, String phase, double elapsedSeconds, double intervalSeconds, boolean measuring) {
+        StringBuilder line = new StringBuilder(String.format("%7.1fs %-7s", elapsedSeconds, phase));
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            EndpointStats stats = entry.getValue();
+            stats.interval = stats.recorder.getIntervalHistogram(stats.interval);
+            long errors = stats.errors.sumThenReset();
+            if (measuring) {
+                stats.total.add(stats.interval);
+                stats.totalErrors += errors;
+            }
+            line.append(String.format(" | %s %.0f/s p99 %.1fms err %d", entry.getKey(),
+                    stats.interval.getTotalCount() / intervalSeconds, millis(stats.interval.getValueAtPercentile(99)), errors));
+        }
+        out.println(line);
+    }
+
+    void printSummary(PrintStream out, double measuredSeconds) {
+        out.println();
+        out.printf("%-16s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            Histogram total = entry.getValue().total;
+            long count = total.getTotalCount();
+            requests += count;
+            errors += entry.getValue().totalErrors;
+            out.printf("%-16s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), count, entry.getValue().totalErrors, count / measuredSeconds,
+                    millis(total.getValueAtPercentile(50)), millis(total.getValueAtPercentile(90)),
+                    millis(total.getValueAtPercentile(99)), millis(total.getValueAtPercentile(99.9)),
+                    millis(total.getMaxValue()));
+        }
+        out.printf("%-16s %9d %7d %9.1f%n", "total", requests, errors, requests / measuredSeconds);
+    }
+
+    // Full percentile distributions in milliseconds, one file per endpoint, for plotting
+    void writeHistograms(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(entry.getKey() + ".hgrm")))) {
+                entry.getValue().total.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class EndpointStats {
+        private final Recorder recorder = new Recorder(3);
+        private final LongAdder errors = new LongAdder();
+        private final Histogram total = new Histogram(3);
+        private Histogram interval;
+        private long totalErrors;
+    }
+}
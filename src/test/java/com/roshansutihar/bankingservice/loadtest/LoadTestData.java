@@ -0,0 +1,158 @@
+package com.roshansutihar.bankingservice.loadtest;
+
+import com.roshansutihar.bankingservice.support.JwtIssuerStubServer;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Creates the load users (loaduser-0 .. loaduser-N-1) with one checking account each, directly
+// in the service's database once Flyway has run. A new account is funded by an opening cash
+// deposit posted the way a teller deposit is (debit the account's GL-CASH bucket, credit the
+// account), so balances agree with the ledger. Existing users and accounts are left alone,
+// so repeated runs reuse them.
+class LoadTestData {
+
+    static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000.00");
+    private static final String ROUTING_NUMBER = "021000021";
+
+    private final String jdbcUrl;
+    private final String jdbcUser;
+    private final String jdbcPassword;
+
+    LoadTestData(String jdbcUrl, String jdbcUser, String jdbcPassword) {
+        this.jdbcUrl = jdbcUrl;
+        this.jdbcUser = jdbcUser;
+        this.jdbcPassword = jdbcPassword;
+    }
+
+    static String username(int index) {
+        return "loaduser-" + index;
+    }
+
+    // Returns the number of accounts opened by this call
+    int seed(int users) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, jdbcUser, jdbcPassword)) {
+            connection.setAutoCommit(false);
+            List<Long> cashBuckets = queryIds(connection,
+                    "SELECT id FROM accounts WHERE account_number LIKE 'GL-CASH-%' ORDER BY account_number");
+            if (cashBuckets.isEmpty()) {
+                throw new IllegalStateException("No GL-CASH accounts found; has the service run its migrations?");
+            }
+
+            int opened = 0;
+            for (int i = 0; i < users; i++) {
+                if (seedUser(connection, username(i), String.format("LOAD%08d", i), cashBuckets)) {
+                    opened++;
+                }
+                connection.commit();
+            }
+            return opened;
+        }
+    }
+
+    private boolean seedUser(Connection connection, String username, String accountNumber, List<Long> cashBuckets)
+            throws SQLException {
+        try (PreparedStatement insertUser = connection.prepareStatement("INSERT INTO users " +
+                "(user_type, username, email, keycloak_sub, status) VALUES ('INDIVIDUAL', ?, ?, ?, 'ACTIVE') " +
+                "ON CONFLICT DO NOTHING")) {
+            insertUser.setString(1, username);
+            insertUser.setString(2, JwtIssuerStubServer.emailFor(username));
+            insertUser.setString(3, JwtIssuerStubServer.subjectFor(username));
+            insertUser.executeUpdate();
+        }
+
+        Long accountId;
+        try (PreparedStatement insertAccount = connection.prepareStatement("INSERT INTO accounts " +
+                "(account_number, user_id, account_type_id, routing_number, status) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), ?, 'ACTIVE' " +
+                "FROM users u WHERE u.username = ? " +
+                "ON CONFLICT DO NOTHING RETURNING id")) {
+            insertAccount.setString(1, accountNumber);
+            insertAccount.setString(2, ROUTING_NUMBER);
+            insertAccount.setString(3, username);
+            accountId = singleId(insertAccount);
+        }
+        if (accountId == null) {
+            return false;
+        }
+
+        Long cashAccountId = cashBuckets.get((int) Math.floorMod(accountId, (long) cashBuckets.size()));
+        BigDecimal cashBalance;
+        try (PreparedStatement lockCash = connection.prepareStatement(
+                "SELECT current_balance FROM accounts WHERE id = ? FOR UPDATE")) {
+            lockCash.setLong(1, cashAccountId);
+            try (ResultSet rs = lockCash.executeQuery()) {
+                rs.next();
+                cashBalance = rs.getBigDecimal(1);
+            }
+        }
+
+        Long transactionId;
+        try (PreparedStatement insertTransaction = connection.prepareStatement("INSERT INTO transactions " +
+                "(transaction_ref, from_account_id, to_account_id, transaction_type_id, amount, description, status, " +
+                "transaction_date, effective_date) " +
+                "SELECT ?, ?, ?, id, ?, 'Cash deposit - load test opening balance', 'COMPLETED', now(), current_date " +
+                "FROM transaction_types WHERE type_code = 'DEPOSIT' RETURNING id")) {
+            insertTransaction.setString(1, "LOAD-OPEN-" + accountNumber);
+            insertTransaction.setLong(2, cashAccountId);
+            insertTransaction.setLong(3, accountId);
+            insertTransaction.setBigDecimal(4, OPENING_BALANCE);
+            transactionId = singleId(insertTransaction);
+        }
+
+        try (PreparedStatement insertEntry = connection.prepareStatement("INSERT INTO ledger_entries " +
+                "(transaction_id, account_id, entry_type, amount, running_balance, created_at) VALUES (?, ?, ?, ?, ?, now())")) {
+            addEntry(insertEntry, transactionId, cashAccountId, "DEBIT", cashBalance.subtract(OPENING_BALANCE));
+            addEntry(insertEntry, transactionId, accountId, "CREDIT", OPENING_BALANCE);
+            insertEntry.executeBatch();
+        }
+
+        try (PreparedStatement applyBalance = connection.prepareStatement("UPDATE accounts SET " +
+                "current_balance = current_balance + ?, available_balance = available_balance + ? WHERE id = ?")) {
+            addBalance(applyBalance, cashAccountId, OPENING_BALANCE.negate());
+            addBalance(applyBalance, accountId, OPENING_BALANCE);
+            applyBalance.executeBatch();
+        }
+        return true;
+    }
+
+    private static void addEntry(PreparedStatement insertEntry, Long transactionId, Long accountId, String entryType,
+                                 BigDecimal runningBalance) throws SQLException {
+        insertEntry.setLong(1, transactionId);
+        insertEntry.setLong(2, accountId);
+        insertEntry.setString(3, entryType);
+        insertEntry.setBigDecimal(4, OPENING_BALANCE);
+        insertEntry.setBigDecimal(5, runningBalance);
+        insertEntry.addBatch();
+    }
+
+    private static void addBalance(PreparedStatement applyBalance, Long accountId, BigDecimal delta) throws SQLException {
+        applyBalance.setBigDecimal(1, delta);
+        applyBalance.setBigDecimal(2, delta);
+        applyBalance.setLong(3, accountId);
+        applyBalance.addBatch();
+    }
+
+    private static Long singleId(PreparedStatement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    private static List<Long> queryIds(Connection connection, String sql) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,306 @@
+package com.roshansutihar.bankingservice.loadtest;
+
+import com.roshansutihar.bankingservice.support.JwtIssuerStubServer;
+import com.roshansutihar.bankingservice.support.PaymentsCoreStubServer;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// End-to-end load test of the mobile API against a locally running service. The harness starts
+// a JWT issuer stand-in and a payments core stub, prints the environment to start the service
+// with, waits for it, seeds load users, then drives a weighted mix of
+//  - DASHBOARD:    GET /api/mobile/dashboard
+//  - TRANSACTIONS: GET /api/mobile/transactions, sometimes following the next-page cursor
+//  - PAYMENT:      a fresh payments-core session, POST /validate-qr, then POST /process-payment
+// and reports per-endpoint throughput and HdrHistogram latency percentiles.
+//
+// With --rate the load is open-loop: actions start on a fixed schedule and latency is measured
+// from the scheduled start, so a stalled service shows up in the percentiles instead of quietly
+// lowering the request rate. Without it each worker runs closed-loop.
+//
+// ./mvnw test-compile exec:java -Dexec.classpathScope=test \
+//     -Dexec.mainClass=com.roshansutihar.bankingservice.loadtest.LoadTestHarness \
+//     -Dexec.args="--users=200 --workers=64 --rate=400 --duration-seconds=300 --hgrm-dir=target/loadtest"
+//
+// Other options (see LoadTestOptions): --target, --mix=dashboard:40,transactions:35,payment:25,
+// --think-time-ms, --warmup-seconds, --prime-payments, --payments-latency-ms, --jdbc-url.
+public class LoadTestHarness {
+
+    private static final String CURRENCY = "USD";
+    private static final int MERCHANTS = 20;
+
+    private final LoadTestOptions options;
+    private final JwtIssuerStubServer issuer;
+    private final PaymentsCoreStubServer paymentsCore;
+    private final MobileApiClient client;
+    // One bearer token per load user
+    private final List<String> tokens = new ArrayList<>();
+    private final AtomicLong paymentCounter = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+
+    LoadTestHarness(LoadTestOptions options, JwtIssuerStubServer issuer, PaymentsCoreStubServer paymentsCore,
+                    MobileApiClient client) {
+        this.options = options;
+        this.issuer = issuer;
+        this.paymentsCore = paymentsCore;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        try (JwtIssuerStubServer issuer = new JwtIssuerStubServer(options.issuerPort);
+             PaymentsCoreStubServer paymentsCore = new PaymentsCoreStubServer(options.paymentsPort)) {
+            paymentsCore.setLatencyMs(options.paymentsLatencyMs);
+            issuer.setTokenLifetimeSeconds(Math.max(3_600,
+                    options.startupTimeoutSeconds + options.warmupSeconds + options.durationSeconds + 600));
+            printServiceEnvironment(issuer, paymentsCore);
+
+            MobileApiClient client = new MobileApiClient(options.target);
+            awaitService(client, options);
+
+            int opened = new LoadTestData(options.jdbcUrl, options.jdbcUser, options.jdbcPassword).seed(options.users);
+            System.out.printf("Seeded %d load users (%d new accounts)%n", options.users, opened);
+
+            new LoadTestHarness(options, issuer, paymentsCore, client).run();
+        }
+        // The stubs' request threads are not daemons
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        for (int i = 0; i < options.users; i++) {
+            tokens.add(issuer.issueToken(LoadTestData.username(i), List.of("user")));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.workers);
+        try {
+            prime(pool);
+            measure(pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // A few payments per user through the API first, so transaction pages have history to walk
+    private void prime(ExecutorService pool) throws Exception {
+        if (options.primePayments <= 0) {
+            return;
+        }
+        LoadReport discarded = new LoadReport();
+        List<Future<?>> primers = new ArrayList<>();
+        for (int w = 0; w < options.workers; w++) {
+            List<String> own = usersFor(w);
+            primers.add(pool.submit(() -> {
+                for (String user : own) {
+                    for (int i = 0; i < options.primePayments; i++) {
+                        pay(user, System.nanoTime(), ThreadLocalRandom.current(), discarded);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> primer : primers) {
+            primer.get();
+        }
+        System.out.printf("Primed %d payments per user (%d failed requests)%n", options.primePayments, discarded.errorCount());
+    }
+
+    private void measure(ExecutorService pool) throws Exception {
+        LoadReport report = new LoadReport();
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        System.out.printf("Running %d workers for %ds warmup + %ds, %s, mix %s%n", options.workers,
+                options.warmupSeconds, options.durationSeconds,
+                options.rate > 0 ? "open-loop at " + options.rate + " actions/s" : "closed-loop", options.mix);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < options.workers; w++) {
+            List<String> own = usersFor(w);
+            workers.add(pool.submit(() -> {
+                runWorker(own, start, end, report);
+                return null;
+            }));
+        }
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, options.reportIntervalSeconds));
+        long tick = start;
+        while (tick < end) {
+            long next = Math.min(tick + intervalNanos, end);
+            if (tick < warmupEnd) {
+                next = Math.min(next, warmupEnd);
+            }
+            sleepUntil(next);
+            boolean measuring = next > warmupEnd;
+            report.takeInterval(System.out, measuring ? "measure" : "warmup", (next - start) / 1e9,
+                    (next - tick) / 1e9, measuring);
+            tick = next;
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        // Requests still in flight at the end
+        report.takeInterval(System.out, "drain", (System.nanoTime() - start) / 1e9,
+                Math.max(0.001, (System.nanoTime() - end) / 1e9), true);
+
+        report.printSummary(System.out, options.durationSeconds);
+        System.out.printf("payments core: %d status calls, %d complete calls%n",
+                paymentsCore.getStatusCalls(), paymentsCore.getCompleteCalls());
+        if (options.hgrmDir != null) {
+            report.writeHistograms(Path.of(options.hgrmDir));
+            System.out.println("Percentile distributions written to " + options.hgrmDir);
+        }
+    }
+
+    private void runWorker(List<String> own, long start, long end, LoadReport report) {
+        Random random = ThreadLocalRandom.current();
+        long actionIntervalNanos = options.rate > 0 ? (long) (1e9 * options.workers / options.rate) : 0;
+        // Spread the workers' schedules across one interval instead of starting them in lockstep
+        long scheduled = start + (actionIntervalNanos > 0 ? (long) (random.nextDouble() * actionIntervalNanos) : 0);
+
+        while (true) {
+            long intended;
+            if (actionIntervalNanos > 0) {
+                intended = scheduled;
+                scheduled += actionIntervalNanos;
+                if (intended >= end) {
+                    return;
+                }
+                sleepUntil(intended);
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    return;
+                }
+            }
+
+            String user = own.get(random.nextInt(own.size()));
+            switch (pickAction(random)) {
+                case DASHBOARD -> report.record(LoadReport.DASHBOARD, intended, client.dashboard(user).isOk("success"));
+                case TRANSACTIONS -> browseTransactions(user, intended, random, report);
+                case PAYMENT -> pay(user, intended, random, report);
+            }
+
+            if (options.thinkTimeMs > 0) {
+                sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.thinkTimeMs));
+            }
+        }
+    }
+
+    // First page, and now and then the page after it, as someone scrolling back would
+    private void browseTransactions(String user, long intended, Random random, LoadReport report) {
+        MobileApiClient.Response page = client.transactions(user, null);
+        boolean ok = page.isOk("success");
+        report.record(LoadReport.TRANSACTIONS, intended, ok);
+        Object cursor = page.get("nextCursor");
+        if (ok && cursor != null && random.nextInt(100) < 30) {
+            long started = System.nanoTime();
+            report.record(LoadReport.TRANSACTIONS, started, client.transactions(user, (String) cursor).isOk("success"));
+        }
+    }
+
+    // The merchant's terminal opens a session with the payments core, the customer scans the QR
+    // code, checks it and pays
+    private void pay(String user, long intended, Random random, LoadReport report) {
+        long n = paymentCounter.incrementAndGet();
+        String sessionId = "LT-" + runId + "-" + n;
+        String transactionRef = "LTREF-" + runId + "-" + n;
+        String merchantId = "MERCHANT-" + (1 + random.nextInt(MERCHANTS));
+        double amount = (100 + random.nextInt(4_900)) / 100.0;
+        paymentsCore.addSession(sessionId, BigDecimal.valueOf(amount), CURRENCY, merchantId, transactionRef);
+
+        String qrData = String.join("|", "QRPAY", sessionId, Double.toString(amount), CURRENCY, merchantId, transactionRef);
+        MobileApiClient.Response validation = client.validateQr(user, qrData);
+        boolean valid = validation.isOk("valid");
+        report.record(LoadReport.VALIDATE_QR, intended, valid);
+        if (!valid) {
+            return;
+        }
+
+        Map<String, Object> payment = new LinkedHashMap<>();
+        payment.put("sessionId", sessionId);
+        payment.put("amount", amount);
+        payment.put("merchantId", merchantId);
+        payment.put("transactionRef", transactionRef);
+        payment.put("payerAccountId", validation.get("payerAccountId"));
+        long started = System.nanoTime();
+        report.record(LoadReport.PROCESS_PAYMENT, started,
+                client.processPayment(user, UUID.randomUUID().toString(), payment).isOk("success"));
+    }
+
+    private LoadTestOptions.Action pickAction(Random random) {
+        int total = 0;
+        for (int weight : options.mix.values()) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        for (Map.Entry<LoadTestOptions.Action, Integer> entry : options.mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty action mix");
+    }
+
+    // Each user belongs to one worker, so a user never has two actions in flight; with fewer
+    // users than workers, workers share them
+    private List<String> usersFor(int worker) {
+        List<String> own = new ArrayList<>();
+        for (int i = worker; i < tokens.size(); i += options.workers) {
+            own.add(tokens.get(i));
+        }
+        if (own.isEmpty()) {
+            own.add(tokens.get(worker % tokens.size()));
+        }
+        return own;
+    }
+
+    private static void printServiceEnvironment(JwtIssuerStubServer issuer, PaymentsCoreStubServer paymentsCore) {
+        System.out.println("Start the service with (plus POSTGRES_* for its database):");
+        System.out.println("  KEYCLOAK_ISSUER_URI=" + issuer.getIssuerUri());
+        System.out.println("  KEYCLOAK_BASE_URL=" + issuer.getBaseUrl());
+        System.out.println("  KEYCLOAK_REALM=" + JwtIssuerStubServer.REALM);
+        System.out.println("  KEYCLOAK_FRONTEND_CLIENT_ID=" + JwtIssuerStubServer.CLIENT_ID);
+        System.out.println("  KEYCLOAK_BACKEND_CLIENT_ID=unused KEYCLOAK_ADMIN_CLIENT_SECRET=unused");
+        System.out.println("  KEYCLOAK_CLIENT_REDIRECT=http://localhost:8080/login/oauth2/code/keycloak");
+        System.out.println("  PAYMENTS_CORE_BASE_URL=" + paymentsCore.getBaseUrl());
+        System.out.println("  PRODUCTION_URL=http://localhost:8080 LOGOUT_URL=http://localhost:8080/");
+        System.out.println("  EMAIL_ADDRESS=unused EMAIL_PASSWORD=unused");
+    }
+
+    private static void awaitService(MobileApiClient client, LoadTestOptions options) throws InterruptedException {
+        System.out.println("Waiting for the service at " + options.target + " ...");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.startupTimeoutSeconds);
+        while (!client.isUp()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Service did not come up within " + options.startupTimeoutSeconds + "s");
+            }
+            Thread.sleep(1_000);
+        }
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.roshansutihar.bankingservice.loadtest;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+// Command-line options for LoadTestHarness, given as --name=value. Database settings default to
+// the POSTGRES_* variables the service itself reads, so both can share one environment.
+class LoadTestOptions {
+
+    enum Action {
+        DASHBOARD, TRANSACTIONS, PAYMENT
+    }
+
+    String target = "http://localhost:8080";
+    int issuerPort = 8098;
+    int paymentsPort = 8099;
+    long paymentsLatencyMs = 20;
+    int users = 100;
+    int workers = 32;
+    // Actions per second across all workers; 0 runs closed-loop, each worker as fast as it can
+    double rate = 0;
+    long thinkTimeMs = 0;
+    long warmupSeconds = 30;
+    long durationSeconds = 120;
+    int primePayments = 5;
+    long reportIntervalSeconds = 5;
+    long startupTimeoutSeconds = 300;
+    String jdbcUrl = System.getenv("POSTGRES_URL");
+    String jdbcUser = System.getenv("POSTGRES_USERNAME");
+    String jdbcPassword = System.getenv("POSTGRES_PASSWORD");
+    String hgrmDir;
+    Map<Action, Integer> mix = new EnumMap<>(Map.of(Action.DASHBOARD, 40, Action.TRANSACTIONS, 35, Action.PAYMENT, 25));
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions();
+        options.target = stripTrailingSlash(values.getOrDefault("target", options.target));
+        options.issuerPort = intValue(values, "issuer-port", options.issuerPort);
+        options.paymentsPort = intValue(values, "payments-port", options.paymentsPort);
+        options.paymentsLatencyMs = longValue(values, "payments-latency-ms", options.paymentsLatencyMs);
+        options.users = intValue(values, "users", options.users);
+        options.workers = intValue(values, "workers", options.workers);
+        options.rate = values.containsKey("rate") ? Double.parseDouble(values.get("rate")) : options.rate;
+        options.thinkTimeMs = longValue(values, "think-time-ms", options.thinkTimeMs);
+        options.warmupSeconds = longValue(values, "warmup-seconds", options.warmupSeconds);
+        options.durationSeconds = longValue(values, "duration-seconds", options.durationSeconds);
+        options.primePayments = intValue(values, "prime-payments", options.primePayments);
+        options.reportIntervalSeconds = longValue(values, "report-interval-seconds", options.reportIntervalSeconds);
+        options.startupTimeoutSeconds = longValue(values, "startup-timeout-seconds", options.startupTimeoutSeconds);
+        options.jdbcUrl = values.getOrDefault("jdbc-url", options.jdbcUrl);
+        options.jdbcUser = values.getOrDefault("jdbc-user", options.jdbcUser);
+        options.jdbcPassword = values.getOrDefault("jdbc-password", options.jdbcPassword);
+        options.hgrmDir = values.getOrDefault("hgrm-dir", options.hgrmDir);
+        if (values.containsKey("mix")) {
+            options.mix = parseMix(values.get("mix"));
+        }
+
+        if (options.users < 1 || options.workers < 1) {
+            throw new IllegalArgumentException("users and workers must be at least 1");
+        }
+        if (options.jdbcUrl == null) {
+            throw new IllegalArgumentException("Set --jdbc-url or POSTGRES_URL to the service's database");
+        }
+        return options;
+    }
+
+    // e.g. dashboard:40,transactions:35,payment:25
+    private static Map<Action, Integer> parseMix(String value) {
+        Map<Action, Integer> mix = new EnumMap<>(Action.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split(":");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected action:weight in --mix, got: " + part);
+            }
+            mix.put(Action.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("--mix weights must add up to more than 0");
+        }
+        return mix;
+    }
+
+    private static int intValue(Map<String, String> values, String name, int defaultValue) {
+        return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+    }
+
+    private static long longValue(Map<String, String> values, String name, long defaultValue) {
+        return values.containsKey(name) ? Long.parseLong(values.get(name)) : defaultValue;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,134 @@
+package com.roshansutihar.bankingservice.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+// The mobile API calls the load harness makes, as the mobile app makes them: bearer token,
+// JSON in and out. Transport failures come back as status 0 so the caller counts them as errors.
+class MobileApiClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
+
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    MobileApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    Response dashboard(String token) {
+        return send(get("/api/mobile/dashboard", token));
+    }
+
+    Response transactions(String token, String cursor) {
+        String path = "/api/mobile/transactions?size=20";
+        if (cursor != null) {
+            path += "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8);
+        }
+        return send(get(path, token));
+    }
+
+    Response validateQr(String token, String qrData) {
+        return send(post("/api/mobile/validate-qr", token, Map.of("qrData", qrData)).build());
+    }
+
+    Response processPayment(String token, String idempotencyKey, Map<String, Object> payment) {
+        return send(post("/api/mobile/process-payment", token, payment)
+                .header("Idempotency-Key", idempotencyKey)
+                .build());
+    }
+
+    // Any HTTP answer at all (the public home page, a login redirect) means the service is up
+    boolean isUp() {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/")).timeout(Duration.ofSeconds(5)).GET().build();
+        try {
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Authorization", "Bearer " + token)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+    }
+
+    private HttpRequest.Builder post(String path, String token, Map<String, ?> body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Authorization", "Bearer " + token)
+                    .header("Accept", "application/json")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Response send(HttpRequest request) {
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            Map<String, Object> body = null;
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (contentType.startsWith("application/json") && response.body().length > 0) {
+                body = objectMapper.readValue(response.body(), JSON_OBJECT);
+            }
+            return new Response(response.statusCode(), body);
+        } catch (IOException e) {
+            return new Response(0, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(0, null);
+        }
+    }
+
+    static class Response {
+        private final int status;
+        private final Map<String, Object> body;
+
+        Response(int status, Map<String, Object> body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        Object get(String field) {
+            return body != null ? body.get(field) : null;
+        }
+
+        // 200 with the given flag set, which is how the mobile endpoints report success
+        boolean isOk(String flag) {
+            return status == 200 && Boolean.TRUE.equals(get(flag));
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.AuditLog;
+import com.roshansutihar.bankingservice.entity.LedgerEntry;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.enums.EntryType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.support.RoundTripCountingDataSource;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Persists Transaction, LedgerEntry and AuditLog entities through the EntityManager, as the
+// posting paths do, and counts the round trips Hibernate makes under three settings:
+//   batched    - application.properties: pooled ids (allocationSize = 50), hibernate.jdbc.batch_size
+//                = 50, order_inserts and reWriteBatchedInserts
+//   unordered  - the same without order_inserts, so every change of table ends a batch
+//   unbatched  - batch_size 0: one INSERT round trip per row
+// for single payments (one transaction each) and for a bulk teller/payroll posting (one
+// transaction). Each posting writes a transaction, its ledger entry and an audit row.
+//
+// Opt-in: mvn test -Dtest=InsertBatchingBenchmarkTest -Dbenchmarks=true
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class InsertBatchingBenchmarkTest {
+
+    private static final int ALLOCATION_SIZE = 50;
+    private static final int PAYMENTS = 500;
+    private static final int BULK_POSTINGS = 5_000;
+    // Flush and clear every this many postings, as BatchPostingService clears per chunk
+    private static final int BULK_CHUNK = 500;
+
+    private static final AtomicLong refCounter = new AtomicLong();
+
+    private static Setup batched;
+    private static Setup unordered;
+    private static Setup unbatched;
+
+    @BeforeAll
+    static void startContexts() throws Exception {
+        Properties application = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        List<String> hibernate = new ArrayList<>();
+        for (String name : application.stringPropertyNames()) {
+            if (name.startsWith("spring.jpa.properties.hibernate.")) {
+                hibernate.add(name + "=" + application.getProperty(name));
+            }
+        }
+        boolean rewrite = Boolean.parseBoolean(
+                application.getProperty("spring.datasource.hikari.data-source-properties.reWriteBatchedInserts"));
+        assertEquals(String.valueOf(ALLOCATION_SIZE),
+                application.getProperty("spring.jpa.properties.hibernate.jdbc.batch_size"));
+
+        batched = new Setup(rewrite, hibernate);
+        unordered = new Setup(rewrite, with(hibernate, "spring.jpa.properties.hibernate.order_inserts=false"));
+        unbatched = new Setup(rewrite, with(hibernate, "spring.jpa.properties.hibernate.jdbc.batch_size=0"));
+    }
+
+    @AfterAll
+    static void stopContexts() {
+        for (Setup setup : new Setup[]{batched, unordered, unbatched}) {
+            if (setup != null) {
+                setup.close();
+            }
+        }
+    }
+
+    @Test
+    void comparesRoundTripsWithAndWithoutInsertBatching() {
+        // Warm up the server, driver and JIT before measuring
+        for (int i = 0; i < 3; i++) {
+            for (Setup setup : new Setup[]{batched, unordered, unbatched}) {
+                setup.payments(100);
+                setup.bulkPosting(1_000);
+            }
+        }
+
+        Result batchedPayments = batched.measure(() -> batched.payments(PAYMENTS));
+        Result unorderedPayments = unordered.measure(() -> unordered.payments(PAYMENTS));
+        Result unbatchedPayments = unbatched.measure(() -> unbatched.payments(PAYMENTS));
+        Result batchedBulk = batched.measure(() -> batched.bulkPosting(BULK_POSTINGS));
+        Result unorderedBulk = unordered.measure(() -> unordered.bulkPosting(BULK_POSTINGS));
+        Result unbatchedBulk = unbatched.measure(() -> unbatched.bulkPosting(BULK_POSTINGS));
+
+        report("payment (1 db transaction each)", PAYMENTS, batchedPayments, unorderedPayments, unbatchedPayments);
+        report("bulk posting (1 db transaction)", BULK_POSTINGS, batchedBulk, unorderedBulk, unbatchedBulk);
+
+        // Pooled ids: one nextval per table per 50 rows, whatever the batching
+        int blocks = (BULK_POSTINGS + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        assertTrue(batchedBulk.nextvals <= 3 * (blocks + 1), "nextval calls: " + batchedBulk.nextvals);
+        assertTrue(batchedPayments.nextvals <= 3 * (PAYMENTS / ALLOCATION_SIZE + 1),
+                "nextval calls: " + batchedPayments.nextvals);
+
+        // Ordered batches: one round trip per table per 50 rows
+        assertTrue(batchedBulk.inserts <= 3 * (blocks + BULK_POSTINGS / BULK_CHUNK), "insert round trips: " + batchedBulk.inserts);
+        assertEquals(3 * BULK_POSTINGS, unbatchedBulk.inserts);
+        // Unordered, the tables alternate and each batch holds a single row
+        assertTrue(unorderedBulk.inserts > BULK_POSTINGS, "insert round trips: " + unorderedBulk.inserts);
+        // A payment's three rows are three tables, so batching cannot merge them
+        assertEquals(3 * PAYMENTS, batchedPayments.inserts);
+
+        assertTrue(batchedBulk.nanos < unbatchedBulk.nanos, "Batched bulk posting should beat row-by-row inserts");
+    }
+
+    private static List<String> with(List<String> properties, String override) {
+        String key = override.substring(0, override.indexOf('=') + 1);
+        List<String> result = new ArrayList<>();
+        for (String property : properties) {
+            if (!property.startsWith(key)) {
+                result.add(property);
+            }
+        }
+        result.add(override);
+        return result;
+    }
+
+    private static void report(String scenario, int postings, Result batched, Result unordered, Result unbatched) {
+        System.out.printf("%-32s %5d postings%n", scenario, postings);
+        for (Object[] row : new Object[][]{{"batched", batched}, {"unordered", unordered}, {"unbatched", unbatched}}) {
+            Result result = (Result) row[1];
+            System.out.printf("  %-10s %9.1f ms  %6d round trips (%5d insert, %4d nextval)%n",
+                    row[0], result.nanos / 1e6, result.roundTrips, result.inserts, result.nextvals);
+        }
+    }
+
+    private record Result(long nanos, int roundTrips, int inserts, int nextvals) {
+    }
+
+    // A context over its own database, with the given Hibernate properties
+    private static class Setup {
+        private final HikariDataSource pool;
+        private final RoundTripCountingDataSource dataSource;
+        private final ConfigurableApplicationContext context;
+        private final EntityManager entityManager;
+        private final TransactionTemplate transactionTemplate;
+        private final long userId;
+        private final long accountId;
+        private final long depositTypeId;
+
+        Setup(boolean reWriteBatchedInserts, List<String> hibernateProperties) throws Exception {
+            PGSimpleDataSource database = TestDatabase.dataSource().unwrap(PGSimpleDataSource.class);
+            database.setReWriteBatchedInserts(reWriteBatchedInserts);
+            pool = new HikariDataSource();
+            pool.setDataSource(database);
+            pool.setMaximumPoolSize(2);
+            // Outside the pool, so only what the application sends is counted
+            dataSource = new RoundTripCountingDataSource(pool);
+            context = TestDatabase.context(dataSource)
+                    .properties(hibernateProperties.toArray(new String[0]))
+                    .run();
+            entityManager = context.getBean(EntityManager.class);
+            transactionTemplate = context.getBean(TransactionTemplate.class);
+
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                    "VALUES ('INDIVIDUAL', 'bench', 'bench@example.com', 'sub-bench')");
+            jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status) " +
+                    "SELECT 'BENCH-1', u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE' " +
+                    "FROM users u WHERE u.username = 'bench'");
+            userId = jdbc.queryForObject("SELECT id FROM users WHERE username = 'bench'", Long.class);
+            accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = 'BENCH-1'", Long.class);
+            depositTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'DEPOSIT'", Long.class);
+        }
+
+        Result measure(Runnable action) {
+            long[] nanos = new long[1];
+            RoundTripCountingDataSource.RoundTrips roundTrips = dataSource.count(() -> {
+                long start = System.nanoTime();
+                action.run();
+                nanos[0] = System.nanoTime() - start;
+            });
+            return new Result(nanos[0], roundTrips.total(), roundTrips.startingWith("insert"),
+                    roundTrips.containing("nextval"));
+        }
+
+        // One short transaction per payment, as PaymentProcessingService does
+        void payments(int count) {
+            for (int i = 0; i < count; i++) {
+                transactionTemplate.executeWithoutResult(status -> persistPosting());
+            }
+        }
+
+        // A whole teller/payroll file posted in one transaction
+        void bulkPosting(int count) {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < count; i++) {
+                    persistPosting();
+                    if ((i + 1) % BULK_CHUNK == 0) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+            });
+        }
+
+        private void persistPosting() {
+            Account account = entityManager.getReference(Account.class, accountId);
+            LocalDateTime now = LocalDateTime.now();
+
+            Transaction txn = new Transaction();
+            txn.setTransactionRef("BENCH-" + refCounter.incrementAndGet());
+            txn.setToAccount(account);
+            txn.setTransactionType(entityManager.getReference(TransactionType.class, depositTypeId));
+            txn.setAmount(BigDecimal.TEN);
+            txn.setStatus(TransactionStatus.COMPLETED);
+            txn.setTransactionDate(now);
+            txn.setEffectiveDate(LocalDate.now());
+            entityManager.persist(txn);
+
+            LedgerEntry entry = new LedgerEntry();
+            entry.setTransaction(txn);
+            entry.setAccount(account);
+            entry.setEntryType(EntryType.CREDIT);
+            entry.setAmount(BigDecimal.TEN);
+            entry.setRunningBalance(BigDecimal.TEN);
+            entityManager.persist(entry);
+
+            AuditLog audit = new AuditLog();
+            audit.setUser(entityManager.getReference(User.class, userId));
+            audit.setActionType("DEPOSIT");
+            audit.setTableName("transactions");
+            audit.setRecordId(txn.getId());
+            entityManager.persist(audit);
+        }
+
+        void close() {
+            context.close();
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.roshansutihar.bankingservice.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.enums.AccountStatus;
+import com.roshansutihar.bankingservice.enums.HoldStatus;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.enums.TransferStatus;
+import com.roshansutihar.bankingservice.service.LedgerVerificationService;
+import com.roshansutihar.bankingservice.support.ExplainingDataSource;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Calls every repository method against a migrated Postgres seeded with realistic row counts
+// and fails when the plan Postgres picks for the SQL it was sent reads a large table with a
+// sequential scan. ExplainingDataSource explains each statement as it executes, with its real
+// bound parameters, so a query that drifts off its index (a changed derived query, a new
+// predicate) fails here. Each call runs in a transaction that is rolled back.
+// New repository methods belong in repositoryCalls().
+class RepositoryQueryPlanTest {
+
+    private static final Set<String> LARGE_TABLES = Set.of(
+            "users", "accounts", "transactions", "ledger_entries", "transfers", "audit_logs", "session_logs", "holds");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static ExplainingDataSource dataSource;
+    private static ConfigurableApplicationContext context;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void startContext() {
+        dataSource = new ExplainingDataSource(TestDatabase.dataSource());
+        context = TestDatabase.context(dataSource, LedgerVerificationService.class).run();
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.execute("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "SELECT 'INDIVIDUAL', 'user' || g, 'user' || g || '@example.com', 'sub-' || g " +
+                "FROM generate_series(1, 20000) g");
+        jdbc.execute("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status) " +
+                "SELECT 'T' || u.id || '-' || k, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), " +
+                "'021000021', CASE WHEN k = 1 THEN 'ACTIVE' ELSE 'INACTIVE' END " +
+                "FROM users u CROSS JOIN generate_series(1, 2) k");
+        jdbc.execute("INSERT INTO transactions (transaction_ref, from_account_id, to_account_id, transaction_type_id, " +
+                "amount, status, transaction_date, effective_date) " +
+                "SELECT 'T' || a.id || '-' || k, CASE WHEN k % 2 = 0 THEN a.id END, CASE WHEN k % 2 = 1 THEN a.id END, " +
+                "(SELECT id FROM transaction_types WHERE type_code = 'DEPOSIT'), 10, " +
+                "CASE WHEN (a.id + k) % 100 = 0 THEN 'PENDING' ELSE 'COMPLETED' END, " +
+                "now() - (a.id % 365 || ' days')::interval - (k || ' hours')::interval, " +
+                "current_date - (a.id % 365)::int " +
+                "FROM accounts a CROSS JOIN generate_series(1, 5) k");
+        jdbc.execute("INSERT INTO ledger_entries (transaction_id, account_id, entry_type, amount, running_balance, created_at) " +
+                "SELECT t.id, coalesce(t.from_account_id, t.to_account_id), " +
+                "CASE WHEN t.from_account_id IS NULL THEN 'CREDIT' ELSE 'DEBIT' END, 10, 10, t.transaction_date " +
+                "FROM transactions t");
+        jdbc.execute("INSERT INTO transfers (from_account_id, to_account_id, amount, frequency, next_transfer_date, status) " +
+                "SELECT a.id, a.id, 25, 'MONTHLY', current_date + (a.id % 365)::int, " +
+                "CASE WHEN a.id % 50 = 0 THEN 'ACTIVE' ELSE 'CANCELLED' END " +
+                "FROM accounts a");
+        jdbc.execute("INSERT INTO audit_logs (user_id, action_type, table_name, record_id, created_at) " +
+                "SELECT u.id, 'ACTION_' || (u.id % 50), 'accounts', u.id, now() - ((u.id * 5 + k) % 2400 || ' hours')::interval " +
+                "FROM users u CROSS JOIN generate_series(1, 5) k");
+        jdbc.execute("INSERT INTO session_logs (user_id, session_token, login_time) " +
+                "SELECT u.id, md5(u.id || '-' || k), now() - ((u.id * 5 + k) % 2400 || ' hours')::interval " +
+                "FROM users u CROSS JOIN generate_series(1, 5) k");
+        jdbc.execute("INSERT INTO holds (account_id, amount, status, expires_at) " +
+                "SELECT a.id, 5, CASE WHEN a.id % 20 = 0 THEN 'ACTIVE' ELSE 'CAPTURED' END, " +
+                "now() + ((a.id % 60) - 30 || ' minutes')::interval FROM accounts a");
+        // A completed verification an hour ago, so the verifier runs incrementally as it does hourly
+        jdbc.execute("INSERT INTO ledger_verification_runs (mode, started_at, finished_at, status) " +
+                "VALUES ('FULL', now() - interval '1 hour', now() - interval '1 hour', 'COMPLETED')");
+        jdbc.execute("ANALYZE");
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    static Stream<Arguments> repositoryCalls() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = LocalDate.now();
+        return Stream.of(
+                call("AccountRepository.findByAccountNumber", AccountRepository.class,
+                        repository -> repository.findByAccountNumber("T100-1")),
+                call("AccountRepository.existsByAccountNumber", AccountRepository.class,
+                        repository -> repository.existsByAccountNumber("T100-1")),
+                call("AccountRepository.findByUserId", AccountRepository.class,
+                        repository -> repository.findByUserId(100L)),
+                call("AccountRepository.findByUserIdAndStatus", AccountRepository.class,
+                        repository -> repository.findByUserIdAndStatus(100L, AccountStatus.ACTIVE)),
+                call("AccountRepository.findByUserIdWithAccountType", AccountRepository.class,
+                        repository -> repository.findByUserIdWithAccountType(100L)),
+                call("AccountRepository.findPostingAccounts", AccountRepository.class,
+                        repository -> repository.findPostingAccounts(List.of("T100-1", "T200-1", "T300-2"))),
+                call("AccountRepository.lockForJournal", AccountRepository.class,
+                        repository -> repository.lockForJournal(List.of(100L, 200L, 3L))),
+                call("AccountRepository.lockInIdOrder", AccountRepository.class,
+                        repository -> repository.lockInIdOrder(List.of(100L, 200L))),
+                call("UserRepository.findByUsername", UserRepository.class,
+                        repository -> repository.findByUsername("user100")),
+                call("UserRepository.findByKeycloakSub", UserRepository.class,
+                        repository -> repository.findByKeycloakSub("sub-100")),
+                call("IndividualRepository.findByUserId", IndividualRepository.class,
+                        repository -> repository.findByUserId(100L)),
+                call("BusinessRepository.findByUserId", BusinessRepository.class,
+                        repository -> repository.findByUserId(100L)),
+                call("TransactionRepository.findExistingTransactionRefs", TransactionRepository.class,
+                        repository -> repository.findExistingTransactionRefs(List.of("T100-1", "T200-2"))),
+                call("TransactionRepository.findByFromAccountIdOrToAccountId", TransactionRepository.class,
+                        repository -> repository.findByFromAccountIdOrToAccountId(100L, 100L)),
+                call("TransactionRepository.findByFromAccountId", TransactionRepository.class,
+                        repository -> repository.findByFromAccountId(100L)),
+                call("TransactionRepository.findByToAccountId", TransactionRepository.class,
+                        repository -> repository.findByToAccountId(100L)),
+                call("TransactionRepository.findByTransactionRef", TransactionRepository.class,
+                        repository -> repository.findByTransactionRef("T100-1")),
+                call("TransactionRepository.findByEffectiveDate", TransactionRepository.class,
+                        repository -> repository.findByEffectiveDate(today.minusDays(10))),
+                call("TransactionRepository.findByStatus", TransactionRepository.class,
+                        repository -> repository.findByStatus(TransactionStatus.PENDING)),
+                call("TransactionRepository.findFirstPageIdsByAccountIds", TransactionRepository.class,
+                        repository -> repository.findFirstPageIdsByAccountIds(List.of(100L, 101L), 21)),
+                call("TransactionRepository.findPageIdsByAccountIdsBefore", TransactionRepository.class,
+                        repository -> repository.findPageIdsByAccountIdsBefore(List.of(100L, 101L), now, 1_000_000L, 21)),
+                call("TransactionRepository.findAllWithDetailsByIdIn", TransactionRepository.class,
+                        repository -> repository.findAllWithDetailsByIdIn(List.of(100L, 200L, 300L))),
+                call("LedgerEntryRepository.findByAccountId", LedgerEntryRepository.class,
+                        repository -> repository.findByAccountId(100L)),
+                call("LedgerEntryRepository.findByAccountIdOrderByCreatedAtDesc", LedgerEntryRepository.class,
+                        repository -> repository.findByAccountIdOrderByCreatedAtDesc(100L)),
+                call("LedgerEntryRepository.findByTransactionId", LedgerEntryRepository.class,
+                        repository -> repository.findByTransactionId(100L)),
+                call("LedgerEntryRepository.findFirstByAccountIdOrderByCreatedAtDescIdDesc", LedgerEntryRepository.class,
+                        repository -> repository.findFirstByAccountIdOrderByCreatedAtDescIdDesc(100L)),
+                call("LedgerEntryRepository.findFirstByAccountIdAndCreatedAtLessThanEqualOrderByCreatedAtDescIdDesc",
+                        LedgerEntryRepository.class, repository -> repository
+                                .findFirstByAccountIdAndCreatedAtLessThanEqualOrderByCreatedAtDescIdDesc(100L, now.minusDays(30))),
+                call("LedgerEntryRepository.findFirstByAccountIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc",
+                        LedgerEntryRepository.class, repository -> repository
+                                .findFirstByAccountIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(100L, now.minusDays(30))),
+                call("LedgerEntryRepository.findFirstByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtDescIdDesc",
+                        LedgerEntryRepository.class, repository -> repository
+                                .findFirstByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(
+                                        100L, now.minusDays(3), now)),
+                call("LedgerEntryRepository.findByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtAscIdAsc",
+                        LedgerEntryRepository.class, repository -> repository
+                                .findByAccountIdAndCreatedAtGreaterThanEqualAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(
+                                        100L, now.minusDays(3), now)),
+                call("LedgerEntryRepository.streamStatementLines", LedgerEntryRepository.class,
+                        repository -> {
+                            try (Stream<LedgerEntryRepository.StatementLineView> lines =
+                                         repository.streamStatementLines(100L, now.minusDays(90), now)) {
+                                lines.forEach(line -> { });
+                            }
+                        }),
+                call("AccountDailyBalanceRepository.rollUpDay", AccountDailyBalanceRepository.class,
+                        repository -> repository.rollUpDay(today.minusDays(30),
+                                today.minusDays(30).atStartOfDay(), today.minusDays(29).atStartOfDay())),
+                call("AccountDailyBalanceRepository.findFirstByAccountIdAndBalanceDateLessThanEqualOrderByBalanceDateDesc",
+                        AccountDailyBalanceRepository.class, repository -> repository
+                                .findFirstByAccountIdAndBalanceDateLessThanEqualOrderByBalanceDateDesc(100L, today)),
+                call("TransferRepository.findByFromAccountId", TransferRepository.class,
+                        repository -> repository.findByFromAccountId(100L)),
+                call("TransferRepository.findByStatus", TransferRepository.class,
+                        repository -> repository.findByStatus(TransferStatus.ACTIVE)),
+                call("TransferRepository.findByNextTransferDate", TransferRepository.class,
+                        repository -> repository.findByNextTransferDate(today.plusDays(10))),
+                call("TransferRepository.findByStatusAndNextTransferDateLessThanEqual", TransferRepository.class,
+                        repository -> repository.findByStatusAndNextTransferDateLessThanEqual(TransferStatus.ACTIVE, today.plusDays(5))),
+                call("TransferRepository.claimDueTransfers", TransferRepository.class,
+                        repository -> repository.claimDueTransfers(today.plusDays(5), 200)),
+                call("TransferRepository.claimDueTransfer", TransferRepository.class,
+                        repository -> repository.claimDueTransfer(100L, today.plusDays(5))),
+                call("HoldRepository.expireHolds", HoldRepository.class,
+                        repository -> repository.expireHolds(now, 500)),
+                call("HoldRepository.captureHold", HoldRepository.class,
+                        repository -> repository.captureHold(100L)),
+                call("HoldRepository.findOpenPaymentHolds", HoldRepository.class,
+                        repository -> repository.findOpenPaymentHolds(List.of(HoldStatus.ACTIVE, HoldStatus.EXPIRED),
+                                now.minusMinutes(5), PageRequest.of(0, 100))),
+                call("HoldRepository.existsByPaymentSessionIdAndStatus", HoldRepository.class,
+                        repository -> repository.existsByPaymentSessionIdAndStatus("session-100", HoldStatus.ACTIVE)),
+                call("HoldRepository.sumActiveHoldsByAccount", HoldRepository.class,
+                        HoldRepository::sumActiveHoldsByAccount),
+                call("IdempotencyKeyRepository.claim", IdempotencyKeyRepository.class,
+                        repository -> repository.claim("PAYMENT", "key-100", "hash", UUID.randomUUID(), now, now.plusMinutes(2))),
+                call("AuditLogRepository.findByUserId", AuditLogRepository.class,
+                        repository -> repository.findByUserId(100L)),
+                call("AuditLogRepository.findByActionType", AuditLogRepository.class,
+                        repository -> repository.findByActionType("ACTION_7")),
+                call("AuditLogRepository.findByCreatedAtBetween", AuditLogRepository.class,
+                        repository -> repository.findByCreatedAtBetween(now.minusHours(2), now)),
+                call("SessionLogRepository.findByUserId", SessionLogRepository.class,
+                        repository -> repository.findByUserId(100L)),
+                call("SessionLogRepository.findBySessionToken", SessionLogRepository.class,
+                        repository -> repository.findBySessionToken("f899139df5e1059396431415e770c6dd")),
+                call("SessionLogRepository.findByLoginTimeAfter", SessionLogRepository.class,
+                        repository -> repository.findByLoginTimeAfter(now.minusHours(2))),
+                call("OnboardingRequestRepository.claimDue", OnboardingRequestRepository.class,
+                        repository -> repository.claimDue(10, 60_000)),
+                // The verifier's own SQL (touched accounts, per-partition chain reads) via an hourly run
+                call("LedgerVerificationService.verify (incremental)", LedgerVerificationService.class,
+                        verifier -> verifier.verify(true))
+        );
+    }
+
+    private static <T> Arguments call(String name, Class<T> beanType, Consumer<T> invocation) {
+        return Arguments.of(name, (Consumer<ConfigurableApplicationContext>) ctx -> invocation.accept(ctx.getBean(beanType)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("repositoryCalls")
+    void repositoryMethodDoesNotSeqScanLargeTables(String name, Consumer<ConfigurableApplicationContext> invocation)
+            throws Exception {
+        List<ExplainingDataSource.ExplainedStatement> statements = dataSource.explain(() ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    invocation.accept(context);
+                    status.setRollbackOnly();
+                }));
+
+        assertFalse(statements.isEmpty(), name + " ran no statements");
+        for (ExplainingDataSource.ExplainedStatement statement : statements) {
+            JsonNode plan = objectMapper.readTree(statement.plan());
+            List<String> seqScans = new ArrayList<>();
+            collectSeqScans(plan, seqScans);
+            assertTrue(seqScans.isEmpty(), name + " sequentially scans " + seqScans + ":\n" + statement.sql()
+                    + "\n" + plan.toPrettyString());
+        }
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> seqScans) {
+        if (node.isArray()) {
+            node.forEach(child -> collectSeqScans(child, seqScans));
+            return;
+        }
+        if (node.has("Plan")) {
+            collectSeqScans(node.get("Plan"), seqScans);
+        }
+        if ("Seq Scan".equals(node.path("Node Type").asText())
+                && LARGE_TABLES.contains(node.path("Relation Name").asText())) {
+            seqScans.add(node.path("Relation Name").asText());
+        }
+        if (node.has("Plans")) {
+            collectSeqScans(node.get("Plans"), seqScans);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private AuditLogWriter writer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void writesRecordsInBatches() throws Exception {
+        writer = newWriter(AuditLogWriter.OverflowPolicy.BLOCK, 1024);
+
+        for (int i = 0; i < 10; i++) {
+            writer.enqueue(record(i));
+        }
+
+        awaitTrue(() -> jdbcTemplate.rows() == 10);
+        assertTrue(jdbcTemplate.batchSizes.stream().allMatch(size -> size <= 4));
+    }
+
+    @Test
+    void spillsWhileDatabaseIsDownAndReplaysAfterwards() throws Exception {
+        jdbcTemplate.failing = true;
+        writer = newWriter(AuditLogWriter.OverflowPolicy.BLOCK, 1024);
+        Path spill = tempDir.resolve("audit-spill.jsonl");
+        Path replaying = tempDir.resolve("audit-spill.jsonl.replaying");
+
+        for (int i = 0; i < 5; i++) {
+            writer.enqueue(record(i));
+        }
+        // Failed replay attempts may have moved some lines aside already
+        awaitTrue(() -> lineCount(spill) + lineCount(replaying) == 5);
+        assertEquals(0, jdbcTemplate.rows());
+
+        jdbcTemplate.failing = false;
+        awaitTrue(() -> jdbcTemplate.rows() == 5 && !Files.exists(spill) && !Files.exists(replaying));
+    }
+
+    @Test
+    void replaysSpillFileLeftByPreviousRun() throws Exception {
+        Path spill = tempDir.resolve("audit-spill.jsonl");
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        Files.writeString(spill, objectMapper.writeValueAsString(record(1)) + "\n"
+                + objectMapper.writeValueAsString(record(2)) + "\n"
+                + "{\"userId\":3,\"actio");
+
+        writer = newWriter(AuditLogWriter.OverflowPolicy.BLOCK, 1024);
+
+        awaitTrue(() -> jdbcTemplate.rows() == 2 && !Files.exists(tempDir.resolve("audit-spill.jsonl.replaying")));
+    }
+
+    @Test
+    void movesRejectedAndUnreadableLinesToDeadLetterFile() throws Exception {
+        Path spill = tempDir.resolve("audit-spill.jsonl");
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        AuditLogWriter.AuditRecord rejected = new AuditLogWriter.AuditRecord(2L, "BAD", "accounts", 2L, null,
+                "{}", "127.0.0.1", "junit", LocalDateTime.now());
+        Files.writeString(spill, objectMapper.writeValueAsString(record(1)) + "\n"
+                + objectMapper.writeValueAsString(rejected) + "\n"
+                + "not json\n"
+                + objectMapper.writeValueAsString(record(3)) + "\n");
+
+        writer = newWriter(AuditLogWriter.OverflowPolicy.BLOCK, 1024);
+
+        awaitTrue(() -> jdbcTemplate.rows() == 2 && !Files.exists(tempDir.resolve("audit-spill.jsonl.replaying")));
+        List<String> dead = Files.readAllLines(tempDir.resolve("audit-spill.jsonl.dead"));
+        assertEquals(2, dead.size());
+        assertTrue(dead.contains("not json"));
+        assertTrue(dead.stream().anyMatch(line -> line.contains("\"BAD\"")));
+    }
+
+    @Test
+    void idsAreTakenFromTheSequenceInBlocks() throws Exception {
+        JdbcTemplate database = new JdbcTemplate(TestDatabase.migratedDataSource());
+        writer = newWriter(database, AuditLogWriter.OverflowPolicy.BLOCK, 1024);
+
+        for (int i = 0; i < 120; i++) {
+            writer.enqueue(new AuditLogWriter.AuditRecord(null, "TEST", "accounts", (long) i, null, "{}",
+                    "127.0.0.1", "junit", LocalDateTime.now()));
+        }
+        awaitTrue(() -> database.queryForObject("SELECT count(*) FROM audit_logs", Integer.class) == 120);
+
+        // 120 rows in batches of 4 use three blocks of ids, not one block per row
+        assertEquals(120, database.queryForObject("SELECT count(DISTINCT id) FROM audit_logs", Integer.class));
+        assertEquals(3 * AuditLogWriter.ID_BLOCK_SIZE,
+                database.queryForObject("SELECT last_value FROM audit_logs_id_seq", Long.class)
+                        - database.queryForObject("SELECT min(id) FROM audit_logs", Long.class) + 1);
+    }
+
+    private AuditLogWriter newWriter(AuditLogWriter.OverflowPolicy policy, int capacity) throws Exception {
+        return newWriter(jdbcTemplate, policy, capacity);
+    }
+
+    private AuditLogWriter newWriter(JdbcTemplate jdbcTemplate, AuditLogWriter.OverflowPolicy policy, int capacity)
+            throws Exception {
+        AuditLogWriter auditLogWriter = new AuditLogWriter(jdbcTemplate, new ObjectMapper().findAndRegisterModules(),
+                new SimpleMeterRegistry(), capacity, 4, 20, policy, 5, 50,
+                tempDir.resolve("audit-spill.jsonl").toString());
+        auditLogWriter.start();
+        return auditLogWriter;
+    }
+
+    private static AuditLogWriter.AuditRecord record(long id) {
+        return new AuditLogWriter.AuditRecord(id, "TEST", "accounts", id, null, "{\"id\":" + id + "}",
+                "127.0.0.1", "junit", LocalDateTime.now());
+    }
+
+    private static long lineCount(Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return Files.readAllLines(path).stream().filter(line -> !line.isBlank()).count();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 5s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+        private final AtomicLong sequence = new AtomicLong();
+
+        // Stands in for nextval('audit_logs_id_seq') over generate_series(1, blocks)
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("database unavailable");
+            }
+            List<T> blockEnds = new ArrayList<>();
+            for (int i = 0; i < (Integer) args[0]; i++) {
+                blockEnds.add((T) (Long) sequence.addAndGet(AuditLogWriter.ID_BLOCK_SIZE));
+            }
+            return blockEnds;
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("database unavailable");
+            }
+            if (batchArgs.stream().anyMatch(arg -> "BAD".equals(((AuditLogWriter.AuditRecord) arg).getActionType()))) {
+                throw new DataIntegrityViolationException("violates foreign key constraint");
+            }
+            batchSizes.add(batchArgs.size());
+            return new int[][]{new int[batchArgs.size()]};
+        }
+
+        int rows() {
+            return batchSizes.stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// BalanceSnapshotService against a migrated embedded Postgres. Ledger entries are written with
+// back-dated timestamps, rolled up into daily snapshots, and then one more entry lands after
+// the checkpoint, so getBalanceOn is exercised on both sides of it.
+class BalanceSnapshotServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate FIRST_DAY = TODAY.minusDays(10);
+    private static final LocalDate SECOND_DAY = TODAY.minusDays(5);
+
+    private static ConfigurableApplicationContext context;
+    private static BalanceSnapshotService balanceSnapshotService;
+    private static JdbcTemplate jdbc;
+    private static long transactionId;
+    private static long activeAccountId;
+    private static long quietAccountId;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(BalanceSnapshotService.class)
+                .properties(
+                        "banking.balance-snapshots.on-startup=false",
+                        "banking.balance-snapshots.settle-minutes=0")
+                .run();
+        balanceSnapshotService = context.getBean(BalanceSnapshotService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'snapshots', 'snapshots@example.com', 'sub-snapshots')");
+        activeAccountId = openAccount("SNAP-1");
+        quietAccountId = openAccount("SNAP-2");
+        jdbc.update("INSERT INTO transactions (transaction_ref, to_account_id, transaction_type_id, amount, status, " +
+                "transaction_date, effective_date) " +
+                "SELECT 'SNAPTEST', ?, id, 1, 'COMPLETED', now(), current_date FROM transaction_types WHERE type_code = 'DEPOSIT'",
+                activeAccountId);
+        transactionId = jdbc.queryForObject("SELECT id FROM transactions WHERE transaction_ref = 'SNAPTEST'", Long.class);
+
+        entry(activeAccountId, "CREDIT", "100.00", "100.00", FIRST_DAY.atTime(9, 0));
+        entry(activeAccountId, "CREDIT", "50.00", "150.00", FIRST_DAY.atTime(17, 0));
+        entry(activeAccountId, "DEBIT", "30.00", "120.00", SECOND_DAY.atTime(12, 0));
+        entry(quietAccountId, "CREDIT", "75.00", "75.00", FIRST_DAY.atTime(10, 0));
+
+        jdbc.update("UPDATE balance_snapshot_checkpoint SET rolled_up_through = ?", FIRST_DAY.minusDays(1));
+        balanceSnapshotService.rollUp();
+        assertEquals(TODAY.minusDays(1), jdbc.queryForObject(
+                "SELECT rolled_up_through FROM balance_snapshot_checkpoint", LocalDate.class));
+
+        // Today's activity is past the checkpoint and only in the ledger
+        entry(activeAccountId, "CREDIT", "10.00", "130.00", LocalDateTime.now());
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void balanceBeforeTheFirstSnapshotIsZero() {
+        assertEquals(BigDecimal.ZERO, balanceSnapshotService.getBalanceOn(activeAccountId, FIRST_DAY.minusDays(1)));
+        assertEquals(BigDecimal.ZERO, balanceSnapshotService.getBalanceOn(activeAccountId, FIRST_DAY.minusDays(30)));
+    }
+
+    @Test
+    void balanceOnASnapshotDayIsThatDaysClose() {
+        assertEquals(new BigDecimal("150.00"), balanceSnapshotService.getBalanceOn(activeAccountId, FIRST_DAY));
+        assertEquals(new BigDecimal("120.00"), balanceSnapshotService.getBalanceOn(activeAccountId, SECOND_DAY));
+        // No entries that day: the last close carries forward
+        assertEquals(new BigDecimal("150.00"), balanceSnapshotService.getBalanceOn(activeAccountId, SECOND_DAY.minusDays(1)));
+    }
+
+    @Test
+    void balanceAfterTheCheckpointComesFromTheLedger() {
+        assertEquals(new BigDecimal("130.00"), balanceSnapshotService.getBalanceOn(activeAccountId, TODAY));
+        assertEquals(new BigDecimal("130.00"), balanceSnapshotService.getBalanceOn(activeAccountId, TODAY.plusDays(3)));
+        // Nothing after the checkpoint: falls back to the last snapshot
+        assertEquals(new BigDecimal("75.00"), balanceSnapshotService.getBalanceOn(quietAccountId, TODAY));
+    }
+
+    @Test
+    void monthWithNoHistoryYetIsRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                balanceSnapshotService.getMonthlyBalanceStats(activeAccountId, YearMonth.from(TODAY).plusMonths(1)));
+    }
+
+    private static long openAccount(String accountNumber) {
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE' " +
+                "FROM users u WHERE u.username = 'snapshots'", accountNumber);
+        return jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+    }
+
+    private static void entry(long accountId, String entryType, String amount, String runningBalance, LocalDateTime createdAt) {
+        jdbc.update("INSERT INTO ledger_entries (transaction_id, account_id, entry_type, amount, running_balance, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", transactionId, accountId, entryType, new BigDecimal(amount),
+                new BigDecimal(runningBalance), createdAt);
+    }
+}
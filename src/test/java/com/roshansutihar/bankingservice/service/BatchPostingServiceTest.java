@@ -0,0 +1,296 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.idgen.SnowflakeReferenceGenerator;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Batch and payroll files posted through BatchPostingService against a migrated embedded
+// Postgres, with a chunk size of 3 so every file spans several chunks.
+class BatchPostingServiceTest {
+
+    private static final AtomicInteger accountCounter = new AtomicInteger();
+
+    private static ConfigurableApplicationContext context;
+    private static BatchPostingService batchPostingService;
+    private static AccountRepository accountRepository;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(BatchPostingService.class, PostingService.class, TransactionTypeService.class,
+                        ReferenceDataRegistry.class, SnowflakeReferenceGenerator.class)
+                .properties("banking.batch-posting.chunk-size=3")
+                .run();
+        batchPostingService = context.getBean(BatchPostingService.class);
+        accountRepository = context.getBean(AccountRepository.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('BUSINESS', 'batches', 'batches@example.com', 'sub-batches')");
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void everyLineGetsAResultAcrossChunkBoundaries() throws IOException {
+        String payer = openAccount("100.00", "ACTIVE");
+        String payee = openAccount("0.00", "ACTIVE");
+        String frozen = openAccount("0.00", "FROZEN");
+        String file = "account_number,type,amount,description\n" +
+                payer + ",DEBIT,30.00,Rent\n" +
+                payee + ",credit,15.00\n" +
+                payer + ",DEBIT,abc\n" +
+                "\n" +
+                // Second chunk: judged against the balance the first chunk left behind
+                "NO-SUCH-ACCOUNT,CREDIT,5.00\n" +
+                payer + ",DEBIT,80.00\n" +
+                frozen + ",CREDIT,1.00\n" +
+                payer + ",TRANSFER,1.00\n" +
+                payee + ",CREDIT,1.005\n" +
+                payer + ",DEBIT,70.00,Rest\n" +
+                payee + ",CREDIT\n";
+
+        StringWriter output = new StringWriter();
+        BatchPostingService.BatchPostingSummary summary = batchPostingService.post(stream(file), null, null, output);
+
+        assertEquals(3, summary.getPosted());
+        assertEquals(7, summary.getRejected());
+        assertEquals(0, summary.getFailed());
+
+        Map<Integer, String[]> results = results(output.toString());
+        assertEquals(List.of(2, 3, 4, 6, 7, 8, 9, 10, 11, 12), new ArrayList<>(results.keySet()));
+        assertPosted(results.get(2), "BAT");
+        assertPosted(results.get(3), "BAT");
+        assertRejected(results.get(4), "Invalid amount");
+        assertRejected(results.get(6), "Account not found");
+        assertRejected(results.get(7), "Insufficient funds");
+        assertRejected(results.get(8), "Account is not active");
+        assertRejected(results.get(9), "Type must be CREDIT or DEBIT");
+        assertRejected(results.get(10), "Amount must be positive with at most 2 decimal places");
+        assertPosted(results.get(11), "BAT");
+        assertRejected(results.get(12), "Expected account_number,type,amount[,description]");
+        assertTrue(output.toString().endsWith("# posted=3 rejected=7 failed=0\n"));
+
+        assertEquals(new BigDecimal("0.00"), balance(payer));
+        assertEquals(new BigDecimal("15.00"), balance(payee));
+        assertEquals("Batch withdrawal - Rent", jdbc.queryForObject(
+                "SELECT description FROM transactions WHERE transaction_ref = ?", String.class, results.get(2)[2]));
+    }
+
+    @Test
+    void chunksArePostedAndReportedWhileTheFileIsStillBeingRead() throws IOException {
+        String payee = openAccount("0.00", "ACTIVE");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            lines.add(payee + ",CREDIT,1.00\n");
+        }
+        StringWriter output = new StringWriter();
+        List<String> outputWhenRead = new ArrayList<>();
+
+        batchPostingService.post(new LineByLineInputStream(lines, () -> outputWhenRead.add(output.toString())),
+                null, null, output);
+
+        // Before the 4th line is read the first chunk is on the books and its results are written
+        assertEquals(0, results(outputWhenRead.get(2)).size());
+        Map<Integer, String[]> afterFirstChunk = results(outputWhenRead.get(3));
+        assertEquals(List.of(1, 2, 3), new ArrayList<>(afterFirstChunk.keySet()));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM transactions WHERE transaction_ref = ?",
+                Integer.class, afterFirstChunk.get(3)[2]));
+        assertEquals(6, results(outputWhenRead.get(6)).size());
+        assertEquals(7, results(output.toString()).size());
+        assertEquals(new BigDecimal("7.00"), balance(payee));
+    }
+
+    @Test
+    void resubmittedPayrollPostsOnlyTheLinesNotAlreadyOnTheBooks() throws IOException {
+        String employer = openAccount("150.00", "ACTIVE");
+        String first = openAccount("0.00", "ACTIVE");
+        String second = openAccount("0.00", "ACTIVE");
+        Account funding = accountRepository.findByAccountNumber(employer).orElseThrow();
+        String file = "account_number,type,amount,description\n" +
+                first + ",CREDIT,100.00,March\n" +
+                employer + ",CREDIT,1.00\n" +
+                first + ",DEBIT,5.00\n" +
+                // Second chunk: the employer can no longer cover this one
+                second + ",CREDIT,100.00,March\n";
+        String payrollKey = BatchPostingService.payrollKey("run-1", stream(file), LocalDate.of(2026, 3, 31));
+
+        StringWriter firstRun = new StringWriter();
+        BatchPostingService.BatchPostingSummary firstSummary =
+                batchPostingService.post(stream(file), funding, payrollKey, firstRun);
+
+        assertEquals(1, firstSummary.getPosted());
+        assertEquals(3, firstSummary.getRejected());
+        Map<Integer, String[]> firstResults = results(firstRun.toString());
+        assertPosted(firstResults.get(2), "PAY-");
+        assertEquals(36, firstResults.get(2)[2].length());
+        assertRejected(firstResults.get(3), "Cannot pay the funding account");
+        assertRejected(firstResults.get(4), "Payroll files may only contain CREDIT lines");
+        assertRejected(firstResults.get(5), "Insufficient funds in funding account");
+
+        jdbc.update("UPDATE accounts SET current_balance = current_balance + 100, " +
+                "available_balance = available_balance + 100 WHERE account_number = ?", employer);
+        StringWriter retry = new StringWriter();
+        BatchPostingService.BatchPostingSummary retrySummary =
+                batchPostingService.post(stream(file), funding, payrollKey, retry);
+
+        assertEquals(1, retrySummary.getPosted());
+        Map<Integer, String[]> retryResults = results(retry.toString());
+        assertRejected(retryResults.get(2), "Already posted by an earlier submission");
+        assertEquals(firstResults.get(2)[2], retryResults.get(2)[2]);
+        assertPosted(retryResults.get(5), "PAY-");
+
+        assertEquals(new BigDecimal("100.00"), balance(first));
+        assertEquals(new BigDecimal("100.00"), balance(second));
+        assertEquals(new BigDecimal("50.00"), balance(employer));
+        assertEquals(0, jdbc.queryForObject("SELECT coalesce(sum(current_balance), 0) FROM accounts " +
+                "WHERE account_number LIKE 'GL-PAYROLL-%'", BigDecimal.class).signum());
+
+        // The same file under another run key is another month's payroll
+        jdbc.update("UPDATE accounts SET current_balance = current_balance + 150, " +
+                "available_balance = available_balance + 150 WHERE account_number = ?", employer);
+        String nextRun = BatchPostingService.payrollKey("run-2", stream(file), LocalDate.of(2026, 4, 30));
+        BatchPostingService.BatchPostingSummary nextSummary =
+                batchPostingService.post(stream(file), funding, nextRun, new StringWriter());
+
+        assertEquals(2, nextSummary.getPosted());
+        assertEquals(new BigDecimal("200.00"), balance(second));
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM transactions t JOIN accounts a ON a.id = t.to_account_id " +
+                "WHERE a.account_number = ? AND t.transaction_ref LIKE 'PAY-%'", Integer.class, second));
+    }
+
+    @Test
+    void payrollKeyIsTheIdempotencyKeyOrTheFileAndDay() throws IOException {
+        LocalDate day = LocalDate.of(2026, 3, 31);
+
+        assertEquals("key:abc", BatchPostingService.payrollKey(" abc ", stream("x"), day));
+        assertEquals(BatchPostingService.payrollKey(null, stream("a,CREDIT,1"), day),
+                BatchPostingService.payrollKey("", stream("a,CREDIT,1"), day));
+        assertNotEquals(BatchPostingService.payrollKey(null, stream("a,CREDIT,1"), day),
+                BatchPostingService.payrollKey(null, stream("a,CREDIT,1"), day.plusMonths(1)));
+        assertNotEquals(BatchPostingService.payrollKey(null, stream("a,CREDIT,1"), day),
+                BatchPostingService.payrollKey(null, stream("a,CREDIT,2"), day));
+    }
+
+    @Test
+    void payrollWithoutAKeyIsRefused() {
+        Account funding = accountRepository.findByAccountNumber(openAccount("10.00", "ACTIVE")).orElseThrow();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> batchPostingService.post(stream(""), funding, null, new StringWriter()));
+    }
+
+    private static String openAccount(String balance, String status) {
+        String accountNumber = "BATCH-" + accountCounter.incrementAndGet();
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                "current_balance, available_balance) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', ?, ?, ? " +
+                "FROM users u WHERE u.username = 'batches'",
+                accountNumber, status, new BigDecimal(balance), new BigDecimal(balance));
+        return accountNumber;
+    }
+
+    private static BigDecimal balance(String accountNumber) {
+        return jdbc.queryForObject("SELECT current_balance FROM accounts WHERE account_number = ?",
+                BigDecimal.class, accountNumber);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Result rows by line number: [line, status, transaction_ref, message]
+    private static Map<Integer, String[]> results(String output) {
+        Map<Integer, String[]> results = new LinkedHashMap<>();
+        for (String row : output.split("\n")) {
+            if (row.isEmpty() || row.startsWith("line,") || row.startsWith("#")) {
+                continue;
+            }
+            String[] fields = row.split(",", 4);
+            fields[3] = fields[3].isEmpty() ? "" : fields[3].substring(1, fields[3].length() - 1).replace("\"\"", "\"");
+            results.put(Integer.parseInt(fields[0]), fields);
+        }
+        return results;
+    }
+
+    private static void assertPosted(String[] result, String refPrefix) {
+        assertEquals("POSTED", result[1], () -> "line " + result[0] + ": " + result[3]);
+        assertTrue(result[2].startsWith(refPrefix), result[2]);
+    }
+
+    private static void assertRejected(String[] result, String message) {
+        assertEquals("REJECTED", result[1], () -> "line " + result[0]);
+        assertEquals(message, result[3]);
+    }
+
+    // Hands the reader one line per read() and tells the test before each line, so the test
+    // can see what had been written by the time the service asked for more input
+    private static class LineByLineInputStream extends InputStream {
+
+        private final Iterator<String> lines;
+        private final Runnable beforeLine;
+        private byte[] current = new byte[0];
+        private int position;
+
+        LineByLineInputStream(List<String> lines, Runnable beforeLine) {
+            this.lines = lines.iterator();
+            this.beforeLine = beforeLine;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position == current.length) {
+                if (!lines.hasNext()) {
+                    return -1;
+                }
+                beforeLine.run();
+                current = lines.next().getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current.length - position;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Hold;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.HoldStatus;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.repository.AccountRepository;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// HoldService against a migrated embedded Postgres: each way a hold is resolved, what it does to
+// the two balances, and the in-memory held totals under concurrent holds and rebuilds. Holds are
+// expired by moving expires_at into the past rather than by waiting.
+class HoldServiceTest {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("100.00");
+
+    private static final AtomicLong refCounter = new AtomicLong();
+
+    private static ConfigurableApplicationContext context;
+    private static HoldService holdService;
+    private static PostingService postingService;
+    private static AccountRepository accountRepository;
+    private static TransactionTemplate transactionTemplate;
+    private static EntityManager entityManager;
+    private static JdbcTemplate jdbc;
+    private static long paymentTypeId;
+
+    private Long accountId;
+    private Long settlementAccountId;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(HoldService.class, PostingService.class).run();
+        holdService = context.getBean(HoldService.class);
+        postingService = context.getBean(PostingService.class);
+        accountRepository = context.getBean(AccountRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        entityManager = context.getBean(EntityManager.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'holds', 'holds@example.com', 'sub-holds')");
+        paymentTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'PAYMENT'", Long.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    // A fresh funded account per test
+    @BeforeEach
+    void openAccount() {
+        String accountNumber = "HOLD-" + refCounter.incrementAndGet();
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                "current_balance, available_balance) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE', ?, ? " +
+                "FROM users u WHERE u.username = 'holds'", accountNumber, OPENING_BALANCE, OPENING_BALANCE);
+        accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+        settlementAccountId = postingService.glAccountId(PostingService.GlAccount.MERCHANT_SETTLEMENT, accountId);
+    }
+
+    @Test
+    void placedHoldLowersOnlyTheAvailableBalance() {
+        Hold hold = place("40.00").orElseThrow();
+
+        assertEquals(HoldStatus.ACTIVE, status(hold));
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+        assertEquals(new BigDecimal("60.00"), availableBalance(accountId));
+        assertEquals(new BigDecimal("40.00"), holdService.getHeldAmount(accountId));
+    }
+
+    @Test
+    void holdBeyondTheAvailableBalanceIsRefusedAndWritesNothing() {
+        place("70.00").orElseThrow();
+
+        assertTrue(place("40.00").isEmpty());
+        assertEquals(new BigDecimal("30.00"), availableBalance(accountId));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM holds WHERE account_id = ?", Integer.class, accountId));
+        assertEquals(new BigDecimal("70.00"), holdService.getHeldAmount(accountId));
+    }
+
+    @Test
+    void holdInARolledBackTransactionLeavesTheTotalsAlone() {
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            place("25.00").orElseThrow();
+            throw new IllegalStateException("caller failed after placing the hold");
+        }));
+
+        assertEquals(OPENING_BALANCE, availableBalance(accountId));
+        assertEquals(BigDecimal.ZERO, holdService.getHeldAmount(accountId));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM holds WHERE account_id = ?", Integer.class, accountId));
+    }
+
+    @Test
+    void releaseGivesTheAmountBackOnce() {
+        Hold hold = place("40.00").orElseThrow();
+
+        assertTrue(holdService.release(hold));
+        assertFalse(holdService.release(hold));
+
+        assertEquals(HoldStatus.RELEASED, status(hold));
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+        assertEquals(OPENING_BALANCE, availableBalance(accountId));
+        assertEquals(BigDecimal.ZERO, holdService.getHeldAmount(accountId));
+    }
+
+    @Test
+    void captureDebitsTheCurrentBalanceAndPostsToTheCreditAccount() {
+        Hold hold = place("40.00").orElseThrow();
+        BigDecimal settlementBefore = currentBalance(settlementAccountId);
+
+        PostingService.PostingResult result = holdService.capture(hold, newTransaction(), settlementAccountId);
+
+        assertTrue(result.isPosted());
+        assertEquals(HoldStatus.CAPTURED, status(hold));
+        assertEquals(new BigDecimal("60.00"), currentBalance(accountId));
+        assertEquals(new BigDecimal("60.00"), availableBalance(accountId));
+        assertEquals(settlementBefore.add(new BigDecimal("40.00")), currentBalance(settlementAccountId));
+        assertEquals(BigDecimal.ZERO, holdService.getHeldAmount(accountId));
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM ledger_entries WHERE transaction_id = ?",
+                Integer.class, result.getTransaction().getId()));
+
+        assertThrows(RuntimeException.class, () -> holdService.capture(hold, newTransaction(), settlementAccountId));
+        assertEquals(new BigDecimal("60.00"), currentBalance(accountId));
+    }
+
+    @Test
+    void expiryGivesTheAmountBackAndClearsTheTotal() {
+        Hold stale = place("40.00").orElseThrow();
+        Hold live = place("10.00").orElseThrow();
+        expire(stale);
+
+        holdService.expireHolds();
+
+        assertEquals(HoldStatus.EXPIRED, status(stale));
+        assertEquals(HoldStatus.ACTIVE, status(live));
+        assertEquals(new BigDecimal("90.00"), availableBalance(accountId));
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+        assertEquals(new BigDecimal("10.00"), holdService.getHeldAmount(accountId));
+        // The expiry job already gave the amount back, so release has nothing to do
+        assertFalse(holdService.release(stale));
+        assertTrue(holdService.closeExpired(stale));
+        assertEquals(HoldStatus.RELEASED, status(stale));
+        assertEquals(new BigDecimal("90.00"), availableBalance(accountId));
+    }
+
+    @Test
+    void captureAfterExpiryTakesTheAmountFromTheAvailableBalanceAgain() {
+        Hold hold = place("40.00").orElseThrow();
+        expire(hold);
+        holdService.expireHolds();
+        // Spent elsewhere while the hold was expired: the capture still goes through
+        jdbc.update("UPDATE accounts SET current_balance = 20.00, available_balance = 20.00 WHERE id = ?", accountId);
+
+        PostingService.PostingResult result = holdService.capture(hold, newTransaction(), settlementAccountId);
+
+        assertTrue(result.isPosted());
+        assertEquals(HoldStatus.CAPTURED, status(hold));
+        assertEquals(new BigDecimal("-20.00"), currentBalance(accountId));
+        assertEquals(new BigDecimal("-20.00"), availableBalance(accountId));
+        assertEquals(BigDecimal.ZERO, holdService.getHeldAmount(accountId));
+    }
+
+    @Test
+    void rebuildPicksUpHoldsPlacedByOtherInstances() {
+        place("15.00").orElseThrow();
+        // Another instance's hold: in the table, not in this instance's totals
+        jdbc.update("INSERT INTO holds (account_id, amount, status, expires_at) VALUES (?, 25.00, 'ACTIVE', ?)",
+                accountId, LocalDateTime.now().plusMinutes(30));
+        assertEquals(new BigDecimal("15.00"), holdService.getHeldAmount(accountId));
+
+        holdService.loadActiveHolds();
+
+        assertEquals(new BigDecimal("40.00"), holdService.getHeldAmount(accountId));
+    }
+
+    @Test
+    void concurrentHoldsNeverOvercommitTheAvailableBalance() throws Exception {
+        int attempts = 20;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Optional<Hold>>> results = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return place("15.00");
+                }));
+            }
+            start.countDown();
+            int placed = 0;
+            for (Future<Optional<Hold>> result : results) {
+                placed += result.get(30, TimeUnit.SECONDS).isPresent() ? 1 : 0;
+            }
+
+            assertEquals(6, placed);
+            assertEquals(new BigDecimal("10.00"), availableBalance(accountId));
+            assertEquals(new BigDecimal("90.00"), holdService.getHeldAmount(accountId));
+            assertEquals(new BigDecimal("90.00"), activeHeldInTable());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void totalsMatchTheTableAfterHoldsRaceWithRebuilds() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean placing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < 4; worker++) {
+                boolean releases = worker % 2 == 0;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 25; i++) {
+                        Optional<Hold> hold = place("1.00");
+                        if (releases && hold.isPresent() && i % 2 == 0) {
+                            holdService.release(hold.get());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Future<?> rebuilds = pool.submit(() -> {
+                start.await();
+                while (placing.get()) {
+                    holdService.loadActiveHolds();
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+            placing.set(false);
+            rebuilds.get(30, TimeUnit.SECONDS);
+
+            BigDecimal inTable = activeHeldInTable();
+            assertEquals(new BigDecimal("74.00"), inTable);
+            assertEquals(inTable, holdService.getHeldAmount(accountId));
+            assertEquals(OPENING_BALANCE.subtract(inTable), availableBalance(accountId));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Optional<Hold> place(String amount) {
+        Account account = accountRepository.findById(accountId).orElseThrow();
+        return holdService.placeHold(account, new BigDecimal(amount), null, "test hold",
+                LocalDateTime.now().plusMinutes(30));
+    }
+
+    private static void expire(Hold hold) {
+        jdbc.update("UPDATE holds SET expires_at = now() - interval '1 second' WHERE id = ?", hold.getId());
+    }
+
+    // Left unsaved: PostingService inserts it with the capture journal
+    private Transaction newTransaction() {
+        Transaction txn = new Transaction();
+        txn.setTransactionRef("HOLDTEST-" + refCounter.incrementAndGet());
+        txn.setTransactionType(entityManager.getReference(TransactionType.class, paymentTypeId));
+        txn.setFromAccount(entityManager.getReference(Account.class, accountId));
+        txn.setToAccount(entityManager.getReference(Account.class, settlementAccountId));
+        txn.setAmount(BigDecimal.ONE);
+        txn.setStatus(TransactionStatus.COMPLETED);
+        txn.setTransactionDate(LocalDateTime.now());
+        txn.setEffectiveDate(LocalDate.now());
+        return txn;
+    }
+
+    private static HoldStatus status(Hold hold) {
+        return HoldStatus.valueOf(jdbc.queryForObject("SELECT status FROM holds WHERE id = ?", String.class, hold.getId()));
+    }
+
+    private BigDecimal activeHeldInTable() {
+        return jdbc.queryForObject("SELECT coalesce(sum(amount), 0) FROM holds WHERE account_id = ? AND status = 'ACTIVE'",
+                BigDecimal.class, accountId);
+    }
+
+    private static BigDecimal currentBalance(Long id) {
+        return jdbc.queryForObject("SELECT current_balance FROM accounts WHERE id = ?", BigDecimal.class, id);
+    }
+
+    private static BigDecimal availableBalance(Long id) {
+        return jdbc.queryForObject("SELECT available_balance FROM accounts WHERE id = ?", BigDecimal.class, id);
+    }
+}
@@ -0,0 +1,116 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// IdempotencyService against a migrated embedded Postgres. Leases are expired by moving
+// expires_at into the past rather than by waiting.
+class IdempotencyServiceTest {
+
+    private static final AtomicInteger keyCounter = new AtomicInteger();
+
+    private static ConfigurableApplicationContext context;
+    private static IdempotencyService idempotencyService;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(IdempotencyService.class)
+                // No in-memory replay, so every call goes to the table
+                .properties("idempotency.cache-size=0")
+                .run();
+        idempotencyService = context.getBean(IdempotencyService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void repeatReplaysTheFirstResponse() {
+        String key = nextKey();
+        AtomicInteger runs = new AtomicInteger();
+
+        String first = idempotencyService.execute("TEST", key, "hash", String.class, () -> "run-" + runs.incrementAndGet());
+        String second = idempotencyService.execute("TEST", key, "hash", String.class, () -> "run-" + runs.incrementAndGet());
+
+        assertEquals("run-1", first);
+        assertEquals("run-1", second);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void concurrentDuplicateIsAConflictWhileTheLeaseIsLive() {
+        String key = nextKey();
+
+        idempotencyService.execute("TEST", key, "hash", String.class, () ->
+                assertThrows(IdempotencyConflictException.class, () ->
+                        idempotencyService.execute("TEST", key, "hash", String.class, () -> "duplicate")).getMessage());
+
+        assertEquals("COMPLETED", status(key));
+    }
+
+    @Test
+    void keyLeftByACrashedRequestIsTakenOverOnceItsLeaseRunsOut() {
+        String key = nextKey();
+        // What a request that died mid-flight leaves behind
+        jdbc.update("INSERT INTO idempotency_keys (scope, idempotency_key, request_hash, status, claim_token, expires_at) " +
+                "VALUES ('TEST', ?, 'hash', 'IN_PROGRESS', gen_random_uuid(), now() + interval '1 minute')", key);
+        assertThrows(IdempotencyConflictException.class, () ->
+                idempotencyService.execute("TEST", key, "hash", String.class, () -> "retry"));
+
+        jdbc.update("UPDATE idempotency_keys SET expires_at = now() - interval '1 second' WHERE idempotency_key = ?", key);
+
+        assertEquals("retry", idempotencyService.execute("TEST", key, "hash", String.class, () -> "retry"));
+        assertEquals("COMPLETED", status(key));
+    }
+
+    @Test
+    void requestThatOutlivedItsLeaseCannotCompleteTheKey() {
+        String key = nextKey();
+
+        String slow = idempotencyService.execute("TEST", key, "hash", String.class, () -> {
+            // Lease runs out while this request is still working, and a retry takes the key over
+            jdbc.update("UPDATE idempotency_keys SET expires_at = now() - interval '1 second' WHERE idempotency_key = ?", key);
+            return idempotencyService.execute("TEST", key, "hash", String.class, () -> "retry") + "+slow";
+        });
+
+        assertEquals("retry+slow", slow);
+        assertEquals("\"retry\"", jdbc.queryForObject("SELECT response_body FROM idempotency_keys WHERE idempotency_key = ?",
+                String.class, key));
+    }
+
+    @Test
+    void failedRequestReleasesItsKey() {
+        String key = nextKey();
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute("TEST", key, "hash", String.class, () -> {
+            throw new IllegalStateException("core unavailable");
+        }));
+
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM idempotency_keys WHERE idempotency_key = ?",
+                Integer.class, key));
+        assertEquals("retry", idempotencyService.execute("TEST", key, "hash", String.class, () -> "retry"));
+    }
+
+    private static String nextKey() {
+        return "key-" + keyCounter.incrementAndGet();
+    }
+
+    private static String status(String key) {
+        return jdbc.queryForObject("SELECT status FROM idempotency_keys WHERE idempotency_key = ?", String.class, key);
+    }
+}
@@ -0,0 +1,179 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.support.KeycloakStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakAdminServiceTest {
+
+    private KeycloakStubServer stub;
+    private KeycloakAdminService client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new KeycloakStubServer(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        stub.close();
+    }
+
+    @Test
+    void createsFindsAndDeletesUser() {
+        client = newClient(30_000, 8, 1_000);
+
+        String id = client.createUserInKeycloak("jdoe", "jdoe@example.com", "John", "Doe", "Temp#1234");
+        Optional<Map<String, Object>> found = client.findUserByUsername("jdoe");
+        assertTrue(found.isPresent());
+        assertEquals(id, found.get().get("id"));
+
+        client.deleteUserInKeycloak(id);
+        assertFalse(stub.hasUser("jdoe"));
+        // Deleting again is not an error
+        client.deleteUserInKeycloak(id);
+
+        KeycloakAdminService.KeycloakAdminException conflict = assertThrows(KeycloakAdminService.KeycloakAdminException.class,
+                () -> {
+                    client.createUserInKeycloak("dup", "dup@example.com", "A", "B", "Temp#1234");
+                    client.createUserInKeycloak("dup", "dup@example.com", "A", "B", "Temp#1234");
+                });
+        assertEquals(409, conflict.getStatusCode());
+    }
+
+    @Test
+    void concurrentCallersShareOneTokenRequest() throws Exception {
+        stub.setTokenLatencyMs(200);
+        client = newClient(30_000, 32, 1_000);
+
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Optional<Map<String, Object>>>> calls = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return client.findUserByUsername("nobody");
+            }, pool));
+        }
+        start.countDown();
+        for (CompletableFuture<Optional<Map<String, Object>>> call : calls) {
+            assertTrue(call.join().isEmpty());
+        }
+        pool.shutdown();
+
+        assertEquals(1, stub.getTokenRequests());
+    }
+
+    @Test
+    void refreshesTokenEarlyFromExpiresIn() throws Exception {
+        // Two-second tokens are refreshed halfway through their life
+        stub.setTokenLifetimeSeconds(2);
+        client = newClient(30_000, 8, 1_000);
+
+        client.findUserByUsername("nobody");
+        client.findUserByUsername("nobody");
+        assertEquals(1, stub.getTokenRequests());
+
+        Thread.sleep(1_200);
+        client.findUserByUsername("nobody");
+        awaitTokenRequests(2);
+
+        Thread.sleep(1_200);
+        client.findUserByUsername("nobody");
+        awaitTokenRequests(3);
+    }
+
+    @Test
+    void retriesOnceWithNewTokenAfter401() {
+        client = newClient(30_000, 8, 1_000);
+        client.findUserByUsername("nobody");
+
+        stub.revokeTokens();
+        assertTrue(client.findUserByUsername("nobody").isEmpty());
+        assertEquals(2, stub.getTokenRequests());
+    }
+
+    @Test
+    void bulkCreateStaysWithinInFlightLimitAndReportsEachUser() {
+        stub.setAdminLatencyMs(50);
+        client = newClient(30_000, 4, 1_000);
+        client.createUserInKeycloak("taken", "taken@example.com", "A", "B", "Temp#1234");
+
+        List<KeycloakAdminService.NewUser> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            users.add(new KeycloakAdminService.NewUser("user" + i, "user" + i + "@example.com", "First", "Last" + i, "Temp#1234"));
+        }
+        users.add(new KeycloakAdminService.NewUser("taken", "taken@example.com", "A", "B", "Temp#1234"));
+
+        List<KeycloakAdminService.ProvisioningResult> results = client.createUsers(users);
+
+        assertEquals(users.size(), results.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("user" + i, results.get(i).getUsername());
+            assertTrue(results.get(i).isSuccess());
+            assertNotNull(results.get(i).getKeycloakUserId());
+        }
+        KeycloakAdminService.ProvisioningResult taken = results.get(40);
+        assertFalse(taken.isSuccess());
+        assertEquals(409, taken.getStatusCode());
+        assertTrue(stub.getMaxConcurrentAdminRequests() <= 4, "max concurrent: " + stub.getMaxConcurrentAdminRequests());
+        assertTrue(stub.getMaxConcurrentAdminRequests() > 1, "bulk create ran sequentially");
+
+        List<String> ids = results.subList(0, 40).stream().map(KeycloakAdminService.ProvisioningResult::getKeycloakUserId).toList();
+        assertTrue(client.deleteUsers(ids).stream().allMatch(KeycloakAdminService.ProvisioningResult::isSuccess));
+        assertEquals(1, stub.getUserCount());
+    }
+
+    @Test
+    void bulkCallsAreRateLimited() {
+        client = newClient(30_000, 8, 20);
+
+        List<KeycloakAdminService.NewUser> users = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            users.add(new KeycloakAdminService.NewUser("rate" + i, "rate" + i + "@example.com", "First", "Last", "Temp#1234"));
+        }
+        long started = System.nanoTime();
+        client.createUsers(users);
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        // 11 calls at 20 per second: the last one can't start before ~500ms
+        assertTrue(elapsedMs >= 450, "elapsed: " + elapsedMs + "ms");
+        assertEquals(11, stub.getUserCount());
+    }
+
+    private KeycloakAdminService newClient(long refreshSkewMs, int maxInFlight, double maxRequestsPerSecond) {
+        return new KeycloakAdminService(stub.getBaseUrl(), KeycloakStubServer.REALM, KeycloakStubServer.CLIENT_ID,
+                KeycloakStubServer.CLIENT_SECRET, 1_000, 5_000, refreshSkewMs, maxInFlight, maxRequestsPerSecond,
+                new ObjectMapper());
+    }
+
+    // The early refresh runs in the background, so give it a moment to land
+    private void awaitTokenRequests(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (stub.getTokenRequests() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, stub.getTokenRequests());
+    }
+}
@@ -0,0 +1,182 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// LedgerVerificationService against a migrated embedded Postgres. Chains are built through
+// PostingService and then damaged with plain SQL, as drift would be in production.
+class LedgerVerificationServiceTest {
+
+    private static final AtomicLong refCounter = new AtomicLong();
+
+    private static ConfigurableApplicationContext context;
+    private static LedgerVerificationService verificationService;
+    private static PostingService postingService;
+    private static TransactionTemplate transactionTemplate;
+    private static EntityManager entityManager;
+    private static JdbcTemplate jdbc;
+    private static long depositTypeId;
+
+    private Long accountId;
+    private Long cashAccountId;
+
+    @BeforeAll
+    static void startContext() {
+        // PostingService to build chains with
+        context = TestDatabase.context(LedgerVerificationService.class, PostingService.class)
+                .properties(
+                        "banking.ledger-verifier.parallelism=2",
+                        "banking.ledger-verifier.partition-size=2")
+                .run();
+        verificationService = context.getBean(LedgerVerificationService.class);
+        postingService = context.getBean(PostingService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        entityManager = context.getBean(EntityManager.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'verifier', 'verifier@example.com', 'sub-verifier')");
+        depositTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'DEPOSIT'", Long.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    // A fresh account per test with three deposits: 10, 20 and 30
+    @BeforeEach
+    void openAccount() {
+        String accountNumber = "VERIFY-" + refCounter.incrementAndGet();
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE' " +
+                "FROM users u WHERE u.username = 'verifier'", accountNumber);
+        accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+        cashAccountId = postingService.glAccountId(PostingService.GlAccount.CASH, accountId);
+        for (String amount : List.of("10.00", "20.00", "30.00")) {
+            transactionTemplate.executeWithoutResult(status -> postingService.post(deposit(new BigDecimal(amount))));
+        }
+    }
+
+    @Test
+    void cleanChainHasNoDiscrepancies() {
+        LedgerVerificationService.VerificationReport report = verificationService.verify(false);
+
+        assertNotNull(report);
+        assertTrue(discrepancies(report).isEmpty());
+        assertTrue(report.getEntriesChecked() >= 3);
+        assertEquals("COMPLETED", jdbc.queryForObject("SELECT status FROM ledger_verification_runs WHERE id = ?",
+                String.class, report.getRunId()));
+    }
+
+    @Test
+    void tamperedEntryIsReportedAsChainBreak() {
+        List<Long> entries = entryIds();
+        jdbc.update("UPDATE ledger_entries SET amount = 25.00 WHERE id = ?", entries.get(1));
+
+        List<LedgerVerificationService.Discrepancy> found = discrepancies(verificationService.verify(false));
+
+        assertEquals(1, found.size());
+        assertEquals(LedgerVerificationService.DiscrepancyKind.CHAIN_BREAK, found.get(0).getKind());
+        assertEquals(entries.get(1), found.get(0).getLedgerEntryId());
+        assertEquals(new BigDecimal("35.00"), found.get(0).getExpectedBalance());
+        assertEquals(new BigDecimal("30.00"), found.get(0).getActualBalance());
+    }
+
+    @Test
+    void missingEntryBreaksTheChainAtTheNextEntry() {
+        List<Long> entries = entryIds();
+        jdbc.update("DELETE FROM ledger_entries WHERE id = ?", entries.get(1));
+
+        List<LedgerVerificationService.Discrepancy> found = discrepancies(verificationService.verify(false));
+
+        assertEquals(1, found.size());
+        assertEquals(LedgerVerificationService.DiscrepancyKind.CHAIN_BREAK, found.get(0).getKind());
+        assertEquals(entries.get(2), found.get(0).getLedgerEntryId());
+        assertEquals(new BigDecimal("40.00"), found.get(0).getExpectedBalance());
+        assertEquals(new BigDecimal("60.00"), found.get(0).getActualBalance());
+    }
+
+    @Test
+    void balanceChangedWithoutEntryIsReported() {
+        jdbc.update("UPDATE accounts SET current_balance = current_balance + 5 WHERE id = ?", accountId);
+
+        List<LedgerVerificationService.Discrepancy> found = discrepancies(verificationService.verify(false));
+
+        assertEquals(1, found.size());
+        assertEquals(LedgerVerificationService.DiscrepancyKind.BALANCE_MISMATCH, found.get(0).getKind());
+        assertEquals(new BigDecimal("60.00"), found.get(0).getExpectedBalance());
+    }
+
+    @Test
+    void skipsWhileAnotherInstanceHoldsTheRunLock() throws Exception {
+        try (Connection other = jdbc.getDataSource().getConnection()) {
+            advisoryLock(other, "SELECT pg_advisory_lock(?)");
+
+            assertNull(verificationService.verify(false));
+
+            // Unlocked explicitly: closing the connection releases it only once the backend exits
+            advisoryLock(other, "SELECT pg_advisory_unlock(?)");
+        }
+        assertNotNull(verificationService.verify(false));
+    }
+
+    private static void advisoryLock(Connection connection, String sql) throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, LedgerVerificationService.RUN_LOCK_KEY);
+            ps.execute();
+        }
+    }
+
+    private PostingService.Journal deposit(BigDecimal amount) {
+        Transaction txn = new Transaction();
+        txn.setTransactionRef("VERIFYTEST-" + refCounter.incrementAndGet());
+        txn.setTransactionType(entityManager.getReference(TransactionType.class, depositTypeId));
+        txn.setFromAccount(entityManager.getReference(Account.class, cashAccountId));
+        txn.setToAccount(entityManager.getReference(Account.class, accountId));
+        txn.setAmount(amount);
+        txn.setStatus(TransactionStatus.COMPLETED);
+        txn.setTransactionDate(LocalDateTime.now());
+        txn.setEffectiveDate(LocalDate.now());
+        return postingService.journal(txn)
+                .debitCommitted(cashAccountId, amount)
+                .credit(accountId, amount);
+    }
+
+    private List<Long> entryIds() {
+        return jdbc.queryForList("SELECT id FROM ledger_entries WHERE account_id = ? ORDER BY created_at, id",
+                Long.class, accountId);
+    }
+
+    // Earlier tests leave their damaged accounts behind, so only this test's account counts
+    private List<LedgerVerificationService.Discrepancy> discrepancies(LedgerVerificationService.VerificationReport report) {
+        return report.getDiscrepancies().stream()
+                .filter(discrepancy -> discrepancy.getAccountId().equals(accountId))
+                .toList();
+    }
+}
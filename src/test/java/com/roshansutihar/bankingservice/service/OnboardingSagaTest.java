@@ -0,0 +1,172 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.email.EmailOutboxDispatcher;
+import com.roshansutihar.bankingservice.email.EmailService;
+import com.roshansutihar.bankingservice.entity.OnboardingRequest;
+import com.roshansutihar.bankingservice.enums.OnboardingState;
+import com.roshansutihar.bankingservice.enums.UserType;
+import com.roshansutihar.bankingservice.idgen.SequenceAccountNumberGenerator;
+import com.roshansutihar.bankingservice.repository.OnboardingRequestRepository;
+import com.roshansutihar.bankingservice.support.KeycloakStubServer;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// The onboarding saga end to end: its own workers run requests against a migrated embedded
+// Postgres and KeycloakStubServer until each reaches COMPLETED or FAILED.
+class OnboardingSagaTest {
+
+    private static final AtomicInteger userCounter = new AtomicInteger();
+
+    private static KeycloakStubServer keycloak;
+    private static ConfigurableApplicationContext context;
+    private static OnboardingRequestRepository onboardingRequestRepository;
+    private static OnboardingSaga onboardingSaga;
+    private static JdbcTemplate jdbc;
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    static void startContext() throws Exception {
+        keycloak = new KeycloakStubServer(0);
+        // The saga and the services its steps call
+        context = TestDatabase.context(OnboardingSaga.class, KeycloakAdminService.class, UserService.class,
+                        IndividualService.class, BusinessService.class, AccountService.class, BalanceSnapshotService.class,
+                        AccountTypeService.class, ReferenceDataRegistry.class, SequenceAccountNumberGenerator.class,
+                        EmailService.class, EmailOutboxDispatcher.class, AuditLogService.class, AuditLogWriter.class)
+                .properties(
+                        "spring.mail.host=127.0.0.1",
+                        "keycloak.base-url=" + keycloak.getBaseUrl(),
+                        "keycloak.realm=" + KeycloakStubServer.REALM,
+                        "keycloak.admin-client.id=" + KeycloakStubServer.CLIENT_ID,
+                        "keycloak.admin-client.secret=" + KeycloakStubServer.CLIENT_SECRET,
+                        "payment.routing.number=021000021",
+                        "frontend.login-url=http://localhost/login",
+                        "banking.email.workers=0",
+                        "banking.balance-snapshots.on-startup=false",
+                        "banking.audit.spill-file=" + tempDir.resolve("audit-spill.jsonl"),
+                        "banking.onboarding.workers=2",
+                        "banking.onboarding.poll-interval-ms=100",
+                        "banking.onboarding.base-backoff-ms=50",
+                        "banking.onboarding.max-backoff-ms=200")
+                .run();
+        onboardingRequestRepository = context.getBean(OnboardingRequestRepository.class);
+        onboardingSaga = context.getBean(OnboardingSaga.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+    }
+
+    @AfterAll
+    static void stopContext() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (keycloak != null) {
+            keycloak.close();
+        }
+    }
+
+    @Test
+    void completesAndHandsThePasswordToTheOutbox() {
+        String username = nextUsername();
+
+        OnboardingRequest done = awaitFinished(submit(username));
+
+        assertEquals(OnboardingState.COMPLETED, done.getState());
+        assertTrue(keycloak.hasUser(username));
+        assertNotNull(done.getAccountNumber());
+        assertEquals(done.getKeycloakUserId(), jdbc.queryForObject(
+                "SELECT keycloak_sub FROM users WHERE username = ?", String.class, username));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM accounts WHERE account_number = ?",
+                Integer.class, done.getAccountNumber()));
+        assertNull(done.getTemporaryPassword());
+        assertNull(done.getPayload());
+        String body = jdbc.queryForObject("SELECT body FROM email_outbox WHERE recipient = ?", String.class,
+                username + "@example.com");
+        assertTrue(body.contains("Temp#" + username));
+    }
+
+    @Test
+    void retriesWhileKeycloakIsUnavailable() {
+        String username = nextUsername();
+        keycloak.failAdminRequests(3);
+
+        OnboardingRequest done = awaitFinished(submit(username));
+
+        assertEquals(OnboardingState.COMPLETED, done.getState());
+        assertTrue(keycloak.hasUser(username));
+        assertNull(done.getLastError());
+    }
+
+    @Test
+    void compensatesWhenTheRecordsCannotBeCreated() {
+        String username = nextUsername();
+        // Someone else got the username between submission and step 2
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) VALUES ('INDIVIDUAL', ?, ?, ?)",
+                username, "other-" + username + "@example.com", "sub-other-" + username);
+
+        OnboardingRequest done = awaitFinished(submit(username));
+
+        assertEquals(OnboardingState.FAILED, done.getState());
+        assertNotNull(done.getKeycloakUserId());
+        assertFalse(keycloak.hasUser(username));
+        assertTrue(done.getLastError().contains("already registered"));
+        assertNull(done.getTemporaryPassword());
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM email_outbox WHERE recipient = ?", Integer.class,
+                username + "@example.com"));
+    }
+
+    private static String nextUsername() {
+        return "onboard" + userCounter.incrementAndGet();
+    }
+
+    private static Long submit(String username) {
+        OnboardingRequest request = new OnboardingRequest();
+        request.setReference(UUID.randomUUID());
+        request.setUserType(UserType.INDIVIDUAL);
+        request.setUsername(username);
+        request.setEmail(username + "@example.com");
+        request.setPayload("{\"firstName\":\"Test\",\"lastName\":\"User\",\"dateOfBirth\":\"1990-01-01\"," +
+                "\"ssn\":\"" + String.format("%03d-00-0000", userCounter.get()) + "\",\"address\":\"1 Main St\"}");
+        request.setTemporaryPassword("Temp#" + username);
+        request.setState(OnboardingState.PENDING);
+        request.setNextAttemptAt(LocalDateTime.now());
+        Long id = onboardingRequestRepository.save(request).getId();
+        onboardingSaga.wakeUp();
+        return id;
+    }
+
+    private static OnboardingRequest awaitFinished(Long id) {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (System.currentTimeMillis() < deadline) {
+            OnboardingRequest request = onboardingRequestRepository.findById(id).orElseThrow();
+            if (request.getState().isFinished()) {
+                return request;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("Onboarding request " + id + " did not finish");
+        return null;
+    }
+}
@@ -0,0 +1,279 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.repository.UserRepository;
+import com.roshansutihar.bankingservice.request.PaymentRequest;
+import com.roshansutihar.bankingservice.response.PaymentResponse;
+import com.roshansutihar.bankingservice.support.PaymentsCoreStubServer;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// The staged QR payment flow (validate -> hold -> core -> capture | release) and the reconciler,
+// against a migrated embedded Postgres and PaymentsCoreStubServer.
+class PaymentProcessingServiceTest {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("100.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("25.00");
+    private static final String MERCHANT_ID = "MERCHANT-1";
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private static PaymentsCoreStubServer core;
+    private static ConfigurableApplicationContext context;
+    private static PaymentProcessingService paymentProcessingService;
+    private static JdbcTemplate jdbc;
+    private static User payer;
+
+    @TempDir
+    static Path tempDir;
+
+    private Long accountId;
+    private String sessionId;
+    private String transactionRef;
+
+    @BeforeAll
+    static void startContext() throws Exception {
+        core = new PaymentsCoreStubServer(0);
+        context = TestDatabase.context(PaymentProcessingService.class, PaymentsCoreClient.class, AccountService.class,
+                        BalanceSnapshotService.class, TransactionService.class, TransactionTypeService.class,
+                        ReferenceDataRegistry.class, IdempotencyService.class, PostingService.class, HoldService.class,
+                        AuditLogService.class, AuditLogWriter.class)
+                .properties(
+                        "payments.core.base-url=" + core.getBaseUrl(),
+                        "payments.core.request-timeout-ms=500",
+                        // Outage tests must not trip the breaker for the ones after them
+                        "payments.core.circuit-breaker.failure-threshold=1000",
+                        "payment.routing.number=021000021",
+                        "banking.payments.reconcile-after-ms=0",
+                        "banking.balance-snapshots.on-startup=false",
+                        "banking.audit.spill-file=" + tempDir.resolve("audit-spill.jsonl"))
+                .run();
+        paymentProcessingService = context.getBean(PaymentProcessingService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'payer', 'payer@example.com', 'sub-payer')");
+        payer = context.getBean(UserRepository.class).findByUsername("payer").orElseThrow();
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+        if (core != null) {
+            core.close();
+        }
+    }
+
+    // A fresh funded account and an open payments-core session per test
+    @BeforeEach
+    void openAccountAndSession() {
+        int n = counter.incrementAndGet();
+        String accountNumber = "PAY-" + n;
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                "current_balance, available_balance) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE', ?, ? " +
+                "FROM users u WHERE u.username = 'payer'", accountNumber, OPENING_BALANCE, OPENING_BALANCE);
+        accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+        sessionId = "SESSION-" + n;
+        transactionRef = "PAYTEST-" + n;
+        core.addSession(sessionId, AMOUNT, "USD", MERCHANT_ID, transactionRef);
+    }
+
+    @AfterEach
+    void resetCore() {
+        core.setCompleteLatencyMs(0);
+        core.failCompletions(0, false);
+    }
+
+    @Test
+    void acceptedPaymentIsCapturedToMerchantSettlement() {
+        PaymentResponse response = paymentProcessingService.processPayment(payer, request());
+
+        assertNotNull(response.getTransactionId());
+        assertNotNull(response.getPaymentReference());
+        assertEquals("CAPTURED", holdStatus());
+        assertEquals(new BigDecimal("75.00"), currentBalance());
+        assertEquals(new BigDecimal("75.00"), availableBalance());
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM ledger_entries WHERE transaction_id = ?",
+                Integer.class, response.getTransactionId()));
+    }
+
+    @Test
+    void mismatchedRequestIsRefusedBeforeAnythingIsHeld() {
+        PaymentRequest request = request();
+        request.setAmount(new BigDecimal("24.99"));
+        int completeCalls = core.getCompleteCalls();
+
+        PaymentProcessingException e = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM holds WHERE account_id = ?", Integer.class, accountId));
+        assertEquals(completeCalls, core.getCompleteCalls());
+    }
+
+    @Test
+    void paymentBeyondTheAvailableBalanceIsRefused() {
+        jdbc.update("UPDATE accounts SET available_balance = 10.00 WHERE id = ?", accountId);
+
+        PaymentProcessingException e = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        assertEquals(new BigDecimal("10.00"), e.getDetails().get("availableBalance"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM transactions WHERE transaction_ref = ?",
+                Integer.class, transactionRef));
+    }
+
+    @Test
+    void declinedPaymentReleasesTheHold() {
+        core.failCompletions(422, false);
+
+        PaymentProcessingException e = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        assertEquals("RELEASED", holdStatus());
+        assertEquals("FAILED", transactionStatus());
+        assertEquals(OPENING_BALANCE, availableBalance());
+    }
+
+    @Test
+    void coreErrorKeepsTheHoldAndADuplicateIsAConflict() {
+        core.failCompletions(503, false);
+
+        PaymentProcessingException first = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request()));
+
+        assertEquals(HttpStatus.BAD_GATEWAY, first.getStatus());
+        assertNotNull(first.getDetails().get("transactionId"));
+        assertEquals("ACTIVE", holdStatus());
+        assertEquals("PENDING", transactionStatus());
+        assertEquals(new BigDecimal("75.00"), availableBalance());
+        assertEquals(OPENING_BALANCE, currentBalance());
+
+        core.failCompletions(0, false);
+        PaymentProcessingException retry = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request()));
+
+        assertEquals(HttpStatus.CONFLICT, retry.getStatus());
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM holds WHERE payment_session_id = ?",
+                Integer.class, sessionId));
+        assertEquals(new BigDecimal("75.00"), availableBalance());
+    }
+
+    @Test
+    void timedOutPaymentTheCoreTookIsCapturedByReconciliation() {
+        core.setCompleteLatencyMs(1_000);
+
+        PaymentProcessingException e = assertThrows(PaymentProcessingException.class,
+                () -> paymentProcessingService.processPayment(payer, request()));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, e.getStatus());
+        assertEquals("ACTIVE", holdStatus());
+        awaitSessionStatus("COMPLETED");
+
+        paymentProcessingService.reconcileOpenPayments();
+
+        assertEquals("CAPTURED", holdStatus());
+        assertEquals(new BigDecimal("75.00"), currentBalance());
+        assertEquals(new BigDecimal("75.00"), availableBalance());
+    }
+
+    @Test
+    void reconciliationReleasesPaymentsTheCoreFailedOrNeverSaw() {
+        core.failCompletions(503, false);
+        assertThrows(PaymentProcessingException.class, () -> paymentProcessingService.processPayment(payer, request()));
+        core.setSessionStatus(sessionId, "FAILED");
+
+        paymentProcessingService.reconcileOpenPayments();
+
+        assertEquals("RELEASED", holdStatus());
+        assertEquals("FAILED", transactionStatus());
+        assertEquals(OPENING_BALANCE, availableBalance());
+
+        openAccountAndSession();
+        assertThrows(PaymentProcessingException.class, () -> paymentProcessingService.processPayment(payer, request()));
+        core.removeSession(sessionId);
+
+        paymentProcessingService.reconcileOpenPayments();
+
+        assertEquals("RELEASED", holdStatus());
+        assertEquals(OPENING_BALANCE, availableBalance());
+    }
+
+    @Test
+    void reconciliationLeavesPaymentsTheCoreIsStillWorkingOn() {
+        core.failCompletions(503, false);
+        assertThrows(PaymentProcessingException.class, () -> paymentProcessingService.processPayment(payer, request()));
+
+        paymentProcessingService.reconcileOpenPayments();
+
+        assertEquals("ACTIVE", holdStatus());
+        assertEquals("PENDING", transactionStatus());
+        assertEquals(new BigDecimal("75.00"), availableBalance());
+    }
+
+    private PaymentRequest request() {
+        PaymentRequest request = new PaymentRequest();
+        request.setSessionId(sessionId);
+        request.setAmount(AMOUNT);
+        request.setMerchantId(MERCHANT_ID);
+        request.setTransactionRef(transactionRef);
+        request.setPayerAccountId(accountId);
+        return request;
+    }
+
+    // The stub finishes a completion the client gave up on once its delay runs out
+    private void awaitSessionStatus(String status) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!status.equals(paymentsCoreStatus())) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Session " + sessionId + " never reached " + status);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private String paymentsCoreStatus() {
+        return context.getBean(PaymentsCoreClient.class).getPaymentSession(sessionId).join().getStatus().name();
+    }
+
+    private String holdStatus() {
+        return jdbc.queryForObject("SELECT status FROM holds WHERE account_id = ?", String.class, accountId);
+    }
+
+    private String transactionStatus() {
+        return jdbc.queryForObject("SELECT status FROM transactions WHERE transaction_ref = ?", String.class, transactionRef);
+    }
+
+    private BigDecimal currentBalance() {
+        return jdbc.queryForObject("SELECT current_balance FROM accounts WHERE id = ?", BigDecimal.class, accountId);
+    }
+
+    private BigDecimal availableBalance() {
+        return jdbc.queryForObject("SELECT available_balance FROM accounts WHERE id = ?", BigDecimal.class, accountId);
+    }
+}
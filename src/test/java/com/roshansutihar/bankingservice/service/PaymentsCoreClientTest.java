@@ -0,0 +1,99 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roshansutihar.bankingservice.enums.PaymentSessionStatus;
+import com.roshansutihar.bankingservice.support.PaymentsCoreStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentsCoreClientTest {
+
+    private PaymentsCoreStubServer stub;
+    private PaymentsCoreClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new PaymentsCoreStubServer(0);
+        stub.addSession("S-1", new BigDecimal("25.50"), "USD", "MERCHANT-1", "REF-1");
+        client = new PaymentsCoreClient(stub.getBaseUrl(), 500, 300, 8, 3, 60_000, new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void fetchesPaymentSession() {
+        PaymentsCoreClient.PaymentSession session = client.getPaymentSession("S-1").join();
+
+        assertEquals(0, new BigDecimal("25.50").compareTo(session.getAmount()));
+        assertEquals("USD", session.getCurrency());
+        assertEquals("MERCHANT-1", session.getMerchantId());
+        assertEquals("REF-1", session.getTransactionRef());
+        assertEquals(PaymentSessionStatus.PENDING, session.getStatus());
+    }
+
+    @Test
+    void completesPayment() {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("sessionId", "S-1");
+        payload.put("grossAmount", 25.50);
+
+        PaymentsCoreClient.PaymentCompletion completion = client.completePayment(payload).join();
+
+        assertTrue(completion.isSuccess());
+        assertNotNull(completion.getPaymentReference());
+        assertNotNull(completion.getSettlementBatchId());
+    }
+
+    @Test
+    void failsWhenDeadlineIsExceeded() {
+        stub.setLatencyMs(1_000);
+
+        CompletionException e = assertThrows(CompletionException.class, () -> client.getPaymentSession("S-1").join());
+        assertInstanceOf(PaymentsCoreClient.PaymentsCoreException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().contains("timed out"));
+    }
+
+    @Test
+    void opensCircuitAfterRepeatedFailures() {
+        stub.setFailing(true);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(CompletionException.class, () -> client.getPaymentSession("S-1").join());
+        }
+        int callsBeforeOpen = stub.getStatusCalls();
+
+        CompletionException e = assertThrows(CompletionException.class, () -> client.getPaymentSession("S-1").join());
+        assertTrue(e.getCause().getMessage().contains("circuit open"));
+        assertEquals(callsBeforeOpen, stub.getStatusCalls());
+    }
+
+    @Test
+    void rejectionsDoNotOpenCircuit() {
+        for (int i = 0; i < 5; i++) {
+            CompletionException e = assertThrows(CompletionException.class, () -> client.getPaymentSession("MISSING").join());
+            PaymentsCoreClient.PaymentsCoreException cause = (PaymentsCoreClient.PaymentsCoreException) e.getCause();
+            assertEquals(404, cause.getStatusCode());
+            assertTrue(cause.isRejected());
+        }
+
+        assertEquals("REF-1", client.getPaymentSession("S-1").join().getTransactionRef());
+    }
+
+    @Test
+    void encodesSessionIdInPath() {
+        stub.addSession("S 2/x", new BigDecimal("5.00"), "USD", "MERCHANT-1", "REF-2");
+
+        assertEquals("REF-2", client.getPaymentSession("S 2/x").join().getTransactionRef());
+    }
+}
@@ -0,0 +1,200 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.Account;
+import com.roshansutihar.bankingservice.entity.Transaction;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.enums.TransactionStatus;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// PostingService against a migrated embedded Postgres: journals must balance, customer debits
+// are held to the available balance, and a rejected journal writes nothing.
+class PostingServiceTest {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("100.00");
+
+    private static final AtomicLong refCounter = new AtomicLong();
+
+    private static ConfigurableApplicationContext context;
+    private static PostingService postingService;
+    private static TransactionTemplate transactionTemplate;
+    private static EntityManager entityManager;
+    private static JdbcTemplate jdbc;
+    private static long withdrawalTypeId;
+
+    private Long accountId;
+    private Long cashAccountId;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(PostingService.class).run();
+        postingService = context.getBean(PostingService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        entityManager = context.getBean(EntityManager.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'posting', 'posting@example.com', 'sub-posting')");
+        withdrawalTypeId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'WITHDRAWAL'", Long.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    // A fresh funded account per test, so balances and ledger counts start from a known state
+    @BeforeEach
+    void openAccount() {
+        String accountNumber = "POST-" + refCounter.incrementAndGet();
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                "current_balance, available_balance) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE', ?, ? " +
+                "FROM users u WHERE u.username = 'posting'", accountNumber, OPENING_BALANCE, OPENING_BALANCE);
+        accountId = jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+        cashAccountId = postingService.glAccountId(PostingService.GlAccount.CASH, accountId);
+    }
+
+    @Test
+    void unbalancedJournalIsRefused() {
+        PostingService.Journal journal = postingService.journal(newTransaction())
+                .debit(accountId, new BigDecimal("10.00"))
+                .credit(cashAccountId, new BigDecimal("9.99"));
+
+        assertThrows(IllegalArgumentException.class, () -> transactionTemplate.execute(status -> postingService.tryPost(journal)));
+        assertUnchanged();
+    }
+
+    @Test
+    void oneSidedJournalIsRefused() {
+        PostingService.Journal creditOnly = postingService.journal(newTransaction())
+                .credit(accountId, new BigDecimal("10.00"));
+        PostingService.Journal empty = postingService.journal(newTransaction());
+
+        assertThrows(IllegalArgumentException.class, () -> transactionTemplate.execute(status -> postingService.tryPost(creditOnly)));
+        assertThrows(IllegalArgumentException.class, () -> transactionTemplate.execute(status -> postingService.tryPost(empty)));
+        assertUnchanged();
+    }
+
+    @Test
+    void postedJournalMovesBothSidesAndWritesEntries() {
+        BigDecimal cashBefore = currentBalance(cashAccountId);
+
+        PostingService.PostingResult result = transactionTemplate.execute(status -> postingService.tryPost(
+                withdrawal(new BigDecimal("30.00"))));
+
+        assertTrue(result.isPosted());
+        assertEquals(new BigDecimal("70.00"), currentBalance(accountId));
+        assertEquals(new BigDecimal("70.00"), availableBalance(accountId));
+        assertEquals(cashBefore.add(new BigDecimal("30.00")), currentBalance(cashAccountId));
+        assertEquals(2, entryCount(result.getTransaction().getId()));
+        assertEquals(new BigDecimal("70.00"), jdbc.queryForObject("SELECT running_balance FROM ledger_entries " +
+                "WHERE transaction_id = ? AND account_id = ?", BigDecimal.class, result.getTransaction().getId(), accountId));
+    }
+
+    @Test
+    void debitBeyondAvailableBalanceIsRejectedAndWritesNothing() {
+        // Funds on hold: the current balance could cover the debit, the available balance can't
+        jdbc.update("UPDATE accounts SET available_balance = 20.00 WHERE id = ?", accountId);
+
+        PostingService.PostingResult result = transactionTemplate.execute(status -> postingService.tryPost(
+                withdrawal(new BigDecimal("50.00"))));
+
+        assertFalse(result.isPosted());
+        assertEquals("Insufficient funds", result.getRejection());
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+        assertEquals(new BigDecimal("20.00"), availableBalance(accountId));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM ledger_entries WHERE account_id = ?", Integer.class, accountId));
+    }
+
+    @Test
+    void postThrowsOnRejection() {
+        assertThrows(RuntimeException.class, () -> transactionTemplate.execute(status -> postingService.post(
+                withdrawal(new BigDecimal("500.00")))));
+        assertUnchanged();
+    }
+
+    @Test
+    void inactiveAccountIsRejected() {
+        jdbc.update("UPDATE accounts SET status = 'FROZEN' WHERE id = ?", accountId);
+
+        PostingService.PostingResult result = transactionTemplate.execute(status -> postingService.tryPost(
+                withdrawal(new BigDecimal("10.00"))));
+
+        assertFalse(result.isPosted());
+        assertEquals("Account inactive or invalid", result.getRejection());
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+    }
+
+    @Test
+    void batchChecksEachJournalAgainstTheBalanceBeforeIt() {
+        List<PostingService.PostingResult> results = transactionTemplate.execute(status -> postingService.tryPostAll(List.of(
+                withdrawal(new BigDecimal("60.00")),
+                withdrawal(new BigDecimal("60.00")),
+                withdrawal(new BigDecimal("40.00")))));
+
+        assertTrue(results.get(0).isPosted());
+        assertFalse(results.get(1).isPosted());
+        assertTrue(results.get(2).isPosted());
+        assertEquals(new BigDecimal("0.00"), currentBalance(accountId));
+        assertEquals(new BigDecimal("0.00"), jdbc.queryForObject("SELECT running_balance FROM ledger_entries " +
+                "WHERE transaction_id = ? AND account_id = ?", BigDecimal.class, results.get(2).getTransaction().getId(), accountId));
+    }
+
+    private PostingService.Journal withdrawal(BigDecimal amount) {
+        return postingService.journal(newTransaction())
+                .debit(accountId, amount)
+                .credit(cashAccountId, amount);
+    }
+
+    // Left unsaved: PostingService inserts it with the journal
+    private Transaction newTransaction() {
+        Transaction txn = new Transaction();
+        txn.setTransactionRef("POSTTEST-" + refCounter.incrementAndGet());
+        txn.setTransactionType(entityManager.getReference(TransactionType.class, withdrawalTypeId));
+        txn.setFromAccount(entityManager.getReference(Account.class, accountId));
+        txn.setToAccount(entityManager.getReference(Account.class, cashAccountId));
+        txn.setAmount(BigDecimal.ONE);
+        txn.setStatus(TransactionStatus.COMPLETED);
+        txn.setTransactionDate(LocalDateTime.now());
+        txn.setEffectiveDate(LocalDate.now());
+        return txn;
+    }
+
+    private void assertUnchanged() {
+        assertEquals(OPENING_BALANCE, currentBalance(accountId));
+        assertEquals(OPENING_BALANCE, availableBalance(accountId));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM ledger_entries WHERE account_id = ?", Integer.class, accountId));
+    }
+
+    private static BigDecimal currentBalance(Long id) {
+        return jdbc.queryForObject("SELECT current_balance FROM accounts WHERE id = ?", BigDecimal.class, id);
+    }
+
+    private static BigDecimal availableBalance(Long id) {
+        return jdbc.queryForObject("SELECT available_balance FROM accounts WHERE id = ?", BigDecimal.class, id);
+    }
+
+    private static int entryCount(Long transactionId) {
+        return jdbc.queryForObject("SELECT count(*) FROM ledger_entries WHERE transaction_id = ?", Integer.class, transactionId);
+    }
+}
@@ -0,0 +1,170 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.User;
+import com.roshansutihar.bankingservice.repository.UserRepository;
+import com.roshansutihar.bankingservice.support.RoundTripCountingDataSource;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// PrincipalUserResolver over a migrated embedded Postgres. Statements reaching the database
+// are counted to tell cache hits from misses.
+class PrincipalUserResolverTest {
+
+    private static final AtomicInteger userCounter = new AtomicInteger();
+
+    private static RoundTripCountingDataSource dataSource;
+    private static ConfigurableApplicationContext context;
+    private static PrincipalUserResolver resolver;
+    private static UserService userService;
+    private static TransactionTemplate transactionTemplate;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startContext() {
+        dataSource = new RoundTripCountingDataSource(TestDatabase.dataSource());
+        context = TestDatabase.context(dataSource, PrincipalUserResolver.class, UserService.class).run();
+        resolver = context.getBean(PrincipalUserResolver.class);
+        userService = context.getBean(UserService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void firstLoginCreatesTheUserAndLaterRequestsAreServedFromTheCache() {
+        Jwt jwt = jwt(newUsername());
+
+        User created = resolver.resolve(jwt);
+
+        assertNotNull(created.getId());
+        assertEquals(jwt.getSubject(), jdbc.queryForObject("SELECT keycloak_sub FROM users WHERE id = ?",
+                String.class, created.getId()));
+
+        User[] again = new User[1];
+        assertEquals(0, dataSource.count(() -> again[0] = resolver.resolve(jwt)).total());
+        assertEquals(created.getId(), again[0].getId());
+    }
+
+    @Test
+    void existingUserIsLoadedOnceOnAMiss() {
+        String username = newUsername();
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) VALUES ('INDIVIDUAL', ?, ?, ?)",
+                username, username + "@example.com", "sub-" + username);
+        Jwt jwt = jwt(username);
+
+        User[] loaded = new User[1];
+        assertEquals(1, dataSource.count(() -> loaded[0] = resolver.resolve(jwt)).containing("from users"));
+
+        assertEquals(username + "@example.com", loaded[0].getEmail());
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM users WHERE username = ?", Integer.class, username));
+    }
+
+    @Test
+    void webAndMobileLoginsShareTheCacheEntry() {
+        String username = newUsername();
+        User fromJwt = resolver.resolve(jwt(username));
+        DefaultOidcUser oidcUser = new DefaultOidcUser(List.of(), new OidcIdToken("token", Instant.now(),
+                Instant.now().plusSeconds(60), Map.of("sub", "sub-" + username,
+                "preferred_username", username, "email", username + "@example.com")));
+
+        User[] fromOidc = new User[1];
+        assertEquals(0, dataSource.count(() -> fromOidc[0] = resolver.resolve((Object) oidcUser)).total());
+
+        assertEquals(fromJwt.getId(), fromOidc[0].getId());
+        assertNull(resolver.resolve("not a principal"));
+    }
+
+    @Test
+    void userChangeInvalidatesTheEntryOnlyOnceItCommits() {
+        Jwt jwt = jwt(newUsername());
+        User original = resolver.resolve(jwt);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            userService.createOrUpdateUser(changedEmail(original, "changed-" + original.getEmail()));
+            // Still the committed row until the change commits
+            assertEquals(original.getEmail(), resolver.resolve(jwt).getEmail());
+        });
+
+        assertEquals("changed-" + original.getEmail(), resolver.resolve(jwt).getEmail());
+    }
+
+    @Test
+    void rolledBackChangeKeepsTheEntry() {
+        Jwt jwt = jwt(newUsername());
+        User original = resolver.resolve(jwt);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            userService.createOrUpdateUser(changedEmail(original, "rolled-back-" + original.getEmail()));
+            status.setRollbackOnly();
+        });
+
+        User[] after = new User[1];
+        assertEquals(0, dataSource.count(() -> after[0] = resolver.resolve(jwt)).total());
+        assertEquals(original.getEmail(), after[0].getEmail());
+    }
+
+    @Test
+    void everyCallerGetsItsOwnDetachedCopy() {
+        Jwt jwt = jwt(newUsername());
+        User first = resolver.resolve(jwt);
+        String email = first.getEmail();
+
+        first.setEmail("mutated@example.com");
+        first.setUsername("mutated");
+        User second = resolver.resolve(jwt);
+
+        assertNotSame(first, second);
+        assertEquals(email, second.getEmail());
+        assertEquals(jwt.getClaimAsString("preferred_username"), second.getUsername());
+        // Only the user's own columns: nothing left to load lazily outside a session
+        assertNull(second.getIndividual());
+        assertNull(second.getBusiness());
+        assertEquals(0, second.getAccounts().size());
+        assertEquals(email, context.getBean(UserRepository.class).findById(second.getId()).orElseThrow().getEmail());
+    }
+
+    private static String newUsername() {
+        return "resolver-" + userCounter.incrementAndGet();
+    }
+
+    private static Jwt jwt(String username) {
+        return Jwt.withTokenValue("token")
+                .header("alg", "none")
+                .subject("sub-" + username)
+                .claim("preferred_username", username)
+                .claim("email", username + "@example.com")
+                .build();
+    }
+
+    private static User changedEmail(User user, String email) {
+        User update = new User();
+        update.setKeycloakSub(user.getKeycloakSub());
+        update.setUsername(user.getUsername());
+        update.setEmail(email);
+        return update;
+    }
+}
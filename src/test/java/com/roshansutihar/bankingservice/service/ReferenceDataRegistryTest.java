@@ -0,0 +1,127 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.entity.AccountType;
+import com.roshansutihar.bankingservice.entity.TransactionType;
+import com.roshansutihar.bankingservice.support.RoundTripCountingDataSource;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// ReferenceDataRegistry and TransactionTypeService over a migrated embedded Postgres, counting
+// the statements each lookup sends. getReferenceById runs in Spring Data's read-only
+// transaction, whose commit sends nothing when no statement ran, so commits aren't counted.
+class ReferenceDataRegistryTest {
+
+    private static final AtomicInteger codeCounter = new AtomicInteger();
+
+    private static RoundTripCountingDataSource dataSource;
+    private static ConfigurableApplicationContext context;
+    private static ReferenceDataRegistry registry;
+    private static TransactionTypeService transactionTypeService;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startContext() {
+        dataSource = new RoundTripCountingDataSource(TestDatabase.dataSource());
+        context = TestDatabase.context(dataSource, ReferenceDataRegistry.class, TransactionTypeService.class).run();
+        registry = context.getBean(ReferenceDataRegistry.class);
+        transactionTypeService = context.getBean(TransactionTypeService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void knownCodesResolveToReferencesWithoutAQuery() {
+        Long depositId = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = 'DEPOSIT'", Long.class);
+        Long checkingId = jdbc.queryForObject("SELECT id FROM account_types WHERE type_code = 'CHECKING'", Long.class);
+
+        Object[] found = new Object[2];
+        assertEquals(0, dataSource.count(() -> {
+            found[0] = registry.findTransactionType("DEPOSIT").orElseThrow();
+            found[1] = registry.findAccountType("CHECKING").orElseThrow();
+        }).statements());
+
+        TransactionType deposit = (TransactionType) found[0];
+        AccountType checking = (AccountType) found[1];
+        assertEquals(depositId, deposit.getId());
+        assertEquals(checkingId, checking.getId());
+        assertFalse(Hibernate.isInitialized(deposit));
+        assertFalse(Hibernate.isInitialized(checking));
+    }
+
+    @Test
+    void codeAddedElsewhereIsLoadedOnceAndThenServedFromTheRegistry() {
+        String code = newCode();
+        jdbc.update("INSERT INTO transaction_types (type_code, type_name) VALUES (?, 'Added by another instance')", code);
+        Long id = jdbc.queryForObject("SELECT id FROM transaction_types WHERE type_code = ?", Long.class, code);
+
+        Optional<?>[] found = new Optional<?>[1];
+        RoundTripCountingDataSource.RoundTrips miss = dataSource.count(() -> found[0] = registry.findTransactionType(code));
+
+        assertEquals(id, ((TransactionType) found[0].orElseThrow()).getId());
+        // The lookup by code, then the refresh of both tables
+        assertEquals(2, miss.containing("from transaction_types"));
+        assertEquals(1, miss.containing("from account_types"));
+        assertEquals(0, dataSource.count(() -> registry.findTransactionType(code)).statements());
+    }
+
+    @Test
+    void unknownCodeIsLookedUpWithoutARefresh() {
+        RoundTripCountingDataSource.RoundTrips miss = dataSource.count(() ->
+                assertTrue(registry.findTransactionType("NO_SUCH_TYPE").isEmpty()));
+
+        assertEquals(1, miss.containing("from transaction_types"));
+        assertEquals(0, miss.containing("from account_types"));
+    }
+
+    @Test
+    void serviceWritesRefreshTheRegistry() {
+        String code = newCode();
+        TransactionType type = new TransactionType();
+        type.setTypeCode(code);
+        type.setTypeName("Created");
+        TransactionType created = transactionTypeService.createTransactionType(type);
+
+        assertEquals(created.getId(), cachedId(code));
+
+        String renamed = newCode();
+        created.setTypeCode(renamed);
+        transactionTypeService.updateTransactionType(created);
+
+        assertEquals(created.getId(), cachedId(renamed));
+        assertTrue(registry.findTransactionType(code).isEmpty());
+
+        transactionTypeService.deleteTransactionType(created.getId());
+
+        assertTrue(registry.findTransactionType(renamed).isEmpty());
+    }
+
+    // The id the registry serves for the code, asserting it came without a query
+    private static Long cachedId(String code) {
+        Long[] id = new Long[1];
+        assertEquals(0, dataSource.count(() ->
+                id[0] = transactionTypeService.getTransactionTypeByCode(code).orElseThrow().getId()).statements());
+        return id[0];
+    }
+
+    private static String newCode() {
+        return "TEST_" + codeCounter.incrementAndGet();
+    }
+}
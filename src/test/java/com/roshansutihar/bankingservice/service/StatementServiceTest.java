@@ -0,0 +1,134 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// csv() on its own, and whole statements written from ledger entries in a migrated embedded
+// Postgres, with entries just outside the period on both sides.
+class StatementServiceTest {
+
+    private static final LocalDate FROM = LocalDate.of(2026, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2026, 3, 31);
+
+    private static final AtomicInteger refCounter = new AtomicInteger();
+
+    private static ConfigurableApplicationContext context;
+    private static StatementService statementService;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(StatementService.class).run();
+        statementService = context.getBean(StatementService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'statements', 'statements@example.com', 'sub-statements')");
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void plainCellsAreWrittenAsIs() {
+        assertEquals("Coffee shop", StatementService.csv("Coffee shop"));
+        assertEquals("", StatementService.csv(null));
+        assertEquals("", StatementService.csv(""));
+    }
+
+    @Test
+    void separatorsAndQuotesAreQuoted() {
+        assertEquals("\"Rent, March\"", StatementService.csv("Rent, March"));
+        assertEquals("\"The \"\"big\"\" one\"", StatementService.csv("The \"big\" one"));
+        assertEquals("\"Line one\nline two\"", StatementService.csv("Line one\nline two"));
+        assertEquals("\"Line one\rline two\"", StatementService.csv("Line one\rline two"));
+    }
+
+    @Test
+    void formulaLeadersArePrefixedSoSpreadsheetsShowThemAsText() {
+        assertEquals("'=HYPERLINK(A1)", StatementService.csv("=HYPERLINK(A1)"));
+        assertEquals("'+1 refund", StatementService.csv("+1 refund"));
+        assertEquals("'-5 fee", StatementService.csv("-5 fee"));
+        assertEquals("'@SUM(A1)", StatementService.csv("@SUM(A1)"));
+        assertEquals("\"'=1+2,3\"", StatementService.csv("=1+2,3"));
+    }
+
+    @Test
+    void statementCoversTheInclusivePeriodWithOpeningAndClosingBalances() {
+        long accountId = openAccount("STMT-1");
+        entry(accountId, "Salary", "CREDIT", "100.00", "100.00", FROM.minusDays(2).atTime(9, 0));
+        String rent = entry(accountId, "Rent, March", "DEBIT", "30.00", "70.00", FROM.atStartOfDay());
+        String refund = entry(accountId, "Refund", "CREDIT", "25.50", "95.50", TO.atTime(23, 59, 59));
+        entry(accountId, "April fee", "DEBIT", "10.00", "85.50", TO.plusDays(1).atStartOfDay());
+
+        assertEquals("Account,STMT-1\n" +
+                "Period,2026-03-01,2026-03-31\n" +
+                "Opening balance,100.00\n" +
+                "\n" +
+                "date,transaction_ref,description,debit,credit,balance\n" +
+                "2026-03-01T00:00," + rent + ",\"Rent, March\",30.00,,70.00\n" +
+                "2026-03-31T23:59:59," + refund + ",Refund,,25.50,95.50\n" +
+                "\n" +
+                "Total debits,30.00\n" +
+                "Total credits,25.50\n" +
+                "Closing balance,95.50\n", statement(accountId, "STMT-1"));
+    }
+
+    @Test
+    void periodWithoutEntriesClosesAtTheOpeningBalance() {
+        long accountId = openAccount("STMT-2");
+        entry(accountId, "Salary", "CREDIT", "40.00", "40.00", FROM.minusMonths(1).atTime(12, 0));
+
+        assertEquals("Account,STMT-2\n" +
+                "Period,2026-03-01,2026-03-31\n" +
+                "Opening balance,40.00\n" +
+                "\n" +
+                "date,transaction_ref,description,debit,credit,balance\n" +
+                "\n" +
+                "Total debits,0\n" +
+                "Total credits,0\n" +
+                "Closing balance,40.00\n", statement(accountId, "STMT-2"));
+    }
+
+    private static String statement(long accountId, String accountNumber) {
+        StringWriter out = new StringWriter();
+        statementService.writeCsvStatement(accountId, accountNumber, FROM, TO, out);
+        return out.toString();
+    }
+
+    private static long openAccount(String accountNumber) {
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE' " +
+                "FROM users u WHERE u.username = 'statements'", accountNumber);
+        return jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+    }
+
+    // A transaction with one ledger entry at the given time; returns the transaction reference
+    private static String entry(long accountId, String description, String entryType, String amount,
+                                String runningBalance, LocalDateTime createdAt) {
+        String ref = "STMTTEST-" + refCounter.incrementAndGet();
+        jdbc.update("INSERT INTO transactions (transaction_ref, to_account_id, transaction_type_id, amount, description, " +
+                "status, transaction_date, effective_date) " +
+                "SELECT ?, ?, id, ?, ?, 'COMPLETED', ?, ? FROM transaction_types WHERE type_code = 'DEPOSIT'",
+                ref, accountId, new BigDecimal(amount), description, createdAt, createdAt.toLocalDate());
+        jdbc.update("INSERT INTO ledger_entries (transaction_id, account_id, entry_type, amount, running_balance, created_at) " +
+                "SELECT id, ?, ?, ?, ?, ? FROM transactions WHERE transaction_ref = ?",
+                accountId, entryType, new BigDecimal(amount), new BigDecimal(runningBalance), createdAt, ref);
+        return ref;
+    }
+}
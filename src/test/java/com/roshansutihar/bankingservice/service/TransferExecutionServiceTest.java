@@ -0,0 +1,227 @@
+package com.roshansutihar.bankingservice.service;
+
+import com.roshansutihar.bankingservice.enums.TransferFrequency;
+import com.roshansutihar.bankingservice.idgen.SnowflakeReferenceGenerator;
+import com.roshansutihar.bankingservice.support.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// TransferExecutionService against a migrated embedded Postgres. Runs are driven with explicit
+// run dates, and every test starts with no other standing order active.
+class TransferExecutionServiceTest {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+
+    private static final AtomicInteger accountCounter = new AtomicInteger();
+
+    private static ConfigurableApplicationContext context;
+    private static TransferExecutionService transferExecutionService;
+    private static JdbcTemplate jdbc;
+
+    @TempDir
+    static Path tempDir;
+
+    private Long payerId;
+    private Long payeeId;
+
+    @BeforeAll
+    static void startContext() {
+        context = TestDatabase.context(TransferExecutionService.class, AccountService.class, BalanceSnapshotService.class,
+                        PostingService.class, TransactionService.class, TransactionTypeService.class,
+                        ReferenceDataRegistry.class, SnowflakeReferenceGenerator.class, AuditLogService.class,
+                        AuditLogWriter.class)
+                .properties(
+                        "transfers.workers=2",
+                        "transfers.chunk-size=2",
+                        "transfers.catch-up.max-periods=3",
+                        "transfers.catch-up.on-startup=false",
+                        "banking.balance-snapshots.on-startup=false",
+                        "banking.audit.spill-file=" + tempDir.resolve("audit-spill.jsonl"))
+                .run();
+        transferExecutionService = context.getBean(TransferExecutionService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (user_type, username, email, keycloak_sub) " +
+                "VALUES ('INDIVIDUAL', 'transfers', 'transfers@example.com', 'sub-transfers')");
+    }
+
+    @AfterAll
+    static void stopContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @BeforeEach
+    void openAccounts() {
+        jdbc.update("UPDATE transfers SET status = 'CANCELLED' WHERE status = 'ACTIVE'");
+        payerId = openAccount(OPENING_BALANCE);
+        payeeId = openAccount(BigDecimal.ZERO);
+    }
+
+    @Test
+    void monthlyPeriodsKeepTheAnchorDayThroughShortMonths() {
+        LocalDate date = LocalDate.of(2026, 1, 31);
+        List<LocalDate> dates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            date = TransferExecutionService.advance(date, TransferFrequency.MONTHLY, 31);
+            dates.add(date);
+        }
+
+        assertEquals(List.of(LocalDate.of(2026, 2, 28), LocalDate.of(2026, 3, 31), LocalDate.of(2026, 4, 30),
+                LocalDate.of(2026, 5, 31)), dates);
+        assertEquals(LocalDate.of(2028, 2, 29), TransferExecutionService.advance(
+                LocalDate.of(2028, 1, 30), TransferFrequency.MONTHLY, 30));
+        assertEquals(LocalDate.of(2026, 2, 8), TransferExecutionService.advance(
+                LocalDate.of(2026, 2, 1), TransferFrequency.WEEKLY, 1));
+        assertNull(TransferExecutionService.advance(LocalDate.of(2026, 2, 1), TransferFrequency.ONCE, 1));
+    }
+
+    @Test
+    void monthlyTransferOnThe31stRunsOnTheLastDayOfShortMonths() {
+        // Created without an anchor day: it takes the day of its first date
+        long transferId = createTransfer(TransferFrequency.MONTHLY, LocalDate.of(2026, 1, 31), null);
+
+        transferExecutionService.runDueTransfers(LocalDate.of(2026, 1, 31));
+        assertEquals(LocalDate.of(2026, 2, 28), nextDate(transferId));
+        assertEquals(31, jdbc.queryForObject("SELECT anchor_day FROM transfers WHERE id = ?", Integer.class, transferId));
+
+        transferExecutionService.runDueTransfers(LocalDate.of(2026, 2, 28));
+        assertEquals(LocalDate.of(2026, 3, 31), nextDate(transferId));
+
+        transferExecutionService.runDueTransfers(LocalDate.of(2026, 3, 31));
+        assertEquals(LocalDate.of(2026, 4, 30), nextDate(transferId));
+        assertEquals(3, postedCount(transferId));
+    }
+
+    @Test
+    void everyDueTransferIsClaimedOncePerRun() {
+        LocalDate runDate = LocalDate.of(2026, 5, 4);
+        List<Long> transferIds = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            transferIds.add(createTransfer(TransferFrequency.WEEKLY, runDate, null));
+        }
+
+        TransferExecutionService.RunSummary first = transferExecutionService.runDueTransfers(runDate);
+        TransferExecutionService.RunSummary again = transferExecutionService.runDueTransfers(runDate);
+
+        assertEquals(7, first.getExecuted());
+        assertEquals(0, again.getExecuted());
+        for (Long transferId : transferIds) {
+            assertEquals(1, postedCount(transferId));
+            assertEquals(runDate.plusWeeks(1), nextDate(transferId));
+        }
+        assertEquals(OPENING_BALANCE.subtract(new BigDecimal("70.00")), currentBalance(payerId));
+        assertEquals(new BigDecimal("70.00"), currentBalance(payeeId));
+    }
+
+    @Test
+    void missedPeriodsAreCaughtUpToTheLimitAndTheRestSkipped() {
+        LocalDate runDate = LocalDate.of(2026, 6, 10);
+        long transferId = createTransfer(TransferFrequency.DAILY, runDate.minusDays(4), null);
+
+        TransferExecutionService.RunSummary summary = transferExecutionService.runDueTransfers(runDate);
+
+        // Periods 6th, 7th and 8th are posted; 9th and 10th are skipped
+        assertEquals(3, summary.getExecuted());
+        assertEquals(2, summary.getSkipped());
+        assertEquals(3, postedCount(transferId));
+        assertEquals(List.of(LocalDate.of(2026, 6, 6), LocalDate.of(2026, 6, 7), LocalDate.of(2026, 6, 8)),
+                jdbc.queryForList("SELECT effective_date FROM transactions WHERE description LIKE ? AND status = 'COMPLETED' " +
+                        "ORDER BY effective_date", LocalDate.class, "Scheduled transfer #" + transferId + " %"));
+        assertEquals(runDate.plusDays(1), nextDate(transferId));
+        assertEquals(OPENING_BALANCE.subtract(new BigDecimal("30.00")), currentBalance(payerId));
+    }
+
+    @Test
+    void transferIsCompletedOncePastItsEndDate() {
+        LocalDate runDate = LocalDate.of(2026, 7, 15);
+        long weekly = createTransfer(TransferFrequency.WEEKLY, runDate, runDate.plusDays(3));
+        long once = createTransfer(TransferFrequency.ONCE, runDate, null);
+
+        TransferExecutionService.RunSummary summary = transferExecutionService.runDueTransfers(runDate);
+
+        assertEquals(2, summary.getExecuted());
+        assertEquals(2, summary.getCompleted());
+        assertEquals("COMPLETED", status(weekly));
+        assertEquals("COMPLETED", status(once));
+        assertEquals(1, postedCount(weekly));
+        assertEquals(1, postedCount(once));
+    }
+
+    @Test
+    void failedTransferIsRetriedOnTheNextDaysRun() {
+        LocalDate runDate = LocalDate.of(2026, 8, 3);
+        jdbc.update("UPDATE accounts SET current_balance = 5.00, available_balance = 5.00 WHERE id = ?", payerId);
+        long transferId = createTransfer(TransferFrequency.MONTHLY, runDate, null);
+
+        TransferExecutionService.RunSummary failed = transferExecutionService.runDueTransfers(runDate);
+
+        assertEquals(1, failed.getFailed());
+        assertEquals("ACTIVE", status(transferId));
+        assertEquals(runDate, nextDate(transferId));
+        assertEquals(runDate, jdbc.queryForObject("SELECT last_attempt_date FROM transfers WHERE id = ?",
+                LocalDate.class, transferId));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM transactions WHERE description LIKE ? AND status = 'FAILED'",
+                Integer.class, "Scheduled transfer #" + transferId + " %"));
+
+        // Not tried again the same day, even once the funds arrive
+        jdbc.update("UPDATE accounts SET current_balance = 50.00, available_balance = 50.00 WHERE id = ?", payerId);
+        assertEquals(0, transferExecutionService.runDueTransfers(runDate).getExecuted());
+
+        TransferExecutionService.RunSummary retried = transferExecutionService.runDueTransfers(runDate.plusDays(1));
+
+        assertEquals(1, retried.getExecuted());
+        assertEquals(1, postedCount(transferId));
+        // Posted for the period it was due, and the next period stays on the anchor day
+        assertEquals(runDate.plusMonths(1), nextDate(transferId));
+        assertEquals(new BigDecimal("40.00"), currentBalance(payerId));
+    }
+
+    private Long openAccount(BigDecimal balance) {
+        String accountNumber = "TRF-" + accountCounter.incrementAndGet();
+        jdbc.update("INSERT INTO accounts (account_number, user_id, account_type_id, routing_number, status, " +
+                "current_balance, available_balance) " +
+                "SELECT ?, u.id, (SELECT id FROM account_types WHERE type_code = 'CHECKING'), '021000021', 'ACTIVE', ?, ? " +
+                "FROM users u WHERE u.username = 'transfers'", accountNumber, balance, balance);
+        return jdbc.queryForObject("SELECT id FROM accounts WHERE account_number = ?", Long.class, accountNumber);
+    }
+
+    private long createTransfer(TransferFrequency frequency, LocalDate nextDate, LocalDate endDate) {
+        return jdbc.queryForObject("INSERT INTO transfers (from_account_id, to_account_id, amount, frequency, " +
+                "next_transfer_date, end_date, status) VALUES (?, ?, ?, ?, ?, ?, 'ACTIVE') RETURNING id",
+                Long.class, payerId, payeeId, AMOUNT, frequency.name(), nextDate, endDate);
+    }
+
+    private static LocalDate nextDate(long transferId) {
+        return jdbc.queryForObject("SELECT next_transfer_date FROM transfers WHERE id = ?", LocalDate.class, transferId);
+    }
+
+    private static String status(long transferId) {
+        return jdbc.queryForObject("SELECT status FROM transfers WHERE id = ?", String.class, transferId);
+    }
+
+    private static int postedCount(long transferId) {
+        return jdbc.queryForObject("SELECT count(*) FROM transactions WHERE description LIKE ? AND status = 'COMPLETED'",
+                Integer.class, "Scheduled transfer #" + transferId + " %");
+    }
+
+    private static BigDecimal currentBalance(Long accountId) {
+        return jdbc.queryForObject("SELECT current_balance FROM accounts WHERE id = ?", BigDecimal.class, accountId);
+    }
+}
@@ -0,0 +1,114 @@
+package com.roshansutihar.bankingservice.support;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// DataSource wrapper that, while capturing, runs EXPLAIN (FORMAT JSON) for every prepared
+// statement just before it executes, on the same connection and with the same bound
+// parameters, so the plan is the one Postgres picks for the SQL the application really sends.
+// Batched statements (inserts) are not explained.
+public class ExplainingDataSource extends DelegatingDataSource {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate");
+
+    private final List<ExplainedStatement> explained = new CopyOnWriteArrayList<>();
+    private volatile boolean capturing;
+
+    public ExplainingDataSource(DataSource target) {
+        super(target);
+    }
+
+    // Runs the action and returns the statements it executed, with their plans
+    public List<ExplainedStatement> explain(Runnable action) {
+        explained.clear();
+        capturing = true;
+        try {
+            action.run();
+        } finally {
+            capturing = false;
+        }
+        return new ArrayList<>(explained);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (method.getName().equals("prepareStatement") && args != null && args[0] instanceof String sql) {
+                        return wrap(connection, (PreparedStatement) result, sql);
+                    }
+                    return result;
+                });
+    }
+
+    private PreparedStatement wrap(Connection connection, PreparedStatement statement, String sql) {
+        // Bound parameters by index, as (setter, arguments) to replay on the EXPLAIN statement
+        Map<Integer, Object[]> parameters = new TreeMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && method.getParameterCount() >= 2 && method.getParameterTypes()[0] == int.class) {
+                parameters.put((Integer) args[0], new Object[]{method, args});
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (capturing && EXECUTE_METHODS.contains(name) && (args == null || args.length == 0)) {
+                explained.add(new ExplainedStatement(sql, explainPlan(connection, sql, parameters)));
+            }
+            return invoke(statement, method, args);
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    private static String explainPlan(Connection connection, String sql, Map<Integer, Object[]> parameters)
+            throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + sql)) {
+            for (Object[] parameter : parameters.values()) {
+                invoke(explain, (Method) parameter[0], (Object[]) parameter[1]);
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException("Could not explain " + sql, e);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public record ExplainedStatement(String sql, String plan) {
+    }
+}
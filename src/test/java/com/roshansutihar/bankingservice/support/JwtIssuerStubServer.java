@@ -0,0 +1,218 @@
+package com.roshansutihar.bankingservice.support;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Local stand-in for the Keycloak realm the service trusts for JWTs. Serves OIDC discovery, the
+// JWKS and a token endpoint at Keycloak's paths, so pointing KEYCLOAK_ISSUER_URI at getIssuerUri()
+// is enough for both the resource server and the OAuth2 login client to start against it.
+//
+// Tokens are RS256-signed with a key generated at startup and carry the claims the service reads:
+// sub, preferred_username, email and realm_access.roles. The token endpoint accepts the password
+// grant for any username (the password is ignored); in-process callers can use issueToken.
+public class JwtIssuerStubServer implements AutoCloseable {
+
+    public static final String REALM = "banking";
+    public static final String CLIENT_ID = "banking-mobile";
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KeyPair keyPair;
+    private final String keyId = UUID.randomUUID().toString();
+    private final AtomicInteger tokensIssued = new AtomicInteger();
+    private volatile long tokenLifetimeSeconds = 3_600;
+
+    public JwtIssuerStubServer(int port) throws IOException {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("RSA key generation failed", e);
+        }
+
+        String realmPath = "/realms/" + REALM;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(realmPath + "/.well-known/openid-configuration", this::handleDiscovery);
+        server.createContext(realmPath + "/protocol/openid-connect/certs", this::handleJwks);
+        server.createContext(realmPath + "/protocol/openid-connect/token", this::handleToken);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getIssuerUri() {
+        return getBaseUrl() + "/realms/" + REALM;
+    }
+
+    public void setTokenLifetimeSeconds(long tokenLifetimeSeconds) {
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+    }
+
+    public int getTokensIssued() {
+        return tokensIssued.get();
+    }
+
+    // Stable per username, so a user keeps the same sub across tokens and harness runs
+    public static String subjectFor(String username) {
+        return UUID.nameUUIDFromBytes(("load-test:" + username).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public static String emailFor(String username) {
+        return username + "@loadtest.invalid";
+    }
+
+    public String issueToken(String username, List<String> roles) {
+        Instant now = Instant.now();
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", getIssuerUri());
+        claims.put("sub", subjectFor(username));
+        claims.put("aud", "account");
+        claims.put("azp", CLIENT_ID);
+        claims.put("typ", "Bearer");
+        claims.put("iat", now.getEpochSecond());
+        claims.put("exp", now.plusSeconds(tokenLifetimeSeconds).getEpochSecond());
+        claims.put("jti", UUID.randomUUID().toString());
+        claims.put("preferred_username", username);
+        claims.put("email", emailFor(username));
+        claims.put("realm_access", Map.of("roles", roles));
+
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("alg", "RS256");
+        header.put("typ", "JWT");
+        header.put("kid", keyId);
+
+        String signingInput = base64Url(toJson(header)) + "." + base64Url(toJson(claims));
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            tokensIssued.incrementAndGet();
+            return signingInput + "." + base64Url(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Token signing failed", e);
+        }
+    }
+
+    private void handleDiscovery(HttpExchange exchange) throws IOException {
+        String issuer = getIssuerUri();
+        String endpoints = issuer + "/protocol/openid-connect";
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("issuer", issuer);
+        body.put("authorization_endpoint", endpoints + "/auth");
+        body.put("token_endpoint", endpoints + "/token");
+        body.put("userinfo_endpoint", endpoints + "/userinfo");
+        body.put("end_session_endpoint", endpoints + "/logout");
+        body.put("jwks_uri", endpoints + "/certs");
+        body.put("grant_types_supported", List.of("authorization_code", "password", "client_credentials"));
+        body.put("response_types_supported", List.of("code"));
+        body.put("subject_types_supported", List.of("public"));
+        body.put("id_token_signing_alg_values_supported", List.of("RS256"));
+        body.put("scopes_supported", List.of("openid", "profile", "email"));
+        write(exchange, 200, body);
+    }
+
+    private void handleJwks(HttpExchange exchange) throws IOException {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put("kty", "RSA");
+        key.put("kid", keyId);
+        key.put("use", "sig");
+        key.put("alg", "RS256");
+        key.put("n", base64Url(unsigned(publicKey.getModulus())));
+        key.put("e", base64Url(unsigned(publicKey.getPublicExponent())));
+        write(exchange, 200, Map.of("keys", List.of(key)));
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String username = form.get("username");
+        if (!"password".equals(form.get("grant_type")) || username == null || username.isBlank()) {
+            write(exchange, 400, Map.of("error", "unsupported_grant_type"));
+            return;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("access_token", issueToken(username, List.of("user")));
+        body.put("expires_in", tokenLifetimeSeconds);
+        body.put("token_type", "Bearer");
+        write(exchange, 200, body);
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    // JWK integers are unsigned big-endian; BigInteger adds a sign byte when the top bit is set
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void write(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(status, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } catch (IOException e) {
+            // Client gave up before the response was written
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,72 @@
+package com.roshansutihar.bankingservice.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoders;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The load harness relies on the service accepting these tokens, so decode them the way the
+// service does: a JwtDecoder configured from the issuer URI alone.
+class JwtIssuerStubServerTest {
+
+    private JwtIssuerStubServer issuer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        issuer = new JwtIssuerStubServer(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        issuer.close();
+    }
+
+    @Test
+    void issuedTokensPassIssuerUriValidation() {
+        JwtDecoder decoder = JwtDecoders.fromIssuerLocation(issuer.getIssuerUri());
+
+        Jwt jwt = decoder.decode(issuer.issueToken("loaduser-1", List.of("user")));
+
+        assertEquals(JwtIssuerStubServer.subjectFor("loaduser-1"), jwt.getSubject());
+        assertEquals("loaduser-1", jwt.getClaimAsString("preferred_username"));
+        assertEquals(JwtIssuerStubServer.emailFor("loaduser-1"), jwt.getClaimAsString("email"));
+        assertEquals(issuer.getIssuerUri(), jwt.getIssuer().toString());
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        JwtDecoder decoder = JwtDecoders.fromIssuerLocation(issuer.getIssuerUri());
+        String[] parts = issuer.issueToken("loaduser-1", List.of("user")).split("\\.");
+        String otherClaims = issuer.issueToken("loaduser-2", List.of("user")).split("\\.")[1];
+
+        assertThrows(JwtException.class, () -> decoder.decode(parts[0] + "." + otherClaims + "." + parts[2]));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tokenEndpointIssuesPasswordGrantTokens() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(issuer.getIssuerUri() + "/protocol/openid-connect/token"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("grant_type=password&username=loaduser-7&password=x"))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+
+        Map<String, Object> body = new ObjectMapper().readValue(response.body(), Map.class);
+        Jwt jwt = JwtDecoders.fromIssuerLocation(issuer.getIssuerUri()).decode((String) body.get("access_token"));
+        assertEquals("loaduser-7", jwt.getClaimAsString("preferred_username"));
+    }
+}
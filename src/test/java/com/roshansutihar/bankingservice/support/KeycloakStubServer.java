@@ -0,0 +1,241 @@
+package com.roshansutihar.bankingservice.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Minimal in-process stand-in for the Keycloak endpoints the admin client uses: the
+// client-credentials token endpoint and create / find / delete on the realm's users. Tokens are
+// random strings with a configurable expires_in; admin calls with an unknown or revoked token
+// get 401. Tracks token requests and the highest number of admin calls served at once.
+public class KeycloakStubServer implements AutoCloseable {
+
+    public static final String REALM = "banking";
+    public static final String CLIENT_ID = "banking-admin-client";
+    public static final String CLIENT_SECRET = "secret";
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> validTokens = ConcurrentHashMap.newKeySet();
+    private final Map<String, Map<String, Object>> usersById = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByUsername = new ConcurrentHashMap<>();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger adminRequests = new AtomicInteger();
+    private final AtomicInteger concurrentAdminRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentAdminRequests = new AtomicInteger();
+    private final AtomicInteger failingAdminRequests = new AtomicInteger();
+    private volatile long tokenLifetimeSeconds = 300;
+    private volatile long tokenLatencyMs;
+    private volatile long adminLatencyMs;
+
+    public KeycloakStubServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/realms/" + REALM + "/protocol/openid-connect/token", this::handleToken);
+        server.createContext("/admin/realms/" + REALM + "/users", this::handleUsers);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setTokenLifetimeSeconds(long tokenLifetimeSeconds) {
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+    }
+
+    public void setTokenLatencyMs(long tokenLatencyMs) {
+        this.tokenLatencyMs = tokenLatencyMs;
+    }
+
+    public void setAdminLatencyMs(long adminLatencyMs) {
+        this.adminLatencyMs = adminLatencyMs;
+    }
+
+    // The next count admin calls answer 503, as Keycloak does while it restarts
+    public void failAdminRequests(int count) {
+        failingAdminRequests.set(count);
+    }
+
+    // Makes every token issued so far invalid, as a Keycloak restart or key rotation would
+    public void revokeTokens() {
+        validTokens.clear();
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getAdminRequests() {
+        return adminRequests.get();
+    }
+
+    public int getMaxConcurrentAdminRequests() {
+        return maxConcurrentAdminRequests.get();
+    }
+
+    public int getUserCount() {
+        return usersById.size();
+    }
+
+    public boolean hasUser(String username) {
+        return idsByUsername.containsKey(username);
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        tokenRequests.incrementAndGet();
+        sleep(tokenLatencyMs);
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        if (!"client_credentials".equals(form.get("grant_type")) || !CLIENT_ID.equals(form.get("client_id"))
+                || !CLIENT_SECRET.equals(form.get("client_secret"))) {
+            write(exchange, 401, Map.of("error", "unauthorized_client"));
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        validTokens.add(token);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("access_token", token);
+        body.put("expires_in", tokenLifetimeSeconds);
+        body.put("token_type", "Bearer");
+        write(exchange, 200, body);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleUsers(HttpExchange exchange) throws IOException {
+        adminRequests.incrementAndGet();
+        int concurrent = concurrentAdminRequests.incrementAndGet();
+        maxConcurrentAdminRequests.accumulateAndGet(concurrent, Math::max);
+        boolean[] finished = {false};
+        try {
+            sleep(adminLatencyMs);
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !validTokens.contains(authorization.replace("Bearer ", ""))) {
+                respond(exchange, finished, 401, Map.of("error", "HTTP 401 Unauthorized"));
+                return;
+            }
+            if (failingAdminRequests.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                respond(exchange, finished, 503, Map.of("error", "Service unavailable"));
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String userId = path.endsWith("/users") ? null : path.substring(path.lastIndexOf('/') + 1);
+            switch (exchange.getRequestMethod()) {
+                case "POST" -> {
+                    Map<String, Object> user = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+                    String username = (String) user.get("username");
+                    String id = UUID.randomUUID().toString();
+                    if (idsByUsername.putIfAbsent(username, id) != null) {
+                        respond(exchange, finished, 409, Map.of("errorMessage", "User exists with same username"));
+                        return;
+                    }
+                    user.put("id", id);
+                    user.put("createdTimestamp", System.currentTimeMillis());
+                    user.remove("credentials");
+                    usersById.put(id, user);
+                    exchange.getResponseHeaders().set("Location", getBaseUrl() + path + "/" + id);
+                    respond(exchange, finished, 201, null);
+                }
+                case "GET" -> {
+                    String username = parseForm(exchange.getRequestURI().getRawQuery()).get("username");
+                    List<Map<String, Object>> found = new ArrayList<>();
+                    String id = username != null ? idsByUsername.get(username) : null;
+                    if (id != null && usersById.containsKey(id)) {
+                        found.add(usersById.get(id));
+                    }
+                    respond(exchange, finished, 200, found);
+                }
+                case "DELETE" -> {
+                    Map<String, Object> removed = userId != null ? usersById.remove(userId) : null;
+                    if (removed == null) {
+                        respond(exchange, finished, 404, Map.of("error", "User not found"));
+                        return;
+                    }
+                    idsByUsername.remove((String) removed.get("username"));
+                    respond(exchange, finished, 204, null);
+                }
+                default -> respond(exchange, finished, 405, null);
+            }
+        } finally {
+            finish(finished);
+        }
+    }
+
+    // The call stops counting as in flight before its response goes out: the client may start
+    // its next call as soon as it has the response, and must not be seen overlapping this one
+    private void respond(HttpExchange exchange, boolean[] finished, int status, Object body) throws IOException {
+        finish(finished);
+        write(exchange, status, body);
+    }
+
+    private void finish(boolean[] finished) {
+        if (!finished[0]) {
+            finished[0] = true;
+            concurrentAdminRequests.decrementAndGet();
+        }
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(HttpExchange exchange, int status, Object body) throws IOException {
+        try {
+            if (body == null) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } catch (IOException e) {
+            // Client gave up before the response was written
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,198 @@
+package com.roshansutihar.bankingservice.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Minimal in-process stand-in for the payments core, used by tests and local load runs.
+// Serves GET /api/v1/payments/status/{sessionId} and POST /api/v1/payments/complete with
+// configurable latency and a switch to make every call fail with HTTP 503. Completions can also
+// be slowed down or failed on their own, to leave a payment's outcome unknown to the caller.
+//
+// Standalone: java ... PaymentsCoreStubServer [port] [latencyMs], then point
+// PAYMENTS_CORE_BASE_URL at http://localhost:<port>. LoadTestHarness runs its own instance and
+// opens a session per payment.
+public class PaymentsCoreStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Map<String, Object>> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger statusCalls = new AtomicInteger();
+    private final AtomicInteger completeCalls = new AtomicInteger();
+    private volatile long latencyMs;
+    private volatile boolean failing;
+    private volatile long completeLatencyMs;
+    private volatile int completeFailureStatus;
+    private volatile boolean completeFailureApplied;
+
+    public PaymentsCoreStubServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/v1/payments/status/", this::handleStatus);
+        server.createContext("/api/v1/payments/complete", this::handleComplete);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    // Extra delay on completions only; a completion the caller gave up on is still applied
+    public void setCompleteLatencyMs(long completeLatencyMs) {
+        this.completeLatencyMs = completeLatencyMs;
+    }
+
+    // Completions answer with this HTTP status (0 to answer normally). With applied, the session
+    // is completed first, as when the core took the payment but its answer got lost.
+    public void failCompletions(int status, boolean applied) {
+        this.completeFailureStatus = status;
+        this.completeFailureApplied = applied;
+    }
+
+    public void setSessionStatus(String sessionId, String status) {
+        sessions.get(sessionId).put("status", status);
+    }
+
+    public void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public int getStatusCalls() {
+        return statusCalls.get();
+    }
+
+    public int getCompleteCalls() {
+        return completeCalls.get();
+    }
+
+    public void addSession(String sessionId, BigDecimal amount, String currency, String merchantId, String transactionRef) {
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("sessionId", sessionId);
+        session.put("amount", amount);
+        session.put("currency", currency);
+        session.put("merchantId", merchantId);
+        session.put("transactionRef", transactionRef);
+        session.put("status", "PENDING");
+        session.put("expiryTime", LocalDateTime.now().plusMinutes(15).toString() + "Z");
+        sessions.put(sessionId, session);
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        statusCalls.incrementAndGet();
+        if (!beforeHandle(exchange)) {
+            return;
+        }
+        String path = exchange.getRequestURI().getRawPath();
+        String sessionId = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+        Map<String, Object> session = sessions.get(sessionId);
+        if (session == null) {
+            write(exchange, 404, Map.of("error", "Session not found"));
+            return;
+        }
+        write(exchange, 200, session);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleComplete(HttpExchange exchange) throws IOException {
+        completeCalls.incrementAndGet();
+        sleep(completeLatencyMs);
+        if (!beforeHandle(exchange)) {
+            return;
+        }
+        Map<String, Object> payload = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+        Map<String, Object> session = sessions.get(String.valueOf(payload.get("sessionId")));
+
+        int failureStatus = completeFailureStatus;
+        if (failureStatus != 0) {
+            if (completeFailureApplied && session != null) {
+                session.put("status", "COMPLETED");
+            }
+            write(exchange, failureStatus, Map.of("error", "Completion failed"));
+            return;
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (session == null || !"PENDING".equals(session.get("status"))) {
+            body.put("success", false);
+            body.put("message", "Session not payable");
+        } else {
+            session.put("status", "COMPLETED");
+            body.put("success", true);
+            body.put("transactionId", UUID.randomUUID().toString());
+            body.put("settlementBatchId", "BATCH-" + LocalDateTime.now().toLocalDate());
+        }
+        write(exchange, 200, body);
+    }
+
+    private boolean beforeHandle(HttpExchange exchange) throws IOException {
+        sleep(latencyMs);
+        if (failing) {
+            write(exchange, 503, Map.of("error", "Service unavailable"));
+            return false;
+        }
+        return true;
+    }
+
+    private static void sleep(long delay) {
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(status, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } catch (IOException e) {
+            // Client gave up (deadline hit) before the response was written
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8099;
+        PaymentsCoreStubServer stub = new PaymentsCoreStubServer(port);
+        if (args.length > 1) {
+            stub.setLatencyMs(Long.parseLong(args[1]));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            stub.addSession("LOAD-" + i, new BigDecimal("1.00"), "USD", "MERCHANT-1", "REF-LOAD-" + i);
+        }
+        System.out.println("Payments core stub listening on " + stub.getBaseUrl());
+    }
+}
@@ -0,0 +1,119 @@
+package com.roshansutihar.bankingservice.support;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// DataSource wrapper that, while counting, records every call that waits on the server: each
+// statement execution, each executeBatch (one round trip however many rows it carries) and each
+// commit or rollback. Put it outside the pool so the pool's own validation queries don't count.
+public class RoundTripCountingDataSource extends DelegatingDataSource {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final List<String> roundTrips = new CopyOnWriteArrayList<>();
+    private volatile boolean counting;
+
+    public RoundTripCountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    // Runs the action and returns its round trips: the SQL of each execution or batch, or
+    // COMMIT / ROLLBACK
+    public RoundTrips count(Runnable action) {
+        roundTrips.clear();
+        counting = true;
+        try {
+            action.run();
+        } finally {
+            counting = false;
+        }
+        return new RoundTrips(new ArrayList<>(roundTrips));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (counting && (name.equals("commit") || name.equals("rollback"))) {
+                        roundTrips.add(name.toUpperCase(Locale.ROOT));
+                    }
+                    Object result = invoke(connection, method, args);
+                    if (name.equals("prepareStatement") && args != null && args[0] instanceof String sql) {
+                        return wrap((Statement) result, PreparedStatement.class, sql);
+                    }
+                    if (name.equals("createStatement")) {
+                        return wrap((Statement) result, Statement.class, null);
+                    }
+                    return result;
+                });
+    }
+
+    private Statement wrap(Statement statement, Class<? extends Statement> type, String preparedSql) {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (counting && EXECUTE_METHODS.contains(method.getName())) {
+                        roundTrips.add(preparedSql != null ? preparedSql : args != null ? (String) args[0] : "batch");
+                    }
+                    return invoke(statement, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    public static class RoundTrips {
+        private final List<String> calls;
+
+        RoundTrips(List<String> calls) {
+            this.calls = calls;
+        }
+
+        public int total() {
+            return calls.size();
+        }
+
+        // Statement executions and batches, leaving out commits and rollbacks
+        public int statements() {
+            return (int) calls.stream().filter(sql -> !sql.equals("COMMIT") && !sql.equals("ROLLBACK")).count();
+        }
+
+        // Round trips whose SQL starts with the given text, ignoring case
+        public int startingWith(String prefix) {
+            String lower = prefix.toLowerCase(Locale.ROOT);
+            return (int) calls.stream().filter(sql -> sql.toLowerCase(Locale.ROOT).startsWith(lower)).count();
+        }
+
+        public int containing(String text) {
+            return (int) calls.stream().filter(sql -> sql.contains(text)).count();
+        }
+    }
+}
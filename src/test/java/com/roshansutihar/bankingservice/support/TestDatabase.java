@@ -0,0 +1,105 @@
+package com.roshansutihar.bankingservice.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One embedded Postgres for the whole test run. Every caller gets a database of its own on it,
+// so test classes never see each other's rows, and Flyway migrates that database either when
+// the context starts or in migratedDataSource().
+public final class TestDatabase {
+
+    private static final AtomicInteger databaseCounter = new AtomicInteger();
+
+    private static EmbeddedPostgres postgres;
+
+    private TestDatabase() {
+    }
+
+    // JPA, Flyway and the repositories on a new database, plus the given components. Callers
+    // add their own properties and run() it.
+    public static SpringApplicationBuilder context(Class<?>... components) {
+        return baseContext(components)
+                .properties(
+                        "spring.datasource.url=" + server().getJdbcUrl("postgres", createDatabase()),
+                        "spring.datasource.username=postgres");
+    }
+
+    // As context(), over a DataSource the caller built on dataSource()
+    public static SpringApplicationBuilder context(DataSource dataSource, Class<?>... components) {
+        return baseContext(components)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .registerSingleton("dataSource", dataSource));
+    }
+
+    // A new, empty database
+    public static DataSource dataSource() {
+        return server().getDatabase("postgres", createDatabase());
+    }
+
+    // A new database with the migrations applied, for tests that run without a Spring context
+    public static DataSource migratedDataSource() {
+        DataSource dataSource = dataSource();
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+        return dataSource;
+    }
+
+    private static SpringApplicationBuilder baseContext(Class<?>... components) {
+        return new SpringApplicationBuilder(PersistenceContext.class)
+                .sources(components)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        // Not application.properties: tests set what they depend on
+                        "spring.config.name=test-database",
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "spring.jpa.open-in-view=false");
+    }
+
+    private static String createDatabase() {
+        String name = "test_" + databaseCounter.incrementAndGet();
+        new JdbcTemplate(server().getPostgresDatabase()).execute("CREATE DATABASE " + name);
+        return name;
+    }
+
+    private static synchronized EmbeddedPostgres server() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start embedded Postgres", e);
+            }
+            EmbeddedPostgres started = postgres;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    started.close();
+                } catch (IOException ignored) {
+                    // The JVM is exiting either way
+                }
+            }, "test-database-shutdown"));
+        }
+        return postgres;
+    }
+
+    // Entities and repositories without web or security
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan("com.roshansutihar.bankingservice.entity")
+    @EnableJpaRepositories("com.roshansutihar.bankingservice.repository")
+    static class PersistenceContext {
+    }
+}